@@ -0,0 +1,445 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Blob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import casmi.db.util.DateUtil;
+
+/**
+ * A base class of the dialects.
+ *
+ * <p>
+ * The statements and the bindings common to the databases are implemented
+ * here; a subclass registers its column types and capabilities, and overrides
+ * the methods which differ, such as the binding of a date.
+ * </p>
+ *
+ * @author T. Takeuchi
+ */
+abstract class AbstractDialect implements Dialect {
+
+    private final SQLType sqlType;
+
+    private final EnumSet<Capability> capabilities;
+
+    private final int maxParameters;
+
+    private final Map<Class<?>, String> types = new HashMap<Class<?>, String>();
+
+    protected AbstractDialect(SQLType sqlType, int maxParameters, EnumSet<Capability> capabilities) {
+
+        this.sqlType       = sqlType;
+        this.maxParameters = maxParameters;
+        this.capabilities  = capabilities;
+    }
+
+    /**
+     * Registers the column type of a Java type and its primitive type.
+     */
+    protected final void type(Class<?> type, Class<?> primitive, String columnType) {
+
+        types.put(type, columnType);
+        if (primitive != null) types.put(primitive, columnType);
+    }
+
+    @Override
+    public SQLType getSQLType() {
+
+        return sqlType;
+    }
+
+    @Override
+    public boolean supports(Capability capability) {
+
+        return capabilities.contains(capability);
+    }
+
+    @Override
+    public int getMaxParameters() {
+
+        return maxParameters;
+    }
+
+    @Override
+    public String type(Class<?> type) {
+
+        // java.time types are stored as dates
+        if (DateUtil.isTemporal(type)) return type(java.util.Date.class);
+
+        // and binary types as blobs
+        if (Blobs.isBinary(type)) return type(Blob.class);
+
+        return types.get(type);
+    }
+
+    @Override
+    public String type(Column column) {
+
+        casmi.db.annotation.Column def = column.getDefinition();
+        if (column.getCompressed() != null && (def == null || def.type().length() == 0)) {
+            return type(Blob.class);
+        }
+        if (def != null) {
+            Class<?> type = column.getType();
+            if (def.type().length() != 0) {
+                return def.type();
+            } else if (0 < def.length() && type == String.class) {
+                return "VARCHAR(" + def.length() + ")";
+            } else if (0 < def.precision() &&
+                       (type == double.class || type == Double.class ||
+                        type == float.class  || type == Float.class)) {
+                return "DECIMAL(" + def.precision() + "," + def.scale() + ")";
+            }
+        }
+
+        return type(column.getType());
+    }
+
+    /**
+     * Appends the name, the type and the constraint of a column.
+     */
+    protected void appendColumn(StringBuilder sb, Column column) {
+
+        sb.append(column.getField());
+        sb.append(' ');
+        sb.append(type(column));
+
+        casmi.db.annotation.Column def = column.getDefinition();
+        if (def != null && !def.nullable()) {
+            sb.append(" NOT NULL");
+        }
+    }
+
+    /**
+     * Returns the column definition of an automatic primary key named "id".
+     */
+    protected abstract String autoIncrement();
+
+    @Override
+    public String createTable(String tablename, Column primaryKey, boolean autoPrimaryKey,
+                              Column[] columns) {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("CREATE TABLE ");
+        sb.append(tablename);
+        sb.append(" (");
+
+        if (autoPrimaryKey) {
+            sb.append(autoIncrement());
+        } else {
+            sb.append(primaryKey.getField());
+            sb.append(' ');
+            sb.append(type(primaryKey));
+            sb.append(" PRIMARY KEY");
+        }
+
+        for (Column column : columns) {
+            sb.append(',');
+            appendColumn(sb, column);
+        }
+
+        sb.append(')');
+        return sb.toString();
+    }
+
+    @Override
+    public String createIndex(String tablename, String name, Column[] columns, boolean unique,
+                              String where) {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("CREATE ");
+        if (unique) sb.append("UNIQUE ");
+        sb.append("INDEX ");
+        sb.append(name);
+        sb.append(" ON ");
+        sb.append(tablename);
+        sb.append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i != 0) sb.append(',');
+            appendIndexColumn(sb, columns[i]);
+        }
+        sb.append(')');
+
+        if (where != null && where.length() != 0) {
+            if (supports(Capability.PARTIAL_INDEX)) {
+                sb.append(" WHERE ");
+                sb.append(where);
+            } else if (unique) {
+                // Ignoring the condition would reject rows which it excludes.
+                throw new UnsupportedOperationException("Partial unique index is not supported.");
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Appends a column of an index.
+     */
+    protected void appendIndexColumn(StringBuilder sb, Column column) {
+
+        sb.append(column.getField());
+    }
+
+    @Override
+    public String drop(String tablename) {
+
+        return "DROP TABLE " + tablename;
+    }
+
+    @Override
+    public String truncate(String tablename) {
+
+        return "TRUNCATE TABLE " + tablename;
+    }
+
+    @Override
+    public String insert(String tablename, String[] fields, int rows) {
+
+        if (1 < rows && !supports(Capability.MULTI_ROW_INSERT)) {
+            throw new UnsupportedOperationException("Multi-row insert is not supported.");
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("INSERT INTO ");
+        sb.append(tablename);
+        appendValues(sb, fields, rows);
+        return sb.toString();
+    }
+
+    /**
+     * Appends " (f1,f2) VALUES (?,?),(?,?)" to a statement.
+     */
+    protected static void appendValues(StringBuilder sb, String[] fields, int rows) {
+
+        sb.append(" (");
+        for (int i = 0; i < fields.length; i++) {
+            if (i != 0) sb.append(',');
+            sb.append(fields[i]);
+        }
+        sb.append(") VALUES ");
+        for (int r = 0; r < rows; r++) {
+            if (r != 0) sb.append(',');
+            sb.append('(');
+            for (int i = 0; i < fields.length; i++) {
+                if (i != 0) sb.append(',');
+                sb.append('?');
+            }
+            sb.append(')');
+        }
+    }
+
+    @Override
+    public String upsert(String tablename, String[] fields) {
+
+        throw new UnsupportedOperationException("Upsert is not supported.");
+    }
+
+    @Override
+    public String selectChunk(String tablename, String field, String key) {
+
+        return "SELECT SUBSTRING(" + field + ",?,?) FROM " + tablename + " WHERE " + key + "=?";
+    }
+
+    @Override
+    public void appendLimit(StringBuilder sb, int limit, int offset) {
+
+        sb.append(" LIMIT ");
+        sb.append(limit);
+        if (0 < offset) {
+            sb.append(" OFFSET ");
+            sb.append(offset);
+        }
+    }
+
+    @Override
+    public void prepareStreaming(Statement statement) throws SQLException {
+        // The driver streams rows by default.
+    }
+
+    @Override
+    public boolean isRetryable(SQLException e) {
+
+        // serialization failure
+        return "40001".equals(e.getSQLState());
+    }
+
+    @Override
+    public String explain(String sql) {
+
+        return "EXPLAIN " + sql;
+    }
+
+    /**
+     * Returns the plan without any problem found; the lines are the values of
+     * the rows.
+     */
+    @Override
+    public QueryPlan plan(String sql, ResultSet resultSet) throws SQLException {
+
+        return new QueryPlan(sql, readPlan(resultSet), new HashSet<String>(), false, false);
+    }
+
+    /**
+     * Returns the rows of a plan as lines of the column values.
+     */
+    protected static List<String> readPlan(ResultSet resultSet) throws SQLException {
+
+        List<String> lines = new ArrayList<String>();
+        ResultSetMetaData meta = resultSet.getMetaData();
+        while (resultSet.next()) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                if (i != 1) sb.append(' ');
+                sb.append(resultSet.getString(i));
+            }
+            lines.add(sb.toString());
+        }
+        return lines;
+    }
+
+    @Override
+    public void setParameter(PreparedStatement preparedStatement, int parameterIndex, Object param)
+        throws SQLException {
+
+        if (param == null) {
+            preparedStatement.setNull(parameterIndex, Types.NULL);
+        } else if (param instanceof java.util.Date) {
+            setDate(preparedStatement, parameterIndex, (java.util.Date)param);
+        } else if (DateUtil.isTemporal(param.getClass())) {
+            setDate(preparedStatement, parameterIndex, DateUtil.toDate((Temporal)param));
+        } else if (param instanceof Double) {
+            preparedStatement.setDouble(parameterIndex, (Double)param);
+        } else if (param instanceof Float) {
+            preparedStatement.setFloat(parameterIndex, (Float)param);
+        } else if (param instanceof Integer) {
+            preparedStatement.setInt(parameterIndex, (Integer)param);
+        } else if (param instanceof Short) {
+            preparedStatement.setShort(parameterIndex, (Short)param);
+        } else if (param instanceof Long) {
+            preparedStatement.setLong(parameterIndex, (Long)param);
+        } else if (param instanceof String) {
+            preparedStatement.setString(parameterIndex, (String)param);
+        } else if (param instanceof Blob) {
+            preparedStatement.setBlob(parameterIndex, (Blob)param);
+        } else if (param instanceof byte[]) {
+            preparedStatement.setBytes(parameterIndex, (byte[])param);
+        } else if (param instanceof ByteBuffer) {
+            ByteBuffer buffer = (ByteBuffer)param;
+            if (buffer.hasArray()) {
+                preparedStatement.setBytes(parameterIndex, Blobs.toBytes(buffer));
+            } else {
+                setStream(preparedStatement, parameterIndex, Blobs.open(buffer), buffer.remaining());
+            }
+        } else if (param instanceof InputStream) {
+            setStream(preparedStatement, parameterIndex, (InputStream)param, -1);
+        } else if (param instanceof Path) {
+            try {
+                Path path = (Path)param;
+                setStream(preparedStatement, parameterIndex, Blobs.open(path), Files.size(path));
+            } catch (IOException e) {
+                throw new SQLException(e);
+            }
+        } else {
+            throw new SQLException(param.getClass() + ": The object type is not supported.");
+        }
+    }
+
+    /**
+     * Binds a stream to a binary parameter; the driver reads it when the
+     * statement is executed.
+     *
+     * @param length
+     *            the length of the stream, or -1 if unknown.
+     */
+    protected void setStream(PreparedStatement preparedStatement, int parameterIndex,
+                             InputStream in, long length) throws SQLException {
+
+        if (length < 0) {
+            preparedStatement.setBinaryStream(parameterIndex, in);
+        } else {
+            preparedStatement.setBinaryStream(parameterIndex, in, length);
+        }
+    }
+
+    protected abstract void setDate(PreparedStatement preparedStatement, int parameterIndex,
+                                    java.util.Date date) throws SQLException;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(ResultSet resultSet, Class<T> type, String field) throws SQLException {
+
+        if (type ==     int.class ||
+            type == Integer.class) {
+            return (T)(Integer)resultSet.getInt(field);
+        } else if (type == short.class ||
+                   type == Short.class) {
+            return (T)(Short)resultSet.getShort(field);
+        } else if (type == long.class ||
+                   type == Long.class) {
+            return (T)(Long)resultSet.getLong(field);
+        } else if (type == double.class ||
+                   type == Double.class) {
+            return (T)(Double)resultSet.getDouble(field);
+        } else if (type == float.class ||
+                   type == Float.class) {
+            return (T)(Float)resultSet.getFloat(field);
+        } else if (type == java.util.Date.class) {
+            return (T)getDate(resultSet, field);
+        } else if (DateUtil.isTemporal(type)) {
+            return DateUtil.toTemporal(getDate(resultSet, field), type);
+        } else if (type == String.class) {
+            return (T)resultSet.getString(field);
+        } else if (type == Blob.class) {
+            return (T)resultSet.getBlob(field);
+        } else if (type == byte[].class) {
+            return (T)resultSet.getBytes(field);
+        } else if (type == ByteBuffer.class) {
+            byte[] bytes = resultSet.getBytes(field);
+            return bytes == null ? null : (T)ByteBuffer.wrap(bytes);
+        }
+        // InputStream and Path are read lazily by the entity.
+
+        return null;
+    }
+
+    protected abstract java.util.Date getDate(ResultSet resultSet, String field) throws SQLException;
+
+    protected abstract java.util.Date getDate(ResultSet resultSet, int column) throws SQLException;
+}
@@ -0,0 +1,339 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An asynchronous facade of a SQL object.
+ *
+ * <p>
+ * Each method returns a {@code CompletableFuture} instead of blocking the
+ * caller. Operations on the main connection of the SQL object, which are
+ * writes, raw statements, and reads unless pooled reads are enabled, run one
+ * at a time in the order they were called. With pooled reads, reads run
+ * concurrently on connections borrowed from the connection pool, so they are
+ * not ordered with writes and do not see uncommitted changes of the main
+ * connection.
+ * </p>
+ *
+ * <p>
+ * Example:
+ * <pre><code>
+ *     AsyncSQL async = new AsyncSQL(sqlite);
+ *     async.allAsync(MyEntity.class, new Query().where("x&gt;0"))
+ *          .thenAccept(entities -&gt; ...);
+ * </code></pre>
+ * </p>
+ *
+ * @see casmi.db.SQL
+ *
+ * @author T. Takeuchi
+ */
+public class AsyncSQL {
+
+    /** A task which may throw SQLException. */
+    private interface Task<V> {
+
+        V call() throws SQLException;
+    }
+
+    private final SQL sql;
+
+    private final ExecutorService ownExecutor;
+
+    private final Executor executor;
+
+    /** Executes tasks on the main connection one at a time. */
+    private final SerialExecutor serial;
+
+    private volatile boolean pooledReads = false;
+
+    /**
+     * Creates a new AsyncSQL object running on a default executor; virtual
+     * threads if the JVM supports them, or a bounded thread pool.
+     *
+     * @param sql
+     *            the SQL object (SQLite or MySQL).
+     */
+    public AsyncSQL(SQL sql) {
+
+        this.sql         = sql;
+        this.ownExecutor = defaultExecutor();
+        this.executor    = ownExecutor;
+        this.serial      = new SerialExecutor(executor);
+    }
+
+    /**
+     * Creates a new AsyncSQL object running on the specified executor.
+     *
+     * @param sql
+     *            the SQL object (SQLite or MySQL).
+     * @param executor
+     *            the executor.
+     */
+    public AsyncSQL(SQL sql, Executor executor) {
+
+        if (executor == null) {
+            throw new IllegalArgumentException("The executor is null.");
+        }
+
+        this.sql         = sql;
+        this.ownExecutor = null;
+        this.executor    = executor;
+        this.serial      = new SerialExecutor(executor);
+    }
+
+    private static ExecutorService defaultExecutor() {
+
+        // Executors.newVirtualThreadPerTaskExecutor() (Java 21 or later)
+        try {
+            Method m = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)m.invoke(null);
+        } catch (Exception e) {
+            // Not supported.
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+            threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            SQL.daemonThreads("casmi-db-async"));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Enables reads running concurrently on pooled connections.
+     *
+     * @param pooledReads
+     *            true to read on pooled connections; false to read on the main
+     *            connection in order with other operations.
+     *
+     * @see casmi.db.SQL#setPoolSize(int)
+     */
+    public void setPooledReads(boolean pooledReads) {
+
+        this.pooledReads = pooledReads;
+    }
+
+    public <T extends Entity> CompletableFuture<T[]> allAsync(Class<T> type) {
+
+        return allAsync(type, new Query());
+    }
+
+    public <T extends Entity> CompletableFuture<T[]> allAsync(final Class<T> type, final Query query) {
+
+        if (pooledReads) {
+            return submit(executor, () -> sql.pooledAll(type, query));
+        }
+        return submit(serial, () -> sql.all(type, query));
+    }
+
+    /**
+     * Executes a query asynchronously and maps each row with the mapper.
+     *
+     * @see casmi.db.SQL#query(String, RowMapper, Object...)
+     */
+    public <R> CompletableFuture<List<R>> queryAsync(final String sql, final RowMapper<R> mapper,
+                                                     final Object... params) {
+
+        if (pooledReads) {
+            return submit(executor, () -> this.sql.pooledQuery(sql, mapper, params));
+        }
+        return submit(serial, () -> this.sql.query(sql, mapper, params));
+    }
+
+    public <T extends Entity> CompletableFuture<T> findAsync(final Class<T> type, final int id) {
+
+        if (pooledReads) {
+            return submit(executor, () -> sql.pooledFind(type, id));
+        }
+        return submit(serial, () -> sql.find(type, id));
+    }
+
+    public <T extends Entity> CompletableFuture<T> firstAsync(final Class<T> type, final Query query) {
+
+        return first(allAsync(type, query.limit(1)));
+    }
+
+    private static <T> CompletableFuture<T> first(CompletableFuture<T[]> future) {
+
+        return future.thenApply(entities -> entities.length == 0 ? null : entities[0]);
+    }
+
+    /**
+     * Saves the entity on the main connection.
+     *
+     * @param entity
+     *            the entity.
+     * @return a future completed with the saved entity.
+     */
+    public <T extends Entity> CompletableFuture<T> saveAsync(final T entity) {
+
+        return submit(serial, () -> {
+            entity.save();
+            return entity;
+        });
+    }
+
+    /**
+     * Deletes the entity on the main connection.
+     *
+     * @param entity
+     *            the entity.
+     * @return a future completed when the entity is deleted.
+     */
+    public CompletableFuture<Void> deleteAsync(final Entity entity) {
+
+        return submit(serial, () -> {
+            entity.delete();
+            return null;
+        });
+    }
+
+    /**
+     * Executes the SQL statement on the main connection.
+     *
+     * @param statement
+     *            any SQL statement.
+     * @param params
+     *            the parameters of the statement.
+     * @return a future completed when the statement is executed.
+     */
+    public CompletableFuture<Void> executeAsync(final String statement, final Object... params) {
+
+        return submit(serial, () -> {
+            sql.execute(statement, params);
+            return null;
+        });
+    }
+
+    /**
+     * Shuts down the default executor. Tasks already submitted are completed.
+     * An executor given to the constructor is not shut down.
+     */
+    public void close() {
+
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    private static <V> CompletableFuture<V> submit(Executor executor, Task<V> task) {
+
+        Job<V> job = new Job<V>(task);
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            job.future.completeExceptionally(e);
+        }
+        return job.future;
+    }
+
+    /**
+     * A task which completes its future.
+     */
+    private static final class Job<V> implements Runnable {
+
+        final CompletableFuture<V> future = new CompletableFuture<V>();
+
+        private final Task<V> task;
+
+        Job(Task<V> task) {
+
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+
+            if (future.isCancelled()) return;
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+
+    /**
+     * Runs tasks one at a time in the order they are submitted, on the threads
+     * of another executor. A task which the executor rejects fails its future,
+     * and the next task is scheduled.
+     */
+    private static class SerialExecutor implements Executor {
+
+        private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+
+        private final Executor executor;
+
+        private Runnable active;
+
+        SerialExecutor(Executor executor) {
+
+            this.executor = executor;
+        }
+
+        @Override
+        public synchronized void execute(Runnable r) {
+
+            tasks.add(r);
+            if (active == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+
+            while ((active = tasks.poll()) != null) {
+                final Runnable r = active;
+                try {
+                    executor.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            try {
+                                r.run();
+                            } finally {
+                                scheduleNext();
+                            }
+                        }
+                    });
+                    return;
+                } catch (RejectedExecutionException e) {
+                    active = null;
+                    // every task of the serial executor is a job of submit()
+                    ((Job<?>)r).future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Streams of binary columns.
+ *
+ * <p>
+ * An entity field of byte[], ByteBuffer, InputStream or Path is stored in a
+ * BLOB column. An InputStream field of a read entity is a {@link Lazy} stream,
+ * which selects the column in chunks when it is read, so the heap holds one
+ * chunk however large the value is. A Path field of a read entity is a
+ * temporary file, which the column is copied to when the entity is read; the
+ * file belongs to the caller, who deletes it.
+ * </p>
+ *
+ * @author T. Takeuchi
+ */
+final class Blobs {
+
+    /** The size of a chunk of a lazy stream and a copy. */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private Blobs() {
+    }
+
+    /**
+     * Returns true if the type is stored in a binary column.
+     */
+    static boolean isBinary(Class<?> type) {
+
+        return type == byte[].class || type == ByteBuffer.class ||
+               type == InputStream.class || type == Path.class;
+    }
+
+    /**
+     * Opens a stream of a file, which is closed at the end of the file.
+     */
+    static InputStream open(Path path) throws IOException {
+
+        return new FilterInputStream(Files.newInputStream(path)) {
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b < 0) close();
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n < 0) close();
+                return n;
+            }
+        };
+    }
+
+    /**
+     * Returns a stream of the remaining bytes of a buffer, which does not
+     * change the position of the buffer.
+     */
+    static InputStream open(ByteBuffer buffer) {
+
+        final ByteBuffer b = buffer.duplicate();
+        return new InputStream() {
+
+            @Override
+            public int read() {
+                return b.hasRemaining() ? b.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] dst, int off, int len) {
+                if (!b.hasRemaining()) return -1;
+                len = Math.min(len, b.remaining());
+                b.get(dst, off, len);
+                return len;
+            }
+
+            @Override
+            public int available() {
+                return b.remaining();
+            }
+        };
+    }
+
+    /**
+     * Returns the remaining bytes of a buffer, without copying them if the
+     * buffer wraps a whole array.
+     */
+    static byte[] toBytes(ByteBuffer buffer) {
+
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 &&
+            buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads a stream to the end into an array, which is allocated once if the
+     * length is known, and closes the stream.
+     *
+     * @param length
+     *            the length of the stream, or -1 if unknown.
+     */
+    static byte[] read(InputStream in, long length) throws IOException {
+
+        try {
+            if (Integer.MAX_VALUE < length) {
+                throw new IOException("The stream is too large for a byte array.");
+            }
+            if (0 <= length) {
+                byte[] bytes = new byte[(int)length];
+                int n = 0;
+                while (n < bytes.length) {
+                    int r = in.read(bytes, n, bytes.length - n);
+                    if (r < 0) throw new IOException("The stream ends before its length.");
+                    n += r;
+                }
+                return bytes;
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(CHUNK_SIZE);
+            copy(in, out);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Copies a stream into a temporary file and closes the stream. The file is
+     * deleted if the copy fails.
+     */
+    static Path toTempFile(InputStream in) throws IOException {
+
+        Path path = Files.createTempFile("casmi-db", ".blob");
+        boolean copied = false;
+        try {
+            OutputStream out = Files.newOutputStream(path);
+            try {
+                copy(in, out);
+            } finally {
+                out.close();
+            }
+            copied = true;
+        } finally {
+            in.close();
+            if (!copied) Files.deleteIfExists(path);
+        }
+        return path;
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+
+        byte[] buf = new byte[CHUNK_SIZE];
+        int n;
+        while ((n = in.read(buf)) >= 0) {
+            out.write(buf, 0, n);
+        }
+    }
+
+    /**
+     * A stream of a binary column of a row, which selects the column in
+     * chunks as it is read. A NULL value reads as an empty stream.
+     */
+    static final class Lazy extends InputStream {
+
+        private final SQL sql;
+        private final String select;
+        private final Object key;
+
+        private Connection connection;
+        private PreparedStatement statement;
+        private byte[] chunk = new byte[0];
+        private int position;
+
+        /** The 1-based offset of the next chunk. */
+        private long offset = 1;
+        private boolean last;
+
+        Lazy(SQL sql, String select, Object key) {
+
+            this.sql    = sql;
+            this.select = select;
+            this.key    = key;
+        }
+
+        @Override
+        public int read() throws IOException {
+
+            if (position == chunk.length && !fill()) return -1;
+            return chunk[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+
+            if (len == 0) return 0;
+            if (position == chunk.length && !fill()) return -1;
+            len = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, len);
+            position += len;
+            return len;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+
+            if (n <= 0) return 0;
+            int buffered = chunk.length - position;
+            if (n <= buffered) {
+                position += (int)n;
+                return n;
+            }
+            // skips the rest without selecting it; a read past the end is empty.
+            position = chunk.length;
+            if (!last) offset += n - buffered;
+            return n;
+        }
+
+        @Override
+        public int available() {
+
+            return chunk.length - position;
+        }
+
+        private boolean fill() throws IOException {
+
+            if (last) {
+                close();
+                return false;
+            }
+
+            try {
+                if (statement == null) connection = sql.getConnection();
+                byte[] bytes = null;
+                boolean locked = sql.lock(connection);
+                try {
+                    if (statement == null) statement = sql.prepare(connection, select);
+                    statement.setLong(1, offset);
+                    statement.setInt(2, CHUNK_SIZE);
+                    sql.setParameter(statement, 3, key);
+
+                    ResultSet rs = statement.executeQuery();
+                    try {
+                        if (rs.next()) bytes = rs.getBytes(1);
+                    } finally {
+                        rs.close();
+                    }
+                } finally {
+                    if (locked) sql.statementLock.unlock();
+                }
+
+                if (bytes == null || bytes.length == 0) {
+                    last = true;
+                    close();
+                    return false;
+                }
+                chunk    = bytes;
+                position = 0;
+                offset  += bytes.length;
+                last     = bytes.length < CHUNK_SIZE;
+                return true;
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            last = true;
+            if (statement != null) {
+                boolean locked = sql.lock(connection);
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                } finally {
+                    statement = null;
+                    if (locked) sql.statementLock.unlock();
+                }
+            }
+        }
+    }
+}
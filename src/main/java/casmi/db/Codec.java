@@ -0,0 +1,592 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import casmi.db.annotation.Compressed.Algorithm;
+
+/**
+ * The codec of {@link casmi.db.annotation.Compressed} columns.
+ *
+ * <p>
+ * A compressed value is a frame; the magic "cz", the version and the id of
+ * the algorithm, followed by a zlib stream for DEFLATE, or by LZ4 blocks for
+ * LZ4. An LZ4 block is the length of its raw bytes, the length of its stored
+ * bytes, which equals the raw length if the block is not compressed, and the
+ * stored bytes; a raw length of 0 ends the blocks. A value without the header
+ * is read as it is.
+ * </p>
+ *
+ * <p>
+ * Arrays are compressed at once, and streams are compressed and decompressed
+ * block by block as they are read.
+ * </p>
+ *
+ * @author T. Takeuchi
+ */
+final class Codec {
+
+    private static final byte MAGIC_1 = 'c', MAGIC_2 = 'z', VERSION = 1;
+
+    private static final int HEADER_SIZE = 4;
+
+    private static final byte DEFLATE = 1, LZ4 = 2;
+
+    /** The raw size of a block. */
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater();
+        }
+    };
+
+    private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private Codec() {
+    }
+
+    /**
+     * Returns true if a field of the type can be compressed.
+     */
+    static boolean isSupported(Class<?> type) {
+
+        return type == String.class || type == byte[].class || type == ByteBuffer.class ||
+               type == InputStream.class || type == Path.class;
+    }
+
+    private static byte id(Algorithm algorithm) {
+
+        switch (algorithm) {
+        case LZ4: return LZ4;
+        default:  return DEFLATE;
+        }
+    }
+
+    private static Algorithm algorithm(byte id) throws IOException {
+
+        switch (id) {
+        case DEFLATE: return Algorithm.DEFLATE;
+        case LZ4:     return Algorithm.LZ4;
+        default:      throw new IOException("Unknown compression algorithm: " + id);
+        }
+    }
+
+    private static boolean isHeader(byte[] b, int len) {
+
+        return HEADER_SIZE <= len && b[0] == MAGIC_1 && b[1] == MAGIC_2 && b[2] == VERSION;
+    }
+
+    /**
+     * Returns the value to be bound; an array or a stream of the frame.
+     */
+    static Object encode(Object value, Algorithm algorithm) throws SQLException {
+
+        if (value == null) {
+            return null;
+        } else if (value instanceof String) {
+            return encode(((String)value).getBytes(StandardCharsets.UTF_8), algorithm);
+        } else if (value instanceof byte[]) {
+            return encode((byte[])value, algorithm);
+        } else if (value instanceof ByteBuffer) {
+            return encode(Blobs.toBytes((ByteBuffer)value), algorithm);
+        } else if (value instanceof InputStream) {
+            return new Encoder((InputStream)value, algorithm);
+        } else if (value instanceof Path) {
+            try {
+                return new Encoder(Blobs.open((Path)value), algorithm);
+            } catch (IOException e) {
+                throw new SQLException(e);
+            }
+        }
+
+        throw new SQLException(value.getClass() + ": The object type cannot be compressed.");
+    }
+
+    /**
+     * Compresses an array into a frame.
+     */
+    static byte[] encode(byte[] raw, Algorithm algorithm) {
+
+        long start = System.nanoTime();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+        out.write(MAGIC_1);
+        out.write(MAGIC_2);
+        out.write(VERSION);
+        out.write(id(algorithm));
+
+        byte[] buf;
+        if (algorithm == Algorithm.LZ4) {
+            Lz4 lz4 = new Lz4();
+            buf = new byte[8 + Lz4.maxCompressedLength(Math.min(raw.length, BLOCK_SIZE))];
+            for (int off = 0; off < raw.length; off += BLOCK_SIZE) {
+                int n = writeBlock(lz4, raw, off, Math.min(BLOCK_SIZE, raw.length - off), buf);
+                out.write(buf, 0, n);
+            }
+            writeInt(buf, 0, 0);
+            out.write(buf, 0, 4);
+        } else {
+            Deflater deflater = DEFLATER.get();
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            buf = new byte[BLOCK_SIZE];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+            }
+        }
+
+        byte[] stored = out.toByteArray();
+        CompressionMetrics metrics = CompressionMetrics.of(algorithm);
+        metrics.compressed(raw.length, stored.length, System.nanoTime() - start);
+        metrics.compressedValue();
+        return stored;
+    }
+
+    /**
+     * Writes an LZ4 block with its lengths into a buffer.
+     *
+     * @return the length of the written bytes.
+     */
+    private static int writeBlock(Lz4 lz4, byte[] raw, int off, int len, byte[] buf) {
+
+        int n = lz4.compress(raw, off, len, buf, 8);
+        if (len <= n) {
+            // stored as it is
+            System.arraycopy(raw, off, buf, 8, len);
+            n = len;
+        }
+        writeInt(buf, 0, len);
+        writeInt(buf, 4, n);
+        return 8 + n;
+    }
+
+    /**
+     * Returns the field value of a stored array.
+     */
+    static Object decode(byte[] stored, Class<?> type) throws SQLException {
+
+        if (stored == null) return null;
+
+        byte[] raw;
+        try {
+            raw = decode(stored);
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+
+        if (type == String.class) {
+            return new String(raw, StandardCharsets.UTF_8);
+        } else if (type == ByteBuffer.class) {
+            return ByteBuffer.wrap(raw);
+        }
+        return raw;
+    }
+
+    /**
+     * Decompresses a frame, or returns an array without the header as it is.
+     */
+    static byte[] decode(byte[] stored) throws IOException {
+
+        if (!isHeader(stored, stored.length)) return stored;
+
+        long start = System.nanoTime();
+        Algorithm algorithm = algorithm(stored[3]);
+
+        byte[] raw;
+        if (algorithm == Algorithm.LZ4) {
+            // the raw length is the sum of the blocks
+            int size = 0;
+            for (int p = HEADER_SIZE; ; ) {
+                int len = readInt(stored, p);
+                if (len == 0) break;
+                size += len;
+                p += 8 + readInt(stored, p + 4);
+            }
+
+            raw = new byte[size];
+            int op = 0;
+            for (int p = HEADER_SIZE; ; ) {
+                int len = readInt(stored, p);
+                if (len == 0) break;
+                int n = readInt(stored, p + 4);
+                if (n == len) {
+                    System.arraycopy(stored, p + 8, raw, op, len);
+                } else if (Lz4.decompress(stored, p + 8, n, raw, op, len) != len) {
+                    throw new IOException("The LZ4 block is corrupted.");
+                }
+                op += len;
+                p  += 8 + n;
+            }
+        } else {
+            Inflater inflater = INFLATER.get();
+            inflater.reset();
+            inflater.setInput(stored, HEADER_SIZE, stored.length - HEADER_SIZE);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(stored.length * 3);
+            byte[] buf = new byte[BLOCK_SIZE];
+            try {
+                while (!inflater.finished()) {
+                    int n = inflater.inflate(buf);
+                    if (n == 0 && !inflater.finished() &&
+                        (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("The deflate stream is truncated.");
+                    }
+                    out.write(buf, 0, n);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+            raw = out.toByteArray();
+        }
+
+        CompressionMetrics metrics = CompressionMetrics.of(algorithm);
+        metrics.decompressed(System.nanoTime() - start);
+        metrics.decompressedValue();
+        return raw;
+    }
+
+    /**
+     * Returns a stream decompressing a stored stream as it is read. The header
+     * is read at the first read.
+     */
+    static InputStream decode(InputStream stored) {
+
+        return new Decoder(stored);
+    }
+
+    private static void writeInt(byte[] b, int i, int v) {
+
+        b[i]     = (byte)(v >>> 24);
+        b[i + 1] = (byte)(v >>> 16);
+        b[i + 2] = (byte)(v >>> 8);
+        b[i + 3] = (byte)v;
+    }
+
+    private static int readInt(byte[] b, int i) throws IOException {
+
+        if (b.length < i + 4) throw new IOException("The frame is truncated.");
+        return (b[i] & 0xff) << 24 | (b[i + 1] & 0xff) << 16 | (b[i + 2] & 0xff) << 8 | (b[i + 3] & 0xff);
+    }
+
+    /**
+     * Reads bytes until the buffer is full or the stream ends.
+     *
+     * @return the number of the read bytes.
+     */
+    private static int readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+
+        int n = 0;
+        while (n < len) {
+            int r = in.read(b, off + n, len - n);
+            if (r < 0) break;
+            n += r;
+        }
+        return n;
+    }
+
+    /**
+     * A stream of bytes produced block by block.
+     */
+    private abstract static class BlockInputStream extends InputStream {
+
+        protected byte[] out = new byte[0];
+        protected int position;
+        protected int limit;
+        private boolean finished;
+
+        /**
+         * Fills the output buffer.
+         *
+         * @return false if the stream ends.
+         */
+        protected abstract boolean fill() throws IOException;
+
+        private boolean ready() throws IOException {
+
+            while (position == limit) {
+                if (finished) return false;
+                if (!fill()) {
+                    finished = true;
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+
+            if (!ready()) return -1;
+            return out[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+
+            if (len == 0) return 0;
+            if (!ready()) return -1;
+            len = Math.min(len, limit - position);
+            System.arraycopy(out, position, b, off, len);
+            position += len;
+            return len;
+        }
+
+        @Override
+        public int available() {
+
+            return limit - position;
+        }
+    }
+
+    /**
+     * A stream compressing a raw stream into a frame.
+     */
+    private static final class Encoder extends BlockInputStream {
+
+        private final InputStream in;
+        private final Algorithm algorithm;
+        private final CompressionMetrics metrics;
+        private final byte[] raw = new byte[BLOCK_SIZE];
+
+        private Lz4 lz4;
+        private Deflater deflater;
+        private boolean header, eof, end;
+
+        Encoder(InputStream in, Algorithm algorithm) {
+
+            this.in        = in;
+            this.algorithm = algorithm;
+            this.metrics   = CompressionMetrics.of(algorithm);
+        }
+
+        @Override
+        protected boolean fill() throws IOException {
+
+            position = 0;
+            limit    = 0;
+
+            if (!header) {
+                header = true;
+                if (algorithm == Algorithm.LZ4) {
+                    lz4 = new Lz4();
+                    out = new byte[8 + Lz4.maxCompressedLength(BLOCK_SIZE)];
+                } else {
+                    deflater = new Deflater();
+                    out = new byte[BLOCK_SIZE];
+                }
+                out[0] = MAGIC_1;
+                out[1] = MAGIC_2;
+                out[2] = VERSION;
+                out[3] = id(algorithm);
+                limit  = HEADER_SIZE;
+                metrics.compressed(0, HEADER_SIZE, 0);
+                return true;
+            }
+            if (end) return false;
+
+            long nanos = 0;
+            int n = 0;
+            if (algorithm == Algorithm.LZ4) {
+                n = readFully(in, raw, 0, BLOCK_SIZE);
+                if (0 < n) {
+                    long start = System.nanoTime();
+                    limit = writeBlock(lz4, raw, 0, n, out);
+                    nanos = System.nanoTime() - start;
+                } else {
+                    writeInt(out, 0, 0);
+                    limit = 4;
+                    finish();
+                }
+            } else {
+                while (limit == 0) {
+                    if (!eof && deflater.needsInput()) {
+                        int r = readFully(in, raw, 0, BLOCK_SIZE);
+                        n += r;
+                        if (0 < r) {
+                            deflater.setInput(raw, 0, r);
+                        } else {
+                            eof = true;
+                            deflater.finish();
+                        }
+                    }
+                    if (deflater.finished()) {
+                        finish();
+                        if (limit == 0) return false;
+                        break;
+                    }
+                    long start = System.nanoTime();
+                    limit = deflater.deflate(out);
+                    nanos += System.nanoTime() - start;
+                }
+            }
+            metrics.compressed(n, limit, nanos);
+            return true;
+        }
+
+        private void finish() throws IOException {
+
+            end = true;
+            if (deflater != null) deflater.end();
+            in.close();
+            metrics.compressedValue();
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            if (deflater != null) deflater.end();
+            in.close();
+        }
+    }
+
+    /**
+     * A stream decompressing a stored stream.
+     */
+    static final class Decoder extends BlockInputStream {
+
+        /** The stored stream. */
+        final InputStream in;
+
+        private Algorithm algorithm;
+        private CompressionMetrics metrics;
+        private Inflater inflater;
+        private byte[] stored;
+        private boolean header, raw;
+
+        Decoder(InputStream in) {
+
+            this.in = in;
+        }
+
+        @Override
+        protected boolean fill() throws IOException {
+
+            position = 0;
+            limit    = 0;
+
+            if (!header) {
+                header = true;
+                out = new byte[BLOCK_SIZE];
+                limit = readFully(in, out, 0, HEADER_SIZE);
+                if (!isHeader(out, limit)) {
+                    // stored without compression
+                    raw = true;
+                    return 0 < limit;
+                }
+                limit = 0;
+                algorithm = algorithm(out[3]);
+                metrics = CompressionMetrics.of(algorithm);
+                if (algorithm == Algorithm.DEFLATE) {
+                    inflater = new Inflater();
+                    stored = new byte[BLOCK_SIZE];
+                }
+            }
+
+            if (raw) {
+                limit = in.read(out, 0, out.length);
+                if (limit < 0) {
+                    limit = 0;
+                    return false;
+                }
+                return true;
+            }
+
+            boolean more = algorithm == Algorithm.LZ4 ? fillLz4() : fillDeflate();
+            if (!more) metrics.decompressedValue();
+            return more;
+        }
+
+        private boolean fillLz4() throws IOException {
+
+            byte[] lengths = new byte[8];
+            if (readFully(in, lengths, 0, 4) != 4) throw new IOException("The frame is truncated.");
+            int len = readInt(lengths, 0);
+            if (len == 0) return false;
+            if (readFully(in, lengths, 4, 4) != 4) throw new IOException("The frame is truncated.");
+            int n = readInt(lengths, 4);
+            if (len < 0 || BLOCK_SIZE < len || n < 0 || len < n) {
+                throw new IOException("The LZ4 block is corrupted.");
+            }
+
+            if (out.length < len) out = new byte[len];
+            if (n == len) {
+                if (readFully(in, out, 0, len) != len) throw new IOException("The frame is truncated.");
+            } else {
+                if (stored == null || stored.length < n) stored = new byte[Lz4.maxCompressedLength(BLOCK_SIZE)];
+                if (readFully(in, stored, 0, n) != n) throw new IOException("The frame is truncated.");
+                long start = System.nanoTime();
+                if (Lz4.decompress(stored, 0, n, out, 0, len) != len) {
+                    throw new IOException("The LZ4 block is corrupted.");
+                }
+                metrics.decompressed(System.nanoTime() - start);
+            }
+            limit = len;
+            return true;
+        }
+
+        private boolean fillDeflate() throws IOException {
+
+            try {
+                while (limit == 0) {
+                    if (inflater.finished()) return false;
+                    if (inflater.needsDictionary()) throw new IOException("A dictionary is needed.");
+                    if (inflater.needsInput()) {
+                        int r = in.read(stored, 0, stored.length);
+                        if (r < 0) throw new IOException("The deflate stream is truncated.");
+                        inflater.setInput(stored, 0, r);
+                    }
+                    long start = System.nanoTime();
+                    limit = inflater.inflate(out);
+                    metrics.decompressed(System.nanoTime() - start);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            if (inflater != null) inflater.end();
+            in.close();
+        }
+    }
+}
@@ -19,6 +19,8 @@
 
 package casmi.db;
 
+import casmi.db.annotation.Compressed;
+
 class Column {
 
     private final String name;
@@ -26,6 +28,15 @@ class Column {
     private final Class<?> type;
     private Object value;
 
+    /** The definition of the column, or null for the default. */
+    private casmi.db.annotation.Column definition;
+
+    /** True if the column is not read by default. */
+    private boolean lazy;
+
+    /** The compression of the column, or null if not compressed. */
+    private Compressed compressed;
+
     Column(String name, String field, Object value, Class<?> type) {
 
         this.name  = name;
@@ -49,6 +60,36 @@ class Column {
         return type;
     }
 
+    casmi.db.annotation.Column getDefinition() {
+
+        return definition;
+    }
+
+    void setDefinition(casmi.db.annotation.Column definition) {
+
+        this.definition = definition;
+    }
+
+    boolean isLazy() {
+
+        return lazy;
+    }
+
+    void setLazy(boolean lazy) {
+
+        this.lazy = lazy;
+    }
+
+    Compressed getCompressed() {
+
+        return compressed;
+    }
+
+    void setCompressed(Compressed compressed) {
+
+        this.compressed = compressed;
+    }
+
     Object getValue() {
 
         return value;
@@ -0,0 +1,551 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * Numeric columns of a query read into primitive arrays, or into direct
+ * buffers, without creating an object for each row.
+ *
+ * <pre><code>
+ *     ColumnBatch batch = sqlite.columns(Point.class, new Query().where("z=0"), "x", "y");
+ *     double[] x = batch.getDoubles("x");
+ *     double[] y = batch.getDoubles("y");
+ *     for (int i = 0; i &lt; batch.size(); i++) {
+ *         ...
+ *     }
+ * </code></pre>
+ *
+ * <p>
+ * The arrays grow twice as large when they are full, and are trimmed to the
+ * number of rows at the end. If {@link Options#precount(boolean)} is set,
+ * the rows are counted before they are read, and the arrays are allocated in
+ * the exact size. NULL is read as 0 into int and long columns, and as NaN
+ * into double columns.
+ * </p>
+ *
+ * @see casmi.db.SQL#columns(Class, Query, String...)
+ * @see casmi.db.SQL#columns(String, Object[], String...)
+ *
+ * @author T. Takeuchi
+ */
+public final class ColumnBatch {
+
+    /**
+     * The type of a column.
+     */
+    public enum Type {
+
+        INT, LONG, DOUBLE;
+
+        /**
+         * Returns the type of a field of an entity, or null if the field is
+         * not numeric.
+         */
+        static Type of(Class<?> type) {
+
+            if (type == int.class   || type == Integer.class ||
+                type == short.class || type == Short.class   ||
+                type == byte.class  || type == Byte.class) {
+                return INT;
+            } else if (type == long.class || type == Long.class) {
+                return LONG;
+            } else if (type == double.class || type == Double.class ||
+                       type == float.class  || type == Float.class) {
+                return DOUBLE;
+            }
+            return null;
+        }
+
+        /**
+         * Returns the type of a JDBC type of a column. Other than integers are
+         * read as double.
+         */
+        static Type ofSQLType(int sqlType) {
+
+            switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return INT;
+            case Types.BIGINT:
+                return LONG;
+            default:
+                return DOUBLE;
+            }
+        }
+    }
+
+    /**
+     * Options of reading columns.
+     */
+    public static final class Options {
+
+        private boolean precount;
+        private boolean direct;
+        private int     capacity = DEFAULT_CAPACITY;
+
+        /**
+         * Counts the rows before reading them to allocate the arrays in the
+         * exact size. This executes the query twice.
+         */
+        public Options precount(boolean precount) {
+
+            this.precount = precount;
+            return this;
+        }
+
+        /**
+         * Reads the columns into direct buffers outside of the Java heap
+         * instead of arrays.
+         */
+        public Options direct(boolean direct) {
+
+            this.direct = direct;
+            return this;
+        }
+
+        /**
+         * Sets the initial capacity of the arrays.
+         */
+        public Options capacity(int capacity) {
+
+            if (capacity < 1) {
+                throw new IllegalArgumentException("The capacity must be positive.");
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        boolean isPrecount() {
+
+            return precount;
+        }
+    }
+
+    static final int DEFAULT_CAPACITY = 1024;
+
+    static final Options DEFAULT_OPTIONS = new Options();
+
+    private final String[] names;
+    private final String[] fields;
+    private final Type[]   types;
+    private final Vector[] vectors;
+    private final boolean  direct;
+    private final int      capacity;
+    private int size;
+
+    /**
+     * Creates a batch of the columns.
+     *
+     * @param names
+     *            the names of the columns.
+     * @param fields
+     *            the labels of the columns in the result set.
+     * @param types
+     *            the types of the columns, or null to read the types of the
+     *            result set.
+     * @param capacity
+     *            the initial capacity, or -1 to use the capacity of the
+     *            options.
+     */
+    ColumnBatch(String[] names, String[] fields, Type[] types, Options options, int capacity) {
+
+        this.names    = names.clone();
+        this.fields   = fields;
+        this.types    = types == null ? new Type[names.length] : types.clone();
+        this.vectors  = new Vector[names.length];
+        this.direct   = options.direct;
+        this.capacity = Math.max(1, capacity < 0 ? options.capacity : capacity);
+    }
+
+    /**
+     * Allocates the vectors of the columns, reading the columns of the
+     * current row. Some drivers cannot read the columns of an empty result.
+     */
+    private int[] allocate(ResultSet rs) throws SQLException {
+
+        int[] indexes = new int[vectors.length];
+        ResultSetMetaData meta = null;
+        for (int i = 0; i < vectors.length; i++) {
+            if (rs != null) indexes[i] = rs.findColumn(fields[i]);
+            if (types[i] == null) {
+                if (rs != null && meta == null) meta = rs.getMetaData();
+                types[i] = rs == null ? Type.DOUBLE : Type.ofSQLType(meta.getColumnType(indexes[i]));
+            }
+            int n = rs == null ? 0 : capacity;
+            switch (types[i]) {
+            case INT:
+                vectors[i] = new IntVector(n, direct);
+                break;
+            case LONG:
+                vectors[i] = new LongVector(n, direct);
+                break;
+            default:
+                vectors[i] = new DoubleVector(n, direct);
+                break;
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Reads all rows of the result set.
+     */
+    void read(ResultSet rs) throws SQLException {
+
+        int[] indexes = null;
+        int capacity = this.capacity;
+        while (rs.next()) {
+            if (indexes == null) indexes = allocate(rs);
+            if (size == capacity) {
+                capacity = grow(capacity);
+                for (Vector v : vectors) {
+                    v.grow(capacity, size);
+                }
+            }
+            for (int i = 0; i < vectors.length; i++) {
+                vectors[i].read(rs, indexes[i], size);
+            }
+            size++;
+        }
+
+        if (indexes == null) allocate(null);
+        for (Vector v : vectors) {
+            v.trim(size);
+        }
+    }
+
+    private static int grow(int capacity) {
+
+        if (capacity == Integer.MAX_VALUE - 8) {
+            throw new OutOfMemoryError("Too many rows.");
+        }
+        return (int)Math.min((long)capacity * 2, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * Returns the number of rows.
+     */
+    public int size() {
+
+        return size;
+    }
+
+    /**
+     * Returns the names of the columns.
+     */
+    public String[] getNames() {
+
+        return names.clone();
+    }
+
+    /**
+     * Returns the type of the column.
+     */
+    public Type getType(String name) {
+
+        return types[index(name)];
+    }
+
+    /**
+     * Returns true if the columns are read into direct buffers.
+     */
+    public boolean isDirect() {
+
+        return direct;
+    }
+
+    /**
+     * Returns the values of an int column. The length of the array is the
+     * number of rows.
+     *
+     * @throws IllegalStateException
+     *             if the columns are read into direct buffers.
+     */
+    public int[] getInts(String name) {
+
+        return ((IntVector)vector(name, Type.INT, true)).array;
+    }
+
+    /**
+     * Returns the values of a long column.
+     *
+     * @see #getInts(String)
+     */
+    public long[] getLongs(String name) {
+
+        return ((LongVector)vector(name, Type.LONG, true)).array;
+    }
+
+    /**
+     * Returns the values of a double column.
+     *
+     * @see #getInts(String)
+     */
+    public double[] getDoubles(String name) {
+
+        return ((DoubleVector)vector(name, Type.DOUBLE, true)).array;
+    }
+
+    /**
+     * Returns the values of an int column as a buffer, which is direct if the
+     * columns are read into direct buffers or wraps the array otherwise. The
+     * limit of the buffer is the number of rows.
+     */
+    public IntBuffer getIntBuffer(String name) {
+
+        IntVector v = (IntVector)vector(name, Type.INT, false);
+        return direct ? v.buffer.duplicate() : IntBuffer.wrap(v.array);
+    }
+
+    /**
+     * Returns the values of a long column as a buffer.
+     *
+     * @see #getIntBuffer(String)
+     */
+    public LongBuffer getLongBuffer(String name) {
+
+        LongVector v = (LongVector)vector(name, Type.LONG, false);
+        return direct ? v.buffer.duplicate() : LongBuffer.wrap(v.array);
+    }
+
+    /**
+     * Returns the values of a double column as a buffer.
+     *
+     * @see #getIntBuffer(String)
+     */
+    public DoubleBuffer getDoubleBuffer(String name) {
+
+        DoubleVector v = (DoubleVector)vector(name, Type.DOUBLE, false);
+        return direct ? v.buffer.duplicate() : DoubleBuffer.wrap(v.array);
+    }
+
+    private int index(String name) {
+
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        throw new IllegalArgumentException(name + " is not a column of the batch.");
+    }
+
+    private Vector vector(String name, Type type, boolean array) {
+
+        Vector v = vectors[index(name)];
+        if (v.type != type) {
+            throw new IllegalArgumentException(name + " is not " + type + " but " + v.type + ".");
+        }
+        if (array && direct) {
+            throw new IllegalStateException("The columns are read into direct buffers.");
+        }
+        return v;
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder("ColumnBatch[");
+        for (int i = 0; i < names.length; i++) {
+            if (i != 0) sb.append(", ");
+            sb.append(names[i]).append(' ').append(types[i]);
+        }
+        return sb.append("; ").append(size).append(" rows]").toString();
+    }
+
+    private static ByteBuffer allocateDirect(int capacity, int bytes) {
+
+        if (Integer.MAX_VALUE / bytes < capacity) {
+            throw new OutOfMemoryError("Too many rows for a direct buffer.");
+        }
+        return ByteBuffer.allocateDirect(capacity * bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * The values of a column.
+     */
+    private abstract static class Vector {
+
+        final Type type;
+
+        Vector(Type type) {
+
+            this.type = type;
+        }
+
+        /**
+         * Reads the value of the current row.
+         */
+        abstract void read(ResultSet rs, int column, int row) throws SQLException;
+
+        /**
+         * Grows the capacity, keeping the values of the rows.
+         */
+        abstract void grow(int capacity, int rows);
+
+        /**
+         * Trims the values to the rows.
+         */
+        abstract void trim(int rows);
+    }
+
+    private static final class IntVector extends Vector {
+
+        int[]     array;
+        IntBuffer buffer;
+
+        IntVector(int capacity, boolean direct) {
+
+            super(Type.INT);
+            if (direct) buffer = allocateDirect(capacity, 4).asIntBuffer();
+            else        array  = new int[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int column, int row) throws SQLException {
+
+            if (array != null) array[row] = rs.getInt(column);
+            else               buffer.put(row, rs.getInt(column));
+        }
+
+        @Override
+        void grow(int capacity, int rows) {
+
+            if (array != null) {
+                array = Arrays.copyOf(array, capacity);
+            } else {
+                IntBuffer grown = allocateDirect(capacity, 4).asIntBuffer();
+                buffer.limit(rows);
+                grown.put(buffer);
+                grown.clear();
+                buffer = grown;
+            }
+        }
+
+        @Override
+        void trim(int rows) {
+
+            if (array != null) {
+                if (array.length != rows) array = Arrays.copyOf(array, rows);
+            } else {
+                buffer.limit(rows);
+            }
+        }
+    }
+
+    private static final class LongVector extends Vector {
+
+        long[]     array;
+        LongBuffer buffer;
+
+        LongVector(int capacity, boolean direct) {
+
+            super(Type.LONG);
+            if (direct) buffer = allocateDirect(capacity, 8).asLongBuffer();
+            else        array  = new long[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int column, int row) throws SQLException {
+
+            if (array != null) array[row] = rs.getLong(column);
+            else               buffer.put(row, rs.getLong(column));
+        }
+
+        @Override
+        void grow(int capacity, int rows) {
+
+            if (array != null) {
+                array = Arrays.copyOf(array, capacity);
+            } else {
+                LongBuffer grown = allocateDirect(capacity, 8).asLongBuffer();
+                buffer.limit(rows);
+                grown.put(buffer);
+                grown.clear();
+                buffer = grown;
+            }
+        }
+
+        @Override
+        void trim(int rows) {
+
+            if (array != null) {
+                if (array.length != rows) array = Arrays.copyOf(array, rows);
+            } else {
+                buffer.limit(rows);
+            }
+        }
+    }
+
+    private static final class DoubleVector extends Vector {
+
+        double[]     array;
+        DoubleBuffer buffer;
+
+        DoubleVector(int capacity, boolean direct) {
+
+            super(Type.DOUBLE);
+            if (direct) buffer = allocateDirect(capacity, 8).asDoubleBuffer();
+            else        array  = new double[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int column, int row) throws SQLException {
+
+            double value = rs.getDouble(column);
+            if (value == 0 && rs.wasNull()) value = Double.NaN;
+            if (array != null) array[row] = value;
+            else               buffer.put(row, value);
+        }
+
+        @Override
+        void grow(int capacity, int rows) {
+
+            if (array != null) {
+                array = Arrays.copyOf(array, capacity);
+            } else {
+                DoubleBuffer grown = allocateDirect(capacity, 8).asDoubleBuffer();
+                buffer.limit(rows);
+                grown.put(buffer);
+                grown.clear();
+                buffer = grown;
+            }
+        }
+
+        @Override
+        void trim(int rows) {
+
+            if (array != null) {
+                if (array.length != rows) array = Arrays.copyOf(array, rows);
+            } else {
+                buffer.limit(rows);
+            }
+        }
+    }
+}
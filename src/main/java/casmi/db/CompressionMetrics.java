@@ -0,0 +1,182 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import casmi.db.annotation.Compressed.Algorithm;
+
+/**
+ * Metrics of a compression algorithm of {@link casmi.db.annotation.Compressed}
+ * columns; the bytes before and after compression and the time spent by the
+ * codec.
+ *
+ * <p>
+ * The metrics are shared by all databases in a VM. A stream is counted as it
+ * is read.
+ * </p>
+ *
+ * @author T. Takeuchi
+ */
+public final class CompressionMetrics {
+
+    private static final Map<Algorithm, CompressionMetrics> METRICS =
+        new EnumMap<Algorithm, CompressionMetrics>(Algorithm.class);
+
+    static {
+        for (Algorithm algorithm : Algorithm.values()) {
+            METRICS.put(algorithm, new CompressionMetrics(algorithm));
+        }
+    }
+
+    private final Algorithm algorithm;
+
+    private final LongAdder rawBytes        = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder compressions    = new LongAdder();
+    private final LongAdder decompressions  = new LongAdder();
+    private final LongAdder compressNanos   = new LongAdder();
+    private final LongAdder decompressNanos = new LongAdder();
+
+    private CompressionMetrics(Algorithm algorithm) {
+
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Returns the metrics of an algorithm.
+     *
+     * @param algorithm
+     *            the algorithm.
+     * @return the metrics.
+     */
+    public static CompressionMetrics of(Algorithm algorithm) {
+
+        return METRICS.get(algorithm);
+    }
+
+    void compressed(long raw, long compressed, long nanos) {
+
+        rawBytes.add(raw);
+        compressedBytes.add(compressed);
+        compressNanos.add(nanos);
+    }
+
+    void compressedValue() {
+
+        compressions.increment();
+    }
+
+    void decompressed(long nanos) {
+
+        decompressNanos.add(nanos);
+    }
+
+    void decompressedValue() {
+
+        decompressions.increment();
+    }
+
+    public Algorithm getAlgorithm() {
+
+        return algorithm;
+    }
+
+    /**
+     * Returns the bytes of the values before compression.
+     */
+    public long getRawBytes() {
+
+        return rawBytes.sum();
+    }
+
+    /**
+     * Returns the bytes of the compressed values including their headers.
+     */
+    public long getCompressedBytes() {
+
+        return compressedBytes.sum();
+    }
+
+    /**
+     * Returns the compressed bytes divided by the raw bytes, or 1 if no value
+     * has been compressed.
+     */
+    public double getRatio() {
+
+        long raw = getRawBytes();
+        return raw == 0 ? 1.0 : (double)getCompressedBytes() / raw;
+    }
+
+    /**
+     * Returns the number of the compressed values.
+     */
+    public long getCompressions() {
+
+        return compressions.sum();
+    }
+
+    /**
+     * Returns the number of the decompressed values.
+     */
+    public long getDecompressions() {
+
+        return decompressions.sum();
+    }
+
+    /**
+     * Returns the time spent by compression in nanoseconds.
+     */
+    public long getCompressNanos() {
+
+        return compressNanos.sum();
+    }
+
+    /**
+     * Returns the time spent by decompression in nanoseconds.
+     */
+    public long getDecompressNanos() {
+
+        return decompressNanos.sum();
+    }
+
+    /**
+     * Resets the metrics to zero.
+     */
+    public void reset() {
+
+        rawBytes.reset();
+        compressedBytes.reset();
+        compressions.reset();
+        decompressions.reset();
+        compressNanos.reset();
+        decompressNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+
+        return String.format("%s {values: %d/%d, ratio: %.3f, compress: %.3f ms, decompress: %.3f ms}",
+                             algorithm, getCompressions(), getDecompressions(), getRatio(),
+                             getCompressNanos() / 1e6, getDecompressNanos() / 1e6);
+    }
+}
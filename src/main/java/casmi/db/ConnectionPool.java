@@ -0,0 +1,155 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A bounded pool of extra connections to the database of a SQL object.
+ *
+ * <p>
+ * The main connection of a SQL object is shared by its stateful methods
+ * ({@code execute()}, {@code next()}, ...), so work running on other threads
+ * borrows connections from this pool instead.
+ * </p>
+ *
+ * @author T. Takeuchi
+ */
+class ConnectionPool {
+
+    private final SQL sql;
+
+    private final int size;
+
+    private final Semaphore permits;
+
+    /** Idle connections. */
+    private final Queue<Connection> idle = new ConcurrentLinkedQueue<Connection>();
+
+    private volatile boolean closed = false;
+
+    ConnectionPool(SQL sql, int size) {
+
+        if (size < 1) {
+            throw new IllegalArgumentException("The pool size must be positive.");
+        }
+
+        this.sql     = sql;
+        this.size    = size;
+        this.permits = new Semaphore(size, true);
+    }
+
+    int getSize() {
+
+        return size;
+    }
+
+    /**
+     * Borrows a connection, waiting if all connections are in use.
+     *
+     * @return a connection.
+     * @throws SQLException
+     */
+    Connection acquire() throws SQLException {
+
+        if (closed)
+            throw new SQLException("Connection pool is closed.");
+
+        JfrEvents.ConnectionAcquired acquired = new JfrEvents.ConnectionAcquired();
+        acquired.begin();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection.");
+        }
+
+        Connection connection = idle.poll();
+        boolean created = false;
+        try {
+            if (connection == null || connection.isClosed()) {
+                connection = sql.createConnection();
+                created = true;
+            }
+        } catch (SQLException e) {
+            permits.release();
+            throw e;
+        }
+
+        acquired.record(created, permits.availablePermits());
+        return connection;
+    }
+
+    /**
+     * Returns a borrowed connection to this pool.
+     *
+     * @param connection
+     *            the connection.
+     */
+    void release(Connection connection) {
+
+        if (connection == null) return;
+
+        try {
+            // do not hand an open transaction to the next borrower.
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+
+            if (closed) {
+                close(connection);
+            } else {
+                idle.offer(connection);
+            }
+        } catch (SQLException e) {
+            close(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes all idle connections. Connections in use are closed when they are
+     * released.
+     */
+    void close() {
+
+        closed = true;
+
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            close(connection);
+        }
+    }
+
+    private static void close(Connection connection) {
+
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // Ignore.
+        }
+    }
+}
@@ -0,0 +1,568 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of the statements of a database.
+ *
+ * <p>
+ * The metrics count the statements and their errors, and record the
+ * latencies of the statements in histograms for each kind of statement and
+ * each entity table, the rows read and written, the time spent by JDBC and by
+ * mapping rows to entities, and the hits of the cache of the prepared
+ * statements of {@link SQL#execute(String, Object...)}.
+ * </p>
+ *
+ * <p>
+ * The metrics are disabled by default; a disabled metrics costs a volatile
+ * read for a statement. They can be read by {@link #snapshot()} or over JMX
+ * after {@link #register(String)}.
+ * </p>
+ *
+ * <pre><code>
+ *     sqlite.getMetrics().setEnabled(true);
+ *     sqlite.getMetrics().register("main");
+ *     ...
+ *     DbMetrics.Snapshot s = sqlite.getMetrics().snapshot();
+ *     System.out.println(s.getKind(DbMetrics.Kind.SELECT).getPercentile(0.99));
+ * </code></pre>
+ *
+ * @author T. Takeuchi
+ */
+public final class DbMetrics {
+
+    /**
+     * Kinds of statements.
+     */
+    public enum Kind {
+
+        SELECT, INSERT, UPDATE, DELETE, DDL, OTHER;
+
+        /**
+         * Returns the kind of a statement by its leading keyword, or the
+         * keyword following the common table expressions of WITH.
+         *
+         * @param sql
+         *            a statement.
+         * @return the kind.
+         */
+        public static Kind of(String sql) {
+
+            return SQLLexer.classify(sql).kind;
+        }
+    }
+
+    /** Buckets of the latencies; a bucket i counts latencies below 2^i ns. */
+    private static final int BUCKETS = 40;
+
+    private volatile boolean enabled = false;
+
+    private final Map<Kind, Recorder> kinds = new EnumMap<Kind, Recorder>(Kind.class);
+
+    private final ConcurrentMap<String, Recorder> tables = new ConcurrentHashMap<String, Recorder>();
+
+    private final LongAdder rowsRead        = new LongAdder();
+    private final LongAdder rowsWritten     = new LongAdder();
+    private final LongAdder jdbcNanos       = new LongAdder();
+    private final LongAdder mappingNanos    = new LongAdder();
+    private final LongAdder cacheHits       = new LongAdder();
+    private final LongAdder cacheMisses     = new LongAdder();
+
+    private ObjectName objectName;
+
+    DbMetrics() {
+
+        for (Kind kind : Kind.values()) {
+            kinds.put(kind, new Recorder());
+        }
+    }
+
+    public boolean isEnabled() {
+
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the start time of a statement, or 0 if the metrics are
+     * disabled.
+     */
+    long start() {
+
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records an executed statement.
+     *
+     * @param start
+     *            the time returned by {@link #start()}.
+     * @param table
+     *            the entity table, or null.
+     */
+    void statement(Kind kind, String table, long start, long rowsRead, long rowsWritten) {
+
+        if (start == 0) return;
+
+        long nanos = System.nanoTime() - start;
+        kinds.get(kind).record(nanos);
+        if (table != null) table(table).record(nanos);
+        if (0 < rowsRead)    this.rowsRead.add(rowsRead);
+        if (0 < rowsWritten) this.rowsWritten.add(rowsWritten);
+    }
+
+    /**
+     * Records a failed statement.
+     */
+    void error(Kind kind, String table, long start) {
+
+        if (start == 0) return;
+
+        kinds.get(kind).errors.increment();
+        if (table != null) table(table).errors.increment();
+    }
+
+    void jdbc(long nanos) {
+
+        jdbcNanos.add(nanos);
+    }
+
+    void mapping(long nanos) {
+
+        mappingNanos.add(nanos);
+    }
+
+    void cache(boolean hit) {
+
+        if (!enabled) return;
+        if (hit) cacheHits.increment();
+        else cacheMisses.increment();
+    }
+
+    private Recorder table(String table) {
+
+        Recorder recorder = tables.get(table);
+        if (recorder == null) {
+            recorder = new Recorder();
+            Recorder previous = tables.putIfAbsent(table, recorder);
+            if (previous != null) recorder = previous;
+        }
+        return recorder;
+    }
+
+    /**
+     * Resets the metrics to zero.
+     */
+    public void reset() {
+
+        for (Recorder recorder : kinds.values()) {
+            recorder.reset();
+        }
+        tables.clear();
+        rowsRead.reset();
+        rowsWritten.reset();
+        jdbcNanos.reset();
+        mappingNanos.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+    }
+
+    /**
+     * Returns the current values of the metrics.
+     *
+     * @return a snapshot.
+     */
+    public Snapshot snapshot() {
+
+        Map<Kind, Stats> k = new EnumMap<Kind, Stats>(Kind.class);
+        for (Map.Entry<Kind, Recorder> e : kinds.entrySet()) {
+            k.put(e.getKey(), e.getValue().stats());
+        }
+        Map<String, Stats> t = new HashMap<String, Stats>();
+        for (Map.Entry<String, Recorder> e : tables.entrySet()) {
+            t.put(e.getKey(), e.getValue().stats());
+        }
+        return new Snapshot(k, t, rowsRead.sum(), rowsWritten.sum(), jdbcNanos.sum(),
+                            mappingNanos.sum(), cacheHits.sum(), cacheMisses.sum());
+    }
+
+    /**
+     * Registers an MBean of the metrics to the platform MBean server, named
+     * "casmi.db:type=DbMetrics,name=<i>name</i>".
+     *
+     * @param name
+     *            the name of the database.
+     * @throws JMException
+     *             if the name is invalid or has been registered.
+     */
+    public synchronized void register(String name) throws JMException {
+
+        unregister();
+
+        ObjectName objectName = new ObjectName("casmi.db:type=DbMetrics,name=" + ObjectName.quote(name));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(new MXBean(), objectName);
+        this.objectName = objectName;
+    }
+
+    /**
+     * Unregisters the MBean of the metrics, if registered.
+     */
+    public synchronized void unregister() {
+
+        if (objectName == null) return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            // Ignore; unregistered by others.
+        }
+        objectName = null;
+    }
+
+    /**
+     * Counts and latencies of statements.
+     */
+    static final class Recorder {
+
+        final LongAdder errors = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        void record(long nanos) {
+
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+            buckets.incrementAndGet(bucket);
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        void reset() {
+
+            errors.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+        }
+
+        Stats stats() {
+
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+            }
+            return new Stats(counts, errors.sum(), totalNanos.sum(), maxNanos.get());
+        }
+    }
+
+    /**
+     * Counts and latencies of statements in a snapshot.
+     */
+    public static final class Stats {
+
+        private final long[] buckets;
+        private final long count;
+        private final long errors;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        Stats(long[] buckets, long errors, long totalNanos, long maxNanos) {
+
+            long count = 0;
+            for (long c : buckets) {
+                count += c;
+            }
+            this.buckets    = buckets;
+            this.count      = count;
+            this.errors     = errors;
+            this.totalNanos = totalNanos;
+            this.maxNanos   = maxNanos;
+        }
+
+        /**
+         * Returns the number of the executed statements.
+         */
+        public long getCount() {
+
+            return count;
+        }
+
+        /**
+         * Returns the number of the failed statements.
+         */
+        public long getErrors() {
+
+            return errors;
+        }
+
+        public long getTotalNanos() {
+
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+
+            return maxNanos;
+        }
+
+        public double getMeanNanos() {
+
+            return count == 0 ? 0 : (double)totalNanos / count;
+        }
+
+        /**
+         * Returns an upper bound of a percentile of the latencies, which is
+         * less than twice the percentile.
+         *
+         * @param p
+         *            the percentile from 0 to 1, such as 0.99.
+         * @return the upper bound in nanoseconds.
+         */
+        public long getPercentile(double p) {
+
+            if (count == 0) return 0;
+
+            long rank = (long)Math.ceil(p * count);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (rank <= seen) return Math.min(maxNanos, (1L << i) - 1);
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+
+            return String.format("{count: %d, errors: %d, mean: %.1f us, p50: %.1f us, p99: %.1f us, max: %.1f us}",
+                                 count, errors, getMeanNanos() / 1e3, getPercentile(0.5) / 1e3,
+                                 getPercentile(0.99) / 1e3, maxNanos / 1e3);
+        }
+    }
+
+    /**
+     * The values of the metrics at a time.
+     */
+    public static final class Snapshot {
+
+        private final Map<Kind, Stats> kinds;
+        private final Map<String, Stats> tables;
+        private final long rowsRead, rowsWritten, jdbcNanos, mappingNanos, cacheHits, cacheMisses;
+
+        Snapshot(Map<Kind, Stats> kinds, Map<String, Stats> tables, long rowsRead, long rowsWritten,
+                 long jdbcNanos, long mappingNanos, long cacheHits, long cacheMisses) {
+
+            this.kinds        = Collections.unmodifiableMap(kinds);
+            this.tables       = Collections.unmodifiableMap(tables);
+            this.rowsRead     = rowsRead;
+            this.rowsWritten  = rowsWritten;
+            this.jdbcNanos    = jdbcNanos;
+            this.mappingNanos = mappingNanos;
+            this.cacheHits    = cacheHits;
+            this.cacheMisses  = cacheMisses;
+        }
+
+        public Stats getKind(Kind kind) {
+
+            return kinds.get(kind);
+        }
+
+        public Map<Kind, Stats> getKinds() {
+
+            return kinds;
+        }
+
+        /**
+         * Returns the statistics of the statements of an entity table, or
+         * null if no statement of the table has been executed.
+         */
+        public Stats getTable(String table) {
+
+            return tables.get(table);
+        }
+
+        public Map<String, Stats> getTables() {
+
+            return tables;
+        }
+
+        public long getRowsRead() {
+
+            return rowsRead;
+        }
+
+        public long getRowsWritten() {
+
+            return rowsWritten;
+        }
+
+        /**
+         * Returns the time spent by JDBC to execute queries and fetch rows.
+         */
+        public long getJdbcNanos() {
+
+            return jdbcNanos;
+        }
+
+        /**
+         * Returns the time spent to map rows to entities.
+         */
+        public long getMappingNanos() {
+
+            return mappingNanos;
+        }
+
+        public long getStatementCacheHits() {
+
+            return cacheHits;
+        }
+
+        public long getStatementCacheMisses() {
+
+            return cacheMisses;
+        }
+
+        @Override
+        public String toString() {
+
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<Kind, Stats> e : kinds.entrySet()) {
+                if (e.getValue().getCount() == 0 && e.getValue().getErrors() == 0) continue;
+                sb.append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+            }
+            for (Map.Entry<String, Stats> e : tables.entrySet()) {
+                sb.append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+            }
+            sb.append(String.format("rows: %d read, %d written; jdbc: %.3f ms, mapping: %.3f ms; cache: %d/%d",
+                                    rowsRead, rowsWritten, jdbcNanos / 1e6, mappingNanos / 1e6,
+                                    cacheHits, cacheHits + cacheMisses));
+            return sb.toString();
+        }
+    }
+
+    /**
+     * The MBean of the metrics.
+     */
+    private final class MXBean implements DbMetricsMXBean {
+
+        @Override
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            DbMetrics.this.setEnabled(enabled);
+        }
+
+        @Override
+        public Map<String, Long> getStatementCounts() {
+            Map<String, Long> map = new HashMap<String, Long>();
+            for (Map.Entry<Kind, Recorder> e : kinds.entrySet()) {
+                map.put(e.getKey().name(), e.getValue().stats().getCount());
+            }
+            return map;
+        }
+
+        @Override
+        public Map<String, Long> getErrorCounts() {
+            Map<String, Long> map = new HashMap<String, Long>();
+            for (Map.Entry<Kind, Recorder> e : kinds.entrySet()) {
+                map.put(e.getKey().name(), e.getValue().errors.sum());
+            }
+            return map;
+        }
+
+        @Override
+        public Map<String, Long> getP99Micros() {
+            Map<String, Long> map = new HashMap<String, Long>();
+            for (Map.Entry<Kind, Recorder> e : kinds.entrySet()) {
+                map.put(e.getKey().name(), e.getValue().stats().getPercentile(0.99) / 1000);
+            }
+            return map;
+        }
+
+        @Override
+        public Map<String, Long> getTableCounts() {
+            Map<String, Long> map = new HashMap<String, Long>();
+            for (Map.Entry<String, Recorder> e : tables.entrySet()) {
+                map.put(e.getKey(), e.getValue().stats().getCount());
+            }
+            return map;
+        }
+
+        @Override
+        public long getRowsRead() {
+            return rowsRead.sum();
+        }
+
+        @Override
+        public long getRowsWritten() {
+            return rowsWritten.sum();
+        }
+
+        @Override
+        public long getJdbcMillis() {
+            return jdbcNanos.sum() / 1000000;
+        }
+
+        @Override
+        public long getMappingMillis() {
+            return mappingNanos.sum() / 1000000;
+        }
+
+        @Override
+        public long getStatementCacheHits() {
+            return cacheHits.sum();
+        }
+
+        @Override
+        public long getStatementCacheMisses() {
+            return cacheMisses.sum();
+        }
+
+        @Override
+        public void reset() {
+            DbMetrics.this.reset();
+        }
+    }
+}
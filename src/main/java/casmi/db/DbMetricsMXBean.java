@@ -0,0 +1,60 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.util.Map;
+
+/**
+ * The JMX interface of {@link DbMetrics}.
+ *
+ * @author T. Takeuchi
+ */
+public interface DbMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /** Counts of the statements of each kind. */
+    Map<String, Long> getStatementCounts();
+
+    /** Counts of the failed statements of each kind. */
+    Map<String, Long> getErrorCounts();
+
+    /** Upper bounds of the 99th percentile latencies of each kind. */
+    Map<String, Long> getP99Micros();
+
+    /** Counts of the statements of each entity table. */
+    Map<String, Long> getTableCounts();
+
+    long getRowsRead();
+
+    long getRowsWritten();
+
+    long getJdbcMillis();
+
+    long getMappingMillis();
+
+    long getStatementCacheHits();
+
+    long getStatementCacheMisses();
+
+    void reset();
+}
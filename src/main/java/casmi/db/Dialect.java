@@ -0,0 +1,172 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The SQL dialect of a database.
+ *
+ * <p>
+ * A dialect generates the statements which differ among databases, binds and
+ * reads the column values, and advertises the capabilities of the database so
+ * that the {@link SQL} class can choose the fastest way to do a work.
+ * </p>
+ *
+ * @see casmi.db.SQLiteDialect
+ * @see casmi.db.MySQLDialect
+ * @see casmi.db.H2Dialect
+ *
+ * @author T. Takeuchi
+ */
+interface Dialect {
+
+    /**
+     * Performance capabilities of a database.
+     */
+    enum Capability {
+
+        /** Inserts many rows by a statement; {@code VALUES (...),(...)}. */
+        MULTI_ROW_INSERT,
+
+        /** Executes a batch of the parameter sets of a prepared statement. */
+        BATCH,
+
+        /** Inserts or updates a row by a statement. */
+        UPSERT,
+
+        /** Returns the inserted rows by {@code INSERT ... RETURNING}. */
+        RETURNING,
+
+        /** Write-ahead logging; readers do not block a writer. */
+        WAL,
+
+        /** Every row has an integer row id usable as a partition key. */
+        ROWID,
+
+        /** Fetches rows as they are read instead of reading a whole result. */
+        STREAMING,
+
+        /** Indexes only the rows satisfying a condition. */
+        PARTIAL_INDEX,
+    }
+
+    /**
+     * Returns the type of the database.
+     */
+    SQLType getSQLType();
+
+    /**
+     * Returns true if the database has the capability.
+     */
+    boolean supports(Capability capability);
+
+    /**
+     * Returns the maximum number of the parameters of a statement.
+     */
+    int getMaxParameters();
+
+    /**
+     * Returns the column type of the Java type, or null if it is not supported.
+     */
+    String type(Class<?> type);
+
+    /**
+     * Returns the column type of the column, applying its definition such as
+     * the length of a String.
+     */
+    String type(Column column);
+
+    String createTable(String tablename, Column primaryKey, boolean autoPrimaryKey, Column[] columns);
+
+    /**
+     * Returns a CREATE INDEX statement. If the database does not support
+     * {@link Capability#PARTIAL_INDEX}, the condition is ignored and the index
+     * covers all rows.
+     *
+     * @param where
+     *            the condition of the rows of a partial index, or null.
+     * @throws UnsupportedOperationException
+     *             if a unique index has a condition which is not supported.
+     */
+    String createIndex(String tablename, String name, Column[] columns, boolean unique, String where);
+
+    String drop(String tablename);
+
+    String truncate(String tablename);
+
+    /**
+     * Returns an INSERT statement of the rows; the parameters of a row follow
+     * the ones of the previous row.
+     */
+    String insert(String tablename, String[] fields, int rows);
+
+    /**
+     * Returns a statement inserting a row, or updating the fields of the row if
+     * the key exists. The key is the first of the fields.
+     *
+     * @throws UnsupportedOperationException
+     *             if the database does not support {@link Capability#UPSERT}.
+     */
+    String upsert(String tablename, String[] fields);
+
+    /**
+     * Returns a statement selecting a part of a binary column of a row; the
+     * parameters are the 1-based offset, the length and the key.
+     */
+    String selectChunk(String tablename, String field, String key);
+
+    /**
+     * Appends the limit and the offset to a SELECT statement. An offset less
+     * than 1 is omitted.
+     */
+    void appendLimit(StringBuilder sb, int limit, int offset);
+
+    /**
+     * Sets hints to a statement so that the driver fetches rows as they are
+     * read instead of reading the whole result at once.
+     */
+    void prepareStreaming(Statement statement) throws SQLException;
+
+    /**
+     * Returns true if the statement failed because of a transient conflict,
+     * such as a deadlock or a busy database, and may succeed if it is retried.
+     */
+    boolean isRetryable(SQLException e);
+
+    /**
+     * Returns a statement explaining the plan of a statement, or null if the
+     * database cannot explain it.
+     */
+    String explain(String sql);
+
+    /**
+     * Reads the plan returned by the statement of {@link #explain(String)}.
+     */
+    QueryPlan plan(String sql, ResultSet resultSet) throws SQLException;
+
+    void setParameter(PreparedStatement preparedStatement, int parameterIndex, Object param)
+        throws SQLException;
+
+    <T> T get(ResultSet resultSet, Class<T> type, String field) throws SQLException;
+}
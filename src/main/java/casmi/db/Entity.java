@@ -21,22 +21,29 @@ package casmi.db;
 
 import java.beans.IntrospectionException;
 import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.nio.file.Path;
 import java.sql.Blob;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Date;
 import java.util.List;
 
+import casmi.db.annotation.Compressed;
 import casmi.db.annotation.Fieldname;
 import casmi.db.annotation.Ignore;
+import casmi.db.annotation.Lazy;
 import casmi.db.annotation.PrimaryKey;
 import casmi.db.annotation.Tablename;
+import casmi.db.util.DateUtil;
 
 /**
  * An entity class expressing a table in a database.
@@ -81,6 +88,8 @@ import casmi.db.annotation.Tablename;
  * @see casmi.db.Query
  * @see casmi.sql.annotation.Fieldname
  * @see casmi.sql.annotation.Ignore
+ * @see casmi.db.annotation.Index
+ * @see casmi.db.annotation.Lazy
  * @see casmi.sql.annotation.PrimaryKey
  * @see casmi.sql.annotation.Tablename
  *
@@ -105,44 +114,72 @@ abstract public class Entity {
     /** Columns. */
     Column[] columns;
 
-    final <T extends Entity> void init(SQL sql, Class<T> type) {
+    /** Compiled statements of this entity class. */
+    EntityStatements statements;
 
-        this.sql  = sql;
-        this.type = type;
+    /** Lazy columns which have not been read, or null if all have been read. */
+    private boolean[] unloaded;
+
+    final <T extends Entity> void init(SQL sql, Class<T> type) {
 
-        tablename = getTablename(type);
         try {
-            primaryKey = searchPrimaryKey();
-            columns    = fieldsToColumns();
-            if (!tableExists()) {
-                createTable();
+            compile(sql, type);
+            if (!sql.isKnownTable(tablename)) {
+                if (!tableExists()) {
+                    createTable();
+                }
+                sql.addKnownTable(tablename);
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Reads the columns and the compiled statements of the class, without
+     * creating the table.
+     */
+    final <T extends Entity> void compile(SQL sql, Class<T> type) throws SQLException {
+
+        this.sql  = sql;
+        this.type = type;
+
+        tablename  = getTablename(type);
+        primaryKey = searchPrimaryKey();
+        columns    = fieldsToColumns();
+        statements = EntityStatements.get(sql.getDialect(), this);
+    }
+
     private final boolean tableExists() throws SQLException {
 
         DatabaseMetaData dmd = sql.getConnection().getMetaData();
         ResultSet rs = dmd.getTables(null, null, null, null);
-        while (rs.next()) {
-            if (tablename.equals(rs.getString("TABLE_NAME"))) {
-                return true;
+        try {
+            while (rs.next()) {
+                // Some databases store unquoted names in upper case.
+                if (tablename.equalsIgnoreCase(rs.getString("TABLE_NAME"))) {
+                    return true;
+                }
             }
+            return false;
+        } finally {
+            // an open cursor of SQLite locks the tables against DROP
+            rs.close();
         }
-        return false;
     }
 
     private final void createTable() throws SQLException {
-        String stmt = StatementGenerator.createTable(this);
+        String stmt = sql.getDialect().createTable(tablename, primaryKey, autoPrimaryKey, columns);
         sql.execute(stmt);
+
+        for (String index : statements.createIndexes) {
+            sql.execute(index);
+        }
     }
 
     public final void save() throws SQLException {
 
-        primaryKey = searchPrimaryKey();
-        columns    = fieldsToColumns();
+        readColumns();
 
         if (newEntity) {
             insert();
@@ -152,59 +189,153 @@ abstract public class Entity {
         }
     }
 
+    /**
+     * Inserts this record, or updates the record of the same primary key if it
+     * exists, by a statement.
+     * <p>
+     * A record read from the database whose lazy columns have not been loaded
+     * is updated like {@link #save()}, so that the columns keep their values.
+     * <p>
+     * If the database has no upsert statement (SQLite 3.7.2, whose INSERT OR
+     * REPLACE deletes the row and changes its rowid), the key is selected
+     * first and the record is inserted or updated, which is not atomic
+     * outside a transaction.
+     *
+     * @throws SQLException
+     *             if the entity has no primary key.
+     */
+    public final void upsert() throws SQLException {
+
+        readColumns();
+
+        if (autoPrimaryKey) {
+            throw new SQLException("Upsert needs a primary key.");
+        }
+        if (!newEntity) {
+            for (int i = 0; i < columns.length; i++) {
+                if (isUnchanged(i)) {
+                    update();
+                    return;
+                }
+            }
+        }
+        if (statements.upsert == null) {
+            if (sql.queryValue(statements.exists, Object.class, primaryKey.getValue()) == null) {
+                insert();
+                newEntity = false;
+            } else {
+                newEntity = false;
+                update();
+            }
+            return;
+        }
+
+        Object[] values = new Object[columns.length + 1];
+        values[0] = primaryKey.getValue();
+        for (int i = 0; i < columns.length; i++) {
+            values[i + 1] = bindValue(columns[i]);
+        }
+
+        sql.execute(this, statements.upsert, values);
+        newEntity = false;
+    }
+
     private final void insert() throws SQLException {
 
-        String sqlStr = StatementGenerator.insert(sql.getSQLType());
+        sql.execute(this, statements.insert, insertValues());
+    }
 
-        sqlStr = sqlStr.replaceAll(":table", tablename);
+    /**
+     * Returns the parameters of the INSERT statement of this record.
+     */
+    final Object[] insertValues() throws SQLException {
 
-        StringBuilder sb1 = new StringBuilder();
-        StringBuilder sb2 = new StringBuilder();
-        List<Object> list = new ArrayList<Object>();
+        Object[] values;
+        int i = 0;
 
-        if (!autoPrimaryKey) {
-            sb1.append(primaryKey.getField());
-            sb2.append('?');
-            list.add(primaryKey.getValue());
+        if (autoPrimaryKey) {
+            values = new Object[columns.length];
+        } else {
+            values = new Object[columns.length + 1];
+            values[i++] = primaryKey.getValue();
         }
 
         for (Column c : columns) {
-            if (sb1.length() != 0) sb1.append(',');
-            if (sb2.length() != 0) sb2.append(',');
-            sb1.append(c.getField());
-            sb2.append("?");
-            list.add(c.getValue());
+            values[i++] = bindValue(c);
         }
-        sqlStr = sqlStr.replaceAll(":fields", sb1.toString());
-        sqlStr = sqlStr.replaceAll(":values", sb2.toString());
 
-        sql.execute(sqlStr, list.toArray());
+        return values;
     }
 
-    private final void update() throws SQLException {
+    /**
+     * Reads the values of the primary key and the columns from the fields.
+     */
+    final void readColumns() throws SQLException {
 
-        String sqlStr = StatementGenerator.update(sql.getSQLType());
+        primaryKey = searchPrimaryKey();
+        columns    = fieldsToColumns();
+    }
 
-        sqlStr = sqlStr.replaceAll(":table", tablename);
+    final boolean isNewEntity() {
 
-        StringBuilder sb = new StringBuilder();
-        List<Object> list = new ArrayList<Object>();
+        return newEntity;
+    }
 
-        for (Column column : columns) {
-            if (sb.length() != 0) sb.append(',');
-            sb.append(column.getField());
-            sb.append("=?");
-            list.add(column.getValue());
+    final void inserted() {
+
+        newEntity = false;
+    }
+
+    private final void update() throws SQLException {
+
+        BitSet skipped = null;
+        for (int i = 0; i < columns.length; i++) {
+            if (isUnchanged(i)) {
+                if (skipped == null) skipped = new BitSet(columns.length);
+                skipped.set(i);
+            }
+        }
+        if (skipped != null) {
+            updateLoaded(skipped);
+            return;
+        }
+
+        Object[] values = new Object[columns.length + 1];
+
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = bindValue(columns[i]);
         }
+        values[columns.length] = primaryKey.getValue();
 
-        list.add(primaryKey.getValue());
+        sql.execute(this, statements.update, values);
+    }
+
+    /**
+     * Returns true if the column keeps the value in the database; a lazy
+     * column which has been neither read nor set, or a lazy stream of the
+     * record.
+     */
+    private final boolean isUnchanged(int index) {
+
+        Object value = columns[index].getValue();
+        if (value instanceof Codec.Decoder) value = ((Codec.Decoder)value).in;
+        return (isUnloaded(index) && value == null) || value instanceof Blobs.Lazy;
+    }
+
+    private final void updateLoaded(BitSet skipped) throws SQLException {
 
-        sqlStr = sqlStr.replaceAll(":sets", sb.toString());
+        int n = columns.length - skipped.cardinality();
+        if (n == 0) return;
 
-        sqlStr = sqlStr.replaceAll(":key", primaryKey.getField());
-        sqlStr = sqlStr.replaceAll(":key_value", "?");
+        Object[] values = new Object[n + 1];
+        n = 0;
+        for (int i = 0; i < columns.length; i++) {
+            if (skipped.get(i)) continue;
+            values[n++] = bindValue(columns[i]);
+        }
+        values[n] = primaryKey.getValue();
 
-        sql.execute(sqlStr, list.toArray());
+        sql.execute(this, statements.update(skipped), values);
     }
 
     public final void delete() throws SQLException {
@@ -213,9 +344,7 @@ abstract public class Entity {
             throw new SQLException("This record has not been in a database yet.");
         }
 
-        String where = primaryKey.getField() + "=" + primaryKey.getValue();
-        String stmt = StatementGenerator.delete(sql.getSQLType(), tablename, where);
-        sql.execute(stmt);
+        sql.execute(this, statements.delete, new Object[] {primaryKey.getValue()});
     }
 
     private final Column searchPrimaryKey() {
@@ -269,6 +398,8 @@ abstract public class Entity {
                         c = new Column(name, field, (Float)value, type);
                     } else if (type.equals(Date.class)) {
                         c = new Column(name, field, (Date)value, type);
+                    } else if (DateUtil.isTemporal(type) || Blobs.isBinary(type)) {
+                        c = new Column(name, field, value, type);
                     } else if (type.equals(Blob.class)) {
                         c = new Column(name, field, (Blob)value, type);
                     } else {
@@ -300,6 +431,8 @@ abstract public class Entity {
                         c = new Column(name, field, (Float)value, type);
                     } else if (type.equals(Date.class)) {
                         c = new Column(name, field, (Date)value, type);
+                    } else if (DateUtil.isTemporal(type) || Blobs.isBinary(type)) {
+                        c = new Column(name, field, value, type);
                     } else if (type.equals(Blob.class)) {
                         c = new Column(name, field, (Blob)value, type);
                     } else {
@@ -316,6 +449,7 @@ abstract public class Entity {
                 e.printStackTrace();
             }
 
+            if (c != null) c.setDefinition(f.getAnnotation(casmi.db.annotation.Column.class));
             break;
         }
 
@@ -378,6 +512,8 @@ abstract public class Entity {
                         c = new Column(name, field, (Float)value, type);
                     } else if (type.equals(Date.class)) {
                         c = new Column(name, field, (Date)value, type);
+                    } else if (DateUtil.isTemporal(type) || Blobs.isBinary(type)) {
+                        c = new Column(name, field, value, type);
                     } else if (type.equals(Blob.class)) {
                         c = new Column(name, field, (Blob)value, type);
                     } else {
@@ -409,6 +545,8 @@ abstract public class Entity {
                         c = new Column(name, field, (Float)value, type);
                     } else if (type.equals(Date.class)) {
                         c = new Column(name, field, (Date)value, type);
+                    } else if (DateUtil.isTemporal(type) || Blobs.isBinary(type)) {
+                        c = new Column(name, field, value, type);
                     } else if (type.equals(Blob.class)) {
                         c = new Column(name, field, (Blob)value, type);
                     } else {
@@ -416,6 +554,9 @@ abstract public class Entity {
                     }
                 }
 
+                c.setDefinition(f.getAnnotation(casmi.db.annotation.Column.class));
+                c.setLazy(f.getAnnotation(Lazy.class) != null);
+                c.setCompressed(f.getAnnotation(Compressed.class));
                 list.add(c);
             } catch (IllegalArgumentException e) {
                 e.printStackTrace();
@@ -467,33 +608,106 @@ abstract public class Entity {
 
         // other fields
         for (Column c : columns) {
-            try {
-                f = this.type.getDeclaredField(c.getName());
+            columnToField(c);
+        }
+    }
 
-                // "this$0" is a tacit field generated automatically if the class
-                // is an inner class.
-                // It expresses a declared class object, so should be ignored.
-                if (f.getName().equals("this$0")) continue;
+    private final void columnToField(Column c) {
+        Field f;
 
-                if (Modifier.isPublic(f.getModifiers())) {
-                    f.set(this, c.getValue());
-                } else {
-                    PropertyDescriptor pd = new PropertyDescriptor(f.getName(), this.type);
-                    Method m = pd.getWriteMethod();
-                    m.invoke(this, c.getValue());
-                }
-            } catch (SecurityException e) {
-                e.printStackTrace();
-            } catch (NoSuchFieldException e) {
-                e.printStackTrace();
-            } catch (IllegalArgumentException e) {
-                e.printStackTrace();
-            } catch (IllegalAccessException e) {
-                e.printStackTrace();
-            } catch (IntrospectionException e) {
-                e.printStackTrace();
-            } catch (InvocationTargetException e) {
-                e.printStackTrace();
+        try {
+            f = this.type.getDeclaredField(c.getName());
+
+            // "this$0" is a tacit field generated automatically if the class
+            // is an inner class.
+            // It expresses a declared class object, so should be ignored.
+            if (f.getName().equals("this$0")) return;
+
+            if (Modifier.isPublic(f.getModifiers())) {
+                f.set(this, c.getValue());
+            } else {
+                PropertyDescriptor pd = new PropertyDescriptor(f.getName(), this.type);
+                Method m = pd.getWriteMethod();
+                m.invoke(this, c.getValue());
+            }
+        } catch (SecurityException e) {
+            e.printStackTrace();
+        } catch (NoSuchFieldException e) {
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        } catch (IntrospectionException e) {
+            e.printStackTrace();
+        } catch (InvocationTargetException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the value of a column to be bound, which is compressed if the
+     * field is {@link Compressed}.
+     */
+    private static Object bindValue(Column c) throws SQLException {
+
+        if (c.getCompressed() == null) return c.getValue();
+        return Codec.encode(c.getValue(), c.getCompressed().algorithm());
+    }
+
+    /**
+     * Returns the type of the raw value of a column read from result sets.
+     */
+    static Class<?> readType(Column c) {
+
+        if (c.getCompressed() != null && !isStream(c.getType())) return byte[].class;
+        return c.getType();
+    }
+
+    /**
+     * Returns the field value of a raw value read from a result set.
+     */
+    static Object fieldValue(Column c, Object value) throws SQLException {
+
+        if (c.getCompressed() != null && !isStream(c.getType())) {
+            return Codec.decode((byte[])value, c.getType());
+        }
+        return value;
+    }
+
+    /**
+     * Reads the field value of a column from a result set.
+     */
+    static Object read(SQL sql, ResultSet resultSet, Column c) throws SQLException {
+
+        return fieldValue(c, sql.get(resultSet, readType(c), c.getField()));
+    }
+
+    private static boolean isStream(Class<?> type) {
+
+        return type == InputStream.class || type == Path.class;
+    }
+
+    /**
+     * Sets a lazy stream of the column to an InputStream field, or a temporary
+     * file of the stream to a Path field, since they are not read from result
+     * sets. The file is copied eagerly and belongs to the caller.
+     */
+    private final void openStream(int index) throws SQLException {
+
+        Column c = columns[index];
+        if (newEntity || (c.getType() != InputStream.class && c.getType() != Path.class)) return;
+
+        InputStream in = new Blobs.Lazy(sql, statements.selectChunks[index], primaryKey.getValue());
+        if (c.getCompressed() != null) in = Codec.decode(in);
+        if (c.getType() == InputStream.class) {
+            c.setValue(in);
+        } else {
+            try {
+                c.setValue(Blobs.toTempFile(in));
+            } catch (IOException e) {
+                if (e.getCause() instanceof SQLException) throw (SQLException)e.getCause();
+                throw new SQLException(e);
             }
         }
     }
@@ -505,9 +719,11 @@ abstract public class Entity {
         primaryKey.setValue(value);
         newEntity = false;
 
-        for (Column column : columns) {
-            value = sql.get(resultSet, column.getType(), column.getField());
-            column.setValue(value);
+        for (int i = 0; i < columns.length; i++) {
+            value = read(sql, resultSet, columns[i]);
+            columns[i].setValue(value);
+            openStream(i);
+            setLoaded(i, true);
         }
 
         columnsToFields();
@@ -528,21 +744,184 @@ abstract public class Entity {
             newEntity = false;
         }
 
-        for (Column column : columns) {
+        for (int i = 0; i < columns.length; i++) {
             flag = false;
             for (String field : fields) {
-                if (column.getField().equals(field)) flag = true;
+                if (columns[i].getField().equals(field)) flag = true;
             }
 
             if (flag) {
-                value = sql.get(resultSet, column.getType(), column.getField());
-                column.setValue(value);
+                value = read(sql, resultSet, columns[i]);
+                columns[i].setValue(value);
+                openStream(i);
+                setLoaded(i, true);
+            } else if (columns[i].isLazy()) {
+                setLoaded(i, false);
+                if (columns[i].getType() == InputStream.class) openStream(i);
             }
         }
 
         columnsToFields();
     }
 
+    /**
+     * Returns the indexes of the columns to be read; -1 expresses the primary
+     * key. If no field is specified, returns the primary key and all columns.
+     *
+     * @param fields
+     *            the field names in the database.
+     * @return the indexes of the columns.
+     */
+    final int[] columnIndexes(String... fields) {
+
+        List<Integer> list = new ArrayList<Integer>();
+
+        if (fields == null || fields.length == 0) {
+            list.add(-1);
+            for (int i = 0; i < columns.length; i++) {
+                list.add(i);
+            }
+        } else {
+            for (String field : fields) {
+                if (primaryKey.getField().equals(field)) {
+                    if (!list.contains(-1)) list.add(-1);
+                    continue;
+                }
+                for (int i = 0; i < columns.length; i++) {
+                    if (columns[i].getField().equals(field) && !list.contains(i)) {
+                        list.add(i);
+                    }
+                }
+            }
+        }
+
+        int[] indexes = new int[list.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = list.get(i);
+        }
+        return indexes;
+    }
+
+    final Column column(int index) {
+
+        return index < 0 ? primaryKey : columns[index];
+    }
+
+    /**
+     * Sets values which have been read from a result set.
+     *
+     * @param indexes
+     *            the indexes of the columns returned by {@link #columnIndexes(String...)}.
+     * @param values
+     *            the values.
+     */
+    final void setValues(int[] indexes, Object[] values) throws SQLException {
+
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i] < 0) {
+                primaryKey.setValue(values[i]);
+                newEntity = false;
+            } else {
+                columns[indexes[i]].setValue(fieldValue(columns[indexes[i]], values[i]));
+            }
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (contains(indexes, i)) {
+                openStream(i);
+                setLoaded(i, true);
+            } else if (columns[i].isLazy()) {
+                setLoaded(i, false);
+                if (columns[i].getType() == InputStream.class) openStream(i);
+            }
+        }
+
+        columnsToFields();
+    }
+
+    private static boolean contains(int[] indexes, int index) {
+
+        for (int i : indexes) {
+            if (i == index) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sets whether a column has been read. Only lazy columns are tracked.
+     */
+    private final void setLoaded(int index, boolean loaded) {
+
+        if (unloaded == null) {
+            if (loaded) return;
+            unloaded = new boolean[columns.length];
+        }
+        unloaded[index] = !loaded;
+    }
+
+    /**
+     * Returns true if the lazy column of the index has not been read; its
+     * field has no value of the database.
+     */
+    final boolean isUnloaded(int index) {
+
+        return unloaded != null && unloaded[index];
+    }
+
+    /**
+     * Sets the values of columns which have been loaded after the entity was
+     * read, without changing the other fields.
+     *
+     * @param indexes
+     *            the indexes of the columns.
+     * @param values
+     *            the values.
+     */
+    final void setLoadedValues(int[] indexes, Object[] values) throws SQLException {
+
+        for (int i = 0; i < indexes.length; i++) {
+            Column c = columns[indexes[i]];
+            c.setValue(values[i]);
+            openStream(indexes[i]);
+            setLoaded(indexes[i], true);
+            columnToField(c);
+        }
+    }
+
+    /**
+     * Reads lazy columns of this record.
+     *
+     * @param fields
+     *            the field names in the database, or none for all lazy
+     *            columns.
+     * @throws SQLException
+     *
+     * @see casmi.db.SQL#load(Entity, String...)
+     */
+    public final void load(String... fields) throws SQLException {
+
+        sql.load(this, fields);
+    }
+
+    /**
+     * Returns the value of the column which has the specified field name.
+     *
+     * @param field
+     *            the field name in the database.
+     * @return the value, or null if the entity does not have the field.
+     */
+    final Object getValue(String field) {
+
+        if (primaryKey.getField().equals(field)) {
+            return primaryKey.getValue();
+        }
+        for (Column column : columns) {
+            if (column.getField().equals(field)) {
+                return column.getValue();
+            }
+        }
+        return null;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -589,6 +968,20 @@ abstract public class Entity {
         return autoPrimaryKey;
     }
 
+    static final <T extends Entity> Class<?> getPrimaryKeyType(Class<T> type) {
+
+        for (Field f : type.getDeclaredFields()) {
+            if (f.getName().equals("this$0")) continue;
+
+            if (f.getAnnotation(Ignore.class)     == null &&
+                f.getAnnotation(PrimaryKey.class) != null) {
+                return f.getType();
+            }
+        }
+
+        return int.class;
+    }
+
     static final <T extends Entity> String getPrimaryKeyField(Class<T> type) {
         String field;
 
@@ -0,0 +1,41 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.SQLException;
+
+/**
+ * A callback receiving entities read by a scan.
+ *
+ * @see casmi.db.SQL#parallelScan(Class, Query, int, EntityConsumer)
+ *
+ * @author T. Takeuchi
+ */
+public interface EntityConsumer<T extends Entity> {
+
+    /**
+     * Receives an entity.
+     *
+     * @param entity
+     *            the entity.
+     * @throws SQLException
+     */
+    void accept(T entity) throws SQLException;
+}
@@ -0,0 +1,301 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.lang.reflect.Field;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import casmi.db.Dialect.Capability;
+import casmi.db.annotation.Index;
+import casmi.db.annotation.Unique;
+
+/**
+ * CRUD statements of an entity class compiled for a database dialect.
+ *
+ * <p>
+ * The statements are built once per entity class and database type, and
+ * parameters are bound to their placeholders in the order of the primary key
+ * and the columns of the entity. Saving and deleting entities does not
+ * process any string.
+ * </p>
+ *
+ * @author T. Takeuchi
+ */
+final class EntityStatements {
+
+    /** Compiled statements for each database type. */
+    private static final EnumMap<SQLType, ConcurrentMap<Class<?>, EntityStatements>> CACHE =
+        new EnumMap<SQLType, ConcurrentMap<Class<?>, EntityStatements>>(SQLType.class);
+
+    static {
+        for (SQLType type : SQLType.values()) {
+            CACHE.put(type, new ConcurrentHashMap<Class<?>, EntityStatements>());
+        }
+    }
+
+    /** The table name. */
+    final String tablename;
+
+    /** The fields of INSERT; the primary key (if not automatic) and the columns. */
+    final String[] insertFields;
+
+    /** INSERT; the primary key (if not automatic) and the columns. */
+    final String insert;
+
+    /** Upsert; the primary key and the columns, or null if not supported. */
+    final String upsert;
+
+    /** UPDATE; the columns and the primary key. */
+    final String update;
+
+    /**
+     * UPDATE leaving out columns which keep their values, compiled on first
+     * use; the columns left out are the keys.
+     */
+    private final ConcurrentMap<BitSet, String> partialUpdates =
+        new ConcurrentHashMap<BitSet, String>();
+
+    /** The fields of the columns, without the primary key. */
+    private final String[] columnFields;
+
+    private final String key;
+
+    /** DELETE; the primary key. */
+    final String delete;
+
+    /** SELECT the default columns; the primary key. */
+    final String selectByKey;
+
+    /** SELECT 1 if the record exists; the primary key. */
+    final String exists;
+
+    /** SELECT the default columns of all records. */
+    final String selectAll;
+
+    /**
+     * The default columns; the primary key and the columns which are not
+     * lazy, or null if no column is lazy.
+     */
+    final String[] defaultSelects;
+
+    /** SELECT a chunk of each binary column; null if the column is not binary. */
+    final String[] selectChunks;
+
+    /** Names of the indexes. */
+    final String[] indexNames;
+
+    /** CREATE INDEX of the indexes. */
+    final String[] createIndexes;
+
+    private EntityStatements(Dialect dialect, Entity entity) {
+
+        String table = entity.tablename;
+        String key   = entity.primaryKey.getField();
+
+        // INSERT INTO table (key,c1,c2) VALUES (?,?,?)
+        int offset = entity.autoPrimaryKey ? 0 : 1;
+        String[] fields = new String[entity.columns.length + offset];
+        if (!entity.autoPrimaryKey) fields[0] = key;
+        for (int i = 0; i < entity.columns.length; i++) {
+            fields[i + offset] = entity.columns[i].getField();
+        }
+        tablename    = table;
+        insertFields = fields;
+        columnFields = Arrays.copyOfRange(fields, offset, fields.length);
+        this.key     = key;
+        insert       = dialect.insert(table, fields, 1);
+
+        if (!entity.autoPrimaryKey && dialect.supports(Capability.UPSERT)) {
+            upsert = dialect.upsert(table, fields);
+        } else {
+            upsert = null;
+        }
+
+        // UPDATE table SET c1=?,c2=? WHERE key=?
+        StringBuilder sets = new StringBuilder();
+        for (Column c : entity.columns) {
+            if (sets.length() != 0) sets.append(',');
+            sets.append(c.getField());
+            sets.append("=?");
+        }
+        update = "UPDATE " + table + " SET " + sets + " WHERE " + key + "=?";
+
+        // SELECT key,c1 FROM table, leaving out the lazy columns
+        List<String> defaults = new ArrayList<String>();
+        defaults.add(key);
+        for (Column c : entity.columns) {
+            if (!c.isLazy()) defaults.add(c.getField());
+        }
+        if (defaults.size() == entity.columns.length + 1) {
+            defaultSelects = null;
+            selectAll      = "SELECT * FROM " + table;
+        } else {
+            defaultSelects = defaults.toArray(new String[defaults.size()]);
+            selectAll      = "SELECT " + String.join(",", defaults) + " FROM " + table;
+        }
+
+        delete      = "DELETE FROM " + table + " WHERE " + key + "=?";
+        selectByKey = selectAll + " WHERE " + key + "=?";
+        exists      = "SELECT 1 FROM " + table + " WHERE " + key + "=?";
+
+        selectChunks = new String[entity.columns.length];
+        for (int i = 0; i < entity.columns.length; i++) {
+            Column c = entity.columns[i];
+            if (c.getCompressed() != null && !Codec.isSupported(c.getType())) {
+                throw new IllegalArgumentException(entity.getClass() + ": " + c.getName() +
+                                                   " cannot be compressed.");
+            }
+            if (Blobs.isBinary(c.getType())) {
+                selectChunks[i] = dialect.selectChunk(table, c.getField(), key);
+            }
+        }
+
+        // indexes declared on the class and the fields
+        List<String> names = new ArrayList<String>();
+        List<String> stmts = new ArrayList<String>();
+        Class<?> type = entity.getClass();
+        for (Index index : type.getAnnotationsByType(Index.class)) {
+            addIndex(dialect, entity, names, stmts, index.name(), index.columns(),
+                     index.unique(), index.where());
+        }
+        Unique unique = type.getAnnotation(Unique.class);
+        if (unique != null) {
+            addIndex(dialect, entity, names, stmts, unique.name(), unique.columns(), true, null);
+        }
+        for (Field f : type.getDeclaredFields()) {
+            String[] field = {f.getName()};
+            for (Index index : f.getAnnotationsByType(Index.class)) {
+                addIndex(dialect, entity, names, stmts, index.name(), field,
+                         index.unique(), index.where());
+            }
+            unique = f.getAnnotation(Unique.class);
+            if (unique != null) {
+                addIndex(dialect, entity, names, stmts, unique.name(), field, true, null);
+            }
+        }
+        indexNames    = names.toArray(new String[names.size()]);
+        createIndexes = stmts.toArray(new String[stmts.size()]);
+    }
+
+    private static void addIndex(Dialect dialect, Entity entity, List<String> names,
+                                 List<String> stmts, String name, String[] fields,
+                                 boolean unique, String where) {
+
+        if (fields.length == 0) {
+            throw new IllegalArgumentException(entity.getClass() + ": An index has no column.");
+        }
+
+        Column[] columns = new Column[fields.length];
+        StringBuilder generated = new StringBuilder("idx_").append(entity.tablename);
+        for (int i = 0; i < fields.length; i++) {
+            columns[i] = findColumn(entity, fields[i]);
+            if (columns[i] == null) {
+                throw new IllegalArgumentException(entity.getClass() + ": " + fields[i] +
+                                                   " is not a column.");
+            }
+            generated.append('_').append(columns[i].getField());
+        }
+        if (name.length() == 0) name = generated.toString();
+
+        names.add(name);
+        stmts.add(dialect.createIndex(entity.tablename, name, columns, unique, where));
+    }
+
+    /**
+     * Returns the column of the field or the field name.
+     */
+    private static Column findColumn(Entity entity, String field) {
+
+        if (!entity.autoPrimaryKey &&
+            (entity.primaryKey.getName().equals(field) || entity.primaryKey.getField().equals(field))) {
+            return entity.primaryKey;
+        }
+        for (Column c : entity.columns) {
+            if (c.getName().equals(field) || c.getField().equals(field)) return c;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the compiled statements of the class of the entity, compiling
+     * them if they have not been compiled yet. This is called for each entity,
+     * including each mapped row, so it is not counted in the metrics.
+     */
+    static EntityStatements get(Dialect dialect, Entity entity) {
+
+        ConcurrentMap<Class<?>, EntityStatements> map = CACHE.get(dialect.getSQLType());
+        EntityStatements statements = map.get(entity.getClass());
+        if (statements == null) {
+            statements = new EntityStatements(dialect, entity);
+            EntityStatements previous = map.putIfAbsent(entity.getClass(), statements);
+            if (previous != null) statements = previous;
+        }
+        return statements;
+    }
+
+    /**
+     * Returns the compiled statements of the entity class. The statements are
+     * compiled from a new instance of the class, which does not create the
+     * table.
+     */
+    static <T extends Entity> EntityStatements get(SQL sql, Class<T> type) throws SQLException {
+
+        EntityStatements statements = CACHE.get(sql.getSQLType()).get(type);
+        if (statements == null) {
+            T entity = sql.newInstance(type);
+            entity.compile(sql, type);
+            statements = entity.statements;
+        }
+        return statements;
+    }
+
+    /**
+     * Returns UPDATE of the columns which are not skipped; the columns and the
+     * primary key.
+     *
+     * @param skipped
+     *            the indexes of the columns left out, which must not be
+     *            changed afterwards.
+     */
+    String update(BitSet skipped) {
+
+        String stmt = partialUpdates.get(skipped);
+        if (stmt == null) {
+            StringBuilder sets = new StringBuilder();
+            for (int i = 0; i < columnFields.length; i++) {
+                if (skipped.get(i)) continue;
+                if (sets.length() != 0) sets.append(',');
+                sets.append(columnFields[i]);
+                sets.append("=?");
+            }
+            stmt = "UPDATE " + tablename + " SET " + sets + " WHERE " + key + "=?";
+            String previous = partialUpdates.putIfAbsent(skipped, stmt);
+            if (previous != null) stmt = previous;
+        }
+        return stmt;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * H2 class.
+ *
+ * <p>
+ * H2 is an embedded database running in the same process. An in-memory
+ * database, created by {@link #memory(String)}, is suitable for a cache of
+ * records; it is shared by the pooled connections and discarded when this
+ * object is closed.
+ * </p>
+ *
+ * <p>
+ * The H2 driver is an optional dependency and must be on the class path.
+ * </p>
+ *
+ * @see casmi.db.Entity
+ *
+ * @author T. Takeuchi
+ */
+public class H2 extends SQL {
+
+    /** SQL dialect. */
+    private static final H2Dialect DIALECT = new H2Dialect();
+
+    /** Driver name. */
+    private static final String DRIVER = "org.h2.Driver";
+
+    /** Database URL. */
+    private final String url;
+
+    // Load driver.
+    static {
+        try {
+            Class.forName(DRIVER);
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private H2(String prefix, String name) {
+        super(DIALECT);
+
+        url = prefix + name;
+    }
+
+    /**
+     * Creates new H2 object from the specified database file. The file is
+     * created if it does not exist.
+     *
+     * @param dbFile
+     *            The H2 database file without the extension.
+     */
+    public H2(File dbFile) {
+        this("jdbc:h2:", dbFile.getAbsolutePath());
+    }
+
+    /**
+     * Creates new H2 object from the specified database file path.
+     *
+     * @param dbPath
+     *            The H2 database file's path without the extension.
+     */
+    public H2(String dbPath) {
+        this(new File(dbPath));
+    }
+
+    /**
+     * Creates new H2 object of an in-memory database.
+     *
+     * @param name
+     *            The name of the database.
+     * @return new H2 object.
+     */
+    public static H2 memory(String name) {
+
+        return new H2("jdbc:h2:mem:", name);
+    }
+
+    @Override
+    public void connect() throws SQLException {
+
+        connection = DriverManager.getConnection(url);
+    }
+
+    @Override
+    Connection createConnection() throws SQLException {
+
+        return DriverManager.getConnection(url);
+    }
+
+    /**
+     * Retrieves the value of the designated column in the current row as
+     * java.util.Date object.
+     *
+     * @param column
+     *            The first column is 1, the second is 2, ...
+     *
+     * @return The column value; if the value is SQL NULL, the value returned is
+     *         null.
+     *
+     * @throws SQLException
+     *             If the column index is not valid; if a database access error
+     *             occurs or this method is called on a closed result set.
+     */
+    public java.util.Date getDate(int column) throws SQLException {
+
+        if (getResultSet() == null)
+            throw new SQLException("Result set is not exist.");
+
+        return DIALECT.getDate(getResultSet(), column);
+    }
+
+    /**
+     * Retrieves the value of the designated column in the current row as
+     * java.util.Date object.
+     *
+     * @param field
+     *            The name of the field.
+     *
+     * @return The column value; if the value is SQL NULL, the value returned is
+     *         null.
+     *
+     * @throws SQLException
+     *             If the column index is not valid; if a database access error
+     *             occurs or this method is called on a closed result set.
+     */
+    public java.util.Date getDate(String field) throws SQLException {
+
+        if (getResultSet() == null)
+            throw new SQLException("Result set is not exist.");
+
+        return DIALECT.getDate(getResultSet(), field);
+    }
+
+    /**
+     * Return a database's URL.
+     *
+     * @return A database's URL string.
+     */
+    public String getURL() {
+
+        return url;
+    }
+}
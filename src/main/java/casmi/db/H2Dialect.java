@@ -0,0 +1,144 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.Blob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * H2 dialect.
+ *
+ * @author T. Takeuchi
+ */
+class H2Dialect extends AbstractDialect {
+
+    /** A full scan of a table in a plan; the group is the table. */
+    private static final Pattern TABLE_SCAN = Pattern.compile("/\\* (?:[^ .]+\\.)*([^ .]+)\\.tableScan \\*/");
+
+    /** LOCK_TIMEOUT_1, DEADLOCK_1 and CONCURRENT_UPDATE_1. */
+    private static final int LOCK_TIMEOUT = 50200, DEADLOCK = 40001, CONCURRENT_UPDATE = 90131;
+
+    H2Dialect() {
+
+        super(SQLType.H2, 100000,
+              EnumSet.of(Capability.MULTI_ROW_INSERT, Capability.BATCH, Capability.UPSERT));
+
+        type(Integer.class,    int.class,              "INT");
+        type(  Short.class,  short.class,         "SMALLINT");
+        type(   Long.class,   long.class,           "BIGINT");
+        type(  Float.class,  float.class,             "REAL");
+        type( Double.class, double.class, "DOUBLE PRECISION");
+        type( String.class,         null,          "VARCHAR");
+        type(   Date.class,         null,        "TIMESTAMP");
+        type(   Blob.class,         null,             "BLOB");
+    }
+
+    @Override
+    protected String autoIncrement() {
+
+        return "id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY";
+    }
+
+    @Override
+    public String upsert(String tablename, String[] fields) {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("MERGE INTO ");
+        sb.append(tablename);
+        sb.append(" (");
+        for (int i = 0; i < fields.length; i++) {
+            if (i != 0) sb.append(',');
+            sb.append(fields[i]);
+        }
+        sb.append(") KEY (");
+        sb.append(fields[0]);
+        sb.append(") VALUES (");
+        for (int i = 0; i < fields.length; i++) {
+            if (i != 0) sb.append(',');
+            sb.append('?');
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+
+    @Override
+    public boolean isRetryable(SQLException e) {
+
+        int code = e.getErrorCode();
+        return code == LOCK_TIMEOUT || code == DEADLOCK || code == CONCURRENT_UPDATE ||
+               super.isRetryable(e);
+    }
+
+    /**
+     * Reads the plan of EXPLAIN, in which a full scan is commented as
+     * "tableScan", and an ORDER BY or a GROUP BY using an index is commented as
+     * "index sorted" or "group sorted".
+     */
+    @Override
+    public QueryPlan plan(String sql, ResultSet resultSet) throws SQLException {
+
+        List<String> details = readPlan(resultSet);
+        String plan = String.join("\n", details);
+
+        Set<String> scans = new HashSet<String>();
+        Matcher m = TABLE_SCAN.matcher(plan);
+        while (m.find()) {
+            scans.add(m.group(1));
+        }
+        boolean tempOrder = QueryPlan.hasOrderBy(sql) && !plan.contains("/* index sorted */");
+        boolean tempGroup = plan.contains("GROUP BY") && !plan.contains("/* group sorted */");
+
+        return new QueryPlan(sql, details, scans, tempOrder, tempGroup);
+    }
+
+    @Override
+    protected void setDate(PreparedStatement preparedStatement, int parameterIndex, Date date)
+        throws SQLException {
+
+        preparedStatement.setTimestamp(parameterIndex, new Timestamp(date.getTime()));
+    }
+
+    @Override
+    protected Date getDate(ResultSet resultSet, String field) throws SQLException {
+
+        return toDate(resultSet.getTimestamp(field));
+    }
+
+    @Override
+    protected Date getDate(ResultSet resultSet, int column) throws SQLException {
+
+        return toDate(resultSet.getTimestamp(column));
+    }
+
+    private static Date toDate(Timestamp timestamp) {
+
+        return timestamp == null ? null : new Date(timestamp.getTime());
+    }
+}
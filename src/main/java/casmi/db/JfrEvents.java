@@ -0,0 +1,221 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.nio.ByteBuffer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of the databases.
+ *
+ * <p>
+ * The events are recorded only while a recording enables them, and only if
+ * their duration exceeds the threshold of the recording, 1 ms by default.
+ * The fields are filled only for the events to be committed, so a disabled
+ * event costs little more than a check of a flag.
+ * </p>
+ *
+ * <pre><code>
+ *     java -XX:StartFlightRecording:filename=db.jfr,+casmi.db.QueryExecuted#threshold=0ms ...
+ * </code></pre>
+ *
+ * @author T. Takeuchi
+ */
+final class JfrEvents {
+
+    private JfrEvents() {
+    }
+
+    @Name("casmi.db.QueryExecuted")
+    @Label("Query Executed")
+    @Category({"casmi", "Database"})
+    @Description("A statement executed and its rows read or written")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class QueryExecuted extends Event {
+
+        @Label("Fingerprint")
+        String fingerprint;
+
+        @Label("Kind")
+        String kind;
+
+        @Label("Table")
+        String table;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Parameter Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Failed")
+        boolean failed;
+
+        void record(String sql, Class<? extends Entity> type, Object[] params, long rows, boolean failed) {
+
+            end();
+            if (!shouldCommit()) return;
+
+            record(sql, Entity.getTablename(type), params, rows, failed);
+        }
+
+        void record(String sql, String table, Object[] params, long rows, boolean failed) {
+
+            end();
+            if (!shouldCommit()) return;
+
+            this.fingerprint = QueryFingerprint.of(sql);
+            this.kind        = DbMetrics.Kind.of(sql).name();
+            this.table       = table;
+            this.rows        = rows;
+            this.bytes       = bytes(params);
+            this.failed      = failed;
+            commit();
+        }
+    }
+
+    @Name("casmi.db.RowsMapped")
+    @Label("Rows Mapped")
+    @Category({"casmi", "Database"})
+    @Description("Rows of a result set mapped to entities")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class RowsMapped extends Event {
+
+        @Label("Table")
+        String table;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Mapping Time")
+        @Timespan
+        long mappingTime;
+
+        void record(Class<? extends Entity> type, long rows, long mappingNanos) {
+
+            end();
+            if (!shouldCommit()) return;
+
+            this.table       = Entity.getTablename(type);
+            this.rows        = rows;
+            this.mappingTime = mappingNanos;
+            commit();
+        }
+    }
+
+    @Name("casmi.db.TransactionCommitted")
+    @Label("Transaction Committed")
+    @Category({"casmi", "Database"})
+    @Description("A commit of a transaction")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class TransactionCommitted extends Event {
+
+        @Label("Database")
+        String database;
+
+        void record(SQLType type) {
+
+            end();
+            if (!shouldCommit()) return;
+
+            this.database = type.name();
+            commit();
+        }
+    }
+
+    @Name("casmi.db.ConnectionAcquired")
+    @Label("Connection Acquired")
+    @Category({"casmi", "Database"})
+    @Description("A connection borrowed from the connection pool, including the wait for a free one")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class ConnectionAcquired extends Event {
+
+        @Label("Created")
+        @Description("A new connection was opened")
+        boolean created;
+
+        @Label("Available")
+        @Description("Connections available after the acquisition")
+        int available;
+
+        void record(boolean created, int available) {
+
+            end();
+            if (!shouldCommit()) return;
+
+            this.created   = created;
+            this.available = available;
+            commit();
+        }
+    }
+
+    @Name("casmi.db.StatementPrepared")
+    @Label("Statement Prepared")
+    @Category({"casmi", "Database"})
+    @Description("A statement prepared by the JDBC driver")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class StatementPrepared extends Event {
+
+        @Label("Fingerprint")
+        String fingerprint;
+
+        void record(String sql) {
+
+            end();
+            if (!shouldCommit()) return;
+
+            this.fingerprint = QueryFingerprint.of(sql);
+            commit();
+        }
+    }
+
+    /**
+     * Returns the bytes of the binary and text parameters.
+     */
+    static long bytes(Object[] params) {
+
+        long bytes = 0;
+        for (Object param : params) {
+            if (param instanceof byte[]) {
+                bytes += ((byte[])param).length;
+            } else if (param instanceof ByteBuffer) {
+                bytes += ((ByteBuffer)param).remaining();
+            } else if (param instanceof CharSequence) {
+                bytes += ((CharSequence)param).length();
+            }
+        }
+        return bytes;
+    }
+}
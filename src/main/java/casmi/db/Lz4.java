@@ -0,0 +1,208 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The LZ4 block format.
+ *
+ * <p>
+ * A block is a sequence of a token, literals, the offset and the length of a
+ * match; matches are found by a hash table of 4-byte sequences. The last 5
+ * bytes of a block are literals, as the format requires.
+ * </p>
+ *
+ * @author T. Takeuchi
+ */
+final class Lz4 {
+
+    private static final int MIN_MATCH = 4;
+
+    /** A match does not start in the last 12 bytes. */
+    private static final int MF_LIMIT = 12;
+
+    private static final int LAST_LITERALS = 5;
+
+    private static final int MAX_OFFSET = 65535;
+
+    private static final int HASH_LOG = 12;
+
+    /** Positions of the 4-byte sequences plus 1, reused for the blocks. */
+    private final int[] table = new int[1 << HASH_LOG];
+
+    /**
+     * Returns the maximum length of a compressed block.
+     */
+    static int maxCompressedLength(int length) {
+
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses a block.
+     *
+     * @return the length of the compressed block.
+     */
+    int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff) {
+
+        Arrays.fill(table, 0);
+
+        int end    = srcOff + srcLen;
+        int anchor = srcOff;
+        int ip     = srcOff;
+        int op     = dstOff;
+
+        if (MF_LIMIT < srcLen) {
+            int matchLimit = end - MF_LIMIT;
+            int extendLimit = end - LAST_LITERALS;
+            while (ip < matchLimit) {
+                int seq = readInt(src, ip);
+                int h = hash(seq);
+                int ref = table[h] - 1;
+                table[h] = ip + 1;
+
+                if (ref < 0 || MAX_OFFSET < ip - ref || readInt(src, ref) != seq) {
+                    ip++;
+                    continue;
+                }
+
+                int len = MIN_MATCH;
+                while (ip + len < extendLimit && src[ref + len] == src[ip + len]) {
+                    len++;
+                }
+
+                op = writeLiterals(src, anchor, ip - anchor, len - MIN_MATCH, dst, op);
+                dst[op++] = (byte)(ip - ref);
+                dst[op++] = (byte)((ip - ref) >>> 8);
+                if (15 <= len - MIN_MATCH) op = writeLength(len - MIN_MATCH - 15, dst, op);
+
+                ip    += len;
+                anchor = ip;
+            }
+        }
+
+        op = writeLiterals(src, anchor, end - anchor, 0, dst, op);
+        return op - dstOff;
+    }
+
+    /**
+     * Writes a token and literals.
+     */
+    private static int writeLiterals(byte[] src, int off, int len, int matchLen, byte[] dst, int op) {
+
+        dst[op++] = (byte)((Math.min(len, 15) << 4) | Math.min(matchLen, 15));
+        if (15 <= len) op = writeLength(len - 15, dst, op);
+        System.arraycopy(src, off, dst, op, len);
+        return op + len;
+    }
+
+    private static int writeLength(int len, byte[] dst, int op) {
+
+        while (255 <= len) {
+            dst[op++] = (byte)255;
+            len -= 255;
+        }
+        dst[op++] = (byte)len;
+        return op;
+    }
+
+    /**
+     * Decompresses a block.
+     *
+     * @return the length of the decompressed block.
+     * @throws IOException
+     *             if the block is corrupted.
+     */
+    static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen)
+        throws IOException {
+
+        int ip  = srcOff;
+        int end = srcOff + srcLen;
+        int op  = dstOff;
+        int dstEnd = dstOff + dstLen;
+
+        try {
+            while (ip < end) {
+                int token = src[ip++] & 0xff;
+
+                // literals
+                int len = token >>> 4;
+                if (len == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        len += b;
+                    } while (b == 255);
+                }
+                if (end - ip < len || dstEnd - op < len) throw corrupted();
+                System.arraycopy(src, ip, dst, op, len);
+                ip += len;
+                op += len;
+                if (ip == end) break;
+
+                // match
+                int offset = (src[ip] & 0xff) | (src[ip + 1] & 0xff) << 8;
+                ip += 2;
+                len = token & 15;
+                if (len == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        len += b;
+                    } while (b == 255);
+                }
+                len += MIN_MATCH;
+                if (offset == 0 || op - dstOff < offset || dstEnd - op < len) throw corrupted();
+
+                int ref = op - offset;
+                if (len <= offset) {
+                    System.arraycopy(dst, ref, dst, op, len);
+                    op += len;
+                } else {
+                    // the match overlaps the output
+                    for (int i = 0; i < len; i++) {
+                        dst[op++] = dst[ref++];
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw corrupted();
+        }
+
+        return op - dstOff;
+    }
+
+    private static IOException corrupted() {
+
+        return new IOException("The LZ4 block is corrupted.");
+    }
+
+    private static int readInt(byte[] b, int i) {
+
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+
+    private static int hash(int seq) {
+
+        return (seq * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.Blob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import casmi.db.util.DateUtil;
+
+/**
+ * MySQL5 dialect.
+ *
+ * @author T. Takeuchi
+ */
+class MySQLDialect extends AbstractDialect {
+
+    /** ER_LOCK_DEADLOCK and ER_LOCK_WAIT_TIMEOUT. */
+    private static final int DEADLOCK = 1213, LOCK_WAIT_TIMEOUT = 1205;
+
+    MySQLDialect() {
+
+        super(SQLType.MYSQL_5, 65535,
+              EnumSet.of(Capability.MULTI_ROW_INSERT, Capability.BATCH, Capability.UPSERT,
+                         Capability.STREAMING));
+
+        type(Integer.class,    int.class,      "INT");
+        type(  Short.class,  short.class, "SMALLINT");
+        type(   Long.class,   long.class,   "BIGINT");
+        type(  Float.class,  float.class,    "FLOAT");
+        type( Double.class, double.class,   "DOUBLE");
+        type( String.class,         null,     "TEXT");
+        type(   Date.class,         null, "DATETIME");
+        type(   Blob.class,         null,     "BLOB");
+    }
+
+    @Override
+    protected String autoIncrement() {
+
+        return "id INT AUTO_INCREMENT";
+    }
+
+    @Override
+    public String createTable(String tablename, Column primaryKey, boolean autoPrimaryKey,
+                              Column[] columns) {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("CREATE TABLE ");
+        sb.append(tablename);
+        sb.append(" (");
+
+        if (autoPrimaryKey) {
+            sb.append(autoIncrement());
+        } else {
+            appendColumn(sb, primaryKey);
+        }
+
+        for (Column column : columns) {
+            sb.append(',');
+            appendColumn(sb, column);
+        }
+
+        sb.append(",PRIMARY KEY(");
+        if (autoPrimaryKey) {
+            sb.append("id");
+        } else {
+            appendIndexColumn(sb, primaryKey);
+        }
+        sb.append("))");
+
+        return sb.toString();
+    }
+
+    @Override
+    protected void appendIndexColumn(StringBuilder sb, Column column) {
+
+        sb.append(column.getField());
+
+        // A TEXT or BLOB column is indexed by its prefix.
+        String type = type(column).toUpperCase();
+        if (type.endsWith("TEXT") || type.endsWith("BLOB")) {
+            sb.append("(255)");
+        }
+    }
+
+    @Override
+    public String upsert(String tablename, String[] fields) {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("INSERT INTO ");
+        sb.append(tablename);
+        appendValues(sb, fields, 1);
+        sb.append(" ON DUPLICATE KEY UPDATE ");
+        if (fields.length == 1) {
+            sb.append(fields[0]).append('=').append(fields[0]);
+        }
+        for (int i = 1; i < fields.length; i++) {
+            if (i != 1) sb.append(',');
+            sb.append(fields[i]).append("=VALUES(").append(fields[i]).append(')');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void prepareStreaming(Statement statement) throws SQLException {
+
+        // Connector/J streams rows only with this fetch size.
+        statement.setFetchSize(Integer.MIN_VALUE);
+    }
+
+    @Override
+    public boolean isRetryable(SQLException e) {
+
+        return e.getErrorCode() == DEADLOCK || e.getErrorCode() == LOCK_WAIT_TIMEOUT ||
+               super.isRetryable(e);
+    }
+
+    /**
+     * MySQL 5.5 and older explain only SELECT statements.
+     */
+    @Override
+    public String explain(String sql) {
+
+        if (DbMetrics.Kind.of(sql) != DbMetrics.Kind.SELECT) return null;
+
+        return "EXPLAIN " + sql;
+    }
+
+    /**
+     * Reads the rows of EXPLAIN; a type ALL is a full scan, and "Using
+     * filesort" or "Using temporary" in Extra is a temporary structure.
+     */
+    @Override
+    public QueryPlan plan(String sql, ResultSet resultSet) throws SQLException {
+
+        List<String> details = new ArrayList<String>();
+        Set<String> scans = new HashSet<String>();
+        boolean tempOrder = false, tempGroup = false;
+        boolean ordered = QueryPlan.hasOrderBy(sql), grouped = QueryPlan.hasGroupBy(sql);
+        while (resultSet.next()) {
+            String table = resultSet.getString("table");
+            String type  = resultSet.getString("type");
+            String key   = resultSet.getString("key");
+            String extra = resultSet.getString("Extra");
+            details.add(table + ": type=" + type + ", key=" + key + ", rows=" +
+                        resultSet.getString("rows") + ", extra=" + extra);
+
+            if ("ALL".equals(type) && table != null) scans.add(table);
+            if (extra == null) continue;
+            if (extra.contains("Using filesort")) {
+                if (ordered || !grouped) tempOrder = true;
+                else tempGroup = true;
+            }
+            if (extra.contains("Using temporary")) {
+                if (grouped) tempGroup = true;
+                else tempOrder = true;
+            }
+        }
+        return new QueryPlan(sql, details, scans, tempOrder, tempGroup);
+    }
+
+    @Override
+    protected void setDate(PreparedStatement preparedStatement, int parameterIndex, Date date)
+        throws SQLException {
+
+        // DATETIME keeps the time of day, which java.sql.Date truncates.
+        preparedStatement.setTimestamp(parameterIndex, DateUtil.toTimestamp(date));
+    }
+
+    @Override
+    protected Date getDate(ResultSet resultSet, String field) throws SQLException {
+
+        return DateUtil.toUtilDate(resultSet.getTimestamp(field));
+    }
+
+    @Override
+    protected Date getDate(ResultSet resultSet, int column) throws SQLException {
+
+        return DateUtil.toUtilDate(resultSet.getTimestamp(column));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+/**
+ * A page of records read by keyset pagination.
+ *
+ * @see casmi.db.Query#pageSize(int)
+ * @see casmi.db.Query#after(Object...)
+ *
+ * @author T. Takeuchi
+ */
+public class Page<T extends Entity> {
+
+    private final T[] entities;
+    private final Object[] nextKey;
+    private final boolean next;
+
+    Page(T[] entities, Object[] nextKey, boolean next) {
+
+        this.entities = entities;
+        this.nextKey  = nextKey;
+        this.next     = next;
+    }
+
+    /**
+     * Returns the records of this page.
+     *
+     * @return the records.
+     */
+    public T[] getEntities() {
+
+        return entities;
+    }
+
+    /**
+     * Returns the page token to read the next page.
+     * Pass it to {@link Query#after(Object...)}.
+     *
+     * @return the page token, or null if this page is empty.
+     */
+    public Object[] getNextKey() {
+
+        return nextKey;
+    }
+
+    /**
+     * Returns true if there may be a next page.
+     *
+     * @return true if this page is full.
+     */
+    public boolean hasNext() {
+
+        return next;
+    }
+}
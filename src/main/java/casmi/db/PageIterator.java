@@ -0,0 +1,86 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+
+/**
+ * An iterator which walks records in fixed-size pages.
+ *
+ * <p>
+ * Example:
+ * <pre><code>
+ *     PageIterator&lt;MyEntity&gt; it = sqlite.pages(MyEntity.class, 1000);
+ *     while (it.hasNext()) {
+ *         for (MyEntity e : it.next()) {
+ *             ...
+ *         }
+ *     }
+ * </code></pre>
+ * </p>
+ *
+ * @see casmi.db.Page
+ *
+ * @author T. Takeuchi
+ */
+public class PageIterator<T extends Entity> {
+
+    private final SQL sql;
+    private final Class<T> type;
+    private final Query query;
+
+    private boolean next = true;
+
+    PageIterator(SQL sql, Class<T> type, Query query) {
+
+        this.sql   = sql;
+        this.type  = type;
+        this.query = query;
+    }
+
+    /**
+     * Returns true if there may be a next page.
+     * The last page may be empty.
+     *
+     * @return true if the iteration has more pages.
+     */
+    public boolean hasNext() {
+
+        return next;
+    }
+
+    /**
+     * Returns the records of the next page.
+     *
+     * @return the records.
+     * @throws SQLException
+     */
+    public T[] next() throws SQLException {
+
+        if (!next) throw new NoSuchElementException();
+
+        Page<T> page = sql.page(type, query);
+        next = page.hasNext();
+        if (next) query.after(page.getNextKey());
+
+        return page.getEntities();
+    }
+}
@@ -30,12 +30,15 @@ public class Query {
     private  String order;
     private boolean desc;
     private     int limit;
+    private     int offset;
+    private Object[] after;
 
     private boolean selectEnable;
     private boolean whereEnable;
     private boolean groupEnable;
     private boolean orderEnable;
     private boolean limitEnable;
+    private boolean afterEnable;
 
     public Query select(String... fields) {
 
@@ -100,6 +103,92 @@ public class Query {
         return this;
     }
 
+    /**
+     * Skips the given number of records. The offset takes effect together with
+     * {@link #limit(int)}.
+     *
+     * @param num
+     *            the number of records to skip.
+     * @return this query.
+     */
+    public Query offset(int num) {
+
+        offset = num;
+        return this;
+    }
+
+    /**
+     * Seeks past the given page token.
+     *
+     * <p>
+     * The token is the key of the last record of the previous page, as returned
+     * by {@link Page#getNextKey()}. When this query is ordered by a column other
+     * than the primary key, the token holds the value of the order column
+     * followed by the value of the primary key.
+     * </p>
+     *
+     * @param key
+     *            the page token.
+     * @return this query.
+     */
+    public Query after(Object... key) {
+
+        after = key;
+        afterEnable = key != null && key.length != 0;
+        return this;
+    }
+
+    /**
+     * Sets the number of records of a page.
+     * This is equal to {@link #limit(int)}, but the query is always ordered by
+     * the seek key.
+     *
+     * @param size
+     *            the number of records of a page.
+     * @return this query.
+     */
+    public Query pageSize(int size) {
+
+        return limit(size);
+    }
+
+    /**
+     * Returns a copy of this query.
+     */
+    Query copy() {
+
+        Query query = new Query();
+        query.selects      = new ArrayList<String>(selects);
+        query.where        = where;
+        query.group        = group;
+        query.order        = order;
+        query.desc         = desc;
+        query.limit        = limit;
+        query.offset       = offset;
+        query.after        = after;
+        query.selectEnable = selectEnable;
+        query.whereEnable  = whereEnable;
+        query.groupEnable  = groupEnable;
+        query.orderEnable  = orderEnable;
+        query.limitEnable  = limitEnable;
+        query.afterEnable  = afterEnable;
+        return query;
+    }
+
+    /**
+     * Adds a condition which must be satisfied regardless of OR conditions in
+     * the where clause.
+     */
+    Query restrict(String condition) {
+
+        if (whereEnable) {
+            where = "(" + where + ") AND " + condition;
+        } else {
+            where(condition);
+        }
+        return this;
+    }
+
     String[] getSelects() {
 
         return selects.toArray(new String[selects.size()]);
@@ -130,6 +219,16 @@ public class Query {
         return limit;
     }
 
+    int getOffset() {
+
+        return offset;
+    }
+
+    Object[] getAfter() {
+
+        return after;
+    }
+
     boolean isSelectEnable() {
 
         return selectEnable;
@@ -154,4 +253,9 @@ public class Query {
 
         return limitEnable;
     }
+
+    boolean isAfterEnable() {
+
+        return afterEnable;
+    }
 }
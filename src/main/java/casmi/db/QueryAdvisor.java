@@ -0,0 +1,479 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An advisor of indexes from the plans of the executed statements.
+ *
+ * <p>
+ * The advisor is a {@link StatementListener} which collects the distinct
+ * shapes of the queries, updates and deletes by their
+ * {@link QueryFingerprint}s, with their frequency and time. {@link #analyze()}
+ * explains a sample statement of each shape by the database, such as
+ * <code>EXPLAIN QUERY PLAN</code> of SQLite and <code>EXPLAIN</code> of MySQL,
+ * finds full table scans and temporary B-trees for ORDER BY and GROUP BY, and
+ * suggests indexes on the columns of the conditions and the orders.
+ * </p>
+ *
+ * <p>
+ * The statements are explained on the connection of the database, so
+ * {@link #analyze()} and {@link #report()} should be called on the thread
+ * using the database. Redacted parameters are bound as they are, which may
+ * fail the explanation of some statements.
+ * </p>
+ *
+ * <pre><code>
+ *     QueryAdvisor advisor = new QueryAdvisor(sqlite);
+ *     sqlite.addStatementListener(advisor);
+ *     ...
+ *     System.out.println(advisor.report());
+ * </code></pre>
+ *
+ * @author T. Takeuchi
+ */
+public class QueryAdvisor implements StatementListener {
+
+    private static final Pattern CONDITION = Pattern.compile(
+        "([A-Za-z_][A-Za-z0-9_]*(?:\\.[A-Za-z_][A-Za-z0-9_]*)?)\\s*" +
+        "(==|=|<>|!=|<=|>=|<|>|\\bNOT\\s+LIKE\\b|\\bLIKE\\b|\\bNOT\\s+IN\\b|\\bIN\\b|\\bBETWEEN\\b|\\bIS\\b)",
+        Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern WHERE = Pattern.compile("\\bWHERE\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern END_OF_WHERE = Pattern.compile(
+        "\\bORDER\\s+BY\\b|\\bGROUP\\s+BY\\b|\\bHAVING\\b|\\bLIMIT\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern ORDER_BY = Pattern.compile("\\bORDER\\s+BY\\b(.*?)(?:\\bLIMIT\\b|$)",
+                                                            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern GROUP_BY = Pattern.compile(
+        "\\bGROUP\\s+BY\\b(.*?)(?:\\bHAVING\\b|\\bORDER\\s+BY\\b|\\bLIMIT\\b|$)",
+        Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final SQL sql;
+
+    private final ConcurrentMap<String, Shape> shapes = new ConcurrentHashMap<String, Shape>();
+
+    /**
+     * @param sql
+     *            the database explaining the statements.
+     */
+    public QueryAdvisor(SQL sql) {
+
+        this.sql = sql;
+    }
+
+    @Override
+    public void before(StatementEvent event) {
+    }
+
+    @Override
+    public void after(StatementEvent event) {
+
+        DbMetrics.Kind kind = event.getKind();
+        if (kind != DbMetrics.Kind.SELECT && kind != DbMetrics.Kind.UPDATE &&
+            kind != DbMetrics.Kind.DELETE) return;
+
+        String fingerprint = QueryFingerprint.of(event.getSql());
+        Shape shape = shapes.get(fingerprint);
+        if (shape == null) {
+            shape = new Shape(fingerprint, event);
+            Shape previous = shapes.putIfAbsent(fingerprint, shape);
+            if (previous != null) shape = previous;
+        }
+        shape.count.increment();
+        shape.nanos.add(event.getElapsedNanos());
+    }
+
+    @Override
+    public void error(StatementEvent event, SQLException e) {
+    }
+
+    /**
+     * Explains the shapes not explained yet, and returns the suggested
+     * indexes in descending order of the time of the statements.
+     *
+     * @return the suggestions.
+     * @throws SQLException
+     */
+    public synchronized List<Suggestion> analyze() throws SQLException {
+
+        Map<String, Suggestion> suggestions = new LinkedHashMap<String, Suggestion>();
+        for (Shape shape : shapes.values()) {
+            if (!shape.explained) explain(shape);
+            if (shape.plan == null || !shape.plan.hasProblems()) continue;
+
+            for (Suggestion s : suggest(shape)) {
+                String key = s.table.toLowerCase(Locale.ROOT) + s.columns;
+                Suggestion same = suggestions.get(key);
+                if (same == null) {
+                    suggestions.put(key, s);
+                } else {
+                    same.merge(s);
+                }
+            }
+        }
+
+        List<Suggestion> list = new ArrayList<Suggestion>(suggestions.values());
+        Collections.sort(list, new Comparator<Suggestion>() {
+
+            @Override
+            public int compare(Suggestion a, Suggestion b) {
+                int c = Long.compare(b.totalNanos, a.totalNanos);
+                return c != 0 ? c : Long.compare(b.count, a.count);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Returns the plans of the explained shapes by their fingerprints.
+     */
+    public synchronized Map<String, QueryPlan> getPlans() {
+
+        Map<String, QueryPlan> plans = new LinkedHashMap<String, QueryPlan>();
+        for (Shape shape : shapes.values()) {
+            if (shape.plan != null) plans.put(shape.fingerprint, shape.plan);
+        }
+        return plans;
+    }
+
+    /**
+     * Analyzes the statements and returns a report of the suggested indexes.
+     *
+     * @return the report.
+     * @throws SQLException
+     */
+    public String report() throws SQLException {
+
+        List<Suggestion> suggestions = analyze();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%d query shapes, %d index suggestions%n", shapes.size(), suggestions.size()));
+        int rank = 1;
+        for (Suggestion s : suggestions) {
+            sb.append(String.format("%3d. %s%n", rank++, s));
+            for (String fingerprint : s.fingerprints) {
+                sb.append("       ").append(fingerprint).append(String.format("%n"));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Forgets the collected shapes.
+     */
+    public synchronized void reset() {
+
+        shapes.clear();
+    }
+
+    private void explain(Shape shape) {
+
+        shape.explained = true;
+
+        Dialect dialect = sql.getDialect();
+        String explain = dialect.explain(shape.sql);
+        if (explain == null || sql.getConnection() == null) return;
+
+        try {
+            PreparedStatement ps = sql.getConnection().prepareStatement(explain);
+            try {
+                for (int i = 0; i < shape.params.length; i++) {
+                    dialect.setParameter(ps, i + 1, shape.params[i]);
+                }
+                ResultSet rs = ps.executeQuery();
+                try {
+                    shape.plan = dialect.plan(shape.sql, rs);
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                ps.close();
+            }
+        } catch (SQLException e) {
+            // The statement cannot be explained, e.g. with redacted parameters.
+            shape.plan = null;
+        }
+    }
+
+    private List<Suggestion> suggest(Shape shape) {
+
+        List<Suggestion> list = new ArrayList<Suggestion>();
+        QueryPlan plan = shape.plan;
+        Entity entity = shape.entityType == null ? null : sql.entity(shape.entityType);
+
+        List<String> equals = new ArrayList<String>();
+        List<String> ranges = new ArrayList<String>();
+        conditions(shape.sql, equals, ranges);
+        List<String> orders = plan.isTemporaryOrder() ? clause(ORDER_BY, shape.sql) : new ArrayList<String>();
+        List<String> groups = plan.isTemporaryGroup() ? clause(GROUP_BY, shape.sql) : new ArrayList<String>();
+
+        Set<String> tables = new LinkedHashSet<String>(plan.getScannedTables());
+        if (tables.isEmpty() && entity != null) tables.add(entity.tablename);
+
+        for (String table : tables) {
+            Entity e = entity != null && entity.tablename.equalsIgnoreCase(table) ? entity : null;
+
+            // equalities first, then a range for a scan, or the order or the
+            // group for a temporary B-tree
+            boolean scanned = plan.getScannedTables().contains(table);
+            Set<String> columns = new LinkedHashSet<String>();
+            addColumns(e, equals, columns);
+            if (scanned) addColumns(e, ranges, columns);
+            if (!scanned || ranges.isEmpty()) addColumns(e, groups.isEmpty() ? orders : groups, columns);
+            if (columns.isEmpty()) continue;
+
+            // the primary key has been indexed.
+            if (e != null && !e.autoPrimaryKey && columns.size() == 1 &&
+                columns.contains(e.primaryKey.getField())) continue;
+
+            List<String> reasons = new ArrayList<String>();
+            if (scanned) reasons.add("full scan");
+            if (plan.isTemporaryOrder()) reasons.add("temporary B-tree for ORDER BY");
+            if (plan.isTemporaryGroup()) reasons.add("temporary B-tree for GROUP BY");
+
+            String name = e != null ? e.tablename : table;
+            list.add(new Suggestion(name, e == null ? null : shape.entityType,
+                                    new ArrayList<String>(columns), reasons, shape));
+        }
+        return list;
+    }
+
+    /**
+     * Adds the columns of the entity, or all names if the entity is unknown.
+     */
+    private static void addColumns(Entity entity, List<String> names, Set<String> columns) {
+
+        for (String name : names) {
+            if (entity == null) {
+                columns.add(name);
+                continue;
+            }
+            if (!entity.autoPrimaryKey && entity.primaryKey.getField().equalsIgnoreCase(name)) {
+                columns.add(entity.primaryKey.getField());
+                continue;
+            }
+            for (Column c : entity.columns) {
+                if (c.getField().equalsIgnoreCase(name) || c.getName().equalsIgnoreCase(name)) {
+                    columns.add(c.getField());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the columns compared in the WHERE clause.
+     */
+    private static void conditions(String sql, List<String> equals, List<String> ranges) {
+
+        Matcher where = WHERE.matcher(sql);
+        if (!where.find()) return;
+        String clause = sql.substring(where.end());
+        Matcher end = END_OF_WHERE.matcher(clause);
+        if (end.find()) clause = clause.substring(0, end.start());
+
+        Matcher m = CONDITION.matcher(clause);
+        while (m.find()) {
+            String column = unqualify(m.group(1));
+            String op = m.group(2).toUpperCase(Locale.ROOT);
+            if (isKeyword(column) || op.startsWith("NOT") || op.equals("<>") || op.equals("!=")) continue;
+            if (op.equals("=") || op.equals("==") || op.equals("IN") || op.equals("IS")) {
+                if (!equals.contains(column)) equals.add(column);
+            } else {
+                if (!ranges.contains(column)) ranges.add(column);
+            }
+        }
+    }
+
+    /**
+     * Reads the columns of ORDER BY or GROUP BY.
+     */
+    private static List<String> clause(Pattern pattern, String sql) {
+
+        List<String> columns = new ArrayList<String>();
+        Matcher m = pattern.matcher(sql);
+        if (!m.find()) return columns;
+        for (String item : m.group(1).split(",")) {
+            String[] words = item.trim().split("\\s+");
+            if (words[0].matches("[A-Za-z_][A-Za-z0-9_.]*")) columns.add(unqualify(words[0]));
+        }
+        return columns;
+    }
+
+    private static String unqualify(String column) {
+
+        int dot = column.lastIndexOf('.');
+        return dot < 0 ? column : column.substring(dot + 1);
+    }
+
+    private static boolean isKeyword(String word) {
+
+        String w = word.toUpperCase(Locale.ROOT);
+        return w.equals("AND") || w.equals("OR") || w.equals("NOT") || w.equals("NULL");
+    }
+
+    /**
+     * A distinct shape of statements.
+     */
+    private static final class Shape {
+
+        final String fingerprint;
+        final String sql;
+        final Object[] params;
+        final Class<? extends Entity> entityType;
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+
+        volatile boolean explained = false;
+        volatile QueryPlan plan;
+
+        Shape(String fingerprint, StatementEvent sample) {
+
+            this.fingerprint = fingerprint;
+            this.sql         = sample.getSql();
+            this.params      = sample.getParameters();
+            this.entityType  = sample.getEntityType();
+        }
+    }
+
+    /**
+     * A suggested index.
+     */
+    public static final class Suggestion {
+
+        private final String table;
+        private final Class<? extends Entity> entityType;
+        private final List<String> columns;
+        private final Set<String> reasons = new LinkedHashSet<String>();
+        private final Set<String> fingerprints = new LinkedHashSet<String>();
+        private long count;
+        private long totalNanos;
+
+        Suggestion(String table, Class<? extends Entity> entityType, List<String> columns,
+                   List<String> reasons, Shape shape) {
+
+            this.table      = table;
+            this.entityType = entityType;
+            this.columns    = Collections.unmodifiableList(columns);
+            this.reasons.addAll(reasons);
+            this.fingerprints.add(shape.fingerprint);
+            this.count      = shape.count.sum();
+            this.totalNanos = shape.nanos.sum();
+        }
+
+        void merge(Suggestion other) {
+
+            reasons.addAll(other.reasons);
+            fingerprints.addAll(other.fingerprints);
+            count      += other.count;
+            totalNanos += other.totalNanos;
+        }
+
+        public String getTable() {
+
+            return table;
+        }
+
+        /**
+         * Returns the entity class of the table, or null if unknown.
+         */
+        public Class<? extends Entity> getEntityType() {
+
+            return entityType;
+        }
+
+        /**
+         * Returns the columns of the index in order.
+         */
+        public List<String> getColumns() {
+
+            return columns;
+        }
+
+        /**
+         * Returns the problems of the plans, such as "full scan".
+         */
+        public Set<String> getReasons() {
+
+            return Collections.unmodifiableSet(reasons);
+        }
+
+        /**
+         * Returns the fingerprints of the statements which would use the
+         * index.
+         */
+        public Set<String> getFingerprints() {
+
+            return Collections.unmodifiableSet(fingerprints);
+        }
+
+        /**
+         * Returns the number of the executions of the statements.
+         */
+        public long getCount() {
+
+            return count;
+        }
+
+        public long getTotalNanos() {
+
+            return totalNanos;
+        }
+
+        /**
+         * Returns the annotation declaring the index on the entity class.
+         */
+        public String toAnnotation() {
+
+            StringBuilder sb = new StringBuilder("@Index(columns = {");
+            for (int i = 0; i < columns.size(); i++) {
+                if (i != 0) sb.append(", ");
+                sb.append('"').append(columns.get(i)).append('"');
+            }
+            return sb.append("})").toString();
+        }
+
+        @Override
+        public String toString() {
+
+            String target = entityType != null ? entityType.getSimpleName() : table;
+            return String.format("%s on %s: %s; %d calls, %.3f ms", toAnnotation(), target,
+                                 String.join(", ", reasons), count, totalNanos / 1e6);
+        }
+    }
+}
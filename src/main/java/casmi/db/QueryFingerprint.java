@@ -0,0 +1,152 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.util.regex.Pattern;
+
+/**
+ * Fingerprints of statements.
+ *
+ * <p>
+ * A fingerprint is the statement whose literals are replaced with
+ * placeholders, so that the statements differing only in their values, such
+ * as the queries of {@link Query#where(String)} with inlined values, have the
+ * same fingerprint. Comments are removed, white spaces are collapsed and
+ * lists of placeholders such as <code>IN (?,?,?)</code> are folded into
+ * <code>IN (?+)</code>.
+ * </p>
+ *
+ * <pre><code>
+ *     QueryFingerprint.of("SELECT * FROM t WHERE a = 'x' AND b IN (1, 2)");
+ *     // SELECT * FROM t WHERE a = ? AND b IN (?+)
+ * </code></pre>
+ *
+ * @author T. Takeuchi
+ */
+public final class QueryFingerprint {
+
+    private static final Pattern LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+
+    private QueryFingerprint() {
+    }
+
+    /**
+     * Returns the fingerprint of a statement.
+     *
+     * @param sql
+     *            a statement.
+     * @return the fingerprint.
+     */
+    public static String of(String sql) {
+
+        int n = sql.length();
+        StringBuilder sb = new StringBuilder(n);
+        boolean space = false;
+        boolean list = false;
+        int i = 0;
+        while (i < n) {
+            char c = sql.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                space = true;
+                i++;
+                continue;
+            }
+            if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+                while (i < n && sql.charAt(i) != '\n') i++;
+                space = true;
+                continue;
+            }
+            if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+                space = true;
+                continue;
+            }
+            if (space && sb.length() != 0) sb.append(' ');
+            space = false;
+
+            if (c == '\'') {
+                // a string literal, in which '' is a quote
+                i++;
+                while (i < n) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < n && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+                sb.append('?');
+            } else if (c == '"' || c == '`') {
+                // a quoted identifier
+                int end = sql.indexOf(c, i + 1);
+                end = end < 0 ? n : end + 1;
+                sb.append(sql, i, end);
+                i = end;
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < n && Character.isDigit(sql.charAt(i + 1)))) {
+                // a number, unless a part of an identifier
+                if (0 < i && isIdentifierPart(sql.charAt(i - 1))) {
+                    while (i < n && isIdentifierPart(sql.charAt(i))) sb.append(sql.charAt(i++));
+                    continue;
+                }
+                i = skipNumber(sql, i);
+                sb.append('?');
+            } else if (isIdentifierPart(c)) {
+                while (i < n && isIdentifierPart(sql.charAt(i))) sb.append(sql.charAt(i++));
+            } else {
+                if (c == ',' && sb.length() != 0 && sb.charAt(sb.length() - 1) == '?') list = true;
+                sb.append(c);
+                i++;
+            }
+        }
+
+        String fingerprint = sb.toString();
+        return list ? LIST.matcher(fingerprint).replaceAll("(?+)") : fingerprint;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static int skipNumber(String sql, int i) {
+
+        int n = sql.length();
+        if (sql.charAt(i) == '0' && i + 1 < n && (sql.charAt(i + 1) == 'x' || sql.charAt(i + 1) == 'X')) {
+            i += 2;
+            while (i < n && Character.digit(sql.charAt(i), 16) != -1) i++;
+            return i;
+        }
+        while (i < n && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) i++;
+        if (i < n && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+            int j = i + 1;
+            if (j < n && (sql.charAt(j) == '+' || sql.charAt(j) == '-')) j++;
+            if (j < n && Character.isDigit(sql.charAt(j))) {
+                i = j;
+                while (i < n && Character.isDigit(sql.charAt(i))) i++;
+            }
+        }
+        return i;
+    }
+}
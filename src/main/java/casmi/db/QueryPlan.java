@@ -0,0 +1,125 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A plan of a statement explained by a database.
+ *
+ * @see casmi.db.QueryAdvisor
+ *
+ * @author T. Takeuchi
+ */
+public final class QueryPlan {
+
+    private static final Pattern ORDER_BY = Pattern.compile("\\bORDER\\s+BY\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern GROUP_BY = Pattern.compile("\\bGROUP\\s+BY\\b|\\bDISTINCT\\b",
+                                                            Pattern.CASE_INSENSITIVE);
+
+    private final String sql;
+    private final List<String> details;
+    private final Set<String> scannedTables;
+    private final boolean temporaryOrder;
+    private final boolean temporaryGroup;
+
+    QueryPlan(String sql, List<String> details, Set<String> scannedTables,
+              boolean temporaryOrder, boolean temporaryGroup) {
+
+        this.sql            = sql;
+        this.details        = Collections.unmodifiableList(details);
+        this.scannedTables  = Collections.unmodifiableSet(scannedTables);
+        this.temporaryOrder = temporaryOrder;
+        this.temporaryGroup = temporaryGroup;
+    }
+
+    static boolean hasOrderBy(String sql) {
+
+        return ORDER_BY.matcher(sql).find();
+    }
+
+    static boolean hasGroupBy(String sql) {
+
+        return GROUP_BY.matcher(sql).find();
+    }
+
+    /**
+     * Returns the explained statement.
+     */
+    public String getSql() {
+
+        return sql;
+    }
+
+    /**
+     * Returns the lines of the plan as the database explained.
+     */
+    public List<String> getDetails() {
+
+        return details;
+    }
+
+    /**
+     * Returns the tables read by full scans, in the case of the database.
+     */
+    public Set<String> getScannedTables() {
+
+        return scannedTables;
+    }
+
+    /**
+     * Returns true if the rows are sorted in a temporary B-tree or a file for
+     * ORDER BY.
+     */
+    public boolean isTemporaryOrder() {
+
+        return temporaryOrder;
+    }
+
+    /**
+     * Returns true if the rows are grouped in a temporary B-tree or table for
+     * GROUP BY or DISTINCT.
+     */
+    public boolean isTemporaryGroup() {
+
+        return temporaryGroup;
+    }
+
+    /**
+     * Returns true if the plan has a full scan or a temporary structure.
+     */
+    public boolean hasProblems() {
+
+        return !scannedTables.isEmpty() || temporaryOrder || temporaryGroup;
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder(sql);
+        for (String detail : details) {
+            sb.append("\n  ").append(detail);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of statements for each fingerprint, like pg_stat_statements of
+ * PostgreSQL.
+ *
+ * <p>
+ * The statistics is a {@link StatementListener} which aggregates the count,
+ * the latencies and the rows of the executed statements by their
+ * {@link QueryFingerprint}s. The number of the fingerprints is bounded; the
+ * statements of new fingerprints beyond the bound are counted as dropped.
+ * </p>
+ *
+ * <pre><code>
+ *     QueryStatistics stats = new QueryStatistics();
+ *     sqlite.addStatementListener(stats);
+ *     ...
+ *     System.out.println(stats.dump(10));
+ * </code></pre>
+ *
+ * @author T. Takeuchi
+ */
+public class QueryStatistics implements StatementListener {
+
+    public static final int DEFAULT_MAX_FINGERPRINTS = 5000;
+
+    private final int maxFingerprints;
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+    /** Fingerprints of the raw statements, cleared when it grows too large. */
+    private final ConcurrentMap<String, String> fingerprints = new ConcurrentHashMap<String, String>();
+
+    private final LongAdder dropped = new LongAdder();
+
+    public QueryStatistics() {
+
+        this(DEFAULT_MAX_FINGERPRINTS);
+    }
+
+    /**
+     * @param maxFingerprints
+     *            the maximum number of the fingerprints.
+     */
+    public QueryStatistics(int maxFingerprints) {
+
+        this.maxFingerprints = maxFingerprints;
+    }
+
+    @Override
+    public void before(StatementEvent event) {
+    }
+
+    @Override
+    public void after(StatementEvent event) {
+
+        Counter counter = counter(event.getSql());
+        if (counter == null) return;
+
+        counter.recorder.record(event.getElapsedNanos());
+        counter.rows.add(event.getRows());
+    }
+
+    @Override
+    public void error(StatementEvent event, SQLException e) {
+
+        Counter counter = counter(event.getSql());
+        if (counter == null) return;
+
+        counter.recorder.errors.increment();
+    }
+
+    private Counter counter(String sql) {
+
+        String fingerprint = fingerprints.get(sql);
+        if (fingerprint == null) {
+            fingerprint = QueryFingerprint.of(sql);
+            if (maxFingerprints * 4 <= fingerprints.size()) fingerprints.clear();
+            fingerprints.put(sql, fingerprint);
+        }
+
+        Counter counter = counters.get(fingerprint);
+        if (counter == null) {
+            if (maxFingerprints <= counters.size()) {
+                dropped.increment();
+                return null;
+            }
+            counter = new Counter();
+            Counter previous = counters.putIfAbsent(fingerprint, counter);
+            if (previous != null) counter = previous;
+        }
+        return counter;
+    }
+
+    /**
+     * Returns the statistics of a fingerprint, or null if no statement of the
+     * fingerprint has been executed.
+     *
+     * @param fingerprint
+     *            the fingerprint.
+     * @return the statistics.
+     */
+    public Entry get(String fingerprint) {
+
+        Counter counter = counters.get(fingerprint);
+        return counter == null ? null : new Entry(fingerprint, counter);
+    }
+
+    /**
+     * Returns the statistics of all fingerprints.
+     */
+    public List<Entry> entries() {
+
+        List<Entry> list = new ArrayList<Entry>(counters.size());
+        for (Map.Entry<String, Counter> e : counters.entrySet()) {
+            list.add(new Entry(e.getKey(), e.getValue()));
+        }
+        return list;
+    }
+
+    /**
+     * Returns the statistics of the fingerprints of the longest total time.
+     *
+     * @param n
+     *            the maximum number of the fingerprints.
+     * @return the statistics in descending order of the total time.
+     */
+    public List<Entry> top(int n) {
+
+        List<Entry> list = entries();
+        Collections.sort(list, new Comparator<Entry>() {
+
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Long.compare(b.getTotalNanos(), a.getTotalNanos());
+            }
+        });
+        return list.size() <= n ? list : new ArrayList<Entry>(list.subList(0, n));
+    }
+
+    /**
+     * Returns a table of the fingerprints of the longest total time.
+     *
+     * @param n
+     *            the maximum number of the fingerprints.
+     * @return the table.
+     */
+    public String dump(int n) {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%8s %12s %10s %10s %10s %10s %10s  %s%n",
+                                "calls", "total ms", "mean ms", "p50 ms", "p99 ms", "max ms", "rows", "query"));
+        for (Entry e : top(n)) {
+            sb.append(String.format("%8d %12.3f %10.3f %10.3f %10.3f %10.3f %10d  %s%n",
+                                    e.getCount(), e.getTotalNanos() / 1e6, e.getMeanNanos() / 1e6,
+                                    e.getPercentile(0.5) / 1e6, e.getPercentile(0.99) / 1e6,
+                                    e.getMaxNanos() / 1e6, e.getRows(), e.getFingerprint()));
+        }
+        long d = dropped.sum();
+        if (d != 0) sb.append(String.format("(%d statements of new fingerprints dropped)%n", d));
+        return sb.toString();
+    }
+
+    /**
+     * Returns the number of the statements not aggregated because of the
+     * bound of the fingerprints.
+     */
+    public long getDropped() {
+
+        return dropped.sum();
+    }
+
+    /**
+     * Clears the statistics.
+     */
+    public void reset() {
+
+        counters.clear();
+        fingerprints.clear();
+        dropped.reset();
+    }
+
+    private static final class Counter {
+
+        final DbMetrics.Recorder recorder = new DbMetrics.Recorder();
+        final LongAdder rows = new LongAdder();
+    }
+
+    /**
+     * The statistics of a fingerprint.
+     */
+    public static final class Entry {
+
+        private final String fingerprint;
+        private final DbMetrics.Stats stats;
+        private final long rows;
+
+        Entry(String fingerprint, Counter counter) {
+
+            this.fingerprint = fingerprint;
+            this.stats       = counter.recorder.stats();
+            this.rows        = counter.rows.sum();
+        }
+
+        public String getFingerprint() {
+
+            return fingerprint;
+        }
+
+        public long getCount() {
+
+            return stats.getCount();
+        }
+
+        public long getErrors() {
+
+            return stats.getErrors();
+        }
+
+        public long getTotalNanos() {
+
+            return stats.getTotalNanos();
+        }
+
+        public double getMeanNanos() {
+
+            return stats.getMeanNanos();
+        }
+
+        public long getMaxNanos() {
+
+            return stats.getMaxNanos();
+        }
+
+        /**
+         * Returns an upper bound of a percentile of the latencies.
+         *
+         * @see DbMetrics.Stats#getPercentile(double)
+         */
+        public long getPercentile(double p) {
+
+            return stats.getPercentile(p);
+        }
+
+        /**
+         * Returns the rows read or written by the statements.
+         */
+        public long getRows() {
+
+            return rows;
+        }
+
+        @Override
+        public String toString() {
+
+            return fingerprint + " " + stats + ", rows: " + rows;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A publisher of the records of a query which fetches rows as they are
+ * requested. A subscription is recorded to the metrics, the statement
+ * listeners and Java Flight Recorder as one statement when it terminates.
+ *
+ * @see casmi.db.SQL#publish(Class, Query)
+ *
+ * @author T. Takeuchi
+ */
+class ResultSetPublisher<T extends Entity> implements Flow.Publisher<T> {
+
+    private final SQL sql;
+    private final Class<T> type;
+    private final String sqlStr;
+    private final Object[] params;
+    private final String[] fields;
+    private final Executor executor;
+
+    ResultSetPublisher(SQL sql, Class<T> type, String sqlStr, Object[] params, String[] fields,
+                       Executor executor) {
+
+        this.sql      = sql;
+        this.type     = type;
+        this.sqlStr   = sqlStr;
+        this.params   = params;
+        this.fields   = fields;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+
+        if (subscriber == null) {
+            throw new NullPointerException("The subscriber is null.");
+        }
+
+        subscriber.onSubscribe(new ResultSetSubscription(subscriber));
+    }
+
+    /**
+     * A subscription reading its own result set. All signals to the subscriber
+     * and all operations on JDBC objects are done by one drain at a time.
+     */
+    private class ResultSetSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super T> subscriber;
+
+        /** Requested but not delivered records. */
+        private final AtomicLong demand = new AtomicLong();
+
+        /** Number of the drains requested while draining. */
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private volatile boolean cancelled = false;
+
+        /** A failure to signal; a bad request or a rejected drain. */
+        private volatile Throwable failure;
+
+        // Accessed only by the drain.
+        private boolean done = false;
+        private ConnectionPool pool;
+        private Connection connection;
+        private PreparedStatement statement;
+        private ResultSet resultSet;
+        private StatementTrace trace;
+        private long rows;
+
+        ResultSetSubscription(Flow.Subscriber<? super T> subscriber) {
+
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+
+            if (n <= 0) {
+                failure = new IllegalArgumentException("The number of requested records must be positive.");
+            } else {
+                long current, next;
+                do {
+                    current = demand.get();
+                    next    = current + n;
+                    if (next < 0) next = Long.MAX_VALUE;
+                } while (!demand.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // No drain runs while this thread holds wip, so this thread
+                    // becomes the drain and terminates the subscription.
+                    failure = e;
+                    run();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+
+            int missed = 1;
+            do {
+                drain();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+
+            if (done) return;
+
+            if (failure != null) {
+                terminate(failure);
+                subscriber.onError(failure);
+                return;
+            }
+            if (cancelled) {
+                terminate(null);
+                return;
+            }
+
+            long n = demand.get();
+            if (n == 0) return;
+
+            long emitted = 0;
+            try {
+                if (resultSet == null) open();
+
+                while (emitted != n) {
+                    if (cancelled) {
+                        terminate(null);
+                        return;
+                    }
+                    if (!resultSet.next()) {
+                        terminate(null);
+                        subscriber.onComplete();
+                        return;
+                    }
+                    subscriber.onNext(sql.map(resultSet, type, fields));
+                    rows++;
+                    emitted++;
+                }
+            } catch (Throwable t) {
+                terminate(t);
+                subscriber.onError(t);
+                return;
+            }
+
+            if (n != Long.MAX_VALUE) {
+                demand.addAndGet(-emitted);
+            }
+        }
+
+        private void open() throws SQLException {
+
+            trace = sql.trace(DbMetrics.Kind.SELECT, type, sqlStr, params);
+
+            pool       = sql.getPool();
+            connection = pool.acquire();
+            statement  = sql.prepare(connection, sqlStr);
+            sql.prepareStreaming(statement);
+            for (int i = 0; i < params.length; i++) {
+                sql.setParameter(statement, i + 1, params[i]);
+            }
+            resultSet  = statement.executeQuery();
+        }
+
+        /**
+         * Terminates the subscription, recording the statement if it has been
+         * executed.
+         *
+         * @param t
+         *            the failure, or null.
+         */
+        private void terminate(Throwable t) {
+
+            done = true;
+            release();
+
+            if (trace == null) return;
+            if (t == null) {
+                trace.after(rows, 0);
+            } else {
+                trace.error(t, rows);
+            }
+            trace = null;
+        }
+
+        private void release() {
+
+            if (resultSet != null) {
+                try {
+                    resultSet.close();
+                } catch (SQLException e) {
+                    // Ignore.
+                }
+                resultSet = null;
+            }
+            if (statement != null) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    // Ignore.
+                }
+                statement = null;
+            }
+            if (connection != null) {
+                pool.release(connection);
+                connection = null;
+            }
+        }
+    }
+}
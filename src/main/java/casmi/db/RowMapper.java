@@ -0,0 +1,55 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A mapper of a row of a raw query to an object.
+ *
+ * <pre><code>
+ *     List&lt;String&gt; names = sqlite.query("SELECT name FROM sake WHERE abv&gt;?",
+ *         new RowMapper&lt;String&gt;() {
+ *             public String map(ResultSet rs, int row) throws SQLException {
+ *                 return rs.getString(1);
+ *             }
+ *         }, 15);
+ * </code></pre>
+ *
+ * @see casmi.db.SQL#query(String, RowMapper, Object...)
+ *
+ * @author T. Takeuchi
+ */
+public interface RowMapper<R> {
+
+    /**
+     * Maps the current row of the result set. The mapper must not move the
+     * cursor of the result set.
+     *
+     * @param rs
+     *            the result set.
+     * @param row
+     *            the 0-based number of the row.
+     * @return the object of the row.
+     * @throws SQLException
+     */
+    R map(ResultSet rs, int row) throws SQLException;
+}
@@ -0,0 +1,251 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads rows of a result set on the calling thread and maps them to entities
+ * on mapper threads.
+ *
+ * <p>
+ * The calling thread only fetches raw column values into row buffers, so the
+ * I/O of the result set overlaps with the reflective mapping. The buffers are
+ * reused, and a bounded ring of them between the reader and the mappers
+ * stops the reader when the mappers fall behind.
+ * </p>
+ *
+ * @author T. Takeuchi
+ */
+class RowPipeline<T extends Entity> {
+
+    /** A buffer of raw column values of a row. */
+    private static class Row {
+
+        final Object[] values;
+        int index;
+
+        Row(int columns) {
+
+            values = new Object[columns];
+        }
+    }
+
+    /** Marks the end of rows. */
+    private static final Row END = new Row(0);
+
+    private final SQL sql;
+    private final Class<T> type;
+    private final ExecutorService executor;
+    private final int mappers;
+
+    /** Empty buffers. */
+    private final BlockingQueue<Row> free;
+
+    /** Buffers filled by the reader. */
+    private final BlockingQueue<Row> filled;
+
+    private final int[] indexes;
+    private final Class<?>[] types;
+    private final String[] fields;
+
+    private final List<T> results = new ArrayList<T>();
+
+    /** Counts mappers which have not finished. */
+    private final CountDownLatch done;
+
+    private volatile Throwable error;
+
+    RowPipeline(SQL sql, Class<T> type, String[] selects, ExecutorService executor, int mappers, int bufferSize) {
+
+        this.sql      = sql;
+        this.type     = type;
+        this.executor = executor;
+        this.mappers  = mappers;
+        this.done     = new CountDownLatch(mappers);
+
+        // the layout of row buffers
+        Entity prototype = sql.entity(type);
+        indexes = prototype.columnIndexes(selects);
+        types   = new Class<?>[indexes.length];
+        fields  = new String[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            Column column = prototype.column(indexes[i]);
+            types[i]  = Entity.readType(column);
+            fields[i] = column.getField();
+        }
+
+        free   = new ArrayBlockingQueue<Row>(bufferSize);
+        filled = new ArrayBlockingQueue<Row>(bufferSize + mappers);
+        for (int i = 0; i < bufferSize; i++) {
+            free.add(new Row(indexes.length));
+        }
+    }
+
+    /**
+     * Reads all rows of the result set and returns the mapped entities in the
+     * order of the rows.
+     *
+     * @param rs
+     *            the result set.
+     * @return the entities.
+     * @throws SQLException
+     */
+    List<T> run(ResultSet rs) throws SQLException {
+
+        for (int i = 0; i < mappers; i++) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    map();
+                }
+            });
+        }
+
+        DbMetrics metrics = sql.getMetrics();
+        boolean timed = metrics.isEnabled();
+        long jdbcNanos = 0;
+
+        int count = 0;
+        try {
+            while (true) {
+                // the time waiting for free buffers is not JDBC time.
+                long start = timed ? System.nanoTime() : 0;
+                if (error != null || !rs.next()) break;
+                if (timed) jdbcNanos += System.nanoTime() - start;
+
+                Row row = take(free);
+                if (row == null) break;
+
+                if (timed) start = System.nanoTime();
+                row.index = count++;
+                for (int i = 0; i < indexes.length; i++) {
+                    row.values[i] = sql.get(rs, types[i], fields[i]);
+                }
+                if (timed) jdbcNanos += System.nanoTime() - start;
+                filled.put(row);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        } catch (SQLException e) {
+            fail(e);
+        } catch (RuntimeException e) {
+            fail(e);
+        } finally {
+            // the ring has room for the end markers of all mappers.
+            for (int i = 0; i < mappers; i++) {
+                filled.offer(END);
+            }
+            if (timed) metrics.jdbc(jdbcNanos);
+        }
+
+        // wait for the mappers to return all buffers.
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while mapping rows.");
+        }
+
+        if (error instanceof SQLException) throw (SQLException)error;
+        if (error != null) throw new SQLException(error);
+
+        return results;
+    }
+
+    private void map() {
+
+        DbMetrics metrics = sql.getMetrics();
+        JfrEvents.RowsMapped mapped = new JfrEvents.RowsMapped();
+        boolean timed = metrics.isEnabled() || mapped.isEnabled();
+        long mappingNanos = 0, rows = 0;
+        mapped.begin();
+
+        try {
+            while (true) {
+                Row row = filled.take();
+                if (row == END) break;
+
+                try {
+                    if (error == null) {
+                        long start = timed ? System.nanoTime() : 0;
+                        T entity = sql.entity(type);
+                        entity.setValues(indexes, row.values);
+                        if (timed) mappingNanos += System.nanoTime() - start;
+                        rows++;
+                        set(row.index, entity);
+                    }
+                } catch (SQLException e) {
+                    fail(e);
+                } catch (RuntimeException e) {
+                    fail(e);
+                } finally {
+                    for (int i = 0; i < row.values.length; i++) {
+                        row.values[i] = null;
+                    }
+                    free.offer(row);
+                }
+            }
+        } catch (InterruptedException e) {
+            fail(e);
+        } finally {
+            if (metrics.isEnabled()) metrics.mapping(mappingNanos);
+            mapped.record(type, rows, mappingNanos);
+            done.countDown();
+        }
+    }
+
+    private void set(int index, T entity) {
+
+        synchronized (results) {
+            while (results.size() <= index) {
+                results.add(null);
+            }
+            results.set(index, entity);
+        }
+    }
+
+    private void fail(Throwable t) {
+
+        if (error == null) error = t;
+    }
+
+    /**
+     * Takes an empty buffer, giving up if a mapper has failed.
+     */
+    private Row take(BlockingQueue<Row> queue) throws InterruptedException {
+
+        Row row;
+        while ((row = queue.poll(100, TimeUnit.MILLISECONDS)) == null) {
+            if (error != null) return null;
+        }
+        return row;
+    }
+}
@@ -22,12 +22,39 @@ package casmi.db;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.math.BigInteger;
+import java.sql.Blob;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import casmi.db.Dialect.Capability;
 
 /**
  * An abstract class for SQL classes.
@@ -37,14 +64,73 @@ import java.util.List;
  */
 abstract class SQL {
 
-    private final SQLType sqlType;
+    /** The dialect of the database. */
+    private final Dialect dialect;
 
     /** java.sql.Connection. */
     protected Connection connection;
 
-    protected SQL(SQLType sqlType) {
+    /** java.sql.Statement. */
+    private Statement statement;
+
+    /** java.sql.PreparedStatement. */
+    private PreparedStatement preparedStatement;
+
+    /** True if preparedStatement is owned by the statement cache. */
+    private boolean preparedStatementCached = false;
+
+    /** The default size of the statement cache. */
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
+
+    /** Prepared statements of execute(sql, params) reused on the connection. */
+    private final StatementCache statementCache = new StatementCache(DEFAULT_STATEMENT_CACHE_SIZE);
+
+    /** java.sql.ResultSet. */
+    private ResultSet resultSet;
+
+    /** Pool of the connections for the work on other threads. */
+    private ConnectionPool pool;
+
+    private int poolSize = Runtime.getRuntime().availableProcessors();
+
+    /** Number of the mapper threads of a pipelined find; 0 disables the pipeline. */
+    private int pipelineMappers = 0;
+
+    private int pipelineBufferSize = 0;
+
+    private ExecutorService pipelineExecutor;
+
+    /** Threads delivering records to subscribers of publishers. */
+    private ExecutorService publisherExecutor;
+
+    /** Threads reading the partitions of parallel scans. */
+    private ExecutorService scanExecutor;
+
+    /** Names of the tables known to exist. */
+    private final Set<String> tables = Collections.synchronizedSet(new HashSet<String>());
+
+    /** Metrics of the statements. */
+    private final DbMetrics metrics = new DbMetrics();
+
+    /**
+     * Serializes the statements on the main connection with the work of other
+     * threads on it, such as the periodic snapshots of an in-memory SQLite
+     * database.
+     */
+    final ReentrantLock statementLock = new ReentrantLock();
+
+    static final Object[] NO_PARAMETERS = new Object[0];
+
+    private static final StatementListener[] NO_LISTENERS = new StatementListener[0];
 
-        this.sqlType = sqlType;
+    /** Listeners of the statements; replaced on a change. */
+    private volatile StatementListener[] listeners = NO_LISTENERS;
+
+    private volatile boolean redactParameters = false;
+
+    SQL(Dialect dialect) {
+
+        this.dialect = dialect;
     }
 
     /**
@@ -54,291 +140,2468 @@ abstract class SQL {
      */
     public SQLType getSQLType() {
 
-        return sqlType;
+        return dialect.getSQLType();
+    }
+
+    Dialect getDialect() {
+
+        return dialect;
     }
 
     /**
-     * Return java.sql.Connection object.
+     * Returns the metrics of the statements of this database, which are
+     * disabled until {@link DbMetrics#setEnabled(boolean)} is called.
      *
-     * @return java.sql.Connection object.
+     * @return the metrics.
      */
-    public Connection getConnection() {
+    public DbMetrics getMetrics() {
 
-        return connection;
+        return metrics;
     }
 
     /**
-     * Connect the database.
+     * Adds a listener of the statements executed by this database, such as
+     * {@link SlowQueryLogger}.
      *
-     * @throws SQLException
+     * @param listener
+     *            the listener.
      */
-    abstract void connect() throws SQLException;
+    public synchronized void addStatementListener(StatementListener listener) {
+
+        StatementListener[] added = Arrays.copyOf(listeners, listeners.length + 1);
+        added[listeners.length] = listener;
+        listeners = added;
+    }
 
     /**
-     * Close the database.
+     * Removes a listener of the statements.
      *
-     * @throws SQLException
+     * @param listener
+     *            the listener.
      */
-    abstract void close();
+    public synchronized void removeStatementListener(StatementListener listener) {
+
+        List<StatementListener> list = new ArrayList<StatementListener>(Arrays.asList(listeners));
+        if (list.remove(listener)) {
+            listeners = list.isEmpty() ? NO_LISTENERS : list.toArray(new StatementListener[list.size()]);
+        }
+    }
 
     /**
-     * Executes the given SQL statement, which may return multiple results. In
-     * some (uncommon) situations, a single SQL statement may return multiple
-     * result sets and/or update counts. Normally you can ignore this unless you
-     * are (1) executing a stored procedure that you know may return multiple
-     * results or (2) you are dynamically executing an unknown SQL string. The
-     * execute method executes an SQL statement and indicates the form of the
-     * first result. You must then use the methods getResultSet or
-     * getUpdateCount to retrieve the result, and getMoreResults to move to any
-     * subsequent result(s).
+     * Sets whether the parameters passed to the statement listeners are
+     * redacted, to keep personal data out of logs.
      *
-     * @param sql
-     *            any SQL statement
-     * @throws SQLException
+     * @param redactParameters
+     *            true to redact the parameters.
      */
-    abstract void execute(String sql, Object... params) throws SQLException;
+    public void setRedactParameters(boolean redactParameters) {
+
+        this.redactParameters = redactParameters;
+    }
+
+    public boolean isRedactParameters() {
+
+        return redactParameters;
+    }
 
     /**
-     * Retrieves the current auto-commit mode for this Connection object.
+     * Notifies the statement listeners of a statement to be executed, and
+     * starts recording it to the metrics and Java Flight Recorder.
      *
-     * @return the current state of this Connection object's auto-commit mode.
-     * @throws SQLException
+     * @param kind
+     *            the kind of the statement, or null to classify the SQL when
+     *            the metrics need it.
+     * @param type
+     *            the entity class, or null.
+     * @param table
+     *            the table, or null.
      */
-    abstract boolean getAutoCommit() throws SQLException;
+    StatementTrace trace(DbMetrics.Kind kind, Class<? extends Entity> type, String table,
+                         String sql, Object[] params) {
+
+        StatementEvent event = StatementEvent.before(listeners, type, sql, params, redactParameters);
+        return new StatementTrace(metrics, event, kind, table, sql, params);
+    }
 
     /**
-     * Sets this connection's auto-commit mode to the given state. If a
-     * connection is in auto-commit mode, then all its SQL statements will be
-     * executed and committed as individual transactions. Otherwise, its SQL
-     * statements are grouped into transactions that are terminated by a call to
-     * either the method commit or the method rollback. By default, new
-     * connections are in auto-commit mode.
+     * Same as {@link #trace(DbMetrics.Kind, Class, String, String, Object[])},
+     * with the table of the entity class.
+     */
+    StatementTrace trace(DbMetrics.Kind kind, Class<? extends Entity> type, String sql, Object[] params) {
+
+        return trace(kind, type, type == null ? null : Entity.getTablename(type), sql, params);
+    }
+
+    /**
+     * Returns true if the statement failed because of a transient conflict,
+     * such as a deadlock or a busy database, and may succeed if it is retried.
      *
-     * @param autoCommit
-     * @throws SQLException
+     * @param e
+     *            the exception thrown by a statement.
+     * @return true if the statement may be retried.
      */
-    abstract void setAutoCommit(boolean autoCommit) throws SQLException;
+    public boolean isRetryable(SQLException e) {
+
+        return dialect.isRetryable(e);
+    }
 
     /**
-     * Makes all changes made since the previous commit/rollback permanent and
-     * releases any database locks currently held by this Connection object.
-     * This method should be used only when auto-commit mode has been disabled.
+     * Return java.sql.Connection object.
      *
-     * @throws SQLException
+     * @return java.sql.Connection object.
      */
-    abstract void commit() throws SQLException;
+    public Connection getConnection() {
+
+        return connection;
+    }
 
     /**
-     * Undoes all changes made in the current transaction and releases any
-     * database locks currently held by this Connection object. This method
-     * should be used only when auto-commit mode has been disabled.
+     * Sets the maximum number of the pooled connections used by the work on
+     * other threads, such as {@link #parallelScan(Class, Query, int, EntityConsumer)}.
+     * The default size is the number of the available processors.
      *
-     * @throws SQLException
+     * @param size
+     *            the maximum number of the pooled connections.
      */
-    abstract void rollback() throws SQLException;
+    public synchronized void setPoolSize(int size) {
+
+        if (size < 1) {
+            throw new IllegalArgumentException("The pool size must be positive.");
+        }
+
+        poolSize = size;
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
 
     /**
-     * Moves the cursor forward one row from its current position. A ResultSet
-     * cursor is initially positioned before the first row; the first call to
-     * the method next makes the first row the current row; the second call
-     * makes the second row the current row, and so on.
+     * Enables or disables the pipelined mode of reading entities.
      *
-     * @return
-     *     <code>true</code> if the new current row is valid; <code>false</code> if there are no more rows
+     * <p>
+     * In the pipelined mode, the calling thread only fetches raw column values
+     * from a result set, and mapper threads turn them into entities. Fetching
+     * the next rows over a network overlaps with the mapping of the previous
+     * rows. The number of rows waiting for the mappers is limited by the
+     * buffer size.
+     * </p>
      *
-     * @throws SQLException
+     * @param mappers
+     *            the number of the mapper threads; 0 disables the pipelined mode.
+     * @param bufferSize
+     *            the number of row buffers between the reader and the mappers.
      */
-    abstract boolean next() throws SQLException;
+    public synchronized void setPipeline(int mappers, int bufferSize) {
 
-    abstract <T> T get(ResultSet resultSet, Class<T> type, String field) throws SQLException;
+        if (mappers < 0) {
+            throw new IllegalArgumentException("The number of the mappers must not be negative.");
+        }
+        if (0 < mappers && bufferSize < 1) {
+            throw new IllegalArgumentException("The buffer size must be positive.");
+        }
 
-    // -------------------------------------------------------------------------
-    // For O/R mapping.
-    // -------------------------------------------------------------------------
+        if (pipelineExecutor != null) {
+            pipelineExecutor.shutdown();
+            pipelineExecutor = null;
+        }
 
-    public <T extends Entity> T entity(Class<T> type) {
+        pipelineMappers    = mappers;
+        pipelineBufferSize = bufferSize;
+    }
 
-        T entity = null;
-        try {
-            if (type.isMemberClass()) {
-                Constructor<T> con = type.getConstructor(new Class[] {type.getDeclaringClass()});
-                entity = con.newInstance(new Object[] {type.getDeclaringClass().newInstance()});
-            } else {
-                entity = type.newInstance();
-            }
-        } catch (InstantiationException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        } catch (SecurityException e) {
-            e.printStackTrace();
-        } catch (NoSuchMethodException e) {
-            e.printStackTrace();
-        } catch (IllegalArgumentException e) {
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        }
+    private synchronized <T extends Entity> RowPipeline<T> pipeline(Class<T> type, String[] selects) {
 
-        entity.init(this, type);
+        if (pipelineMappers == 0) return null;
 
-        return entity;
+        if (pipelineExecutor == null) {
+            pipelineExecutor = Executors.newFixedThreadPool(pipelineMappers, daemonThreads("casmi-db-mapper"));
+        }
+
+        return new RowPipeline<T>(this, type, selects, pipelineExecutor, pipelineMappers, pipelineBufferSize);
     }
 
-    public <T extends Entity> T[] all(Class<T> type) throws SQLException {
+    private synchronized ExecutorService publisherExecutor() {
 
-        String sqlStr = "SELECT * FROM " + getTablename(type);
-        return find(type, sqlStr);
+        if (publisherExecutor == null) {
+            publisherExecutor = Executors.newCachedThreadPool(daemonThreads("casmi-db-publisher"));
+        }
+        return publisherExecutor;
     }
 
-    public <T extends Entity> T[] all(Class<T> type, Query query) throws SQLException {
+    private synchronized ExecutorService scanExecutor() {
 
-        String sqlStr = "SELECT :select FROM :table :query";
-        StringBuilder sb;
+        if (scanExecutor == null) {
+            scanExecutor = Executors.newCachedThreadPool(daemonThreads("casmi-db-scan"));
+        }
+        return scanExecutor;
+    }
 
-        // select
-        if (query.isSelectEnable()) {
-            sb = new StringBuilder();
-            boolean flag = false;
+    static ThreadFactory daemonThreads(final String name) {
 
-            for (String select : query.getSelects()) {
-                if (sb.length() != 0) sb.append(',');
-                if (select.equals("id")) flag = true;
+        return new ThreadFactory() {
 
-                sb.append(select);
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
             }
+        };
+    }
 
-            // if the entity has an automatic primary key("id") and not selected,
-            // append the key automatically.
-            if (!flag && Entity.isAutoPrimaryKey(type)) {
-                sb.insert(0, "id,");
-            }
+    synchronized ConnectionPool getPool() {
 
-            sqlStr = sqlStr.replaceAll(":select", sb.toString());
-        } else {
-            sqlStr = sqlStr.replaceAll(":select", "*");
+        if (pool == null) {
+            pool = new ConnectionPool(this, poolSize);
         }
+        return pool;
+    }
 
-        // table
-        sqlStr = sqlStr.replaceAll(":table", getTablename(type));
-
-        // query ---------------------------------------------------------------
-        sb = new StringBuilder();
+    /**
+     * Closes the pooled connections and stops the mapper threads.
+     */
+    synchronized void closePool() {
 
-        // where
-        if (query.isWhereEnable()) {
-            sb.append("WHERE ");
-            sb.append(query.getWhere());
+        if (pool != null) {
+            pool.close();
+            pool = null;
         }
-
-        // group by
-        if (query.isGroupEnable()) {
-            sb.append(" GROUP BY ");
-            sb.append(query.getGroup());
+        if (pipelineExecutor != null) {
+            pipelineExecutor.shutdown();
+            pipelineExecutor = null;
         }
-
-        // order by
-        if (query.isOrderEnable()) {
-            sb.append(" ORDER BY ");
-            sb.append(query.getOrder());
+        if (publisherExecutor != null) {
+            publisherExecutor.shutdown();
+            publisherExecutor = null;
         }
-
-        // descending
-        if (query.isDesc()) {
-            sb.append(" DESC");
+        if (scanExecutor != null) {
+            scanExecutor.shutdown();
+            scanExecutor = null;
         }
+        tables.clear();
+    }
 
-        // limit
-        if (query.isLimitEnable()) {
-            sb.append(" LIMIT ");
-            sb.append(query.getLimit());
-        }
+    /**
+     * Opens a new connection to the same database.
+     *
+     * @return a new connection.
+     * @throws SQLException
+     */
+    abstract Connection createConnection() throws SQLException;
 
-        sqlStr = sqlStr.replaceAll(":query", sb.toString());
-        // ---------------------------------------------------------------------
+    boolean isKnownTable(String tablename) {
 
-        return find(type, sqlStr, query.getSelects());
+        return tables.contains(tablename);
     }
 
-    // TODO: this method is correct only if a primary key is not specified.
-    public <T extends Entity> T find(Class<T> type, int id) throws SQLException {
-        T[] entities = all(type, new Query().where("id=" + id));
-        if (entities.length == 0) return null;
-        return entities[0];
-    }
+    void addKnownTable(String tablename) {
 
-    // TODO: this method is correct only if a primary key is not specified.
-    public <T extends Entity> T find(Class<T> type, int id, Query query) throws SQLException {
-        query.andWhere("id=" + id);
-        T[] entities = all(type, query);
-        if (entities.length == 0) return null;
-        return entities[0];
+        tables.add(tablename);
     }
 
-    public <T extends Entity> T first(Class<T> type) throws SQLException {
-        T[] entities = all(type, new Query().limit(1));
-        if (entities.length == 0) return null;
-        return entities[0];
-    }
+    void removeKnownTable(String tablename) {
 
-    public <T extends Entity> T first(Class<T> type, Query query) throws SQLException {
-        T[] entities = all(type, query.limit(1));
-        if (entities.length == 0) return null;
-        return entities[0];
+        tables.remove(tablename);
     }
 
-    public <T extends Entity> T last(Class<T> type) throws SQLException {
-        T[] entities = all(type, new Query().order(Entity.getPrimaryKeyField(type)).desc(true).limit(1));
-        if (entities.length == 0) return null;
-        return entities[entities.length - 1];
-    }
+    /**
+     * Forgets the known tables if the statement may drop or rename a table.
+     */
+    void checkSchemaChange(String sql) {
 
-    public <T extends Entity> T last(Class<T> type, Query query) throws SQLException {
-        if (!query.isOrderEnable()) {
-            query.order(Entity.getPrimaryKeyField(type));
+        String keyword = SQLLexer.classify(sql).keyword;
+        if (keyword.equals("DROP") || keyword.equals("ALTER")) {
+            schemaChanged();
         }
-        T[] entities = all(type, query.desc(true).limit(1));
-        if (entities.length == 0) return null;
-        return entities[entities.length - 1];
     }
 
-    @SuppressWarnings("unchecked")
-    private <T extends Entity> T[] find(Class<T> type, String sqlStr, String... selects) throws SQLException {
-        if (connection == null)
-            throw new SQLException("Connection is not exist.");
+    /**
+     * Closes the current statement and the cached statements, and forgets the
+     * known tables, since tables are dropped or renamed.
+     */
+    void schemaChanged() {
 
-        List<T> list = new ArrayList<T>();
+        closeStatements();
+        tables.clear();
+        statementCache.clear();
+    }
 
-        Statement statement = connection.createStatement();
-        ResultSet rs = statement.executeQuery(sqlStr);
+    /**
+     * Connect the database.
+     *
+     * @throws SQLException
+     */
+    abstract void connect() throws SQLException;
 
-        while (rs.next()) {
-            T entity = entity(type);
-            if (selects        == null ||
-                selects.length == 0    || selects[0].equals('*')) {
-                entity.setValuesFromResultSet(rs);
-            } else {
-                entity.setValuesFromReslutSet(rs, selects);
+    /**
+     * Close the database.
+     */
+    public void close() {
+
+        closePool();
+        metrics.unregister();
+        closeStatements();
+        statementCache.clear();
+
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // Ignore.
             }
-            list.add(entity);
         }
+    }
 
-        rs.close();
-        statement.close();
+    /**
+     * Closes statement and preparedStatement, or the result set of a cached
+     * preparedStatement.
+     */
+    private void closeStatements() {
+
+        if (resultSet != null) {
+            try {
+                resultSet.close();
+            } catch (SQLException e) {
+                // Ignore.
+            }
+            resultSet = null;
+        }
+        if (statement != null) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // Ignore.
+            }
+            statement = null;
+        }
+        if (preparedStatement != null && !preparedStatementCached) {
+            try {
+                preparedStatement.close();
+            } catch (SQLException e) {
+                // Ignore.
+            }
+        }
+        preparedStatement = null;
+        preparedStatementCached = false;
+    }
 
-        if (list.isEmpty()) return (T[])Array.newInstance(type, 0);
+    /**
+     * Sets the maximum number of the prepared statements of
+     * {@link #execute(String, Object...)} reused on the connection. The least
+     * recently used statements over the size are closed, and 0 disables the
+     * cache.
+     *
+     * @param size
+     *            the size of the cache.
+     */
+    public void setStatementCacheSize(int size) {
 
-        return list.toArray((T[])Array.newInstance(type, list.size()));
+        statementCache.setCapacity(size);
     }
 
-    public <T extends Entity> void truncate(Class<T> type) throws SQLException {
-        if (connection == null)
-            throw new SQLException("Connection is not exist.");
+    public int getStatementCacheSize() {
 
-        Statement statement = connection.createStatement();
-        String stmt = StatementGenerator.truncate(sqlType, getTablename(type));
-        statement.executeUpdate(stmt);
-        statement.close();
+        return statementCache.getCapacity();
+    }
+
+    /**
+     * Returns a prepared statement of the connection from the cache, or
+     * prepares and caches it.
+     */
+    private PreparedStatement cachedStatement(String sql) throws SQLException {
+
+        PreparedStatement ps = statementCache.get(connection, sql);
+        metrics.cache(ps != null);
+        if (ps != null) {
+            preparedStatementCached = true;
+            return ps;
+        }
+
+        ps = prepare(connection, sql);
+        preparedStatementCached = statementCache.put(connection, sql, ps);
+        return ps;
+    }
+
+    /**
+     * Executes the given SQL statement, which may return multiple results. In
+     * some (uncommon) situations, a single SQL statement may return multiple
+     * result sets and/or update counts. Normally you can ignore this unless you
+     * are (1) executing a stored procedure that you know may return multiple
+     * results or (2) you are dynamically executing an unknown SQL string. The
+     * execute method executes an SQL statement and indicates the form of the
+     * first result. You must then use the methods getResultSet or
+     * getUpdateCount to retrieve the result, and getMoreResults to move to any
+     * subsequent result(s).
+     *
+     * @param sql
+     *            any SQL statement
+     * @throws SQLException
+     */
+    public void execute(String sql, Object... params) throws SQLException {
+
+        execute((Entity)null, sql, params);
+    }
+
+    /**
+     * Executes a statement of an entity table.
+     *
+     * @param entity
+     *            the entity of the statement, or null.
+     */
+    void execute(Entity entity, String sql, Object[] params) throws SQLException {
+
+        boolean locked = lock(connection);
+        try {
+            if (connection == null)
+                throw new SQLException("Connection is not exist.");
+
+            closeStatements();
+            checkSchemaChange(sql);
+
+            StatementTrace trace = entity == null ? trace(null, null, null, sql, params)
+                                                  : trace(null, entity.getClass(), entity.tablename, sql, params);
+            int updated = 0;
+            try {
+                if (0 < params.length) {
+                    // Prepared statement.
+                    preparedStatement = cachedStatement(sql);
+                    for (int i = 0; i < params.length; i++) {
+                        setParameter(preparedStatement, i + 1, params[i]);
+                    }
+                    if (!isSQLQuery(sql)) updated = preparedStatement.executeUpdate();
+                    else resultSet = preparedStatement.executeQuery();
+                } else {
+                    // Normal statement.
+                    statement = connection.createStatement();
+                    if (!isSQLQuery(sql)) updated = statement.executeUpdate(sql);
+                    else resultSet = statement.executeQuery(sql);
+                }
+            } catch (SQLException e) {
+                trace.error(e, 0);
+                throw e;
+            }
+            trace.after(0, updated);
+        } finally {
+            if (locked) statementLock.unlock();
+        }
+    }
+
+    /**
+     * Return true if the SQL is a query.
+     *
+     * @param sql
+     * @return
+     * @see SQLLexer
+     */
+    private boolean isSQLQuery(String sql) {
+
+        return SQLLexer.isQuery(sql);
+    }
+
+    /**
+     * Retrieves the current auto-commit mode for this Connection object.
+     *
+     * @return the current state of this Connection object's auto-commit mode.
+     * @throws SQLException
+     */
+    public boolean getAutoCommit() throws SQLException {
+
+        if (connection == null)
+            throw new SQLException("Connection is not exist.");
+
+        return connection.getAutoCommit();
+    }
+
+    /**
+     * Sets this connection's auto-commit mode to the given state. If a
+     * connection is in auto-commit mode, then all its SQL statements will be
+     * executed and committed as individual transactions. Otherwise, its SQL
+     * statements are grouped into transactions that are terminated by a call to
+     * either the method commit or the method rollback. By default, new
+     * connections are in auto-commit mode.
+     *
+     * @param autoCommit
+     * @throws SQLException
+     */
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+
+        boolean locked = lock(connection);
+        try {
+            if (connection == null)
+                throw new SQLException("Connection is not exist.");
+
+            connection.setAutoCommit(autoCommit);
+        } finally {
+            if (locked) statementLock.unlock();
+        }
+    }
+
+    /**
+     * Makes all changes made since the previous commit/rollback permanent and
+     * releases any database locks currently held by this Connection object.
+     * This method should be used only when auto-commit mode has been disabled.
+     *
+     * @throws SQLException
+     */
+    public void commit() throws SQLException {
+
+        if (connection == null)
+            throw new SQLException("Connection is not exist.");
+
+        commit(connection);
+    }
+
+    /**
+     * Commits the transaction of a connection, recording the commit to Java
+     * Flight Recorder.
+     */
+    void commit(Connection connection) throws SQLException {
+
+        boolean locked = lock(connection);
+        try {
+            JfrEvents.TransactionCommitted committed = new JfrEvents.TransactionCommitted();
+            committed.begin();
+            connection.commit();
+            committed.record(getSQLType());
+        } finally {
+            if (locked) statementLock.unlock();
+        }
+    }
+
+    /**
+     * Locks the statements on the connection if it is the main connection.
+     *
+     * @return true if the statement lock has been acquired.
+     */
+    boolean lock(Connection connection) {
+
+        if (connection == null || connection != this.connection) return false;
+        statementLock.lock();
+        return true;
+    }
+
+    /**
+     * Prepares a statement, recording the preparation to Java Flight
+     * Recorder.
+     */
+    PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+
+        JfrEvents.StatementPrepared prepared = new JfrEvents.StatementPrepared();
+        prepared.begin();
+        PreparedStatement ps = connection.prepareStatement(sql);
+        prepared.record(sql);
+        return ps;
+    }
+
+    /**
+     * Undoes all changes made in the current transaction and releases any
+     * database locks currently held by this Connection object. This method
+     * should be used only when auto-commit mode has been disabled.
+     *
+     * @throws SQLException
+     */
+    public void rollback() throws SQLException {
+
+        boolean locked = lock(connection);
+        try {
+            if (connection == null)
+                throw new SQLException("Connection is not exist.");
+
+            connection.rollback();
+        } finally {
+            if (locked) statementLock.unlock();
+        }
+    }
+
+    /**
+     * Moves the cursor forward one row from its current position. A ResultSet
+     * cursor is initially positioned before the first row; the first call to
+     * the method next makes the first row the current row; the second call
+     * makes the second row the current row, and so on.
+     *
+     * @return
+     *     <code>true</code> if the new current row is valid; <code>false</code> if there are no more rows
+     *
+     * @throws SQLException
+     */
+    public boolean next() throws SQLException {
+
+        if (resultSet == null)
+            throw new SQLException("Result set is not exist.");
+
+        return resultSet.next();
+    }
+
+    <T> T get(ResultSet resultSet, Class<T> type, String field) throws SQLException {
+
+        return dialect.get(resultSet, type, field);
+    }
+
+    void setParameter(PreparedStatement preparedStatement, int parameterIndex, Object param)
+        throws SQLException {
+
+        dialect.setParameter(preparedStatement, parameterIndex, param);
+    }
+
+    /**
+     * Sets hints to a statement so that the driver fetches rows as they are
+     * read instead of reading the whole result at once.
+     *
+     * @param statement
+     *            the statement.
+     * @throws SQLException
+     */
+    void prepareStreaming(Statement statement) throws SQLException {
+
+        dialect.prepareStreaming(statement);
+    }
+
+    // -------------------------------------------------------------------------
+    // Getters from resultSet.
+    // -------------------------------------------------------------------------
+
+    /**
+     * Retrieves the value of the designated column in the current row as a Blob
+     * object in the Java programming language.
+     *
+     * @param column
+     *            The first column is 1, the second is 2, ...
+     *
+     * @return
+     *         a Blob object representing the SQL BLOB value in the specified
+     *         column.
+     *
+     * @throws SQLException
+     *             if the columnIndex is not valid; if a database access error
+     *             occurs or this method is called on a closed result set.
+     */
+    public Blob getBlob(int column) throws SQLException {
+
+        if (resultSet == null)
+            throw new SQLException("Result set is not exist.");
+
+        return resultSet.getBlob(column);
+    }
+
+    /**
+     * Retrieves the value of the designated column in the current row as a Blob
+     * object in the Java programming language.
+     *
+     * @param field
+     *            The name of the field.
+     *
+     * @return
+     *         a Blob object representing the SQL BLOB value in the specified
+     *         column.
+     *
+     * @throws SQLException
+     *             if the columnIndex is not valid; if a database access error
+     *             occurs or this method is called on a closed result set.
+     */
+    public Blob getBlob(String field) throws SQLException {
+
+        if (resultSet == null)
+            throw new SQLException("Result set is not exist.");
+
+        return resultSet.getBlob(field);
+    }
+
+    /**
+     * Retrieves the value of the designated column in the current row as a
+     * double in the Java programming language.
+     *
+     * @param column
+     *            The first column is 1, the second is 2, ...
+     *
+     * @return The column value; if the value is SQL NULL, the value returned is
+     *         0.
+     *
+     * @throws SQLException
+     *             If the columnIndex is not valid; if a database access error
+     *             occurs or this method is called on a closed result set.
+     */
+    public double getDouble(int column) throws SQLException {
+
+        if (resultSet == null)
+            throw new SQLException("Result set is not exist.");
+
+        return resultSet.getDouble(column);
+    }
+
+    /**
+     * Retrieves the value of the designated column in the current row as a
+     * double in the Java programming language.
+     *
+     * @param field
+     *            The first column is 1, the second is 2, ...
+     *
+     * @return The column value; if the value is SQL NULL, the value returned is
+     *         0.0.
+     *
+     * @throws SQLException
+     *             If the columnIndex is not valid; if a database access error
+     *             occurs or this method is called on a closed result set.
+     */
+    public double getDouble(String field) throws SQLException {
+
+        if (resultSet == null)
+            throw new SQLException("Result set is not exist.");
+
+        return resultSet.getDouble(field);
+    }
+
+    /**
+     * Retrieves the value of the designated column in the current row as a
+     * float in the Java programming language.
+     *
+     * @param column
+     *            The first column is 1, the second is 2, ...
+     *
+     * @return The column value; if the value is SQL NULL, the value returned is
+     *         0.0f.
+     *
+     * @throws SQLException
+     *             If the columnIndex is not valid; if a database access error
+     *             occurs or this method is called on a closed result set.
+     */
+    public float getFloat(int column) throws SQLException {
+
+        if (resultSet == null)
+            throw new SQLException("Result set is not exist.");
+
+        return resultSet.getFloat(column);
+    }
+
+    /**
+     * Retrieves the value of the designated column in the current row as a
+     * float in the Java programming language.
+     *
+     * @param field
+     *            The first column is 1, the second is 2, ...
+     *
+     * @return The column value; if the value is SQL NULL, the value returned is
+     *         0.0f.
+     *
+     * @throws SQLException
+     *             If the columnIndex is not valid; if a database access error
+     *             occurs or this method is called on a closed result set.
+     */
+    public float getFloat(String field) throws SQLException {
+
+        if (resultSet == null)
+            throw new SQLException("Result set is not exist.");
+
+        return resultSet.getFloat(field);
+    }
+
+    /**
+     * Retrieves the value of the designated column in the current row as int in
+     * the Java programming language.
+     *
+     * @param column
+     *            The first column is 1, the second is 2, ...
+     *
+     * @return The column value; if the value is SQL NULL, the value returned is
+     *         0.
+     *
+     * @throws SQLException
+     *             If the columnIndex is not valid; if a database access error
+     *             occurs or this method is called on a closed result set.
+     */
+    public int getInt(int column) throws SQLException {
+
+        if (resultSet == null)
+            throw new SQLException("Result set is not exist.");
+
+        return resultSet.getInt(column);
+    }
+
+    /**
+     * Retrieves the value of the designated column in the current row as a int
+     * in the Java programming language.
+     *
+     * @param field
+     *            The first column is 1, the second is 2, ...
+     *
+     * @return The column value; if the value is SQL NULL, the value returned is
+     *         0.
+     *
+     * @throws SQLException
+     *             If the columnIndex is not valid; if a database access error
+     *             occurs or this method is called on a closed result set.
+     */
+    public int getInt(String field) throws SQLException {
+
+        if (resultSet == null)
+            throw new SQLException("Result set is not exist.");
+
+        return resultSet.getInt(field);
+    }
+
+    /**
+     * Retrieves the value of the designated column in the current row as a
+     * Object in the Java programming language.
+     *
+     * @param column
+     *            The first column is 1, the second is 2, ...
+     *
+     * @return
+     *         A java.lang.Object holding the column value.
+     *
+     * @throws SQLException
+     *             If the columnIndex is not valid; if a database access error
+     *             occurs or this method is called on a closed result set.
+     */
+    public Object getObject(int column) throws SQLException {
+
+        if (resultSet == null)
+            throw new SQLException("Result set is not exist.");
+
+        return resultSet.getObject(column);
+    }
+
+    /**
+     * Retrieves the value of the designated column in the current row as a
+     * Object in the Java programming language.
+     *
+     * @param field
+     *            The name of the field.
+     *
+     * @return
+     *         A java.lang.Object holding the column value.
+     *
+     * @throws SQLException
+     *             If the columnIndex is not valid; if a database access error
+     *             occurs or this method is called on a closed result set.
+     */
+    public Object getObject(String field) throws SQLException {
+
+        if (resultSet == null)
+            throw new SQLException("Result set is not exist.");
+
+        return resultSet.getObject(field);
+    }
+
+    /**
+     * Retrieves the value of the designated column in the current row as a
+     * String in the Java programming language.
+     *
+     * @param column
+     *            The first column is 1, the second is 2, ...
+     *
+     * @return The column value; if the value is SQL NULL, the value returned is
+     *         null.
+     *
+     * @throws SQLException
+     *             If the columnIndex is not valid; if a database access error
+     *             occurs or this method is called on a closed result set.
+     */
+    public String getString(int column) throws SQLException {
+
+        if (resultSet == null)
+            throw new SQLException("Result set is not exist.");
+
+        return resultSet.getString(column);
+    }
+
+    /**
+     * Retrieves the value of the designated column in the current row as a
+     * String in the Java programming language.
+     *
+     * @param field
+     *            The first column is 1, the second is 2, ...
+     *
+     * @return The column value; if the value is SQL NULL, the value returned is
+     *         null.
+     *
+     * @throws SQLException
+     *             If the columnIndex is not valid; if a database access error
+     *             occurs or this method is called on a closed result set.
+     */
+    public String getString(String field) throws SQLException {
+
+        if (resultSet == null)
+            throw new SQLException("Result set is not exist.");
+
+        return resultSet.getString(field);
+    }
+
+    // -------------------------------------------------------------------------
+    // Other methods.
+    // -------------------------------------------------------------------------
+
+    /**
+     * Returns a string representation of the record.
+     *
+     * @return a string representation of the record.
+     * @throws SQLException
+     */
+    public String recordToString() throws SQLException {
+
+        if (resultSet == null)
+            throw new SQLException("Result set is not exist.");
+
+        String out = "| ";
+
+        ResultSetMetaData rsmd = resultSet.getMetaData();
+        for (int i = 0; i < rsmd.getColumnCount(); i++) {
+            out += resultSet.getString(i + 1) + " | ";
+        }
+
+        return out;
+    }
+
+    /**
+     * Prints a record string and then terminate the line simply.
+     *
+     * @throws SQLException
+     */
+    public void println() throws SQLException {
+
+        System.out.println(recordToString());
+    }
+
+    /**
+     * Return java.sql.Statement object.
+     *
+     * @return java.sql.Statement object.
+     */
+    public Statement getStatement() {
+
+        return statement;
+    }
+
+    /**
+     * Return java.sql.PreparedStatement object.
+     *
+     * @return java.sql.PreparedStatement object.
+     */
+    public PreparedStatement getPreparedStatement() {
+
+        return preparedStatement;
+    }
+
+    /**
+     * Return java.sql.ResultSet object.
+     *
+     * @return java.sql.ResultSet object.
+     */
+    public ResultSet getResultSet() {
+
+        return resultSet;
+    }
+
+    // -------------------------------------------------------------------------
+    // For O/R mapping.
+    // -------------------------------------------------------------------------
+
+    public <T extends Entity> T entity(Class<T> type) {
+
+        T entity = newInstance(type);
+        entity.init(this, type);
+
+        return entity;
+    }
+
+    /**
+     * Creates an instance of the entity class which has not been initialized.
+     */
+    <T extends Entity> T newInstance(Class<T> type) {
+
+        T entity = null;
+        try {
+            if (type.isMemberClass()) {
+                Constructor<T> con = type.getConstructor(new Class[] {type.getDeclaringClass()});
+                entity = con.newInstance(new Object[] {type.getDeclaringClass().newInstance()});
+            } else {
+                entity = type.newInstance();
+            }
+        } catch (InstantiationException e) {
+            e.printStackTrace();
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        } catch (SecurityException e) {
+            e.printStackTrace();
+        } catch (NoSuchMethodException e) {
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+        } catch (InvocationTargetException e) {
+            e.printStackTrace();
+        }
+
+        return entity;
+    }
+
+    public <T extends Entity> T[] all(Class<T> type) throws SQLException {
+
+        if (connection == null)
+            throw new SQLException("Connection is not exist.");
+
+        EntityStatements statements = EntityStatements.get(this, type);
+        return find(type, statements.selectAll, new Object[0], statements.defaultSelects);
+    }
+
+    public <T extends Entity> T[] all(Class<T> type, Query query) throws SQLException {
+
+        return all(type, query, query.isAfterEnable());
+    }
+
+    private <T extends Entity> T[] all(Class<T> type, Query query, boolean seek) throws SQLException {
+
+        Select select = select(type, query, seek);
+        return find(type, select.sql, select.params, select.fields);
+    }
+
+    /**
+     * A SELECT statement built from a query.
+     */
+    private static class Select {
+
+        final String sql;
+        final Object[] params;
+        final String[] fields;
+
+        Select(String sql, Object[] params, String[] fields) {
+
+            this.sql    = sql;
+            this.params = params;
+            this.fields = fields;
+        }
+    }
+
+    private <T extends Entity> Select select(Class<T> type, Query query, boolean seek)
+        throws SQLException {
+
+        return select(type, query, seek, null);
+    }
+
+    /**
+     * Builds a SELECT statement of a query.
+     *
+     * @param columns
+     *            the columns to select instead of the columns of the query, or
+     *            null.
+     */
+    private <T extends Entity> Select select(Class<T> type, Query query, boolean seek, String[] columns)
+        throws SQLException {
+
+        StringBuilder sb = new StringBuilder("SELECT ");
+        List<Object> params = new ArrayList<Object>();
+        String[] fields = columns != null ? columns : query.getSelects();
+
+        // seek keys; the order column (if any) and the primary key
+        String[] keys = null;
+        if (seek) {
+            keys = seekKeys(type, query);
+        }
+
+        // the default columns leave out the lazy columns
+        boolean selectEnable = columns != null || query.isSelectEnable();
+        if (!selectEnable) {
+            String[] defaults = EntityStatements.get(this, type).defaultSelects;
+            if (defaults != null) {
+                fields       = defaults;
+                selectEnable = true;
+            }
+        }
+
+        // select
+        if (selectEnable) {
+            int start = sb.length();
+            boolean flag = false;
+            List<String> selects = new ArrayList<String>();
+
+            for (String select : fields) {
+                if (sb.length() != start) sb.append(',');
+                if (select.equals("id")) flag = true;
+
+                sb.append(select);
+                selects.add(select);
+            }
+
+            // if the entity has an automatic primary key("id") and not selected,
+            // append the key automatically.
+            if (!flag && columns == null && Entity.isAutoPrimaryKey(type)) {
+                sb.insert(start, "id,");
+                selects.add("id");
+            }
+
+            // seek keys must be selected to make a next page token.
+            if (seek) {
+                List<String> list = new ArrayList<String>(Arrays.asList(fields));
+                for (String key : keys) {
+                    if (!selects.contains(key)) {
+                        sb.append(',');
+                        sb.append(key);
+                        selects.add(key);
+                    }
+                    if (!list.contains(key)) list.add(key);
+                }
+                fields = list.toArray(new String[list.size()]);
+            }
+        } else {
+            sb.append('*');
+        }
+
+        // table
+        sb.append(" FROM ");
+        sb.append(getTablename(type));
+
+        // query ---------------------------------------------------------------
+
+        // where
+        if (query.isWhereEnable() && query.isAfterEnable() && seek) {
+            sb.append(" WHERE (");
+            sb.append(query.getWhere());
+            sb.append(") AND ");
+            appendSeekCondition(sb, params, keys, query);
+        } else if (query.isWhereEnable()) {
+            sb.append(" WHERE ");
+            sb.append(query.getWhere());
+        } else if (query.isAfterEnable() && seek) {
+            sb.append(" WHERE ");
+            appendSeekCondition(sb, params, keys, query);
+        }
+
+        // group by
+        if (query.isGroupEnable()) {
+            sb.append(" GROUP BY ");
+            sb.append(query.getGroup());
+        }
+
+        if (seek) {
+            // order by the seek keys
+            sb.append(" ORDER BY ");
+            for (int i = 0; i < keys.length; i++) {
+                if (i != 0) sb.append(',');
+                sb.append(keys[i]);
+                if (query.isDesc()) sb.append(" DESC");
+            }
+        } else {
+            // order by
+            if (query.isOrderEnable()) {
+                sb.append(" ORDER BY ");
+                sb.append(query.getOrder());
+            }
+
+            // descending
+            if (query.isDesc()) {
+                sb.append(" DESC");
+            }
+        }
+
+        // limit
+        if (query.isLimitEnable()) {
+            dialect.appendLimit(sb, query.getLimit(), query.getOffset());
+        }
+        // ---------------------------------------------------------------------
+
+        return new Select(sb.toString(), params.toArray(), fields);
+    }
+
+    /**
+     * Returns the columns of a seek key; the order column followed by the
+     * primary key, or only the primary key if the query is not ordered by
+     * another column.
+     *
+     * @throws IllegalArgumentException
+     *             if the order is not a single column, such as "a,b" or
+     *             "a DESC"; use {@link Query#desc(boolean)} for the direction.
+     */
+    private <T extends Entity> String[] seekKeys(Class<T> type, Query query) {
+
+        String primaryKey = Entity.getPrimaryKeyField(type);
+
+        if (query.isOrderEnable() && !isColumnName(query.getOrder())) {
+            throw new IllegalArgumentException("Pages can be ordered by a single column only: " +
+                                               query.getOrder());
+        }
+        if (query.isOrderEnable() && !query.getOrder().equals(primaryKey)) {
+            return new String[] {query.getOrder(), primaryKey};
+        }
+        return new String[] {primaryKey};
+    }
+
+    /**
+     * Returns true if the string is a plain (optionally qualified) column
+     * name.
+     */
+    private static boolean isColumnName(String s) {
+
+        if (s == null || s.isEmpty()) return false;
+        boolean start = true;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '.' && !start && i != s.length() - 1) {
+                start = true;
+            } else if (Character.isLetter(c) || c == '_' || (!start && Character.isDigit(c))) {
+                start = false;
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends a row value comparison which skips records before the page token.
+     * (a, b) &gt; (?, ?) is expanded as a &gt; ? OR (a = ? AND b &gt; ?) because
+     * row values are not supported by every database.
+     */
+    private void appendSeekCondition(StringBuilder sb, List<Object> params, String[] keys, Query query) {
+
+        Object[] after = query.getAfter();
+        if (after.length != keys.length) {
+            throw new IllegalArgumentException(
+                "The page token must have " + keys.length + " value(s).");
+        }
+
+        String op = query.isDesc() ? "<" : ">";
+
+        if (keys.length == 1) {
+            sb.append(keys[0]).append(op).append('?');
+            params.add(after[0]);
+        } else {
+            sb.append('(');
+            sb.append(keys[0]).append(op).append("? OR (");
+            sb.append(keys[0]).append("=? AND ");
+            sb.append(keys[1]).append(op).append("?))");
+            params.add(after[0]);
+            params.add(after[0]);
+            params.add(after[1]);
+        }
+    }
+
+    /**
+     * Returns a page of records after the page token of the query.
+     *
+     * <p>
+     * Unlike OFFSET, the page is located with an indexed comparison of the
+     * primary key (or the order column and the primary key), so the cost of
+     * reading a page does not depend on how deep the page is.
+     * </p>
+     *
+     * @param type
+     *            the entity class.
+     * @param query
+     *            the query with a page size and an optional page token.
+     * @return a page of records.
+     * @throws SQLException
+     *
+     * @see Query#pageSize(int)
+     * @see Query#after(Object...)
+     */
+    public <T extends Entity> Page<T> page(Class<T> type, Query query) throws SQLException {
+
+        if (!query.isLimitEnable()) {
+            throw new IllegalArgumentException("The page size is not specified.");
+        }
+
+        T[] entities = all(type, query, true);
+
+        Object[] nextKey = null;
+        if (entities.length != 0) {
+            String[] keys = seekKeys(type, query);
+            T last = entities[entities.length - 1];
+            nextKey = new Object[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                nextKey[i] = last.getValue(keys[i]);
+            }
+        }
+
+        return new Page<T>(entities, nextKey, entities.length == query.getLimit());
+    }
+
+    /**
+     * Returns an iterator which walks the whole table in pages.
+     *
+     * @param type
+     *            the entity class.
+     * @param pageSize
+     *            the number of records of a page.
+     * @return a page iterator.
+     */
+    public <T extends Entity> PageIterator<T> pages(Class<T> type, int pageSize) {
+
+        return new PageIterator<T>(this, type, new Query().pageSize(pageSize));
+    }
+
+    /**
+     * Returns an iterator which walks the records of the query in pages.
+     * The page token of the query is updated while iterating.
+     *
+     * @param type
+     *            the entity class.
+     * @param query
+     *            the query with a page size.
+     * @return a page iterator.
+     */
+    public <T extends Entity> PageIterator<T> pages(Class<T> type, Query query) {
+
+        if (!query.isLimitEnable()) {
+            throw new IllegalArgumentException("The page size is not specified.");
+        }
+        return new PageIterator<T>(this, type, query);
+    }
+
+    public <T extends Entity> T find(Class<T> type, int id) throws SQLException {
+        if (connection == null)
+            throw new SQLException("Connection is not exist.");
+
+        EntityStatements statements = EntityStatements.get(this, type);
+        T[] entities = find(type, statements.selectByKey, new Object[] {id},
+                            statements.defaultSelects);
+        if (entities.length == 0) return null;
+        return entities[0];
+    }
+
+    // TODO: this method is correct only if a primary key is not specified.
+    public <T extends Entity> T find(Class<T> type, int id, Query query) throws SQLException {
+        query.andWhere("id=" + id);
+        T[] entities = all(type, query);
+        if (entities.length == 0) return null;
+        return entities[0];
+    }
+
+    public <T extends Entity> T first(Class<T> type) throws SQLException {
+        T[] entities = all(type, new Query().limit(1));
+        if (entities.length == 0) return null;
+        return entities[0];
+    }
+
+    public <T extends Entity> T first(Class<T> type, Query query) throws SQLException {
+        T[] entities = all(type, query.limit(1));
+        if (entities.length == 0) return null;
+        return entities[0];
+    }
+
+    public <T extends Entity> T last(Class<T> type) throws SQLException {
+        T[] entities = all(type, new Query().order(Entity.getPrimaryKeyField(type)).desc(true).limit(1));
+        if (entities.length == 0) return null;
+        return entities[entities.length - 1];
+    }
+
+    public <T extends Entity> T last(Class<T> type, Query query) throws SQLException {
+        if (!query.isOrderEnable()) {
+            query.order(Entity.getPrimaryKeyField(type));
+        }
+        T[] entities = all(type, query.desc(true).limit(1));
+        if (entities.length == 0) return null;
+        return entities[entities.length - 1];
+    }
+
+    /** The maximum number of records of a statement loading lazy columns. */
+    private static final int MAX_LOAD_ROWS = 500;
+
+    /**
+     * Reads lazy columns of a record.
+     *
+     * @param entity
+     *            the record.
+     * @param fields
+     *            the field names in the database, or none for all lazy
+     *            columns.
+     * @throws SQLException
+     *
+     * @see casmi.db.annotation.Lazy
+     */
+    public <T extends Entity> void load(T entity, String... fields) throws SQLException {
+
+        load(Collections.singletonList(entity), fields);
+    }
+
+    /**
+     * Reads lazy columns of records by a statement for hundreds of records.
+     *
+     * @param entities
+     *            the records of an entity class.
+     * @param fields
+     *            the field names in the database, or none for all lazy
+     *            columns.
+     * @throws SQLException
+     *
+     * @see casmi.db.annotation.Lazy
+     */
+    public <T extends Entity> void load(T[] entities, String... fields) throws SQLException {
+
+        load(Arrays.asList(entities), fields);
+    }
+
+    private void load(List<? extends Entity> entities, String[] fields) throws SQLException {
+
+        boolean locked = lock(connection);
+        try {
+            if (connection == null)
+                throw new SQLException("Connection is not exist.");
+            if (entities.isEmpty()) return;
+
+            Entity first = entities.get(0);
+            Column key = first.primaryKey;
+
+            // the columns to be read
+            List<Integer> list = new ArrayList<Integer>();
+            for (int i = 0; i < first.columns.length; i++) {
+                Column c = first.columns[i];
+                if (fields.length == 0) {
+                    if (c.isLazy()) list.add(i);
+                    continue;
+                }
+                for (String field : fields) {
+                    if (c.getField().equals(field) || c.getName().equals(field)) list.add(i);
+                }
+            }
+            if (list.isEmpty()) {
+                if (fields.length == 0) return;
+                throw new SQLException(Arrays.toString(fields) + " are not columns.");
+            }
+            int[] indexes = new int[list.size()];
+            StringBuilder head = new StringBuilder("SELECT ").append(key.getField());
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = list.get(i);
+                head.append(',').append(first.columns[indexes[i]].getField());
+            }
+            head.append(" FROM ").append(first.tablename);
+            head.append(" WHERE ").append(key.getField()).append(" IN (");
+
+            int chunk = Math.max(1, Math.min(MAX_LOAD_ROWS, dialect.getMaxParameters()));
+            for (int from = 0; from < entities.size(); from += chunk) {
+                List<? extends Entity> rows = entities.subList(from, Math.min(from + chunk, entities.size()));
+
+                // records of each key
+                Map<Object, List<Entity>> byKey = new HashMap<Object, List<Entity>>();
+                StringBuilder sb = new StringBuilder(head);
+                for (Entity entity : rows) {
+                    if (entity.isNewEntity()) {
+                        throw new SQLException("This record has not been in a database yet.");
+                    }
+                    Object value = entity.primaryKey.getValue();
+                    List<Entity> same = byKey.get(value);
+                    if (same == null) {
+                        same = new ArrayList<Entity>(1);
+                        byKey.put(value, same);
+                        if (sb.length() != head.length()) sb.append(',');
+                        sb.append('?');
+                    }
+                    same.add(entity);
+                }
+                sb.append(')');
+
+                String select = sb.toString();
+                Object[] keys = byKey.keySet().toArray();
+                StatementTrace trace = trace(DbMetrics.Kind.SELECT, first.getClass(), first.tablename,
+                                             select, keys);
+                long read = 0;
+                PreparedStatement ps = prepare(connection, select);
+                try {
+                    for (int i = 0; i < keys.length; i++) {
+                        setParameter(ps, i + 1, keys[i]);
+                    }
+                    ResultSet rs = ps.executeQuery();
+                    try {
+                        while (rs.next()) {
+                            read++;
+                            Object value = get(rs, key.getType(), key.getField());
+                            Object[] values = new Object[indexes.length];
+                            for (int i = 0; i < indexes.length; i++) {
+                                Column c = first.columns[indexes[i]];
+                                values[i] = Entity.read(this, rs, c);
+                            }
+                            List<Entity> same = byKey.get(value);
+                            if (same == null) continue;
+                            for (Entity entity : same) {
+                                entity.setLoadedValues(indexes, values);
+                            }
+                        }
+                    } finally {
+                        rs.close();
+                    }
+                    trace.after(read, 0);
+                } catch (SQLException e) {
+                    trace.error(e, read);
+                    throw e;
+                } finally {
+                    ps.close();
+                }
+            }
+        } finally {
+            if (locked) statementLock.unlock();
+        }
+    }
+
+    /**
+     * Same as {@link #all(Class, Query)}, but reads the records with a
+     * connection borrowed from the connection pool.
+     */
+    <T extends Entity> T[] pooledAll(Class<T> type, Query query) throws SQLException {
+
+        Select select = select(type, query, query.isAfterEnable());
+
+        ConnectionPool pool = getPool();
+        Connection connection = pool.acquire();
+        try {
+            return find(connection, type, select.sql, select.params, select.fields);
+        } finally {
+            pool.release(connection);
+        }
+    }
+
+    /**
+     * Executes a query and maps each row with the mapper, without reflection.
+     * The query runs on its own statement and result set, and does not
+     * replace the result of {@link #execute(String, Object...)}.
+     *
+     * <pre><code>
+     *     List&lt;double[]&gt; points = sqlite.query("SELECT x,y FROM point WHERE z=?",
+     *         new RowMapper&lt;double[]&gt;() {
+     *             public double[] map(ResultSet rs, int row) throws SQLException {
+     *                 return new double[] {rs.getDouble(1), rs.getDouble(2)};
+     *             }
+     *         }, 0);
+     * </code></pre>
+     *
+     * @param sql
+     *            a SELECT statement.
+     * @param mapper
+     *            the mapper of a row.
+     * @param params
+     *            the parameters of the statement.
+     * @return the mapped rows.
+     * @throws SQLException
+     *
+     * @see casmi.db.AsyncSQL#queryAsync(String, RowMapper, Object...)
+     */
+    public <R> List<R> query(String sql, RowMapper<R> mapper, Object... params) throws SQLException {
+
+        if (connection == null)
+            throw new SQLException("Connection is not exist.");
+
+        return query(connection, sql, mapper, params, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Same as {@link #query(String, RowMapper, Object...)}, but maps the
+     * first row only.
+     *
+     * @return the first mapped row, or null if the query returns no row.
+     */
+    public <R> R queryOne(String sql, RowMapper<R> mapper, Object... params) throws SQLException {
+
+        if (connection == null)
+            throw new SQLException("Connection is not exist.");
+
+        List<R> list = query(connection, sql, mapper, params, 1);
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    /**
+     * Returns the first column of the first row of a query, such as
+     * <code>SELECT count(*) FROM ...</code>.
+     *
+     * @param sql
+     *            a SELECT statement.
+     * @param type
+     *            the type of the value.
+     * @param params
+     *            the parameters of the statement.
+     * @return the value, or null if the query returns no row or the value is
+     *         NULL.
+     * @throws SQLException
+     */
+    public <V> V queryValue(String sql, Class<V> type, Object... params) throws SQLException {
+
+        return queryOne(sql, valueMapper(type), params);
+    }
+
+    /**
+     * Returns a mapper of the first column to a value of the type.
+     */
+    <V> RowMapper<V> valueMapper(final Class<V> type) {
+
+        return new RowMapper<V>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V map(ResultSet rs, int row) throws SQLException {
+                Object value = rs.getObject(1);
+                if (value == null || type.isInstance(value)) return (V)value;
+                return dialect.get(rs, type, rs.getMetaData().getColumnLabel(1));
+            }
+        };
+    }
+
+    /**
+     * Same as {@link #query(String, RowMapper, Object...)}, but returns a lazy
+     * stream of the mapped rows fetched as they are read. The stream must be
+     * closed, which closes the statement and the result set:
+     *
+     * <pre><code>
+     *     try (Stream&lt;String&gt; names = sqlite.queryStream("SELECT name FROM sake", mapper)) {
+     *         names.forEach(System.out::println);
+     *     }
+     * </code></pre>
+     *
+     * <p>
+     * The stream reads on the main connection and holds its statement lock
+     * until it is closed, so statements of other threads on the connection and
+     * snapshots wait for the stream; it must be closed by the thread which
+     * opened it. An SQLException while reading is thrown as an
+     * {@link UncheckedSQLException}.
+     * </p>
+     *
+     * @return the stream of the mapped rows.
+     * @throws SQLException
+     */
+    public <R> Stream<R> queryStream(final String sql, final RowMapper<R> mapper, final Object... params)
+        throws SQLException {
+
+        if (connection == null)
+            throw new SQLException("Connection is not exist.");
+
+        final StatementTrace trace = trace(null, null, null, sql, params);
+        statementLock.lock();
+        PreparedStatement statement = null;
+        final ResultSet rs;
+        try {
+            statement = prepare(connection, sql);
+            dialect.prepareStreaming(statement);
+            for (int i = 0; i < params.length; i++) {
+                setParameter(statement, i + 1, params[i]);
+            }
+            rs = statement.executeQuery();
+        } catch (SQLException e) {
+            try {
+                if (statement != null) statement.close();
+            } finally {
+                statementLock.unlock();
+            }
+            trace.error(e, 0);
+            throw e;
+        }
+        final PreparedStatement ps = statement;
+
+        final int[] rows = {0};
+        final SQLException[] failure = {null};
+        Spliterator<R> spliterator =
+            new Spliterators.AbstractSpliterator<R>(Long.MAX_VALUE, Spliterator.ORDERED) {
+
+                @Override
+                public boolean tryAdvance(Consumer<? super R> action) {
+                    try {
+                        if (!rs.next()) return false;
+                        action.accept(mapper.map(rs, rows[0]++));
+                        return true;
+                    } catch (SQLException e) {
+                        failure[0] = e;
+                        throw new UncheckedSQLException(e);
+                    }
+                }
+            };
+
+        return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+
+            @Override
+            public void run() {
+                SQLException e = failure[0];
+                try {
+                    rs.close();
+                    ps.close();
+                } catch (SQLException closing) {
+                    if (e == null) e = closing;
+                } finally {
+                    statementLock.unlock();
+                }
+                if (e == null) {
+                    trace.after(rows[0], 0);
+                } else {
+                    trace.error(e, rows[0]);
+                    if (e != failure[0]) throw new UncheckedSQLException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads numeric columns of the records of the query into primitive
+     * arrays, without creating an entity for each record.
+     *
+     * @param type
+     *            the entity class.
+     * @param query
+     *            the query; the selects of the query are ignored.
+     * @param names
+     *            the names of the numeric fields (or columns) to read.
+     * @return the columns.
+     * @throws SQLException
+     *
+     * @see casmi.db.ColumnBatch
+     */
+    public <T extends Entity> ColumnBatch columns(Class<T> type, Query query, String... names)
+        throws SQLException {
+
+        return columns(type, query, ColumnBatch.DEFAULT_OPTIONS, names);
+    }
+
+    /**
+     * Same as {@link #columns(Class, Query, String...)} with the options of
+     * reading the columns.
+     */
+    public <T extends Entity> ColumnBatch columns(Class<T> type, Query query, ColumnBatch.Options options,
+                                                  String... names)
+        throws SQLException {
+
+        if (connection == null)
+            throw new SQLException("Connection is not exist.");
+
+        T entity = entity(type);
+        String[] fields = new String[names.length];
+        ColumnBatch.Type[] types = new ColumnBatch.Type[names.length];
+        for (int i = 0; i < names.length; i++) {
+            Column c = findColumn(entity, names[i]);
+            if (c == null) {
+                throw new IllegalArgumentException(type + ": " + names[i] + " is not a column.");
+            }
+            types[i] = ColumnBatch.Type.of(c.getType());
+            if (types[i] == null) {
+                throw new IllegalArgumentException(type + ": " + names[i] + " is not numeric.");
+            }
+            fields[i] = c.getField();
+        }
+
+        Select select = select(type, query, false, fields);
+        return columns(connection, type, select.sql, select.params, names, fields, types, options);
+    }
+
+    /**
+     * Reads numeric columns of a query into primitive arrays. Integer columns
+     * are read as int or long, and the others as double. If the query returns
+     * no row, the columns are empty double columns.
+     *
+     * @param sql
+     *            a SELECT statement.
+     * @param params
+     *            the parameters of the statement.
+     * @param names
+     *            the labels of the columns to read.
+     * @return the columns.
+     * @throws SQLException
+     *
+     * @see casmi.db.ColumnBatch
+     */
+    public ColumnBatch columns(String sql, Object[] params, String... names) throws SQLException {
+
+        return columns(sql, params, ColumnBatch.DEFAULT_OPTIONS, names);
+    }
+
+    /**
+     * Same as {@link #columns(String, Object[], String...)} with the options
+     * of reading the columns.
+     */
+    public ColumnBatch columns(String sql, Object[] params, ColumnBatch.Options options, String... names)
+        throws SQLException {
+
+        if (connection == null)
+            throw new SQLException("Connection is not exist.");
+
+        return columns(connection, null, sql, params == null ? NO_PARAMETERS : params,
+                       names, names, null, options);
+    }
+
+    /**
+     * Returns the column of the field or the field name, including the
+     * primary key.
+     */
+    private static Column findColumn(Entity entity, String name) {
+
+        if (entity.primaryKey != null &&
+            (entity.primaryKey.getName().equals(name) || entity.primaryKey.getField().equals(name))) {
+            return entity.primaryKey;
+        }
+        for (Column c : entity.columns) {
+            if (c.getName().equals(name) || c.getField().equals(name)) return c;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the columns of a query, counting the rows first if the options
+     * say so.
+     *
+     * @param types
+     *            the types of the columns, or null to read the types of the
+     *            result set.
+     */
+    private ColumnBatch columns(Connection connection, Class<? extends Entity> type, String sql,
+                                Object[] params, String[] names, String[] fields,
+                                ColumnBatch.Type[] types, ColumnBatch.Options options)
+        throws SQLException {
+
+        boolean locked = lock(connection);
+        try {
+            int capacity = -1;
+            if (options.isPrecount()) {
+                List<Long> count = query(connection, "SELECT count(*) FROM (" + sql + ") AS batch",
+                                         valueMapper(Long.class), params, 1);
+                capacity = (int)Math.min(count.get(0), Integer.MAX_VALUE - 8);
+            }
+
+            StatementTrace trace = trace(DbMetrics.Kind.SELECT, type, sql, params);
+            PreparedStatement ps = prepare(connection, sql);
+            try {
+                dialect.prepareStreaming(ps);
+                for (int i = 0; i < params.length; i++) {
+                    setParameter(ps, i + 1, params[i]);
+                }
+                ResultSet rs = ps.executeQuery();
+                ColumnBatch batch = new ColumnBatch(names, fields, types, options, capacity);
+                try {
+                    batch.read(rs);
+                } finally {
+                    rs.close();
+                }
+                trace.after(batch.size(), 0);
+                return batch;
+            } catch (SQLException e) {
+                trace.error(e, 0);
+                throw e;
+            } finally {
+                ps.close();
+            }
+        } finally {
+            if (locked) statementLock.unlock();
+        }
+    }
+
+    /**
+     * Same as {@link #query(String, RowMapper, Object...)}, but reads the
+     * rows with a connection borrowed from the connection pool.
+     */
+    <R> List<R> pooledQuery(String sql, RowMapper<R> mapper, Object[] params) throws SQLException {
+
+        ConnectionPool pool = getPool();
+        Connection connection = pool.acquire();
+        try {
+            return query(connection, sql, mapper, params, Integer.MAX_VALUE);
+        } finally {
+            pool.release(connection);
+        }
+    }
+
+    /**
+     * Executes a query on its own statement and maps at most the number of
+     * rows.
+     */
+    private <R> List<R> query(Connection connection, String sql, RowMapper<R> mapper,
+                              Object[] params, int maxRows)
+        throws SQLException {
+
+        boolean locked = lock(connection);
+        try {
+            StatementTrace trace = trace(null, null, null, sql, params);
+            List<R> list = new ArrayList<R>();
+            PreparedStatement ps = prepare(connection, sql);
+            try {
+                for (int i = 0; i < params.length; i++) {
+                    setParameter(ps, i + 1, params[i]);
+                }
+                ResultSet rs = ps.executeQuery();
+                try {
+                    while (list.size() < maxRows && rs.next()) {
+                        list.add(mapper.map(rs, list.size()));
+                    }
+                } finally {
+                    rs.close();
+                }
+                trace.after(list.size(), 0);
+                return list;
+            } catch (SQLException e) {
+                trace.error(e, list.size());
+                throw e;
+            } finally {
+                ps.close();
+            }
+        } finally {
+            if (locked) statementLock.unlock();
+        }
+    }
+
+    /**
+     * Same as {@link #find(Class, int)}, but reads the record with a
+     * connection borrowed from the connection pool.
+     */
+    <T extends Entity> T pooledFind(Class<T> type, int id) throws SQLException {
+
+        EntityStatements statements = EntityStatements.get(this, type);
+
+        ConnectionPool pool = getPool();
+        Connection connection = pool.acquire();
+        try {
+            T[] entities = find(connection, type, statements.selectByKey, new Object[] {id},
+                                statements.defaultSelects);
+            return entities.length == 0 ? null : entities[0];
+        } finally {
+            pool.release(connection);
+        }
+    }
+
+    private <T extends Entity> T[] find(Class<T> type, String sqlStr, Object[] params, String... selects)
+        throws SQLException {
+        if (connection == null)
+            throw new SQLException("Connection is not exist.");
+
+        return find(connection, type, sqlStr, params, selects);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Entity> T[] find(Connection connection, Class<T> type, String sqlStr,
+                                        Object[] params, String... selects)
+        throws SQLException {
+
+        boolean locked = lock(connection);
+        try {
+            RowPipeline<T> pipeline = pipeline(type, selects);
+            if (pipeline != null) {
+                List<T> list = query(connection, type, sqlStr, params, pipeline);
+                return list.toArray((T[])Array.newInstance(type, list.size()));
+            }
+
+            final List<T> list = new ArrayList<T>();
+
+            scan(connection, type, sqlStr, params, selects, new EntityConsumer<T>() {
+
+                @Override
+                public void accept(T entity) {
+                    list.add(entity);
+                }
+            });
+
+            if (list.isEmpty()) return (T[])Array.newInstance(type, 0);
+
+            return list.toArray((T[])Array.newInstance(type, list.size()));
+        } finally {
+            if (locked) statementLock.unlock();
+        }
+    }
+
+    /**
+     * Maps the current row of the result set to a new entity.
+     */
+    <T extends Entity> T map(ResultSet rs, Class<T> type, String[] selects) throws SQLException {
+
+        T entity = entity(type);
+        if (selects        == null ||
+            selects.length == 0    || selects[0].equals('*')) {
+            entity.setValuesFromResultSet(rs);
+        } else {
+            entity.setValuesFromReslutSet(rs, selects);
+        }
+        return entity;
+    }
+
+    private <T extends Entity> List<T> query(Connection connection, Class<T> type, String sqlStr,
+                                             Object[] params, RowPipeline<T> pipeline)
+        throws SQLException {
+
+        StatementTrace trace = trace(DbMetrics.Kind.SELECT, type, sqlStr, params);
+        PreparedStatement ps = prepare(connection, sqlStr);
+        try {
+            for (int i = 0; i < params.length; i++) {
+                setParameter(ps, i + 1, params[i]);
+            }
+            ResultSet rs = ps.executeQuery();
+            if (trace.start() != 0) metrics.jdbc(System.nanoTime() - trace.start());
+            try {
+                List<T> list = pipeline.run(rs);
+                trace.after(list.size(), 0);
+                return list;
+            } finally {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            trace.error(e, 0);
+            throw e;
+        } finally {
+            ps.close();
+        }
+    }
+
+    private <T extends Entity> void scan(Connection connection, Class<T> type, String sqlStr,
+                                         Object[] params, String[] selects, EntityConsumer<T> consumer)
+        throws SQLException {
+
+        StatementTrace trace = trace(DbMetrics.Kind.SELECT, type, sqlStr, params);
+        long start = trace.start();
+        long rows = 0;
+        Statement statement = null;
+        ResultSet rs = null;
+        try {
+            if (0 < params.length) {
+                PreparedStatement ps = prepare(connection, sqlStr);
+                statement = ps;
+                for (int i = 0; i < params.length; i++) {
+                    setParameter(ps, i + 1, params[i]);
+                }
+                rs = ps.executeQuery();
+            } else {
+                statement = connection.createStatement();
+                rs = statement.executeQuery(sqlStr);
+            }
+
+            JfrEvents.RowsMapped mapped = new JfrEvents.RowsMapped();
+            if (start == 0 && !mapped.isEnabled()) {
+                while (rs.next()) {
+                    rows++;
+                    consumer.accept(map(rs, type, selects));
+                }
+            } else {
+                // the time of the consumer is neither JDBC nor mapping time.
+                mapped.begin();
+                long jdbcNanos = start == 0 ? 0 : System.nanoTime() - start, mappingNanos = 0;
+                while (true) {
+                    long t0 = System.nanoTime();
+                    if (!rs.next()) {
+                        jdbcNanos += System.nanoTime() - t0;
+                        break;
+                    }
+                    long t1 = System.nanoTime();
+                    T entity = map(rs, type, selects);
+                    mappingNanos += System.nanoTime() - t1;
+                    jdbcNanos += t1 - t0;
+                    rows++;
+                    consumer.accept(entity);
+                }
+                mapped.record(type, rows, mappingNanos);
+                if (start != 0) {
+                    metrics.jdbc(jdbcNanos);
+                    metrics.mapping(mappingNanos);
+                }
+            }
+            trace.after(rows, 0);
+        } catch (SQLException e) {
+            trace.error(e, rows);
+            throw e;
+        } finally {
+            if (rs != null) rs.close();
+            if (statement != null) statement.close();
+        }
+    }
+
+    /**
+     * Returns a publisher of the records of the query.
+     *
+     * @see #publish(Class, Query, Executor)
+     */
+    public <T extends Entity> Flow.Publisher<T> publish(Class<T> type, Query query) {
+
+        return publish(type, query, publisherExecutor());
+    }
+
+    /**
+     * Returns a publisher of the records of the query.
+     *
+     * <p>
+     * Each subscription runs the query on a connection borrowed from the
+     * connection pool when the first record is requested, and fetches rows
+     * from the result set only as many as requested, so the memory does not
+     * grow with the size of the result. The statement is closed and the
+     * connection is returned to the pool on completion, on error and on
+     * cancellation. Subscribers are signaled on the threads of the executor.
+     * </p>
+     *
+     * @param type
+     *            the entity class.
+     * @param query
+     *            the query.
+     * @param executor
+     *            the executor delivering records.
+     * @return a publisher.
+     * @throws UncheckedSQLException
+     *             if the entity class cannot be mapped.
+     */
+    public <T extends Entity> Flow.Publisher<T> publish(Class<T> type, Query query, Executor executor) {
+
+        Select select;
+        try {
+            select = select(type, query, query.isAfterEnable());
+        } catch (SQLException e) {
+            throw new UncheckedSQLException(e);
+        }
+        return new ResultSetPublisher<T>(this, type, select.sql, select.params, select.fields, executor);
+    }
+
+    /**
+     * Reads the records of the query in parallel and passes them to the
+     * consumer in no particular order.
+     *
+     * @see #parallelScan(Class, Query, int, boolean, EntityConsumer)
+     */
+    public <T extends Entity> void parallelScan(Class<T> type, Query query, int parallelism,
+                                                EntityConsumer<T> consumer) throws SQLException {
+
+        parallelScan(type, query, parallelism, false, consumer);
+    }
+
+    /**
+     * Reads the records of the query in parallel.
+     *
+     * <p>
+     * The range of the primary key (or the rowid of SQLite if the primary key
+     * is not an integer) is split into partitions. Each partition is read and
+     * mapped to entities on a daemon thread, which the scans of this object
+     * share and reuse, with a connection borrowed from the connection pool,
+     * so the number of partitions read at the same time is limited by
+     * {@link #setPoolSize(int)}.
+     * </p>
+     *
+     * <p>
+     * In the unordered mode, the consumer receives entities as soon as they are
+     * mapped. In the ordered mode, the consumer receives entities in the order
+     * of the partition key on the calling thread after all partitions are read,
+     * so the whole result is kept in memory. In both modes, the consumer is not
+     * called concurrently.
+     * </p>
+     *
+     * @param type
+     *            the entity class.
+     * @param query
+     *            the query. The order and the limit of the query are not
+     *            supported.
+     * @param parallelism
+     *            the number of partitions.
+     * @param ordered
+     *            true to receive entities in the order of the partition key.
+     * @param consumer
+     *            the consumer of entities.
+     * @throws SQLException
+     */
+    public <T extends Entity> void parallelScan(final Class<T> type, Query query, int parallelism,
+                                                boolean ordered, final EntityConsumer<T> consumer)
+        throws SQLException {
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be positive.");
+        }
+        if (query.isLimitEnable()) {
+            throw new IllegalArgumentException("The limit is not supported by a parallel scan.");
+        }
+
+        // partition key
+        String key = Entity.getPrimaryKeyField(type);
+        Class<?> keyType = Entity.getPrimaryKeyType(type);
+        if (keyType != int.class  && keyType != Integer.class &&
+            keyType != long.class && keyType != Long.class    &&
+            keyType != short.class && keyType != Short.class) {
+            if (dialect.supports(Capability.ROWID)) {
+                key = "rowid";
+            } else {
+                key = null;
+            }
+        }
+
+        // the range of the partition key
+        List<Query> partitions = new ArrayList<Query>();
+        if (key == null) {
+            partitions.add(query.copy());
+        } else {
+            long[] range = keyRange(type, key, query);
+            if (range == null) return;
+
+            long min = range[0], max = range[1];
+            long step = partitionStep(min, max, parallelism);
+            for (long lo = min;; lo += step) {
+                String where = key + ">=" + lo;
+                long hi = lo + step;
+                boolean last = hi < lo || max < hi; // overflow or beyond the range
+                if (!last) where += " AND " + key + "<" + hi;
+                partitions.add(query.copy().restrict(where).order(key).desc(false));
+                if (last) break;
+            }
+        }
+
+        final ConnectionPool pool = getPool();
+        ExecutorService executor = scanExecutor();
+        List<Future<List<T>>> futures = new ArrayList<Future<List<T>>>();
+
+        try {
+            for (Query partition : partitions) {
+                final Select select = select(type, partition, false);
+                final List<T> buffer = ordered ? new ArrayList<T>() : null;
+
+                futures.add(executor.submit(new Callable<List<T>>() {
+
+                    @Override
+                    public List<T> call() throws SQLException {
+                        Connection connection = pool.acquire();
+                        try {
+                            scan(connection, type, select.sql, select.params, select.fields,
+                                 new EntityConsumer<T>() {
+
+                                @Override
+                                public void accept(T entity) throws SQLException {
+                                    if (buffer != null) {
+                                        buffer.add(entity);
+                                    } else {
+                                        synchronized (consumer) {
+                                            consumer.accept(entity);
+                                        }
+                                    }
+                                }
+                            });
+                        } finally {
+                            pool.release(connection);
+                        }
+                        return buffer;
+                    }
+                }));
+            }
+
+            for (Future<List<T>> future : futures) {
+                List<T> buffer = getResult(future);
+                if (buffer != null) {
+                    for (T entity : buffer) {
+                        consumer.accept(entity);
+                    }
+                    buffer.clear();
+                }
+            }
+        } finally {
+            for (Future<List<T>> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Returns the width of a partition of the key range, which may be wider
+     * than Long.MAX_VALUE.
+     */
+    static long partitionStep(long min, long max, int parallelism) {
+
+        BigInteger width = BigInteger.valueOf(max).subtract(BigInteger.valueOf(min));
+        BigInteger step  = width.divide(BigInteger.valueOf(parallelism)).add(BigInteger.ONE);
+        return step.min(BigInteger.valueOf(Long.MAX_VALUE)).longValue();
+    }
+
+    private <T> T getResult(Future<T> future) throws SQLException {
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a result.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException)e.getCause();
+            }
+            throw new SQLException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the minimum and the maximum value of the key, or null if the
+     * query has no record.
+     */
+    private <T extends Entity> long[] keyRange(Class<T> type, String key, Query query) throws SQLException {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("SELECT MIN(").append(key).append("),MAX(").append(key).append(") FROM ");
+        sb.append(getTablename(type));
+        if (query.isWhereEnable()) {
+            sb.append(" WHERE ");
+            sb.append(query.getWhere());
+        }
+
+        ConnectionPool pool = getPool();
+        Connection connection = pool.acquire();
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                ResultSet rs = statement.executeQuery(sb.toString());
+                if (!rs.next() || rs.getObject(1) == null) return null;
+                return new long[] {rs.getLong(1), rs.getLong(2)};
+            } finally {
+                statement.close();
+            }
+        } finally {
+            pool.release(connection);
+        }
+    }
+
+    public <T extends Entity> void truncate(Class<T> type) throws SQLException {
+        if (connection == null)
+            throw new SQLException("Connection is not exist.");
+
+        Statement statement = connection.createStatement();
+        String stmt = dialect.truncate(getTablename(type));
+        statement.executeUpdate(stmt);
+        statement.close();
+    }
+
+    public <T extends Entity> void drop(Class<T> type) throws SQLException {
+        if (connection == null)
+            throw new SQLException("Connection is not exist.");
+
+        Statement statement = connection.createStatement();
+        String stmt = dialect.drop(getTablename(type));
+        statement.executeUpdate(stmt);
+        statement.close();
+        removeKnownTable(getTablename(type));
+    }
+
+    /**
+     * Creates the indexes of the entity class which do not exist in the table,
+     * such as the ones declared after the table was created.
+     *
+     * @param type
+     *            the entity class.
+     * @return the number of the created indexes.
+     * @throws SQLException
+     *
+     * @see casmi.db.annotation.Index
+     * @see casmi.db.annotation.Unique
+     */
+    public <T extends Entity> int createIndexes(Class<T> type) throws SQLException {
+
+        if (connection == null)
+            throw new SQLException("Connection is not exist.");
+
+        EntityStatements statements = EntityStatements.get(this, type);
+
+        String tablename = getTablename(type);
+        DatabaseMetaData dmd = connection.getMetaData();
+        if (dmd.storesUpperCaseIdentifiers()) tablename = tablename.toUpperCase();
+
+        Set<String> existing = new HashSet<String>();
+        ResultSet rs = dmd.getIndexInfo(null, null, tablename, false, false);
+        try {
+            while (rs.next()) {
+                String name = rs.getString("INDEX_NAME");
+                if (name != null) existing.add(name.toLowerCase());
+            }
+        } finally {
+            rs.close();
+        }
+
+        int created = 0;
+        for (int i = 0; i < statements.indexNames.length; i++) {
+            if (!existing.contains(statements.indexNames[i].toLowerCase())) {
+                execute(statements.createIndexes[i]);
+                created++;
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Inserts new entities by as few statements as possible.
+     *
+     * <p>
+     * The entities are inserted by multi-row INSERT statements if the database
+     * supports them, or else by batches of a prepared statement. Unless
+     * auto-commit mode has been disabled, all the entities are inserted in a
+     * transaction.
+     * </p>
+     *
+     * @param entities
+     *            the new entities of a class, created by {@link #entity(Class)}.
+     * @throws SQLException
+     */
+    public <T extends Entity> void insertAll(T[] entities) throws SQLException {
+
+        boolean locked = lock(connection);
+        try {
+            if (connection == null)
+                throw new SQLException("Connection is not exist.");
+
+            if (entities.length == 0) return;
+
+            EntityStatements statements = entities[0].statements;
+            Object[][] rows = new Object[entities.length][];
+            for (int i = 0; i < entities.length; i++) {
+                if (!entities[i].isNewEntity()) {
+                    throw new SQLException("The record has been in a database already.");
+                }
+                entities[i].readColumns();
+                rows[i] = entities[i].insertValues();
+            }
+
+            boolean autoCommit = connection.getAutoCommit();
+            if (autoCommit) connection.setAutoCommit(false);
+            StatementTrace trace = trace(DbMetrics.Kind.INSERT, entities[0].getClass(), statements.tablename,
+                                         statements.insert, NO_PARAMETERS);
+            try {
+                if (dialect.supports(Capability.MULTI_ROW_INSERT)) {
+                    insertRows(statements, rows);
+                } else {
+                    insertBatch(statements.insert, rows);
+                }
+                if (autoCommit) commit(connection);
+                trace.after(0, rows.length);
+            } catch (SQLException e) {
+                trace.error(e, 0);
+                if (autoCommit) connection.rollback();
+                throw e;
+            } finally {
+                if (autoCommit) connection.setAutoCommit(true);
+            }
+
+            for (T entity : entities) {
+                entity.inserted();
+            }
+        } finally {
+            if (locked) statementLock.unlock();
+        }
+    }
+
+    /** The maximum number of the rows of a multi-row INSERT statement. */
+    private static final int MAX_INSERT_ROWS = 1000;
+
+    private void insertRows(EntityStatements statements, Object[][] rows) throws SQLException {
+
+        int width = statements.insertFields.length;
+        int chunk = Math.max(1, Math.min(MAX_INSERT_ROWS, dialect.getMaxParameters() / Math.max(1, width)));
+
+        PreparedStatement ps = null;
+        int prepared = 0;
+        try {
+            for (int from = 0; from < rows.length; from += chunk) {
+                int n = Math.min(chunk, rows.length - from);
+                if (n != prepared) {
+                    if (ps != null) ps.close();
+                    ps = prepare(connection, dialect.insert(statements.tablename, statements.insertFields, n));
+                    prepared = n;
+                }
+                int index = 1;
+                for (int r = from; r < from + n; r++) {
+                    for (Object value : rows[r]) {
+                        setParameter(ps, index++, value);
+                    }
+                }
+                ps.executeUpdate();
+            }
+        } finally {
+            if (ps != null) ps.close();
+        }
+    }
+
+    private void insertBatch(String insert, Object[][] rows) throws SQLException {
+
+        boolean batch = dialect.supports(Capability.BATCH);
+
+        PreparedStatement ps = prepare(connection, insert);
+        try {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    setParameter(ps, i + 1, row[i]);
+                }
+                if (batch) ps.addBatch();
+                else ps.executeUpdate();
+            }
+            if (batch) ps.executeBatch();
+        } finally {
+            ps.close();
+        }
     }
 
     public <T extends Entity> String getTablename(Class<T> type) {
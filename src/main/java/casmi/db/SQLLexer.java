@@ -0,0 +1,237 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A lexer classifying SQL statements by their leading keywords.
+ *
+ * <p>
+ * Comments, string literals and quoted identifiers are skipped, so a column
+ * named <code>selected</code> or an <code>INSERT ... SELECT</code> is not a
+ * query. The statement of a <code>WITH</code> clause is the one following the
+ * common table expressions, and a <code>PRAGMA</code> is a query unless it
+ * assigns a value. The classifications are cached by the statements in a
+ * bounded map, so repeated statements are not lexed again.
+ * </p>
+ *
+ * @author T. Takeuchi
+ */
+final class SQLLexer {
+
+    /** The maximum number of the cached classifications. */
+    static final int CACHE_SIZE = 2048;
+
+    private static final ConcurrentMap<String, Classification> CACHE =
+        new ConcurrentHashMap<String, Classification>();
+
+    private SQLLexer() {
+    }
+
+    /**
+     * A classification of a statement.
+     */
+    static final class Classification {
+
+        /** The leading keyword in upper case, or an empty string. */
+        final String keyword;
+
+        final DbMetrics.Kind kind;
+
+        /** True if the statement returns a result set. */
+        final boolean query;
+
+        /** The number of the positional placeholders. */
+        final int placeholders;
+
+        /** The names of the named parameters such as :name, in order. */
+        final List<String> namedParameters;
+
+        Classification(String keyword, DbMetrics.Kind kind, boolean query, int placeholders,
+                       List<String> namedParameters) {
+
+            this.keyword         = keyword;
+            this.kind            = kind;
+            this.query           = query;
+            this.placeholders    = placeholders;
+            this.namedParameters = namedParameters;
+        }
+    }
+
+    /**
+     * Returns the classification of a statement.
+     *
+     * @param sql
+     *            a statement.
+     * @return the classification.
+     */
+    static Classification classify(String sql) {
+
+        Classification c = CACHE.get(sql);
+        if (c == null) {
+            c = lex(sql);
+            if (CACHE_SIZE <= CACHE.size()) CACHE.clear();
+            CACHE.put(sql, c);
+        }
+        return c;
+    }
+
+    /**
+     * Returns true if the statement returns a result set.
+     */
+    static boolean isQuery(String sql) {
+
+        return classify(sql).query;
+    }
+
+    static Classification lex(String sql) {
+
+        int n = sql.length();
+        int depth = 0;
+        int placeholders = 0;
+        List<String> named = null;
+
+        String first = null;      // the leading keyword
+        String main = null;       // the statement of WITH
+        boolean assigns = false;  // '=' in a PRAGMA
+
+        int i = 0;
+        while (i < n) {
+            char c = sql.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+                while (i < n && sql.charAt(i) != '\n') i++;
+            } else if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+            } else if (c == '\'' || c == '"' || c == '`') {
+                i = skipQuoted(sql, i, c);
+            } else if (c == '[' && first != null) {
+                int end = sql.indexOf(']', i + 1);
+                i = end < 0 ? n : end + 1;
+            } else if (c == '(') {
+                depth++;
+                i++;
+            } else if (c == ')') {
+                depth--;
+                i++;
+            } else if (c == '?') {
+                // ? or ?NNN
+                placeholders++;
+                i++;
+                while (i < n && Character.isDigit(sql.charAt(i))) i++;
+            } else if (c == ':' && i + 1 < n && isIdentifierStart(sql.charAt(i + 1)) &&
+                       (i == 0 || sql.charAt(i - 1) != ':')) {
+                int start = ++i;
+                while (i < n && isIdentifierPart(sql.charAt(i))) i++;
+                if (named == null) named = new ArrayList<String>();
+                named.add(sql.substring(start, i));
+            } else if (isIdentifierStart(c)) {
+                int start = i;
+                while (i < n && isIdentifierPart(sql.charAt(i))) i++;
+                if (first == null) {
+                    first = sql.substring(start, i).toUpperCase(Locale.ROOT);
+                } else if (main == null && depth == 0 && first.equals("WITH")) {
+                    String word = sql.substring(start, i).toUpperCase(Locale.ROOT);
+                    if (isStatement(word)) main = word;
+                }
+            } else {
+                if (c == '=') assigns = true;
+                i++;
+            }
+        }
+
+        String keyword = first == null ? "" : first;
+        String statement = main != null ? main : keyword;
+
+        boolean query;
+        if (keyword.equals("PRAGMA")) {
+            query = !assigns;
+        } else {
+            query = statement.equals("SELECT") || statement.equals("VALUES") ||
+                    statement.equals("SHOW")   || statement.equals("EXPLAIN") ||
+                    statement.equals("DESCRIBE") || statement.equals("DESC");
+        }
+
+        List<String> names = named == null ? Collections.<String>emptyList()
+                                           : Collections.unmodifiableList(named);
+        return new Classification(keyword, kind(statement), query, placeholders, names);
+    }
+
+    private static DbMetrics.Kind kind(String keyword) {
+
+        if (keyword.equals("SELECT") || keyword.equals("VALUES")) {
+            return DbMetrics.Kind.SELECT;
+        } else if (keyword.equals("INSERT") || keyword.equals("REPLACE") || keyword.equals("MERGE")) {
+            return DbMetrics.Kind.INSERT;
+        } else if (keyword.equals("UPDATE")) {
+            return DbMetrics.Kind.UPDATE;
+        } else if (keyword.equals("DELETE")) {
+            return DbMetrics.Kind.DELETE;
+        } else if (keyword.equals("CREATE") || keyword.equals("DROP") ||
+                   keyword.equals("ALTER")  || keyword.equals("TRUNCATE")) {
+            return DbMetrics.Kind.DDL;
+        }
+        return DbMetrics.Kind.OTHER;
+    }
+
+    private static boolean isStatement(String word) {
+
+        return word.equals("SELECT") || word.equals("INSERT") || word.equals("UPDATE") ||
+               word.equals("DELETE") || word.equals("REPLACE") || word.equals("MERGE") ||
+               word.equals("VALUES");
+    }
+
+    private static int skipQuoted(String sql, int i, char quote) {
+
+        int n = sql.length();
+        i++;
+        while (i < n) {
+            if (sql.charAt(i) == quote) {
+                // a doubled quote is an escaped quote
+                if (i + 1 < n && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return n;
+    }
+
+    private static boolean isIdentifierStart(char c) {
+
+        return Character.isLetter(c) || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+}
@@ -25,6 +25,8 @@ enum SQLType {
 
     MYSQL_5,
 
+    H2,
+
     // PostgreSQL,
 
     // OracleDB,
@@ -20,20 +20,29 @@
 package casmi.db;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.sql.Blob;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
 import java.sql.DriverManager;
-import java.sql.ParameterMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.ParseException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import casmi.db.util.DateUtil;
 
@@ -46,32 +55,44 @@ import casmi.db.util.DateUtil;
  */
 public class SQLite extends SQL {
 
-    /** SQL database type. */
-    private static final SQLType SQL_TYPE = SQLType.SQLITE_3;
+    /**
+     * Storage of dates.
+     */
+    public enum DateStorage {
+
+        /** Text of "yyyy-MM-dd HH:mm:ss" in the local time; the default. */
+        TEXT,
+
+        /** INTEGER of the milliseconds since 1970-01-01T00:00:00Z. */
+        EPOCH_MILLIS,
+
+        /** REAL of the julian day, as the date and time functions of SQLite. */
+        JULIAN_DAY,
+    }
 
     /** Driver name. */
     private static final String DRIVER = "org.sqlite.JDBC";
 
-    /** Date formats. */
-    private static final String[][] DATE_FORMATS = {
-        {"[0-9]{4}-[0-9]{2}-[0-9]{2}",                            "yyyy-MM-dd"},
-        {"[0-9]{4}-[0-9]{2}-[0-9]{2} [0-9]{2}:[0-9]{2}",          "yyyy-MM-dd HH:mm"},
-        {"[0-9]{4}-[0-9]{2}-[0-9]{2} [0-9]{2}:[0-9]{2}:[0-9]{2}", "yyyy-MM-dd HH:mm:ss"},
-        {"[0-9]{4}-[0-9]{2}-[0-9]{2}T[0-9]{2}:[0-9]{2}",          "yyyy-MM-dd'T'HH:mm"},
-        {"[0-9]{4}-[0-9]{2}-[0-9]{2}T[0-9]{2}:[0-9]{2}:[0-9]{2}", "yyyy-MM-dd'T'HH:mm:ss"}
-    };
+    /** The maximum number of bytes transferred at once. */
+    private static final long TRANSFER_SIZE = 1 << 20;
+
+    /** URL of an in-memory database. */
+    private static final String MEMORY_URL = "jdbc:sqlite::memory:";
 
     /** Database URL. */
     private final String url;
 
-    /** java.sql.Statement. */
-    private Statement statement;
+    /** The file restored into an in-memory database on connect, or null. */
+    private final File preload;
+
+    /** Persists an in-memory database periodically. */
+    private ScheduledExecutorService persister;
 
-    /** java.sql.PreparedStatement. */
-    private PreparedStatement preparedStatement;
+    /** The file of the periodic persistence. */
+    private File persistFile;
 
-    /** java.sql.ResultSet. */
-    private ResultSet resultSet;
+    /** The failure of the last periodic snapshot, or null. */
+    private volatile SQLException persistFailure;
 
     // Load driver.
     static {
@@ -89,7 +110,7 @@ public class SQLite extends SQL {
      *            The SQLite3 database file.
      */
     public SQLite(File dbFile) {
-        super(SQL_TYPE);
+        super(new SQLiteDialect());
 
         String path = null;
         if (dbFile.isFile()) {
@@ -99,6 +120,14 @@ public class SQLite extends SQL {
         }
 
         url = "jdbc:sqlite:" + path;
+        preload = null;
+    }
+
+    private SQLite(String url, File preload) {
+        super(new SQLiteDialect());
+
+        this.url     = url;
+        this.preload = preload;
     }
 
     /**
@@ -111,6 +140,38 @@ public class SQLite extends SQL {
         this(new File(dbPath));
     }
 
+    /**
+     * Creates new SQLite object of an empty in-memory database.
+     *
+     * <p>
+     * An in-memory database lives only in the main connection; it is lost
+     * when the connection is closed unless it is persisted by
+     * {@link #persist(File)}, and the work on the pooled connections, such as
+     * {@link #parallelScan(Class, Query, int, EntityConsumer)}, is not
+     * available.
+     * </p>
+     *
+     * @return new SQLite object.
+     */
+    public static SQLite memory() {
+
+        return new SQLite(MEMORY_URL, null);
+    }
+
+    /**
+     * Creates new SQLite object of an in-memory database which is loaded from
+     * the specified database file on {@link #connect()}.
+     *
+     * @param dbFile
+     *            The SQLite3 database file to be loaded; if it does not exist,
+     *            the database is empty.
+     * @return new SQLite object.
+     */
+    public static SQLite memory(File dbFile) {
+
+        return new SQLite(MEMORY_URL, dbFile);
+    }
+
     /**
      * Create SQLite3 database file.
      *
@@ -119,491 +180,516 @@ public class SQLite extends SQL {
      * @throws IOException
      */
     public static void createDatabase(File dbFile) throws IOException {
-        InputStream is = SQLite.class.getResourceAsStream("template.sqlite3");
-        createFileFromInputStream(dbFile, is);
-    }
-
-    private static void createFileFromInputStream(File dest, InputStream inputStream) throws IOException {
-        byte[] buffer = new byte[1024];
-        int length = 0;
-        FileOutputStream fos = null;
 
-        try {
-            fos = new FileOutputStream(dest);
-
-            while (0 <= (length = inputStream.read(buffer))) {
-                fos.write(buffer, 0, length);
+        ReadableByteChannel in;
+        URL template = SQLite.class.getResource("template.sqlite3");
+        if ("file".equals(template.getProtocol())) {
+            try {
+                in = new FileInputStream(new File(template.toURI())).getChannel();
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
             }
+        } else {
+            in = Channels.newChannel(template.openStream());
+        }
 
-            fos.close();
-            fos = null;
-        } finally {
-            if (fos != null) {
-                try {
-                    fos.close();
-                } catch (IOException e) {
-                    // Ignore.
+        try {
+            FileChannel out = new FileOutputStream(dbFile).getChannel();
+            try {
+                // A file channel is transferred without copying to the heap.
+                long position = 0, n;
+                while (0 < (n = out.transferFrom(in, position, TRANSFER_SIZE))) {
+                    position += n;
                 }
+            } finally {
+                out.close();
             }
+        } finally {
+            in.close();
         }
     }
-    
+
     /**
-     * Create SQLite3 database file.
+     * Creates a SQLite3 database file with the tables of the entity classes,
+     * and connects to it.
      *
-     * @param dbPath
-     *            database file path.
+     * @param dbFile
+     *            the database file.
+     * @param types
+     *            the entity classes.
+     * @return connected SQLite object.
      * @throws IOException
+     * @throws SQLException
      */
-    public static void createDatabase(String dbPath) throws IOException {
-        createDatabase(new File(dbPath));
-    }
+    @SafeVarargs
+    public static SQLite bootstrap(File dbFile, Class<? extends Entity>... types)
+        throws IOException, SQLException {
 
-    @Override
-    public void connect() throws SQLException {
-
-        connection = DriverManager.getConnection(url);
-    }
-
-    @Override
-    public void close() {
-
-        if (connection != null) {
-            try {
-                connection.close();
-            } catch (SQLException e) {
-                // Ignore.
-            }
-        }
+        return bootstrap(dbFile, 0, 0, types);
     }
 
     /**
-     * Closes statement and preparedStatement.
+     * Creates a SQLite3 database file with the tables of the entity classes,
+     * and connects to it.
+     *
+     * <p>
+     * The tables are created in a transaction. If the size is specified, the
+     * file is extended to the size in advance, and the database reuses the
+     * free pages instead of growing the file while records are inserted.
+     * </p>
+     *
+     * @param dbFile
+     *            the database file.
+     * @param pageSize
+     *            the page size of the database in bytes; a power of two from
+     *            512 to 65536, or 0 for the default.
+     * @param size
+     *            the size of the file in bytes, or 0 not to extend the file.
+     * @param types
+     *            the entity classes.
+     * @return connected SQLite object.
+     * @throws IOException
+     * @throws SQLException
      */
-    private void closeStatements() {
+    @SafeVarargs
+    public static SQLite bootstrap(File dbFile, int pageSize, long size,
+                                   Class<? extends Entity>... types)
+        throws IOException, SQLException {
 
-        if (statement != null) {
-            try {
-                statement.close();
-            } catch (SQLException e) {
-                // Ignore.
-            }
-        }
-        if (preparedStatement != null) {
+        createDatabase(dbFile);
+
+        SQLite sqlite = new SQLite(dbFile);
+        sqlite.connect();
+        try {
+            Statement stmt = sqlite.connection.createStatement();
             try {
-                preparedStatement.close();
-            } catch (SQLException e) {
-                // Ignore.
+                if (0 < pageSize) {
+                    // The page size of an existing database changes on VACUUM.
+                    stmt.execute("PRAGMA page_size=" + pageSize);
+                    stmt.execute("VACUUM");
+                }
+
+                sqlite.setAutoCommit(false);
+                for (Class<? extends Entity> type : types) {
+                    sqlite.entity(type);
+                }
+                if (0 < size) {
+                    reserve(sqlite.connection, stmt, size);
+                }
+                sqlite.commit();
+                sqlite.setAutoCommit(true);
+            } finally {
+                stmt.close();
             }
+        } catch (SQLException e) {
+            sqlite.close();
+            throw e;
         }
-    }
 
-    @Override
-    public void execute(String sql, Object... params) throws SQLException {
+        return sqlite;
+    }
 
-        if (connection == null)
-            throw new SQLException("Connection is not exist.");
+    /**
+     * Extends the database file by writing zero-filled blobs to a temporary
+     * table and dropping it; the pages are left free in the file.
+     */
+    private static void reserve(Connection connection, Statement stmt, long size)
+        throws SQLException {
 
-        closeStatements();
+        stmt.executeUpdate("CREATE TABLE casmi_reserve (b BLOB)");
 
-        if (0 < params.length) {
-            // Prepared statement.
-            preparedStatement = connection.prepareStatement(sql);
-            for (int i = 0; i < params.length; i++) {
-                setParameter(i + 1, params[i]);
+        PreparedStatement ps = connection.prepareStatement("INSERT INTO casmi_reserve VALUES (zeroblob(?))");
+        try {
+            for (long left = size; 0 < left; left -= TRANSFER_SIZE) {
+                ps.setLong(1, Math.min(left, TRANSFER_SIZE));
+                ps.executeUpdate();
             }
-            if (!isSQLQuery(sql)) preparedStatement.executeUpdate();
-            else resultSet = preparedStatement.executeQuery();
-        } else {
-            // Normal statement.
-            statement = connection.createStatement();
-            if (!isSQLQuery(sql)) statement.executeUpdate(sql);
-            else resultSet = statement.executeQuery(sql);
+        } finally {
+            ps.close();
         }
-    }
 
-    /**
-     * Return true if the SQL is a query.
-     *
-     * @param sql
-     * @return
-     */
-    private boolean isSQLQuery(String sql) {
-
-        Pattern pattern = Pattern.compile("select", Pattern.CASE_INSENSITIVE);
-        Matcher matcher = pattern.matcher(sql);
-        if (matcher.find())
-            return true;
-        return false;
+        stmt.executeUpdate("DROP TABLE casmi_reserve");
     }
 
     /**
-     * Set parameter on a prepared statement.
+     * Create SQLite3 database file.
      *
-     * @param parameterIndex
-     *            the first parameter is 1, the second is 2, ...
-     * @param param
-     *            the parameter object.
-     * @throws SQLException
+     * @param dbPath
+     *            database file path.
+     * @throws IOException
      */
-    private void setParameter(int parameterIndex, Object param) throws SQLException {
-
-        if (param == null) {
-            ParameterMetaData metaData = preparedStatement.getParameterMetaData();
-            int sqlType = metaData.getParameterType(1);
-            preparedStatement.setNull(parameterIndex, sqlType);
-        } else if (param instanceof java.util.Date) {
-            String dateStr = DateUtil.format((java.util.Date)param, DATE_FORMATS[2][1]);
-            preparedStatement.setString(parameterIndex, dateStr);
-        } else if (param instanceof Double) {
-            preparedStatement.setDouble(parameterIndex, (Double)param);
-        } else if (param instanceof Float) {
-            preparedStatement.setFloat(parameterIndex, (Float)param);
-        } else if (param instanceof Integer) {
-            preparedStatement.setInt(parameterIndex, (Integer)param);
-        } else if (param instanceof Short) {
-            preparedStatement.setShort(parameterIndex, (Short)param);
-        } else if (param instanceof Long) {
-            preparedStatement.setLong(parameterIndex, (Long)param);
-        } else if (param instanceof String) {
-            preparedStatement.setString(parameterIndex, (String)param);
-        } else if (param instanceof Blob) {
-            preparedStatement.setBlob(parameterIndex, (Blob)param);
-        } else {
-            throw new SQLException(param.getClass() + ": The object type is not supported.");
-        }
-    }
-
-    @Override
-    public boolean getAutoCommit() throws SQLException {
-
-        if (connection == null)
-            throw new SQLException("Connection is not exist.");
-        return connection.getAutoCommit();
+    public static void createDatabase(String dbPath) throws IOException {
+        createDatabase(new File(dbPath));
     }
 
     @Override
-    public void setAutoCommit(boolean autoCommit) throws SQLException {
+    public void connect() throws SQLException {
 
-        if (connection == null)
-            throw new SQLException("Connection is not exist.");
+        connection = DriverManager.getConnection(url);
 
-        connection.setAutoCommit(autoCommit);
+        if (preload != null && preload.isFile()) {
+            Statement stmt = connection.createStatement();
+            try {
+                // the online backup API of the driver
+                stmt.executeUpdate("restore from \"" + preload.getAbsolutePath() + "\"");
+            } finally {
+                stmt.close();
+            }
+        }
     }
 
     @Override
-    public void commit() throws SQLException {
+    Connection createConnection() throws SQLException {
 
-        if (connection == null)
-            throw new SQLException("Connection is not exist.");
+        if (isMemory())
+            throw new SQLException("An in-memory database can not be shared by connections.");
 
-        connection.commit();
+        return DriverManager.getConnection(url);
     }
 
     @Override
-    public void rollback() throws SQLException {
-
-        if (connection == null)
-            throw new SQLException("Connection is not exist.");
-
-        connection.rollback();
-    }
+    public void close() {
 
-    @Override
-    public boolean next() throws SQLException {
+        synchronized (this) {
+            if (persister != null) {
+                persister.shutdown();
+                try {
+                    persister.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                persister = null;
 
-        if (resultSet == null)
-            throw new SQLException("Result set is not exist.");
+                // the last snapshot
+                try {
+                    persist(persistFile);
+                    persistFailure = null;
+                } catch (SQLException e) {
+                    // reported to the statement listeners
+                    persistFailure = e;
+                }
+            }
+        }
 
-        return resultSet.next();
+        super.close();
     }
 
+    private SQLiteDialect dialect() {
 
-    // -------------------------------------------------------------------------
-    // Getters from resultSet.
-    // -------------------------------------------------------------------------
-
-    @Override
-    @SuppressWarnings("unchecked")
-    <T> T get(ResultSet resultSet, Class<T> type, String field) throws SQLException {
-        if (type == int.class ||
-            type == Integer.class) {
-            return (T)(Integer)resultSet.getInt(field);
-        } else if (type == short.class ||
-                   type == Short.class) {
-            return (T)(Short)resultSet.getShort(field);
-        } else if (type == long.class ||
-                   type == Long.class) {
-            return (T)(Long)resultSet.getLong(field);
-        } else if (type == double.class ||
-                   type == Double.class) {
-            return (T)(Double)resultSet.getDouble(field);
-        } else if (type == float.class ||
-                   type == Float.class) {
-            return (T)(Float)resultSet.getFloat(field);
-        } else if (type == java.util.Date.class) {
-            String dateStr = resultSet.getString(field);
-            java.util.Date date;
-            try {
-                date = parseDate(dateStr);
-            } catch (ParseException e) {
-                throw new SQLException(e);
-            }
-            return (T)date;
-        } else if (type == String.class) {
-            return (T)resultSet.getString(field);
-        } else if (type == Blob.class) {
-            return (T)(Blob)resultSet.getBlob(field);
-        }
-
-        return null;
+        return (SQLiteDialect)getDialect();
     }
 
     /**
-     * Retrieves the value of the designated column in the current row as a Blob
-     * object in the Java programming language.
-     *
-     * @param column
-     *            The first column is 1, the second is 2, ...
+     * Returns the storage of dates.
      *
-     * @return
-     *         a Blob object representing the SQL BLOB value in the specified
-     *         column.
-     *
-     * @throws SQLException
-     *             if the columnIndex is not valid; if a database access error
-     *             occurs or this method is called on a closed result set.
+     * @return the storage of dates.
      */
-    public Blob getBlob(int column) throws SQLException {
-
-        if (resultSet == null)
-            throw new SQLException("Result set is not exist.");
+    public DateStorage getDateStorage() {
 
-        return resultSet.getBlob(column);
+        return dialect().getDateStorage();
     }
 
     /**
-     * Retrieves the value of the designated column in the current row as a Blob
-     * object in the Java programming language.
-     *
-     * @param field
-     *            The name of the field.
-     *
-     * @return
-     *         a Blob object representing the SQL BLOB value in the specified
-     *         column.
-     *
-     * @throws SQLException
-     *             if the columnIndex is not valid; if a database access error
-     *             occurs or this method is called on a closed result set.
+     * Sets the storage of dates.
+     *
+     * <p>
+     * A date stored as a number is written and read without formatting or
+     * parsing text, and is compared by value in a where clause, which can use
+     * an index. Tables created before must be converted by
+     * {@link #migrateDates(Class)}; the storage applies to all tables of the
+     * database.
+     * </p>
+     *
+     * @param dateStorage
+     *            the storage of dates.
      */
-    public Blob getBlob(String field) throws SQLException {
-
-        if (resultSet == null)
-            throw new SQLException("Result set is not exist.");
+    public void setDateStorage(DateStorage dateStorage) {
 
-        return resultSet.getBlob(field);
+        dialect().setDateStorage(dateStorage);
     }
 
     /**
-     * Retrieves the value of the designated column in the current row as
-     * java.util.Date object.
-     *
-     * @param column
-     *            The first column is 1, the second is 2, ...
-     *
-     * @return The column value; if the value is SQL NULL, the value returned is
-     *         null.
-     *
+     * Converts the text dates of the table of the entity class to the current
+     * storage of dates.
+     *
+     * <p>
+     * SQLite can not change the type of a column, so the table is rebuilt in a
+     * transaction: it is renamed, created again with the current types and
+     * the indexes, and the records are copied while the text dates are parsed.
+     * If a text is not a date, the migration fails and nothing is changed; in
+     * manual commit mode, the caller must roll back the transaction.
+     * </p>
+     *
+     * @param type
+     *            the entity class.
+     * @return the number of the converted dates.
      * @throws SQLException
-     *             If the column index is not valid; if a database access error
-     *             occurs or this method is called on a closed result set.
+     *             if a statement fails or a text is not a date.
      */
-    public java.util.Date getDate(int column) throws SQLException {
+    public <T extends Entity> int migrateDates(Class<T> type) throws SQLException {
 
-        if (resultSet == null)
-            throw new SQLException("Result set is not exist.");
+        if (connection == null)
+            throw new SQLException("Connection is not exist.");
 
-        String dateStr = resultSet.getString(column);
+        // the tables are renamed on the main connection, which a snapshot
+        // must not copy meanwhile; the cached statements would keep the
+        // table locked
+        statementLock.lock();
         try {
-            return parseDate(dateStr);
-        } catch (ParseException e) {
-            throw new SQLException(e);
+            schemaChanged();
+            T entity = entity(type);
+            String table = entity.tablename;
+            String old   = table + "_migrating";
+
+            List<String> fields = new ArrayList<String>();
+            List<String> dates  = new ArrayList<String>();
+            fields.add(entity.primaryKey.getField());
+            for (Column c : entity.columns) {
+                fields.add(c.getField());
+                if (c.getType() == java.util.Date.class || DateUtil.isTemporal(c.getType())) {
+                    dates.add(c.getField());
+                }
+            }
+            String list = String.join(",", fields);
+
+            int converted = 0;
+            boolean autoCommit = getAutoCommit();
+            if (autoCommit) setAutoCommit(false);
+            try {
+                Statement stmt = connection.createStatement();
+                try {
+                    stmt.executeUpdate("ALTER TABLE " + table + " RENAME TO " + old);
+                    stmt.executeUpdate(getDialect().createTable(table, entity.primaryKey,
+                                                                entity.autoPrimaryKey, entity.columns));
+                    stmt.executeUpdate("INSERT INTO " + table + " (" + list + ") SELECT " + list +
+                                       " FROM " + old);
+                    stmt.executeUpdate("DROP TABLE " + old);
+                    for (String index : entity.statements.createIndexes) {
+                        stmt.executeUpdate(index);
+                    }
+                } finally {
+                    stmt.close();
+                }
+
+                for (String field : dates) {
+                    converted += convertDates(table, field);
+                }
+
+                if (autoCommit) commit();
+            } catch (SQLException e) {
+                if (autoCommit) rollback();
+                throw e;
+            } finally {
+                if (autoCommit) setAutoCommit(true);
+            }
+
+            return converted;
+        } finally {
+            schemaChanged();
+            statementLock.unlock();
         }
     }
 
-    /**
-     * Retrieves the value of the designated column in the current row as
-     * java.util.Date object.
-     *
-     * @param field
-     *            The first column is 1, the second is 2, ...
-     *
-     * @return The column value; if the value is SQL NULL, the value returned is
-     *         null.
-     *
-     * @throws SQLException
-     *             If the column index is not valid; if a database access error
-     *             occurs or this method is called on a closed result set.
-     */
-    public java.util.Date getDate(String field) throws SQLException {
+    private int convertDates(String table, String field) throws SQLException {
 
-        if (resultSet == null) throw new SQLException("Result set is not exist.");
+        List<Long>   rowids = new ArrayList<Long>();
+        List<String> texts  = new ArrayList<String>();
 
-        String dateStr = resultSet.getString(field);
+        Statement stmt = connection.createStatement();
         try {
-            return parseDate(dateStr);
-        } catch (ParseException e) {
-            throw new SQLException(e);
+            ResultSet rs = stmt.executeQuery("SELECT rowid, " + field + " FROM " + table +
+                                             " WHERE typeof(" + field + ")='text'");
+            while (rs.next()) {
+                rowids.add(rs.getLong(1));
+                texts.add(rs.getString(2));
+            }
+            rs.close();
+        } finally {
+            stmt.close();
         }
-    }
-
-    private java.util.Date parseDate(String dateStr) throws ParseException {
 
-        for (int i = 0; i < DATE_FORMATS.length; i++) {
-            if (dateStr.matches(DATE_FORMATS[i][0])) {
-                return DateUtil.parse(dateStr, DATE_FORMATS[i][1]);
+        PreparedStatement ps = connection.prepareStatement("UPDATE " + table + " SET " + field +
+                                                           "=? WHERE rowid=?");
+        try {
+            for (int i = 0; i < rowids.size(); i++) {
+                Date date;
+                try {
+                    date = DateUtil.parseDateTime(texts.get(i), true);
+                } catch (ParseException e) {
+                    // never write over a text which is not a date
+                    throw new SQLException(table + "." + field + " of rowid " + rowids.get(i) +
+                                           " is not a date: \"" + texts.get(i) + "\"", e);
+                }
+                setParameter(ps, 1, date);
+                ps.setLong(2, rowids.get(i));
+                ps.addBatch();
             }
+            ps.executeBatch();
+        } finally {
+            ps.close();
         }
 
-        return null;
+        return rowids.size();
     }
 
     /**
-     * Retrieves the value of the designated column in the current row as a
-     * double in the Java programming language.
-     *
-     * @param column
-     *            The first column is 1, the second is 2, ...
+     * Returns true if the database is in memory.
      *
-     * @return The column value; if the value is SQL NULL, the value returned is
-     *         0.
-     *
-     * @throws SQLException
-     *             If the columnIndex is not valid; if a database access error
-     *             occurs or this method is called on a closed result set.
+     * @return true if the database is in memory.
      */
-    public double getDouble(int column) throws SQLException {
-
-        if (resultSet == null)
-            throw new SQLException("Result set is not exist.");
+    public boolean isMemory() {
 
-        return resultSet.getDouble(column);
+        return MEMORY_URL.equals(url);
     }
 
     /**
-     * Retrieves the value of the designated column in the current row as a
-     * double in the Java programming language.
-     *
-     * @param field
-     *            The first column is 1, the second is 2, ...
-     *
-     * @return The column value; if the value is SQL NULL, the value returned is
-     *         0.0.
+     * Writes a snapshot of the database to the specified file with the online
+     * backup API of SQLite.
+     *
+     * <p>
+     * The snapshot is written to a temporary file first and then renamed, so
+     * the previous snapshot is intact if the backup fails. A database file is
+     * backed up on a dedicated connection, so the snapshot has the committed
+     * changes only. An in-memory database lives only in the main connection;
+     * statements on the main connection wait during the backup, and changes
+     * which have not been committed on it may be included.
+     * </p>
+     *
+     * <p>
+     * The backup is reported to the statement listeners and the metrics as a
+     * statement, so a failed backup is logged by {@link SlowQueryLogger}.
+     * </p>
      *
+     * @param dbFile
+     *            The destination file.
      * @throws SQLException
-     *             If the columnIndex is not valid; if a database access error
-     *             occurs or this method is called on a closed result set.
      */
-    public double getDouble(String field) throws SQLException {
+    public void persist(File dbFile) throws SQLException {
 
-        if (resultSet == null)
-            throw new SQLException("Result set is not exist.");
+        if (connection == null)
+            throw new SQLException("Connection is not exist.");
 
-        return resultSet.getDouble(field);
+        if (isMemory()) {
+            statementLock.lock();
+            try {
+                backup(connection, dbFile);
+            } finally {
+                statementLock.unlock();
+            }
+        } else {
+            Connection backup = createConnection();
+            try {
+                backup(backup, dbFile);
+            } finally {
+                backup.close();
+            }
+        }
     }
 
-    /**
-     * Retrieves the value of the designated column in the current row as a
-     * float in the Java programming language.
-     *
-     * @param column
-     *            The first column is 1, the second is 2, ...
-     *
-     * @return The column value; if the value is SQL NULL, the value returned is
-     *         0.0f.
-     *
-     * @throws SQLException
-     *             If the columnIndex is not valid; if a database access error
-     *             occurs or this method is called on a closed result set.
-     */
-    public float getFloat(int column) throws SQLException {
+    private void backup(Connection connection, File dbFile) throws SQLException {
 
-        if (resultSet == null)
-            throw new SQLException("Result set is not exist.");
+        File dest = dbFile.getAbsoluteFile();
+        File temp = new File(dest.getPath() + ".tmp");
+        String sql = "backup to \"" + temp.getPath() + "\"";
+
+        StatementTrace trace = trace(DbMetrics.Kind.OTHER, null, sql, NO_PARAMETERS);
+        try {
+            Statement stmt = connection.createStatement();
+            try {
+                stmt.executeUpdate(sql);
+            } finally {
+                stmt.close();
+            }
 
-        return resultSet.getFloat(column);
+            try {
+                Files.move(temp.toPath(), dest.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new SQLException(e);
+            }
+        } catch (SQLException e) {
+            trace.error(e, 0);
+            throw e;
+        }
+        trace.after(0, 0);
     }
 
     /**
-     * Retrieves the value of the designated column in the current row as a
-     * float in the Java programming language.
+     * Writes a snapshot of the database to the specified file periodically,
+     * and at last when the database is closed. A failed snapshot is reported
+     * to the statement listeners, and is returned by
+     * {@link #getPersistFailure()} until a snapshot succeeds.
      *
-     * @param field
-     *            The first column is 1, the second is 2, ...
-     *
-     * @return The column value; if the value is SQL NULL, the value returned is
-     *         0.0f.
-     *
-     * @throws SQLException
-     *             If the columnIndex is not valid; if a database access error
-     *             occurs or this method is called on a closed result set.
+     * @param dbFile
+     *            The destination file.
+     * @param period
+     *            The period between the snapshots.
+     * @param unit
+     *            The time unit of the period.
      */
-    public float getFloat(String field) throws SQLException {
+    public synchronized void persist(final File dbFile, long period, TimeUnit unit) {
 
-        if (resultSet == null)
-            throw new SQLException("Result set is not exist.");
+        if (persister != null) {
+            persister.shutdown();
+        }
+
+        persistFile = dbFile;
+        persister = Executors.newSingleThreadScheduledExecutor(daemonThreads("casmi-db-persist"));
+        persister.scheduleWithFixedDelay(new Runnable() {
 
-        return resultSet.getFloat(field);
+            @Override
+            public void run() {
+                try {
+                    persist(dbFile);
+                    persistFailure = null;
+                } catch (SQLException e) {
+                    // reported to the statement listeners
+                    persistFailure = e;
+                }
+            }
+        }, period, period, unit);
     }
 
     /**
-     * Retrieves the value of the designated column in the current row as int in
-     * the Java programming language.
-     *
-     * @param column
-     *            The first column is 1, the second is 2, ...
+     * Returns the failure of the last periodic snapshot.
      *
-     * @return The column value; if the value is SQL NULL, the value returned is
-     *         0.
+     * @return the failure, or null if the last snapshot succeeded.
      *
-     * @throws SQLException
-     *             If the columnIndex is not valid; if a database access error
-     *             occurs or this method is called on a closed result set.
+     * @see #persist(File, long, TimeUnit)
      */
-    public int getInt(int column) throws SQLException {
+    public SQLException getPersistFailure() {
 
-        if (resultSet == null)
-            throw new SQLException("Result set is not exist.");
-
-        return resultSet.getInt(column);
+        return persistFailure;
     }
 
     /**
-     * Retrieves the value of the designated column in the current row as a int
-     * in the Java programming language.
+     * Changes the journal mode of the database to WAL (write-ahead logging).
      *
-     * @param field
-     *            The first column is 1, the second is 2, ...
-     *
-     * @return The column value; if the value is SQL NULL, the value returned is
-     *         0.
+     * <p>
+     * In WAL mode, readers on the pooled connections do not block a writer and
+     * a writer does not block them, which is suitable for
+     * {@link #parallelScan(Class, Query, int, EntityConsumer)}. The journal mode
+     * is stored in the database file.
+     * </p>
      *
      * @throws SQLException
-     *             If the columnIndex is not valid; if a database access error
-     *             occurs or this method is called on a closed result set.
      */
-    public int getInt(String field) throws SQLException {
+    public void enableWAL() throws SQLException {
 
-        if (resultSet == null)
-            throw new SQLException("Result set is not exist.");
+        if (connection == null)
+            throw new SQLException("Connection is not exist.");
 
-        return resultSet.getInt(field);
+        Statement stmt = connection.createStatement();
+        try {
+            stmt.execute("PRAGMA journal_mode=WAL");
+        } finally {
+            stmt.close();
+        }
     }
 
     /**
-     * Retrieves the value of the designated column in the current row as a
-     * String in the Java programming language.
+     * Retrieves the value of the designated column in the current row as
+     * java.util.Date object.
      *
      * @param column
      *            The first column is 1, the second is 2, ...
@@ -612,20 +698,20 @@ public class SQLite extends SQL {
      *         null.
      *
      * @throws SQLException
-     *             If the columnIndex is not valid; if a database access error
+     *             If the column index is not valid; if a database access error
      *             occurs or this method is called on a closed result set.
      */
-    public String getString(int column) throws SQLException {
+    public java.util.Date getDate(int column) throws SQLException {
 
-        if (resultSet == null)
+        if (getResultSet() == null)
             throw new SQLException("Result set is not exist.");
 
-        return resultSet.getString(column);
+        return dialect().getDate(getResultSet(), column);
     }
 
     /**
-     * Retrieves the value of the designated column in the current row as a
-     * String in the Java programming language.
+     * Retrieves the value of the designated column in the current row as
+     * java.util.Date object.
      *
      * @param field
      *            The first column is 1, the second is 2, ...
@@ -634,56 +720,16 @@ public class SQLite extends SQL {
      *         null.
      *
      * @throws SQLException
-     *             If the columnIndex is not valid; if a database access error
+     *             If the column index is not valid; if a database access error
      *             occurs or this method is called on a closed result set.
      */
-    public String getString(String field) throws SQLException {
-
-        if (resultSet == null)
-            throw new SQLException("Result set is not exist.");
-
-        return resultSet.getString(field);
-    }
-
-    // -------------------------------------------------------------------------
-    // Other methods.
-    // -------------------------------------------------------------------------
-
-    /**
-     * Returns a string representation of the record.
-     *
-     * @return a string representation of the record.
-     * @throws SQLException
-     */
-    public String recordToString() throws SQLException {
-
-        if (resultSet == null)
-            throw new SQLException("Result set is not exist.");
-
-        String out = "| ";
+    public java.util.Date getDate(String field) throws SQLException {
 
-        ResultSetMetaData rsmd = resultSet.getMetaData();
-        for (int i = 0; i < rsmd.getColumnCount(); i++) {
-            out += resultSet.getString(i + 1) + " | ";
-        }
+        if (getResultSet() == null) throw new SQLException("Result set is not exist.");
 
-        return out;
+        return dialect().getDate(getResultSet(), field);
     }
 
-    /**
-     * Prints a record string and then terminate the line simply.
-     *
-     * @throws SQLException
-     */
-    public void println() throws SQLException {
-
-        System.out.println(recordToString());
-    }
-
-    // -------------------------------------------------------------------------
-    // Getter of private variables.
-    // -------------------------------------------------------------------------
-
     /**
      * Return a database's URL.
      *
@@ -693,35 +739,4 @@ public class SQLite extends SQL {
 
         return url;
     }
-
-    /**
-     * Return java.sql.Statement object.
-     *
-     * @return java.sql.Statement object.
-     */
-    public Statement getStatement() {
-
-        return statement;
-    }
-
-    /**
-     * Return java.sql.PreparedStatement object.
-     *
-     * @return java.sql.PreparedStatement object.
-     */
-    public PreparedStatement getPreparedStatement() {
-
-        return preparedStatement;
-    }
-
-    /**
-     * Return java.sql.ResultSet object.
-     *
-     * @return java.sql.ResultSet object.
-     */
-    public ResultSet getResultSet() {
-
-        return resultSet;
-    }
-
 }
@@ -0,0 +1,295 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Blob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.sql.rowset.serial.SerialBlob;
+
+import casmi.db.util.DateUtil;
+
+/**
+ * SQLite3 dialect.
+ *
+ * <p>
+ * Dates are stored as text by default, or as numbers in the date storage
+ * mode. Multi-row VALUES requires SQLite 3.7.11, which is newer than the
+ * bundled driver, so inserts of many rows are batched instead. The driver
+ * does not implement blobs and streams either; they are bound as arrays.
+ * </p>
+ *
+ * @author T. Takeuchi
+ */
+class SQLiteDialect extends AbstractDialect {
+
+    /** Milliseconds of a day. */
+    private static final double DAY = 24 * 60 * 60 * 1000;
+
+    /** The julian day of 1970-01-01T00:00:00Z. */
+    private static final double UNIX_EPOCH_JULIAN_DAY = 2440587.5;
+
+    /** SQLITE_BUSY and SQLITE_LOCKED. */
+    private static final int BUSY = 5, LOCKED = 6;
+
+    private volatile SQLite.DateStorage dateStorage = SQLite.DateStorage.TEXT;
+
+    SQLiteDialect() {
+
+        // SQLITE_MAX_VARIABLE_NUMBER
+        super(SQLType.SQLITE_3, 999,
+              EnumSet.of(Capability.BATCH, Capability.WAL, Capability.ROWID));
+
+        type(Integer.class,    int.class, "INTEGER");
+        type(  Short.class,  short.class, "INTEGER");
+        type(   Long.class,   long.class, "INTEGER");
+        type(  Float.class,  float.class,    "REAL");
+        type( Double.class, double.class,    "REAL");
+        type( String.class,         null,    "TEXT");
+        type(   Date.class,         null,    "TEXT");
+        type(   Blob.class,         null,    "BLOB");
+    }
+
+    SQLite.DateStorage getDateStorage() {
+
+        return dateStorage;
+    }
+
+    void setDateStorage(SQLite.DateStorage dateStorage) {
+
+        this.dateStorage = dateStorage;
+    }
+
+    @Override
+    public String type(Class<?> type) {
+
+        if (type == Date.class) {
+            switch (dateStorage) {
+            case EPOCH_MILLIS: return "INTEGER";
+            case JULIAN_DAY:   return "REAL";
+            default:           break;
+            }
+        }
+        return super.type(type);
+    }
+
+    @Override
+    protected String autoIncrement() {
+
+        return "id INTEGER PRIMARY KEY AUTOINCREMENT";
+    }
+
+    @Override
+    public String truncate(String tablename) {
+
+        return "DELETE FROM " + tablename;
+    }
+
+    @Override
+    public String selectChunk(String tablename, String field, String key) {
+
+        return "SELECT substr(" + field + ",?,?) FROM " + tablename + " WHERE " + key + "=?";
+    }
+
+    @Override
+    public boolean isRetryable(SQLException e) {
+
+        if (e.getErrorCode() == BUSY || e.getErrorCode() == LOCKED) return true;
+
+        // The old drivers do not set the error code.
+        String message = e.getMessage();
+        return message != null && (message.contains("database is locked") ||
+                                   message.contains("database table is locked"));
+    }
+
+    @Override
+    public String explain(String sql) {
+
+        return "EXPLAIN QUERY PLAN " + sql;
+    }
+
+    /**
+     * Reads the detail column of EXPLAIN QUERY PLAN. The old versions explain
+     * a table as "TABLE t [WITH INDEX i [ORDER BY]]", and the new versions as
+     * "SCAN t", "SEARCH t USING INDEX i" and "USE TEMP B-TREE FOR ORDER BY".
+     */
+    @Override
+    public QueryPlan plan(String sql, ResultSet resultSet) throws SQLException {
+
+        List<String> details = new ArrayList<String>();
+        while (resultSet.next()) {
+            details.add(resultSet.getString("detail"));
+        }
+
+        Set<String> scans = new HashSet<String>();
+        boolean tempOrder = false, tempGroup = false;
+        boolean oldFormat = false, indexOrder = false;
+        for (String detail : details) {
+            String[] words = detail.split("\\s+");
+            if (words[0].equals("TABLE")) {
+                // TABLE t [AS a] [WITH INDEX i] [ORDER BY] [USING PRIMARY KEY]
+                oldFormat = true;
+                if (!detail.contains(" INDEX ") && !detail.contains(" PRIMARY KEY")) scans.add(words[1]);
+                if (detail.endsWith(" ORDER BY")) indexOrder = true;
+            } else if (words[0].equals("SCAN") && 1 < words.length) {
+                // SCAN [TABLE] t [USING [COVERING] INDEX i]
+                String table = words[1].equals("TABLE") && 2 < words.length ? words[2] : words[1];
+                if (!detail.contains(" USING ")) scans.add(table);
+            } else if (detail.startsWith("USE TEMP B-TREE FOR ORDER BY")) {
+                tempOrder = true;
+            } else if (detail.startsWith("USE TEMP B-TREE FOR")) {
+                tempGroup = true;
+            }
+        }
+        // the old versions do not tell temporary B-trees but sorted indexes.
+        if (oldFormat && !indexOrder && QueryPlan.hasOrderBy(sql)) tempOrder = true;
+
+        return new QueryPlan(sql, details, scans, tempOrder, tempGroup);
+    }
+
+    @Override
+    public void setParameter(PreparedStatement preparedStatement, int parameterIndex, Object param)
+        throws SQLException {
+
+        if (param == null) {
+            ParameterMetaData metaData = preparedStatement.getParameterMetaData();
+            int sqlType = metaData.getParameterType(1);
+            preparedStatement.setNull(parameterIndex, sqlType);
+        } else if (param instanceof Blob) {
+            Blob blob = (Blob)param;
+            setStream(preparedStatement, parameterIndex, blob.getBinaryStream(), blob.length());
+        } else {
+            super.setParameter(preparedStatement, parameterIndex, param);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(ResultSet resultSet, Class<T> type, String field) throws SQLException {
+
+        if (type == Blob.class) {
+            byte[] bytes = resultSet.getBytes(field);
+            return bytes == null ? null : (T)new SerialBlob(bytes);
+        }
+        return super.get(resultSet, type, field);
+    }
+
+    @Override
+    protected void setStream(PreparedStatement preparedStatement, int parameterIndex,
+                             InputStream in, long length) throws SQLException {
+
+        // The driver binds neither streams nor blobs, so the value is read once
+        // into an array of its length.
+        try {
+            preparedStatement.setBytes(parameterIndex, Blobs.read(in, length));
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    @Override
+    protected void setDate(PreparedStatement preparedStatement, int parameterIndex, Date date)
+        throws SQLException {
+
+        switch (dateStorage) {
+        case EPOCH_MILLIS:
+            preparedStatement.setLong(parameterIndex, date.getTime());
+            break;
+        case JULIAN_DAY:
+            preparedStatement.setDouble(parameterIndex, toJulianDay(date.getTime()));
+            break;
+        default:
+            preparedStatement.setString(parameterIndex, DateUtil.formatDateTime(date));
+            break;
+        }
+    }
+
+    @Override
+    protected Date getDate(ResultSet resultSet, String field) throws SQLException {
+
+        switch (dateStorage) {
+        case EPOCH_MILLIS:
+        {
+            long millis = resultSet.getLong(field);
+            return resultSet.wasNull() ? null : new Date(millis);
+        }
+        case JULIAN_DAY:
+        {
+            double day = resultSet.getDouble(field);
+            return resultSet.wasNull() ? null : new Date(toMillis(day));
+        }
+        default:
+            return parseDate(resultSet.getString(field));
+        }
+    }
+
+    @Override
+    protected Date getDate(ResultSet resultSet, int column) throws SQLException {
+
+        switch (dateStorage) {
+        case EPOCH_MILLIS:
+        {
+            long millis = resultSet.getLong(column);
+            return resultSet.wasNull() ? null : new Date(millis);
+        }
+        case JULIAN_DAY:
+        {
+            double day = resultSet.getDouble(column);
+            return resultSet.wasNull() ? null : new Date(toMillis(day));
+        }
+        default:
+            return parseDate(resultSet.getString(column));
+        }
+    }
+
+    static double toJulianDay(long millis) {
+
+        return millis / DAY + UNIX_EPOCH_JULIAN_DAY;
+    }
+
+    static long toMillis(double julianDay) {
+
+        return Math.round((julianDay - UNIX_EPOCH_JULIAN_DAY) * DAY);
+    }
+
+    static Date parseDate(String dateStr) {
+
+        if (dateStr == null) return null;
+
+        try {
+            return DateUtil.parseDateTime(dateStr, true);
+        } catch (ParseException e) {
+            // not a date stored by this library
+            return null;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A listener logging the statements slower than a threshold.
+ *
+ * <p>
+ * The slow statements are logged at WARNING and the failed statements at
+ * SEVERE to the logger "casmi.db.slow". A sample rate below 1 logs only the
+ * part of the slow statements, to keep the log small under a heavy load; the
+ * failed statements are always logged.
+ * </p>
+ *
+ * <pre><code>
+ *     sqlite.setRedactParameters(true);
+ *     sqlite.addStatementListener(new SlowQueryLogger(100, TimeUnit.MILLISECONDS));
+ * </code></pre>
+ *
+ * @author T. Takeuchi
+ */
+public class SlowQueryLogger implements StatementListener {
+
+    private final Logger logger;
+
+    private final long thresholdNanos;
+
+    private volatile double sampleRate = 1.0;
+
+    public SlowQueryLogger(long threshold, TimeUnit unit) {
+
+        this(threshold, unit, Logger.getLogger("casmi.db.slow"));
+    }
+
+    public SlowQueryLogger(long threshold, TimeUnit unit, Logger logger) {
+
+        this.thresholdNanos = unit.toNanos(threshold);
+        this.logger         = logger;
+    }
+
+    public long getThreshold(TimeUnit unit) {
+
+        return unit.convert(thresholdNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public double getSampleRate() {
+
+        return sampleRate;
+    }
+
+    /**
+     * Sets the ratio of the slow statements to be logged.
+     *
+     * @param sampleRate
+     *            the ratio from 0 to 1.
+     */
+    public void setSampleRate(double sampleRate) {
+
+        if (sampleRate < 0 || 1 < sampleRate) {
+            throw new IllegalArgumentException("The sample rate must be from 0 to 1.");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public void before(StatementEvent event) {
+    }
+
+    @Override
+    public void after(StatementEvent event) {
+
+        if (event.getElapsedNanos() < thresholdNanos) return;
+
+        double rate = sampleRate;
+        if (rate < 1.0 && rate <= ThreadLocalRandom.current().nextDouble()) return;
+
+        if (logger.isLoggable(Level.WARNING)) {
+            logger.log(Level.WARNING, "Slow statement: " + event);
+        }
+    }
+
+    @Override
+    public void error(StatementEvent event, SQLException e) {
+
+        if (logger.isLoggable(Level.SEVERE)) {
+            logger.log(Level.SEVERE, "Failed statement: " + event, e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of the prepared statements of a connection, which are evicted in
+ * least recently used order.
+ *
+ * <p>
+ * A cached statement is reused after its parameters are cleared, and closed
+ * when it is evicted or the cache is closed. The cache is bound to a
+ * connection and is cleared if the connection changes.
+ * </p>
+ *
+ * @author T. Takeuchi
+ */
+final class StatementCache {
+
+    private final LinkedHashMap<String, PreparedStatement> statements =
+        new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+
+    private int capacity;
+
+    private Connection connection;
+
+    StatementCache(int capacity) {
+
+        this.capacity = capacity;
+    }
+
+    synchronized int getCapacity() {
+
+        return capacity;
+    }
+
+    /**
+     * Sets the maximum number of the statements, closing the least recently
+     * used statements over it.
+     */
+    synchronized void setCapacity(int capacity) {
+
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The size of the statement cache must not be negative.");
+        }
+        this.capacity = capacity;
+        evict();
+    }
+
+    /**
+     * Returns a cached statement of the SQL with its parameters cleared, or
+     * null if the statement has not been cached or has been closed.
+     */
+    synchronized PreparedStatement get(Connection connection, String sql) {
+
+        if (this.connection != connection) {
+            clear();
+            this.connection = connection;
+            return null;
+        }
+
+        PreparedStatement ps = statements.get(sql);
+        if (ps == null) return null;
+
+        // the old drivers do not have isClosed(), but fail on a closed statement.
+        try {
+            ps.clearParameters();
+        } catch (SQLException e) {
+            statements.remove(sql);
+            close(ps);
+            return null;
+        }
+        return ps;
+    }
+
+    /**
+     * Caches a statement of the SQL, and returns true if it is cached.
+     */
+    synchronized boolean put(Connection connection, String sql, PreparedStatement ps) {
+
+        if (capacity == 0 || this.connection != connection) return false;
+
+        PreparedStatement previous = statements.put(sql, ps);
+        if (previous != null && previous != ps) close(previous);
+        evict();
+        return true;
+    }
+
+    synchronized int size() {
+
+        return statements.size();
+    }
+
+    /**
+     * Closes and removes all statements.
+     */
+    synchronized void clear() {
+
+        for (PreparedStatement ps : statements.values()) {
+            close(ps);
+        }
+        statements.clear();
+    }
+
+    private void evict() {
+
+        Iterator<Map.Entry<String, PreparedStatement>> it = statements.entrySet().iterator();
+        while (capacity < statements.size() && it.hasNext()) {
+            close(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    private static void close(PreparedStatement ps) {
+
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            // Ignore.
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * A statement passed to {@link StatementListener}s.
+ *
+ * <p>
+ * An event is created only if a listener is registered.
+ * </p>
+ *
+ * @author T. Takeuchi
+ */
+public final class StatementEvent {
+
+    /** The value of redacted parameters. */
+    public static final String REDACTED = "***";
+
+    private final StatementListener[] listeners;
+    private final Class<? extends Entity> entityType;
+    private final String sql;
+    private final Object[] params;
+    private final boolean redacted;
+    private final long start;
+
+    private long elapsedNanos = -1;
+    private long rows = 0;
+
+    private StatementEvent(StatementListener[] listeners, Class<? extends Entity> entityType,
+                           String sql, Object[] params, boolean redacted) {
+
+        this.listeners  = listeners;
+        this.entityType = entityType;
+        this.sql        = sql;
+        this.params     = params;
+        this.redacted   = redacted;
+        this.start      = System.nanoTime();
+    }
+
+    /**
+     * Notifies the listeners before a statement, or returns null without
+     * allocating anything if there is no listener.
+     */
+    static StatementEvent before(StatementListener[] listeners, Class<? extends Entity> entityType,
+                                 String sql, Object[] params, boolean redacted) {
+
+        if (listeners.length == 0) return null;
+
+        StatementEvent event = new StatementEvent(listeners, entityType, sql, params, redacted);
+        for (StatementListener listener : listeners) {
+            try {
+                listener.before(event);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        return event;
+    }
+
+    /**
+     * Notifies the listeners after the statement.
+     *
+     * @param rows
+     *            the rows read or written.
+     */
+    void after(long rows) {
+
+        this.elapsedNanos = System.nanoTime() - start;
+        this.rows = rows;
+        for (StatementListener listener : listeners) {
+            try {
+                listener.after(this);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Notifies the listeners of the failure of the statement.
+     */
+    void error(SQLException exception) {
+
+        this.elapsedNanos = System.nanoTime() - start;
+        for (StatementListener listener : listeners) {
+            try {
+                listener.error(this, exception);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Returns the SQL of the statement.
+     */
+    public String getSql() {
+
+        return sql;
+    }
+
+    /**
+     * Returns the kind of the statement.
+     */
+    public DbMetrics.Kind getKind() {
+
+        return DbMetrics.Kind.of(sql);
+    }
+
+    /**
+     * Returns a copy of the bound parameters, each of which is
+     * {@link #REDACTED} if the parameters are redacted.
+     *
+     * @see casmi.db.SQL#setRedactParameters(boolean)
+     */
+    public Object[] getParameters() {
+
+        if (!redacted) return params.clone();
+
+        Object[] values = new Object[params.length];
+        Arrays.fill(values, REDACTED);
+        return values;
+    }
+
+    public boolean isRedacted() {
+
+        return redacted;
+    }
+
+    /**
+     * Returns the entity class of the statement, or null if the statement is
+     * not of an entity.
+     */
+    public Class<? extends Entity> getEntityType() {
+
+        return entityType;
+    }
+
+    /**
+     * Returns the elapsed time of the statement, or -1 before it is
+     * completed.
+     */
+    public long getElapsedNanos() {
+
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the number of rows read by a query or written by an update.
+     */
+    public long getRows() {
+
+        return rows;
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder(sql);
+        if (params.length != 0) {
+            sb.append(' ').append(Arrays.toString(getParameters()));
+        }
+        if (entityType != null) {
+            sb.append(" (").append(entityType.getSimpleName()).append(')');
+        }
+        if (0 <= elapsedNanos) {
+            sb.append(String.format(" %.3f ms, %d rows", elapsedNanos / 1e6, rows));
+        }
+        return sb.toString();
+    }
+}
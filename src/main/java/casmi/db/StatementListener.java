@@ -0,0 +1,65 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.SQLException;
+
+/**
+ * A listener of the statements executed by a database.
+ *
+ * <p>
+ * Listeners are called on the thread executing the statement, so they should
+ * return quickly. An exception thrown by a listener is printed and does not
+ * affect the statement.
+ * </p>
+ *
+ * @see casmi.db.SQL#addStatementListener(StatementListener)
+ * @see casmi.db.SlowQueryLogger
+ *
+ * @author T. Takeuchi
+ */
+public interface StatementListener {
+
+    /**
+     * Called before a statement is executed.
+     *
+     * @param event
+     *            the statement.
+     */
+    void before(StatementEvent event);
+
+    /**
+     * Called after a statement has been executed and its rows have been read.
+     *
+     * @param event
+     *            the statement, with the elapsed time and the rows.
+     */
+    void after(StatementEvent event);
+
+    /**
+     * Called when a statement has failed.
+     *
+     * @param event
+     *            the statement, with the elapsed time.
+     * @param e
+     *            the exception.
+     */
+    void error(StatementEvent event, SQLException e);
+}
@@ -0,0 +1,114 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.SQLException;
+
+/**
+ * Records a statement to the metrics, the statement listeners and Java Flight
+ * Recorder. A trace is started before the statement is executed and ended
+ * once, by {@link #after(long, long)} or {@link #error(Throwable, long)}.
+ *
+ * @see casmi.db.SQL#trace(DbMetrics.Kind, Class, String, String, Object[])
+ *
+ * @author T. Takeuchi
+ */
+final class StatementTrace {
+
+    private final DbMetrics metrics;
+    private DbMetrics.Kind kind;
+    private final String table;
+    private final String sql;
+    private final Object[] params;
+
+    private final StatementEvent event;
+    private final long start;
+    private final JfrEvents.QueryExecuted executed;
+
+    /**
+     * @param kind
+     *            the kind of the statement, or null to classify the SQL.
+     */
+    StatementTrace(DbMetrics metrics, StatementEvent event, DbMetrics.Kind kind, String table,
+                   String sql, Object[] params) {
+
+        this.metrics = metrics;
+        this.event   = event;
+        this.kind    = kind;
+        this.table   = table;
+        this.sql     = sql;
+        this.params  = params;
+
+        this.start    = metrics.start();
+        this.executed = new JfrEvents.QueryExecuted();
+        executed.begin();
+    }
+
+    /**
+     * Returns the start time of the metrics, or 0 if the metrics are disabled.
+     */
+    long start() {
+
+        return start;
+    }
+
+    /**
+     * Returns the kind of the statement, classifying the SQL only if the kind
+     * was not given.
+     */
+    private DbMetrics.Kind kind() {
+
+        if (kind == null) kind = DbMetrics.Kind.of(sql);
+        return kind;
+    }
+
+    /**
+     * Ends the trace of a statement which has succeeded. The rows written by
+     * DDL are not counted in the metrics.
+     *
+     * @param read
+     *            the rows read.
+     * @param written
+     *            the rows written; negative if unknown.
+     */
+    void after(long read, long written) {
+
+        long rows = read + Math.max(0, written);
+        if (start != 0) {
+            DbMetrics.Kind kind = kind();
+            metrics.statement(kind, table, start, read, kind == DbMetrics.Kind.DDL ? 0 : written);
+        }
+        if (event != null) event.after(rows);
+        executed.record(sql, table, params, rows, false);
+    }
+
+    /**
+     * Ends the trace of a statement which has failed.
+     *
+     * @param rows
+     *            the rows read or written before the failure.
+     */
+    void error(Throwable t, long rows) {
+
+        if (start != 0) metrics.error(kind(), table, start);
+        if (event != null) event.error(t instanceof SQLException ? (SQLException)t : new SQLException(t));
+        executed.record(sql, table, params, rows, true);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates the SQL type of the column of the field.
+ * Must be used in a sub class of casmi.sql.Entity only.
+ *
+ * <p>
+ * A String field with the length is stored as {@code VARCHAR(length)}, which
+ * is smaller than {@code TEXT} and can be indexed without a prefix, and a
+ * floating point field with the precision is stored as
+ * {@code DECIMAL(precision, scale)}. The type overrides them.
+ * </p>
+ *
+ * <p>
+ * Example:
+ * <pre><code>
+ *     {@code @Column}(length = 64, nullable = false)
+ *     public String name;
+ *
+ *     {@code @Column}(type = "TINYINT")
+ *     public int grade;
+ * </code></pre>
+ * </p>
+ *
+ * @see casmi.db.Entity
+ *
+ * @author T. Takeuchi
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Column {
+
+    /** The SQL type of the column, such as "TINYINT"; derived from the field if empty. */
+    String type() default "";
+
+    /** The maximum length of a String; 0 for the default type. */
+    int length() default 0;
+
+    /** The number of the digits of a decimal; 0 for the default type. */
+    int precision() default 0;
+
+    /** The number of the digits after the decimal point. */
+    int scale() default 0;
+
+    /** False if the column is NOT NULL. */
+    boolean nullable() default true;
+}
@@ -0,0 +1,61 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates the value of the field is compressed in the database.
+ * Must be used in a sub class of casmi.sql.Entity only.
+ *
+ * <p>
+ * A String, byte[], ByteBuffer, InputStream or Path field can be compressed;
+ * the column is a BLOB. A stored value begins with a header of the
+ * algorithm, so the algorithm of a field can be changed without converting
+ * the stored values, and a value stored before the field was compressed is
+ * read as it is.
+ * </p>
+ *
+ * @see casmi.db.Entity
+ * @see casmi.db.CompressionMetrics
+ *
+ * @author T. Takeuchi
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Compressed {
+
+    /**
+     * Compression algorithms.
+     */
+    enum Algorithm {
+
+        /** Deflate of java.util.zip; smaller values. */
+        DEFLATE,
+
+        /** LZ4 block format in pure Java; faster compression. */
+        LZ4
+    }
+
+    Algorithm algorithm() default Algorithm.DEFLATE;
+}
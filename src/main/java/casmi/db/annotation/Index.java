@@ -0,0 +1,70 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that an index is created on the field, or on the columns if it is
+ * used on a class. The index is created along with the table.
+ * Must be used in a sub class of casmi.sql.Entity only.
+ *
+ * <p>
+ * Example:
+ * <pre><code>
+ *     {@code @Index}(columns = {"origin", "abv"})
+ *     public class Alcohol extends Entity {
+ *
+ *         {@code @Index}
+ *         public String name;
+ *         ...
+ *     }
+ * </code></pre>
+ * </p>
+ *
+ * @see casmi.db.Entity
+ * @see casmi.db.annotation.Unique
+ *
+ * @author T. Takeuchi
+ */
+@Target({ElementType.FIELD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Repeatable(Indexes.class)
+public @interface Index {
+
+    /** The name of the index; generated from the table and the columns if empty. */
+    String name() default "";
+
+    /** The fields or the field names of the columns; used on a class only. */
+    String[] columns() default {};
+
+    /** True if the columns of the index are unique. */
+    boolean unique() default false;
+
+    /**
+     * The condition of the rows of a partial index. If the database does not
+     * support partial indexes, the index covers all rows.
+     */
+    String where() default "";
+}
@@ -0,0 +1,45 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates the column is not read by default.
+ * Must be used in a sub class of casmi.sql.Entity only.
+ *
+ * <p>
+ * A lazy column is excluded from the columns selected by the queries which
+ * do not specify the selects, and is read by {@code SQL.load} when it is
+ * needed. An InputStream field is a lazy stream even if it is not loaded.
+ * Saving an entity does not clear a lazy column which has not been loaded.
+ * </p>
+ *
+ * @see casmi.db.Entity
+ * @see casmi.db.SQL#load(casmi.db.Entity, String...)
+ *
+ * @author T. Takeuchi
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Lazy {}
@@ -0,0 +1,47 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that the value of the field, or the values of the columns if it
+ * is used on a class, are unique in the table.
+ * This is equal to {@code @Index(unique = true)}.
+ * Must be used in a sub class of casmi.sql.Entity only.
+ *
+ * @see casmi.db.Entity
+ * @see casmi.db.annotation.Index
+ *
+ * @author T. Takeuchi
+ */
+@Target({ElementType.FIELD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Unique {
+
+    /** The name of the index; generated from the table and the columns if empty. */
+    String name() default "";
+
+    /** The fields or the field names of the columns; used on a class only. */
+    String[] columns() default {};
+}
@@ -19,20 +19,56 @@
 
 package casmi.db.util;
 
+import java.sql.Timestamp;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.Temporal;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.time.zone.ZoneRules;
 import java.util.Date;
-import java.util.GregorianCalendar;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Date utility class.
  *
+ * <p>
+ * Formatting and parsing are backed by immutable DateTimeFormatters, which
+ * are compiled once per pattern and shared by all threads. The layout
+ * {@value #DATE_TIME} used to store dates as text is formatted and parsed by
+ * hand without a formatter.
+ * </p>
+ *
  * @author T. Takeuchi
  *
  */
 public class DateUtil {
 
+    /** The layout of a date and a time of day. */
+    public static final String DATE_TIME = "yyyy-MM-dd HH:mm:ss";
+
+    /** Compiled formatters of the patterns. */
+    private static final ConcurrentMap<String, DateTimeFormatter> FORMATTERS =
+        new ConcurrentHashMap<String, DateTimeFormatter>();
+
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    /** Days from 0000-03-01 to 1970-01-01. */
+    private static final long DAYS_0000_TO_1970 = 719468;
+
+    /** Days of 400 years. */
+    private static final long DAYS_PER_CYCLE = 146097;
+
     /**
      * Returns the current time in milliseconds.
      *
@@ -53,7 +89,7 @@ public class DateUtil {
      */
     public static int second() {
 
-        return new GregorianCalendar().get(Calendar.SECOND);
+        return LocalTime.now().getSecond();
     }
 
     /**
@@ -64,7 +100,7 @@ public class DateUtil {
      */
     public static int minute() {
 
-        return new GregorianCalendar().get(Calendar.MINUTE);
+        return LocalTime.now().getMinute();
     }
 
     /**
@@ -75,7 +111,7 @@ public class DateUtil {
      */
     public static int hour() {
 
-        return new GregorianCalendar().get(Calendar.HOUR_OF_DAY);
+        return LocalTime.now().getHour();
     }
 
     /**
@@ -86,7 +122,7 @@ public class DateUtil {
      */
     public static int day() {
 
-        return new GregorianCalendar().get(Calendar.DAY_OF_MONTH);
+        return LocalDate.now().getDayOfMonth();
     }
 
     /**
@@ -97,7 +133,7 @@ public class DateUtil {
      */
     public static int month() {
 
-        return new GregorianCalendar().get(Calendar.MONTH) + 1;
+        return LocalDate.now().getMonthValue();
     }
 
     /**
@@ -108,7 +144,7 @@ public class DateUtil {
      */
     public static int year() {
 
-        return new GregorianCalendar().get(Calendar.YEAR);
+        return LocalDate.now().getYear();
     }
 
     public static final int secondToMillis(int second) {
@@ -131,6 +167,26 @@ public class DateUtil {
         return hourToMillis(day * 24);
     }
 
+    /**
+     * Returns the compiled formatter of a pattern.
+     *
+     * @param pattern
+     *            The pattern describing the date and time format.
+     *
+     * @return
+     *         The formatter, which is immutable and thread-safe.
+     */
+    public static DateTimeFormatter formatter(String pattern) {
+
+        DateTimeFormatter formatter = FORMATTERS.get(pattern);
+        if (formatter == null) {
+            formatter = DateTimeFormatter.ofPattern(pattern);
+            DateTimeFormatter previous = FORMATTERS.putIfAbsent(pattern, formatter);
+            if (previous != null) formatter = previous;
+        }
+        return formatter;
+    }
+
     /**
      * Formats a Date into a date/time string.
      *
@@ -144,7 +200,9 @@ public class DateUtil {
      */
     public static String format(Date date, String pattern) {
 
-        return new SimpleDateFormat(pattern).format(date);
+        if (DATE_TIME.equals(pattern)) return formatDateTime(date);
+
+        return formatter(pattern).format(date.toInstant().atZone(ZoneId.systemDefault()));
     }
 
     /**
@@ -163,24 +221,233 @@ public class DateUtil {
      */
     public static Date parse(String source, String pattern) throws ParseException {
 
-        return new SimpleDateFormat(pattern).parse(source);
+        if (DATE_TIME.equals(pattern) && source.length() == DATE_TIME.length()) {
+            return parseDateTime(source);
+        }
+
+        ParsePosition position = new ParsePosition(0);
+        TemporalAccessor parsed;
+        try {
+            parsed = formatter(pattern).parse(source, position);
+        } catch (DateTimeException e) {
+            throw new ParseException(e.getMessage(), position.getErrorIndex());
+        }
+
+        try {
+            if (parsed.isSupported(ChronoField.INSTANT_SECONDS)) {
+                return Date.from(Instant.from(parsed));
+            }
+
+            LocalDate date = parsed.query(TemporalQueries.localDate());
+            LocalTime time = parsed.query(TemporalQueries.localTime());
+            ZoneId    zone = parsed.query(TemporalQueries.zone());
+            if (date == null) date = LocalDate.of(1970, 1, 1);
+            if (time == null) time = LocalTime.MIDNIGHT;
+            if (zone == null) zone = ZoneId.systemDefault();
+            return Date.from(LocalDateTime.of(date, time).atZone(zone).toInstant());
+        } catch (DateTimeException e) {
+            throw new ParseException(e.getMessage(), 0);
+        }
+    }
+
+    /**
+     * Formats a Date into the layout {@value #DATE_TIME} in the default time
+     * zone.
+     *
+     * @param date
+     *            The time value to be formatted.
+     *
+     * @return
+     *         The formatted time string.
+     */
+    public static String formatDateTime(Date date) {
+
+        long millis = date.getTime();
+        ZoneRules rules = ZoneId.systemDefault().getRules();
+        ZoneOffset offset = rules.isFixedOffset() ? rules.getOffset(Instant.EPOCH)
+                                                  : rules.getOffset(Instant.ofEpochMilli(millis));
+        long local = Math.floorDiv(millis, 1000L) + offset.getTotalSeconds();
+
+        // civil date of the days since 1970-01-01
+        long z   = Math.floorDiv(local, (long)SECONDS_PER_DAY) + DAYS_0000_TO_1970;
+        int  sod = (int)Math.floorMod(local, (long)SECONDS_PER_DAY);
+        long era = Math.floorDiv(z, DAYS_PER_CYCLE);
+        int  doe = (int)(z - era * DAYS_PER_CYCLE);
+        int  yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int  doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int  mp  = (5 * doy + 2) / 153;
+        int  d   = doy - (153 * mp + 2) / 5 + 1;
+        int  m   = mp < 10 ? mp + 3 : mp - 9;
+        long y   = yoe + era * 400 + (m <= 2 ? 1 : 0);
+
+        if (y < 0 || 9999 < y) {
+            return formatter(DATE_TIME).format(date.toInstant().atZone(ZoneId.systemDefault()));
+        }
+
+        char[] buf = new char[19];
+        put(buf,  0, (int)y, 4);
+        buf[4] = '-';
+        put(buf,  5, m, 2);
+        buf[7] = '-';
+        put(buf,  8, d, 2);
+        buf[10] = ' ';
+        put(buf, 11, sod / 3600, 2);
+        buf[13] = ':';
+        put(buf, 14, sod / 60 % 60, 2);
+        buf[16] = ':';
+        put(buf, 17, sod % 60, 2);
+        return new String(buf);
+    }
+
+    private static void put(char[] buf, int offset, int value, int digits) {
+
+        for (int i = offset + digits - 1; offset <= i; i--) {
+            buf[i] = (char)('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Parses a date in the layout {@value #DATE_TIME} in the default time
+     * zone. The seconds or the time of day may be omitted, and the date and
+     * the time may be separated by 'T' instead of a space.
+     *
+     * @param source
+     *            A String of the whole date.
+     *
+     * @return
+     *         A Date parsed from the string.
+     *
+     * @throws ParseException
+     *             If the string is not in the layout.
+     */
+    public static Date parseDateTime(CharSequence source) throws ParseException {
+
+        return parseDateTime(source, false);
+    }
+
+    /**
+     * Same as {@link #parseDateTime(CharSequence)}, but the fields out of
+     * their ranges may be accepted like the lenient mode of SimpleDateFormat,
+     * e.g. "2012-02-30" is parsed as March 1.
+     *
+     * @param source
+     *            A String of the whole date.
+     * @param lenient
+     *            true to accept the fields out of their ranges.
+     *
+     * @return
+     *         A Date parsed from the string.
+     *
+     * @throws ParseException
+     *             If the string is not in the layout.
+     */
+    public static Date parseDateTime(CharSequence source, boolean lenient) throws ParseException {
+
+        int length = source.length();
+        if (length != 10 && length != 16 && length != 19) {
+            throw new ParseException("Unparseable date: \"" + source + "\"", 0);
+        }
+
+        int y = digits(source, 0, 4);
+        expect(source, 4, '-');
+        int m = digits(source, 5, 2);
+        expect(source, 7, '-');
+        int d = digits(source, 8, 2);
+        int hh = 0, mm = 0, ss = 0;
+        if (10 < length) {
+            if (source.charAt(10) != ' ' && source.charAt(10) != 'T') {
+                throw new ParseException("Unparseable date: \"" + source + "\"", 10);
+            }
+            hh = digits(source, 11, 2);
+            expect(source, 13, ':');
+            mm = digits(source, 14, 2);
+            if (16 < length) {
+                expect(source, 16, ':');
+                ss = digits(source, 17, 2);
+            }
+        }
+
+        if (lenient) {
+            // days and times out of range are added to the date as they are
+            y += Math.floorDiv(m - 1, 12);
+            m  = Math.floorMod(m - 1, 12) + 1;
+        } else if (m < 1 || 12 < m || d < 1 || lengthOfMonth(y, m) < d || 23 < hh || 59 < mm || 59 < ss) {
+            throw new ParseException("Unparseable date: \"" + source + "\"", 0);
+        }
+
+        // days since 1970-01-01 of the civil date
+        int  ya  = m <= 2 ? y - 1 : y;
+        int  era = Math.floorDiv(ya, 400);
+        int  yoe = ya - era * 400;
+        int  doy = (153 * (2 < m ? m - 3 : m + 9) + 2) / 5 + d - 1;
+        int  doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long local = (era * DAYS_PER_CYCLE + doe - DAYS_0000_TO_1970) * SECONDS_PER_DAY +
+                     hh * 3600 + mm * 60 + ss;
+
+        ZoneRules rules = ZoneId.systemDefault().getRules();
+        ZoneOffset offset = rules.isFixedOffset()
+                            ? rules.getOffset(Instant.EPOCH)
+                            : rules.getOffset(LocalDateTime.ofEpochSecond(local, 0, ZoneOffset.UTC));
+        return new Date((local - offset.getTotalSeconds()) * 1000L);
+    }
+
+    private static int digits(CharSequence source, int offset, int count) throws ParseException {
+
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = source.charAt(i);
+            if (c < '0' || '9' < c) {
+                throw new ParseException("Unparseable date: \"" + source + "\"", i);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void expect(CharSequence source, int offset, char expected) throws ParseException {
+
+        if (source.charAt(offset) != expected) {
+            throw new ParseException("Unparseable date: \"" + source + "\"", offset);
+        }
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+
+        switch (month) {
+        case 2:
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        case 4: case 6: case 9: case 11:
+            return 30;
+        default:
+            return 31;
+        }
     }
 
     /**
      * Convert a java.util.Date object to a java.sql.Date object.
+     * The time of day is truncated in the default time zone; use
+     * {@link #toTimestamp(Date)} for a DATETIME column.
      *
      * @param date A java.util.Date object.
      * @return A java.sql.Date object.
      */
     public static java.sql.Date toSqlDate(java.util.Date date) {
 
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        cal.set(Calendar.HOUR_OF_DAY, 0);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.SECOND, 0);
-        cal.set(Calendar.MILLISECOND, 0);
-        return new java.sql.Date(cal.getTimeInMillis());
+        return java.sql.Date.valueOf(date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
+    }
+
+    /**
+     * Convert a java.util.Date object to a java.sql.Timestamp object, which
+     * keeps the time of day.
+     *
+     * @param date A java.util.Date object.
+     * @return A java.sql.Timestamp object.
+     */
+    public static Timestamp toTimestamp(java.util.Date date) {
+
+        return date instanceof Timestamp ? (Timestamp)date : new Timestamp(date.getTime());
     }
 
     /**
@@ -194,4 +461,73 @@ public class DateUtil {
 
         return (java.util.Date)date;
     }
+
+    /**
+     * Convert a java.sql.Timestamp object to a java.util.Date object.
+     *
+     * @param timestamp A java.sql.Timestamp object, or null.
+     * @return A java.util.Date object, or null.
+     */
+    public static java.util.Date toUtilDate(Timestamp timestamp) {
+
+        return timestamp == null ? null : new java.util.Date(timestamp.getTime());
+    }
+
+    /**
+     * Returns true if the type is a java.time type which is stored as a date;
+     * Instant, LocalDateTime or LocalDate.
+     *
+     * @param type A class.
+     * @return true if the type is stored as a date.
+     */
+    public static boolean isTemporal(Class<?> type) {
+
+        return type == Instant.class || type == LocalDateTime.class || type == LocalDate.class;
+    }
+
+    /**
+     * Convert an Instant, a LocalDateTime or a LocalDate object to a
+     * java.util.Date object. A local date and time is in the default time
+     * zone.
+     *
+     * @param temporal A java.time object.
+     * @return A java.util.Date object.
+     */
+    public static java.util.Date toDate(Temporal temporal) {
+
+        if (temporal instanceof Instant) {
+            return Date.from((Instant)temporal);
+        } else if (temporal instanceof LocalDateTime) {
+            return Date.from(((LocalDateTime)temporal).atZone(ZoneId.systemDefault()).toInstant());
+        } else if (temporal instanceof LocalDate) {
+            return Date.from(((LocalDate)temporal).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        }
+
+        throw new IllegalArgumentException(temporal.getClass() + ": The type is not supported.");
+    }
+
+    /**
+     * Convert a java.util.Date object to an Instant, a LocalDateTime or a
+     * LocalDate object.
+     *
+     * @param date A java.util.Date object, or null.
+     * @param type Instant, LocalDateTime or LocalDate.
+     * @return A java.time object, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T toTemporal(java.util.Date date, Class<T> type) {
+
+        if (date == null) return null;
+
+        Instant instant = Instant.ofEpochMilli(date.getTime());
+        if (type == Instant.class) {
+            return (T)instant;
+        } else if (type == LocalDateTime.class) {
+            return (T)LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+        } else if (type == LocalDate.class) {
+            return (T)instant.atZone(ZoneId.systemDefault()).toLocalDate();
+        }
+
+        throw new IllegalArgumentException(type + ": The type is not supported.");
+    }
 }
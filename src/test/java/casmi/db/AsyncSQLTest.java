@@ -0,0 +1,173 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test class for AsyncSQL.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class AsyncSQLTest {
+
+    private static final String JAVA_TMP_PATH = System.getProperty("java.io.tmpdir");
+    private static final String DATABASE_PATH = JAVA_TMP_PATH + File.separator + "async_test.sqlite3";
+    private static SQLite   sqlite = null;
+    private static AsyncSQL async  = null;
+
+    public static void cleanup() {
+        File f = new File(DATABASE_PATH);
+
+        if (f.isFile()) {
+            f.delete();
+        }
+    }
+
+    @BeforeClass
+    public static void beforeClass() throws SQLException {
+
+        cleanup();
+
+        try {
+            SQLite.createDatabase(DATABASE_PATH);
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail("Failed to create database file.");
+        }
+
+        sqlite = new SQLite(DATABASE_PATH);
+        sqlite.connect();
+        async = new AsyncSQL(sqlite);
+    }
+
+    @AfterClass
+    public static void afterClass() {
+
+        async.close();
+        sqlite.close();
+
+        cleanup();
+    }
+
+    @Test
+    public void saveAndFindTest() throws Exception {
+
+        List<CompletableFuture<Alcohol>> futures = new ArrayList<CompletableFuture<Alcohol>>();
+        for (int i = 0; i < 20; i++) {
+            Alcohol alcohol = sqlite.entity(Alcohol.class);
+            alcohol.setName("Sake " + i);
+            alcohol.setAbv(i);
+            futures.add(async.saveAsync(alcohol));
+        }
+
+        // reads on the main connection are ordered after the writes.
+        Alcohol[] alcohols = async.allAsync(Alcohol.class).get();
+        Assert.assertEquals(20, alcohols.length);
+        for (CompletableFuture<Alcohol> future : futures) {
+            Assert.assertTrue(future.isDone());
+        }
+
+        async.setPooledReads(true);
+        try {
+            Alcohol alcohol = async.findAsync(Alcohol.class, 3).get();
+            Assert.assertEquals("Sake 2", alcohol.getName());
+        } finally {
+            async.setPooledReads(false);
+        }
+    }
+
+    @Test
+    public void findByPrimaryKeyTest() throws Exception {
+
+        for (int i = 0; i < 3; i++) {
+            Document document = sqlite.entity(Document.class);
+            document.number = 100 + i;
+            document.title  = "Document " + i;
+            async.saveAsync(document).get();
+        }
+
+        Assert.assertEquals("Document 1", async.findAsync(Document.class, 101).get().title);
+        Assert.assertNull(async.findAsync(Document.class, 1).get());
+
+        async.setPooledReads(true);
+        try {
+            Assert.assertEquals("Document 2", async.findAsync(Document.class, 102).get().title);
+            Assert.assertNull(async.findAsync(Document.class, 1).get());
+        } finally {
+            async.setPooledReads(false);
+        }
+    }
+
+    @Test
+    public void executeErrorTest() throws Exception {
+
+        CompletableFuture<Void> future = async.executeAsync("INSERT INTO no_such_table VALUES (?)", 1);
+        try {
+            future.get();
+            fail("The future must fail.");
+        } catch (java.util.concurrent.ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof SQLException);
+        }
+    }
+
+    @Test
+    public void rejectedTest() throws Exception {
+
+        // rejects the first task and runs the others on the caller
+        final int[] calls = {0};
+        Executor executor = new Executor() {
+
+            @Override
+            public void execute(Runnable r) {
+                if (calls[0]++ == 0) throw new RejectedExecutionException("rejected");
+                r.run();
+            }
+        };
+        AsyncSQL rejecting = new AsyncSQL(sqlite, executor);
+
+        CompletableFuture<Void> rejected = rejecting.executeAsync("SELECT 1");
+        try {
+            rejected.get();
+            fail("The future must fail.");
+        } catch (java.util.concurrent.ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        // later tasks still run
+        rejecting.executeAsync("SELECT 1").get();
+        Assert.assertEquals(2, calls[0]);
+    }
+}
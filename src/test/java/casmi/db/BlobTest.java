@@ -0,0 +1,148 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for the binary columns.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class BlobTest {
+
+    private SQLite sqlite = null;
+    private H2 h2 = null;
+    private Path file = null;
+
+    @Before
+    public void before() throws SQLException, IOException {
+
+        sqlite = SQLite.memory();
+        sqlite.connect();
+        h2 = H2.memory("blob_test");
+        h2.connect();
+        file = Files.createTempFile("blob_test", ".bin");
+    }
+
+    @After
+    public void after() throws IOException {
+
+        sqlite.close();
+        h2.close();
+        Files.deleteIfExists(file);
+    }
+
+    private static byte[] bytes(int length, long seed) {
+
+        byte[] b = new byte[length];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+
+        try {
+            byte[] buf = new byte[1000];
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int n;
+            while ((n = in.read(buf)) >= 0) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private void saveAndFind(SQL sql) throws SQLException, IOException {
+
+        // larger than a chunk
+        byte[] thumbnail = bytes(100, 1);
+        byte[] pixels    = bytes(Blobs.CHUNK_SIZE * 2 + 10, 2);
+        byte[] audio     = bytes(Blobs.CHUNK_SIZE * 3, 3);
+        byte[] video     = bytes(Blobs.CHUNK_SIZE + 1, 4);
+        Files.write(file, video);
+
+        Frame frame = sql.entity(Frame.class);
+        frame.number    = 1;
+        frame.thumbnail = thumbnail;
+        frame.pixels    = ByteBuffer.wrap(pixels);
+        frame.audio     = new ByteArrayInputStream(audio);
+        frame.video     = file;
+        frame.save();
+
+        Frame found = sql.first(Frame.class);
+        Assert.assertArrayEquals(thumbnail, found.thumbnail);
+        Assert.assertEquals(ByteBuffer.wrap(pixels), found.pixels);
+        Assert.assertArrayEquals(audio, readAll(found.audio));
+        Assert.assertArrayEquals(video, Files.readAllBytes(found.video));
+        Files.delete(found.video);
+
+        // skips without selecting the skipped chunks
+        found = sql.first(Frame.class);
+        Assert.assertEquals(Blobs.CHUNK_SIZE * 2 + 5, found.audio.skip(Blobs.CHUNK_SIZE * 2 + 5));
+        Assert.assertArrayEquals(Arrays.copyOfRange(audio, Blobs.CHUNK_SIZE * 2 + 5, audio.length),
+                                 readAll(found.audio));
+        Files.delete(found.video);
+    }
+
+    @Test
+    public void sqliteTest() throws SQLException, IOException {
+
+        saveAndFind(sqlite);
+    }
+
+    @Test
+    public void h2Test() throws SQLException, IOException {
+
+        saveAndFind(h2);
+    }
+
+    @Test
+    public void nullTest() throws SQLException, IOException {
+
+        Frame frame = sqlite.entity(Frame.class);
+        frame.number = 2;
+        frame.save();
+
+        Frame found = sqlite.first(Frame.class);
+        Assert.assertNull(found.thumbnail);
+        Assert.assertNull(found.pixels);
+        Assert.assertEquals(-1, found.audio.read());
+        Assert.assertEquals(0, Files.size(found.video));
+        Files.delete(found.video);
+    }
+}
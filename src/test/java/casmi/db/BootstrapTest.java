@@ -0,0 +1,85 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for bootstrapping SQLite databases.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class BootstrapTest {
+
+    private static final String JAVA_TMP_PATH = System.getProperty("java.io.tmpdir");
+    private static final String DATABASE_PATH = JAVA_TMP_PATH + File.separator + "bootstrap_test.sqlite3";
+
+    @Before
+    @After
+    public void cleanup() {
+        File f = new File(DATABASE_PATH);
+
+        if (f.isFile()) {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void createDatabaseTest() throws IOException {
+
+        SQLite.createDatabase(DATABASE_PATH);
+        Assert.assertEquals(2048, new File(DATABASE_PATH).length());
+    }
+
+    @Test
+    public void bootstrapTest() throws IOException, SQLException {
+
+        SQLite sqlite = SQLite.bootstrap(new File(DATABASE_PATH), 4096, 1 << 20,
+                                         Alcohol.class, Alcohol2.class);
+        try {
+            Statement stmt = sqlite.getConnection().createStatement();
+            ResultSet rs = stmt.executeQuery("PRAGMA page_size");
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals(4096, rs.getInt(1));
+            stmt.close();
+            Assert.assertTrue(sqlite.isKnownTable("alcohol_table"));
+
+            Assert.assertTrue((1 << 20) <= new File(DATABASE_PATH).length());
+
+            Alcohol2 alcohol = sqlite.entity(Alcohol2.class);
+            alcohol.setName("Mirin");
+            alcohol.setAbv(14);
+            alcohol.save();
+            Assert.assertEquals(14, sqlite.first(Alcohol2.class).getAbv());
+        } finally {
+            sqlite.close();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for ColumnBatch.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class ColumnBatchTest {
+
+    private static final int ROWS = 5000;
+
+    private SQLite sqlite = null;
+
+    @Before
+    public void before() throws SQLException {
+
+        sqlite = SQLite.memory();
+        sqlite.connect();
+        sqlite.setAutoCommit(false);
+        for (int i = 0; i < ROWS; i++) {
+            Point p = sqlite.entity(Point.class);
+            p.x     = i;
+            p.y     = i * 0.5;
+            p.z     = i % 3;
+            p.time  = 10000000000L + i;
+            p.label = "p" + i;
+            p.save();
+        }
+        sqlite.commit();
+        sqlite.setAutoCommit(true);
+    }
+
+    @After
+    public void after() {
+
+        sqlite.close();
+    }
+
+    @Test
+    public void entityColumnsTest() throws SQLException {
+
+        ColumnBatch batch = sqlite.columns(Point.class, new Query().where("z=0").order("x"), "x", "y", "z", "time");
+        Assert.assertEquals(1667, batch.size());
+        Assert.assertArrayEquals(new String[] {"x", "y", "z", "time"}, batch.getNames());
+        Assert.assertEquals(ColumnBatch.Type.DOUBLE, batch.getType("x"));
+        Assert.assertEquals(ColumnBatch.Type.INT,    batch.getType("z"));
+        Assert.assertEquals(ColumnBatch.Type.LONG,   batch.getType("time"));
+
+        double[] x = batch.getDoubles("x");
+        double[] y = batch.getDoubles("y");
+        Assert.assertEquals(1667, x.length);
+        Assert.assertEquals(3.0, x[1], 0.0);
+        Assert.assertEquals(1.5, y[1], 0.0);
+        Assert.assertEquals(0, batch.getInts("z")[1666]);
+        Assert.assertEquals(10000000003L, batch.getLongs("time")[1]);
+
+        try {
+            batch.getInts("x");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            sqlite.columns(Point.class, new Query(), "label");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            sqlite.columns(Point.class, new Query(), "w");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void growAndPrecountTest() throws SQLException {
+
+        ColumnBatch.Options small = new ColumnBatch.Options().capacity(1);
+        ColumnBatch batch = sqlite.columns(Point.class, new Query().order("x"), small, "id", "x");
+        Assert.assertEquals(ROWS, batch.size());
+        Assert.assertEquals(ROWS, batch.getDoubles("x").length);
+        Assert.assertEquals(ROWS - 1, batch.getDoubles("x")[ROWS - 1], 0.0);
+        Assert.assertEquals(ROWS, batch.getInts("id")[ROWS - 1]);
+
+        sqlite.getMetrics().setEnabled(true);
+        ColumnBatch.Options precount = new ColumnBatch.Options().precount(true);
+        batch = sqlite.columns(Point.class, new Query().where("x<0"), precount, "x");
+        Assert.assertEquals(0, batch.size());
+        batch = sqlite.columns(Point.class, new Query().limit(100), precount, "x");
+        Assert.assertEquals(100, batch.size());
+        Assert.assertEquals(4, sqlite.getMetrics().snapshot().getKind(DbMetrics.Kind.SELECT).getCount());
+    }
+
+    @Test
+    public void directTest() throws SQLException {
+
+        ColumnBatch.Options direct = new ColumnBatch.Options().direct(true).capacity(16);
+        ColumnBatch batch = sqlite.columns(Point.class, new Query().order("x"), direct, "x", "z");
+        Assert.assertTrue(batch.isDirect());
+
+        DoubleBuffer x = batch.getDoubleBuffer("x");
+        IntBuffer z = batch.getIntBuffer("z");
+        Assert.assertTrue(x.isDirect());
+        Assert.assertEquals(ROWS, x.remaining());
+        Assert.assertEquals(ROWS, z.remaining());
+        Assert.assertEquals(4999.0, x.get(ROWS - 1), 0.0);
+        Assert.assertEquals(2, z.get(5));
+
+        try {
+            batch.getDoubles("x");
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // heap batches wrap their arrays
+        batch = sqlite.columns(Point.class, new Query(), "x");
+        Assert.assertSame(batch.getDoubles("x"), batch.getDoubleBuffer("x").array());
+    }
+
+    @Test
+    public void sqlColumnsTest() throws SQLException {
+
+        ColumnBatch batch = sqlite.columns("SELECT x*2 AS x2, z, count(*) AS n FROM point WHERE z<>? GROUP BY z ORDER BY z",
+                                           new Object[] {0}, "z", "x2", "n");
+        Assert.assertEquals(2, batch.size());
+        Assert.assertEquals(ColumnBatch.Type.INT, batch.getType("z"));
+        Assert.assertEquals(ColumnBatch.Type.DOUBLE, batch.getType("x2"));
+        Assert.assertArrayEquals(new int[] {1, 2}, batch.getInts("z"));
+        Assert.assertArrayEquals(new int[] {1667, 1666}, batch.getInts("n"));
+
+        batch = sqlite.columns("SELECT y FROM point WHERE x < 10", null,
+                               new ColumnBatch.Options().precount(true).direct(true), "y");
+        Assert.assertEquals(10, batch.getDoubleBuffer("y").limit());
+        Assert.assertEquals(4.5, batch.getDoubleBuffer("y").get(9), 0.0);
+    }
+
+    @Test
+    public void h2Test() throws SQLException {
+
+        H2 h2 = H2.memory("column_batch_test");
+        h2.connect();
+        try {
+            h2.execute("CREATE TABLE sample (t BIGINT, v DOUBLE)");
+            for (int i = 0; i < 50; i++) {
+                h2.execute("INSERT INTO sample VALUES (?, ?)", (long)i, i * 0.25);
+            }
+            ColumnBatch batch = h2.columns("SELECT t, v FROM sample WHERE t >= ?", new Object[] {10},
+                                           new ColumnBatch.Options().precount(true), "T", "V");
+            Assert.assertEquals(40, batch.size());
+            Assert.assertEquals(ColumnBatch.Type.LONG, batch.getType("T"));
+            Assert.assertEquals(49L, batch.getLongs("T")[39]);
+            Assert.assertEquals(12.25, batch.getDoubles("V")[39], 0.0);
+        } finally {
+            h2.close();
+        }
+    }
+}
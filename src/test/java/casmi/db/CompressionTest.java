@@ -0,0 +1,180 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import casmi.db.annotation.Compressed.Algorithm;
+
+/**
+ * Test class for the compressed columns.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class CompressionTest {
+
+    private SQLite sqlite = null;
+
+    @Before
+    public void before() throws SQLException {
+
+        sqlite = SQLite.memory();
+        sqlite.connect();
+    }
+
+    @After
+    public void after() {
+
+        sqlite.close();
+    }
+
+    /** Compressible bytes; repeated words with random numbers. */
+    private static byte[] text(int length) {
+
+        Random random = new Random(length);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < length) {
+            sb.append("{\"x\":").append(random.nextInt(100)).append(",\"y\":")
+              .append(random.nextInt(100)).append("},");
+        }
+        return sb.substring(0, length).getBytes();
+    }
+
+    private static byte[] random(int length) {
+
+        byte[] b = new byte[length];
+        new Random(length).nextBytes(b);
+        return b;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[777];
+            int n;
+            while ((n = in.read(buf)) >= 0) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void codecTest() throws IOException, SQLException {
+
+        int[] lengths = {0, 1, 12, 13, 100, Codec.BLOCK_SIZE, Codec.BLOCK_SIZE * 3 + 17};
+        for (Algorithm algorithm : Algorithm.values()) {
+            for (int length : lengths) {
+                for (byte[] raw : new byte[][] {text(length), random(length)}) {
+                    byte[] stored = Codec.encode(raw, algorithm);
+                    Assert.assertArrayEquals(raw, Codec.decode(stored));
+
+                    // streams and arrays share the frame
+                    byte[] streamed = readAll((InputStream)Codec.encode(new ByteArrayInputStream(raw), algorithm));
+                    Assert.assertArrayEquals(raw, Codec.decode(streamed));
+                    Assert.assertArrayEquals(raw, readAll(Codec.decode(new ByteArrayInputStream(stored))));
+                }
+            }
+
+            byte[] raw = text(100000);
+            Assert.assertTrue(Codec.encode(raw, algorithm).length < raw.length / 2);
+        }
+
+        // a value without the header is read as it is
+        byte[] plain = "plain".getBytes();
+        Assert.assertArrayEquals(plain, Codec.decode(plain));
+        Assert.assertArrayEquals(plain, readAll(Codec.decode(new ByteArrayInputStream(plain))));
+    }
+
+    @Test
+    public void corruptedTest() {
+
+        byte[] stored = Codec.encode(text(1000), Algorithm.LZ4);
+        stored = Arrays.copyOf(stored, stored.length / 2);
+        try {
+            Codec.decode(stored);
+            Assert.fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void entityTest() throws SQLException, IOException {
+
+        CompressionMetrics lz4 = CompressionMetrics.of(Algorithm.LZ4);
+        lz4.reset();
+
+        byte[] json   = text(50000);
+        byte[] points = text(200000);
+        byte[] scan   = text(Codec.BLOCK_SIZE * 2 + 5);
+
+        PointCloud cloud = sqlite.entity(PointCloud.class);
+        cloud.json   = new String(json);
+        cloud.points = points;
+        cloud.scan   = new ByteArrayInputStream(scan);
+        cloud.save();
+
+        PointCloud found = sqlite.first(PointCloud.class);
+        Assert.assertEquals(new String(json), found.json);
+        Assert.assertArrayEquals(points, found.points);
+        Assert.assertArrayEquals(scan, readAll(found.scan));
+
+        Assert.assertEquals(2, lz4.getCompressions());
+        Assert.assertEquals(2, lz4.getDecompressions());
+        Assert.assertEquals(points.length + scan.length, lz4.getRawBytes());
+        Assert.assertTrue(lz4.getRatio() < 0.5);
+        System.out.println(lz4);
+        System.out.println(CompressionMetrics.of(Algorithm.DEFLATE));
+    }
+
+    @Test
+    public void uncompressedValueTest() throws SQLException {
+
+        PointCloud cloud = sqlite.entity(PointCloud.class);
+        cloud.json = "{}";
+        cloud.save();
+
+        // a value stored before the field was compressed
+        Statement stmt = sqlite.getConnection().createStatement();
+        try {
+            stmt.executeUpdate("UPDATE PointCloud SET json='[1,2]'");
+        } finally {
+            stmt.close();
+        }
+        Assert.assertEquals("[1,2]", sqlite.first(PointCloud.class).json);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import casmi.db.util.DateUtil;
+
+/**
+ * Test class for the storage of dates in SQLite.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class DateStorageTest {
+
+    private static final String JAVA_TMP_PATH = System.getProperty("java.io.tmpdir");
+    private static final String DATABASE_PATH = JAVA_TMP_PATH + File.separator + "date_test.sqlite3";
+    private SQLite sqlite = null;
+
+    public static void cleanup() {
+        File f = new File(DATABASE_PATH);
+
+        if (f.isFile()) {
+            f.delete();
+        }
+    }
+
+    @Before
+    public void before() throws SQLException {
+
+        cleanup();
+
+        try {
+            SQLite.createDatabase(DATABASE_PATH);
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail("Failed to create database file.");
+        }
+
+        sqlite = new SQLite(DATABASE_PATH);
+        sqlite.connect();
+    }
+
+    @After
+    public void after() {
+
+        sqlite.close();
+
+        cleanup();
+    }
+
+    private String typeOfTime() throws SQLException {
+
+        Statement stmt = sqlite.getConnection().createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery("SELECT typeof(time) FROM Reading");
+            rs.next();
+            return rs.getString(1);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    @Test
+    public void epochMillisTest() throws SQLException {
+
+        sqlite.setDateStorage(SQLite.DateStorage.EPOCH_MILLIS);
+
+        Date time = new Date(1300000000123L);
+        Reading reading = sqlite.entity(Reading.class);
+        reading.time  = time;
+        reading.value = 1.5;
+        reading.save();
+
+        Assert.assertEquals("integer", typeOfTime());
+        Assert.assertEquals(time, sqlite.first(Reading.class).time);
+        Assert.assertEquals(1, sqlite.all(Reading.class,
+                                          new Query().where("time>=" + time.getTime())).length);
+    }
+
+    @Test
+    public void julianDayTest() throws SQLException {
+
+        sqlite.setDateStorage(SQLite.DateStorage.JULIAN_DAY);
+
+        Date time = new Date(1300000000123L);
+        Reading reading = sqlite.entity(Reading.class);
+        reading.time = time;
+        reading.save();
+
+        Assert.assertEquals("real", typeOfTime());
+        Assert.assertEquals(time, sqlite.first(Reading.class).time);
+    }
+
+    @Test
+    public void migrateDatesTest() throws SQLException {
+
+        Date time = new Date(1300000000000L);
+        for (int i = 0; i < 3; i++) {
+            Reading reading = sqlite.entity(Reading.class);
+            reading.time  = time;
+            reading.value = i;
+            reading.save();
+        }
+        Assert.assertEquals("text", typeOfTime());
+        sqlite.getMetrics().setEnabled(true);
+        sqlite.execute("SELECT time FROM Reading WHERE value=?", 2.0);
+        sqlite.execute("SELECT time FROM Reading WHERE value=?", 2.0);
+        Assert.assertEquals(1, sqlite.getMetrics().snapshot().getStatementCacheHits());
+
+        sqlite.setDateStorage(SQLite.DateStorage.EPOCH_MILLIS);
+        Assert.assertEquals(3, sqlite.migrateDates(Reading.class));
+        Assert.assertFalse(sqlite.statementLock.isLocked());
+
+        // the statements of the renamed table are not reused
+        sqlite.execute("SELECT time FROM Reading WHERE value=?", 2.0);
+        Assert.assertEquals(1, sqlite.getMetrics().snapshot().getStatementCacheHits());
+
+        Assert.assertEquals("integer", typeOfTime());
+        Reading[] readings = sqlite.all(Reading.class);
+        Assert.assertEquals(3, readings.length);
+        Assert.assertEquals(time, readings[2].time);
+        Assert.assertEquals(2.0, readings[2].value, 0.0);
+        Assert.assertEquals(0, sqlite.createIndexes(Reading.class));
+    }
+
+    @Test
+    public void migrateInvalidDatesTest() throws Exception {
+
+        Date time = new Date(1300000000000L);
+        Reading reading = sqlite.entity(Reading.class);
+        reading.time  = time;
+        reading.value = 1;
+        reading.save();
+        sqlite.execute("INSERT INTO Reading (time, value) VALUES ('2012-02-30', 2)");
+        sqlite.execute("INSERT INTO Reading (time, value) VALUES ('not a date', 3)");
+
+        sqlite.setDateStorage(SQLite.DateStorage.EPOCH_MILLIS);
+        try {
+            sqlite.migrateDates(Reading.class);
+            Assert.fail("A text which is not a date must fail the migration.");
+        } catch (SQLException e) {
+            Assert.assertTrue(e.getMessage().contains("not a date"));
+        }
+
+        // the migration is rolled back and the text is kept
+        sqlite.setDateStorage(SQLite.DateStorage.TEXT);
+        Assert.assertEquals("text", typeOfTime());
+        sqlite.execute("SELECT time FROM Reading WHERE value=3");
+        Assert.assertTrue(sqlite.next());
+        Assert.assertEquals("not a date", sqlite.getString("time"));
+
+        // a lenient date is converted as before
+        sqlite.execute("DELETE FROM Reading WHERE value=3");
+        sqlite.setDateStorage(SQLite.DateStorage.EPOCH_MILLIS);
+        Assert.assertEquals(2, sqlite.migrateDates(Reading.class));
+        Assert.assertEquals(DateUtil.parseDateTime("2012-03-01", false).getTime(),
+                            sqlite.first(Reading.class, new Query().where("value=2")).time.getTime());
+    }
+
+    @Test
+    public void javaTimeTest() throws SQLException {
+
+        Instant       at    = Instant.ofEpochSecond(1300000000L);
+        LocalDateTime local = LocalDateTime.of(2012, 2, 29, 23, 59, 58);
+        LocalDate     day   = LocalDate.of(1999, 12, 31);
+
+        for (SQLite.DateStorage storage : SQLite.DateStorage.values()) {
+            sqlite.setDateStorage(storage);
+
+            Visit visit = sqlite.entity(Visit.class);
+            visit.at    = at;
+            visit.local = local;
+            visit.day   = day;
+            visit.save();
+
+            Visit read = sqlite.first(Visit.class);
+            Assert.assertEquals(at,    read.at);
+            Assert.assertEquals(local, read.local);
+            Assert.assertEquals(day,   read.day);
+
+            sqlite.drop(Visit.class);
+        }
+    }
+}
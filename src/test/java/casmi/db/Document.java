@@ -0,0 +1,20 @@
+package casmi.db;
+
+import java.io.InputStream;
+
+import casmi.db.annotation.Lazy;
+import casmi.db.annotation.PrimaryKey;
+
+public class Document extends Entity {
+
+    @PrimaryKey
+    public int number;
+
+    public String title;
+
+    @Lazy
+    public String body;
+
+    @Lazy
+    public InputStream attachment;
+}
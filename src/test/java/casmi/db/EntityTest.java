@@ -0,0 +1,129 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test class for the O/R mapping of Entity.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class EntityTest {
+
+    private static final String JAVA_TMP_PATH = System.getProperty("java.io.tmpdir");
+    private static final String DATABASE_PATH = JAVA_TMP_PATH + File.separator + "entity_test.sqlite3";
+    private static SQLite sqlite = null;
+
+    public static void cleanup() {
+        File f = new File(DATABASE_PATH);
+
+        if (f.isFile()) {
+            f.delete();
+        }
+    }
+
+    @BeforeClass
+    public static void beforeClass() throws SQLException {
+
+        cleanup();
+
+        try {
+            SQLite.createDatabase(DATABASE_PATH);
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail("Failed to create database file.");
+        }
+
+        sqlite = new SQLite(DATABASE_PATH);
+        sqlite.connect();
+    }
+
+    @AfterClass
+    public static void afterClass() {
+
+        sqlite.close();
+
+        cleanup();
+    }
+
+    @Test
+    public void statementsTest() {
+
+        EntityStatements statements = EntityStatements.get(sqlite, Alcohol2.class);
+
+        Assert.assertEquals("INSERT INTO alcohol_table (name,alcohol_by_volume,origin) VALUES (?,?,?)",
+                            statements.insert);
+        Assert.assertEquals("UPDATE alcohol_table SET alcohol_by_volume=?,origin=? WHERE name=?",
+                            statements.update);
+        Assert.assertEquals("DELETE FROM alcohol_table WHERE name=?", statements.delete);
+        Assert.assertSame(statements, EntityStatements.get(sqlite, Alcohol2.class));
+    }
+
+    @Test
+    public void columnDefinitionTest() throws NoSuchFieldException {
+
+        Column key = new Column("id", "id", null, int.class);
+        Column[] columns = new Column[3];
+        String[] names = {"name", "brewery", "grade"};
+        for (int i = 0; i < names.length; i++) {
+            java.lang.reflect.Field f = Sake.class.getField(names[i]);
+            columns[i] = new Column(names[i], names[i], null, f.getType());
+            columns[i].setDefinition(f.getAnnotation(casmi.db.annotation.Column.class));
+        }
+
+        Assert.assertEquals("CREATE TABLE Sake (id INT AUTO_INCREMENT,name VARCHAR(64) NOT NULL," +
+                            "brewery VARCHAR(64),grade TINYINT,PRIMARY KEY(id))",
+                            new MySQLDialect().createTable("Sake", key, true, columns));
+        Assert.assertEquals("CREATE TABLE Sake (name VARCHAR(64) PRIMARY KEY,brewery VARCHAR(64)," +
+                            "grade TINYINT)",
+                            new SQLiteDialect().createTable("Sake", columns[0], false,
+                                                            new Column[] {columns[1], columns[2]}));
+    }
+
+    @Test
+    public void saveUpdateDeleteTest() throws SQLException {
+
+        Alcohol2 alcohol = sqlite.entity(Alcohol2.class);
+        alcohol.setName("Dassai");
+        alcohol.setAbv(16);
+        alcohol.origin = "Yamaguchi";
+        alcohol.save();
+
+        alcohol.setAbv(15);
+        alcohol.save();
+
+        Alcohol2 found = sqlite.first(Alcohol2.class, new Query().where("name='Dassai'"));
+        Assert.assertEquals(15, found.getAbv());
+
+        found.delete();
+        Assert.assertNull(sqlite.first(Alcohol2.class, new Query().where("name='Dassai'")));
+    }
+}
@@ -0,0 +1,18 @@
+package casmi.db;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+public class Frame extends Entity {
+
+    public int number;
+
+    public byte[] thumbnail;
+
+    public ByteBuffer pixels;
+
+    public InputStream audio;
+
+    public Path video;
+}
@@ -0,0 +1,121 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.SQLException;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import casmi.db.Dialect.Capability;
+
+/**
+ * Test class for H2 and the dialects.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class H2Test {
+
+    private static H2 h2 = null;
+
+    @BeforeClass
+    public static void beforeClass() throws SQLException {
+
+        h2 = H2.memory("h2_test");
+        h2.connect();
+    }
+
+    @AfterClass
+    public static void afterClass() {
+
+        h2.close();
+    }
+
+    @Test
+    public void saveAndFindTest() throws SQLException {
+
+        Alcohol alcohol = h2.entity(Alcohol.class);
+        alcohol.setName("Shochu");
+        alcohol.setAbv(25);
+        alcohol.origin = "Kagoshima";
+        alcohol.save();
+
+        Alcohol found = h2.first(Alcohol.class, new Query().where("name='Shochu'"));
+        Assert.assertEquals(25, found.getAbv());
+        Assert.assertEquals("Kagoshima", found.origin);
+    }
+
+    @Test
+    public void insertAllTest() throws SQLException {
+
+        Alcohol2[] alcohols = new Alcohol2[10];
+        for (int i = 0; i < alcohols.length; i++) {
+            alcohols[i] = h2.entity(Alcohol2.class);
+            alcohols[i].setName("Sake" + i);
+            alcohols[i].setAbv(i);
+        }
+        h2.insertAll(alcohols);
+
+        Alcohol2[] found = h2.all(Alcohol2.class,
+                                  new Query().where("name LIKE 'Sake%'").order("alcohol_by_volume")
+                                             .limit(3).offset(4));
+        Assert.assertEquals(3, found.length);
+        Assert.assertEquals(4, found[0].getAbv());
+    }
+
+    @Test
+    public void upsertTest() throws SQLException {
+
+        Alcohol2 alcohol = h2.entity(Alcohol2.class);
+        alcohol.setName("Umeshu");
+        alcohol.setAbv(12);
+        alcohol.upsert();
+
+        Alcohol2 other = h2.entity(Alcohol2.class);
+        other.setName("Umeshu");
+        other.setAbv(10);
+        other.upsert();
+
+        Alcohol2[] found = h2.all(Alcohol2.class, new Query().where("name='Umeshu'"));
+        Assert.assertEquals(1, found.length);
+        Assert.assertEquals(10, found[0].getAbv());
+    }
+
+    @Test
+    public void dialectTest() {
+
+        Dialect sqlite = new SQLiteDialect();
+        Assert.assertFalse(sqlite.supports(Capability.MULTI_ROW_INSERT));
+        Assert.assertTrue(sqlite.supports(Capability.ROWID));
+        // INSERT OR REPLACE is not an upsert
+        Assert.assertFalse(sqlite.supports(Capability.UPSERT));
+
+        Dialect mysql = new MySQLDialect();
+        Assert.assertEquals("INSERT INTO t (k,a) VALUES (?,?),(?,?)",
+                            mysql.insert("t", new String[] {"k", "a"}, 2));
+        Assert.assertEquals("INSERT INTO t (k,a) VALUES (?,?) ON DUPLICATE KEY UPDATE a=VALUES(a)",
+                            mysql.upsert("t", new String[] {"k", "a"}));
+        Assert.assertTrue(mysql.isRetryable(new SQLException("Deadlock", "40001", 1213)));
+        Assert.assertFalse(mysql.isRetryable(new SQLException("Syntax", "42000", 1064)));
+    }
+}
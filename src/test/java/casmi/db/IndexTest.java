@@ -0,0 +1,129 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test class for the indexes of entities.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class IndexTest {
+
+    private static final String JAVA_TMP_PATH = System.getProperty("java.io.tmpdir");
+    private static final String DATABASE_PATH = JAVA_TMP_PATH + File.separator + "index_test.sqlite3";
+    private static SQLite sqlite = null;
+
+    public static void cleanup() {
+        File f = new File(DATABASE_PATH);
+
+        if (f.isFile()) {
+            f.delete();
+        }
+    }
+
+    @BeforeClass
+    public static void beforeClass() throws SQLException {
+
+        cleanup();
+
+        try {
+            SQLite.createDatabase(DATABASE_PATH);
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail("Failed to create database file.");
+        }
+
+        sqlite = new SQLite(DATABASE_PATH);
+        sqlite.connect();
+    }
+
+    @AfterClass
+    public static void afterClass() {
+
+        sqlite.close();
+
+        cleanup();
+    }
+
+    private static Set<String> indexes() throws SQLException {
+
+        Set<String> names = new HashSet<String>();
+        ResultSet rs = sqlite.getConnection().getMetaData().getIndexInfo(null, null, "Sake", false, false);
+        while (rs.next()) {
+            names.add(rs.getString("INDEX_NAME"));
+        }
+        rs.close();
+        return names;
+    }
+
+    @Test
+    public void createIndexesTest() throws SQLException {
+
+        Sake sake = sqlite.entity(Sake.class);
+        Assert.assertTrue(indexes().contains("idx_Sake_name"));
+        Assert.assertTrue(indexes().contains("idx_Sake_brewery"));
+        Assert.assertTrue(indexes().contains("idx_Sake_brewery_grade"));
+
+        sqlite.execute("DROP INDEX idx_Sake_brewery");
+        Assert.assertEquals(1, sqlite.createIndexes(Sake.class));
+        Assert.assertEquals(0, sqlite.createIndexes(Sake.class));
+        Assert.assertTrue(indexes().contains("idx_Sake_brewery"));
+
+        sake.name    = "Juyondai";
+        sake.brewery = "Takagi";
+        sake.save();
+
+        Sake same = sqlite.entity(Sake.class);
+        same.name = "Juyondai";
+        try {
+            same.save();
+            fail("The unique index is not created.");
+        } catch (SQLException e) {
+            // unique constraint
+        }
+    }
+
+    @Test
+    public void dialectTest() {
+
+        Column[] columns = {new Column("name", "name", null, String.class),
+                            new Column("grade", "grade", null, int.class)};
+
+        Assert.assertEquals("CREATE UNIQUE INDEX i ON t (name(255),grade)",
+                            new MySQLDialect().createIndex("t", "i", columns, true, null));
+        Assert.assertEquals("CREATE INDEX i ON t (name,grade)",
+                            new SQLiteDialect().createIndex("t", "i", columns, false, "grade>0"));
+    }
+}
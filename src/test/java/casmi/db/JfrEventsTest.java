@@ -0,0 +1,109 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class for the Java Flight Recorder events.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class JfrEventsTest {
+
+    private static final String[] EVENTS = {
+        "casmi.db.QueryExecuted",
+        "casmi.db.RowsMapped",
+        "casmi.db.TransactionCommitted",
+        "casmi.db.ConnectionAcquired",
+        "casmi.db.StatementPrepared"
+    };
+
+    @Test
+    public void recordingTest() throws Exception {
+
+        File file = File.createTempFile("casmi", ".jfr");
+        file.deleteOnExit();
+
+        Recording recording = new Recording();
+        for (String name : EVENTS) {
+            recording.enable(name).withThreshold(Duration.ZERO);
+        }
+        recording.start();
+
+        H2 h2 = H2.memory("jfr_test");
+        h2.connect();
+        try {
+            work(h2);
+        } finally {
+            h2.close();
+        }
+
+        recording.stop();
+        recording.dump(file.toPath());
+        recording.close();
+
+        Map<String, RecordedEvent> found = new HashMap<String, RecordedEvent>();
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+        for (RecordedEvent event : events) {
+            String name = event.getEventType().getName();
+            if (name.equals("casmi.db.QueryExecuted") &&
+                !"Document".equals(event.getString("table"))) continue;
+            found.put(name, event);
+        }
+        for (String name : EVENTS) {
+            Assert.assertTrue(name, found.containsKey(name));
+        }
+
+        RecordedEvent query = found.get("casmi.db.QueryExecuted");
+        Assert.assertFalse(query.getString("fingerprint").matches(".*[0-9].*"));
+        Assert.assertTrue(0 <= query.getLong("rows"));
+        Assert.assertEquals("Document", found.get("casmi.db.RowsMapped").getString("table"));
+    }
+
+    private void work(SQL sql) throws SQLException {
+
+        sql.setAutoCommit(false);
+        for (int i = 0; i < 3; i++) {
+            Document doc = sql.entity(Document.class);
+            doc.number = i;
+            doc.title  = "title" + i;
+            doc.save();
+        }
+        sql.commit();
+        sql.setAutoCommit(true);
+
+        sql.all(Document.class, new Query().where("number<5"));
+        sql.pooledAll(Document.class, new Query());
+    }
+}
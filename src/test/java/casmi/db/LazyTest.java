@@ -0,0 +1,160 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.BitSet;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for the lazy columns.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class LazyTest {
+
+    private SQLite sqlite = null;
+
+    @Before
+    public void before() throws SQLException {
+
+        sqlite = SQLite.memory();
+        sqlite.connect();
+
+        for (int i = 0; i < 3; i++) {
+            Document doc = sqlite.entity(Document.class);
+            doc.number     = i;
+            doc.title      = "title" + i;
+            doc.body       = "body" + i;
+            doc.attachment = new ByteArrayInputStream(new byte[] {(byte)i});
+            doc.save();
+        }
+    }
+
+    @After
+    public void after() {
+
+        sqlite.close();
+    }
+
+    @Test
+    public void defaultSelectTest() throws SQLException, IOException {
+
+        Document[] docs = sqlite.all(Document.class);
+        Assert.assertEquals(3, docs.length);
+        Assert.assertEquals("title0", docs[0].title);
+        Assert.assertNull(docs[0].body);
+        // a stream reads the column when it is read
+        Assert.assertEquals(0, docs[0].attachment.read());
+
+        Document doc = sqlite.first(Document.class, new Query().where("title='title1'"));
+        Assert.assertNull(doc.body);
+        doc.load("body");
+        Assert.assertEquals("body1", doc.body);
+
+        // explicit selects read a lazy column
+        doc = sqlite.first(Document.class, new Query().select("title", "body").where("title='title2'"));
+        Assert.assertEquals("body2", doc.body);
+    }
+
+    @Test
+    public void loadArrayTest() throws SQLException {
+
+        Document[] docs = sqlite.all(Document.class, new Query().order("title").desc(true));
+        sqlite.load(docs);
+        for (int i = 0; i < docs.length; i++) {
+            Assert.assertEquals("body" + (2 - i), docs[i].body);
+            Assert.assertEquals("title" + (2 - i), docs[i].title);
+        }
+    }
+
+    @Test
+    public void saveUnloadedTest() throws SQLException, IOException {
+
+        Document doc = sqlite.first(Document.class, new Query().where("title='title0'"));
+        doc.title = "renamed";
+        doc.save();
+
+        doc = sqlite.first(Document.class, new Query().where("title='renamed'"));
+        doc.load();
+        Assert.assertEquals("body0", doc.body);
+        Assert.assertEquals(0, doc.attachment.read());
+
+        doc.body = null;
+        doc.save();
+        doc = sqlite.first(Document.class, new Query().where("title='renamed'"));
+        doc.load("body");
+        Assert.assertNull(doc.body);
+    }
+
+    @Test
+    public void upsertUnloadedTest() throws SQLException, IOException {
+
+        Document doc = sqlite.first(Document.class, new Query().where("title='title1'"));
+        doc.title = "upserted";
+        doc.upsert();
+
+        doc = sqlite.first(Document.class, new Query().where("title='upserted'"));
+        Assert.assertEquals(1, doc.number);
+        doc.load();
+        Assert.assertEquals("body1", doc.body);
+        Assert.assertEquals(1, doc.attachment.read());
+        Assert.assertEquals(3, sqlite.all(Document.class).length);
+    }
+
+    @Test
+    public void partialUpdateTest() throws SQLException {
+
+        EntityStatements statements = EntityStatements.get(sqlite, Document.class);
+        BitSet skipped = new BitSet();
+        skipped.set(1);
+        skipped.set(2);
+        Assert.assertEquals("UPDATE Document SET title=? WHERE number=?", statements.update(skipped));
+        // compiled once
+        Assert.assertSame(statements.update(skipped), statements.update((BitSet)skipped.clone()));
+    }
+
+    @Test
+    public void readOnlyTest() throws SQLException {
+
+        SQLite other = SQLite.memory();
+        other.connect();
+        try {
+            EntityStatements.get(other, Document.class);
+            try {
+                other.all(Document.class);
+                Assert.fail("The table must not be created by a read.");
+            } catch (SQLException e) {
+                // expected
+            }
+            Assert.assertNull(other.queryValue("SELECT name FROM sqlite_master WHERE name=?",
+                                               String.class, Entity.getTablename(Document.class)));
+        } finally {
+            other.close();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for DbMetrics.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class MetricsTest {
+
+    private SQLite sqlite = null;
+
+    @Before
+    public void before() throws SQLException {
+
+        sqlite = SQLite.memory();
+        sqlite.connect();
+    }
+
+    @After
+    public void after() {
+
+        sqlite.close();
+    }
+
+    private void work() throws SQLException {
+
+        for (int i = 0; i < 5; i++) {
+            Document doc = sqlite.entity(Document.class);
+            doc.number = i;
+            doc.title  = "title" + i;
+            doc.save();
+        }
+        Document doc = sqlite.find(Document.class, 1);
+        doc.title = "changed";
+        doc.save();
+        doc.delete();
+        sqlite.all(Document.class);
+    }
+
+    @Test
+    public void kindTest() {
+
+        Assert.assertEquals(DbMetrics.Kind.SELECT, DbMetrics.Kind.of(" /* a */ -- b\n (select 1)"));
+        Assert.assertEquals(DbMetrics.Kind.SELECT, DbMetrics.Kind.of("WITH t AS (SELECT 1) SELECT * FROM t"));
+        Assert.assertEquals(DbMetrics.Kind.INSERT, DbMetrics.Kind.of("insert into t values (1)"));
+        Assert.assertEquals(DbMetrics.Kind.UPDATE, DbMetrics.Kind.of("UPDATE t SET a=1"));
+        Assert.assertEquals(DbMetrics.Kind.DELETE, DbMetrics.Kind.of("DELETE FROM t"));
+        Assert.assertEquals(DbMetrics.Kind.DDL,    DbMetrics.Kind.of("CREATE TABLE t (a INTEGER)"));
+        Assert.assertEquals(DbMetrics.Kind.OTHER,  DbMetrics.Kind.of("PRAGMA foreign_keys"));
+    }
+
+    @Test
+    public void disabledTest() throws SQLException {
+
+        work();
+
+        DbMetrics.Snapshot s = sqlite.getMetrics().snapshot();
+        for (DbMetrics.Stats stats : s.getKinds().values()) {
+            Assert.assertEquals(0, stats.getCount());
+        }
+        Assert.assertTrue(s.getTables().isEmpty());
+        Assert.assertEquals(0, s.getRowsRead());
+        Assert.assertEquals(0, s.getStatementCacheHits());
+    }
+
+    @Test
+    public void snapshotTest() throws SQLException {
+
+        DbMetrics metrics = sqlite.getMetrics();
+        metrics.setEnabled(true);
+
+        work();
+
+        DbMetrics.Snapshot s = metrics.snapshot();
+        Assert.assertEquals(5, s.getKind(DbMetrics.Kind.INSERT).getCount());
+        Assert.assertEquals(1, s.getKind(DbMetrics.Kind.UPDATE).getCount());
+        Assert.assertEquals(1, s.getKind(DbMetrics.Kind.DELETE).getCount());
+        Assert.assertEquals(2, s.getKind(DbMetrics.Kind.SELECT).getCount());
+        Assert.assertEquals(9, s.getTable("Document").getCount());
+        Assert.assertEquals(1 + 4, s.getRowsRead());
+        Assert.assertEquals(5 + 1 + 1, s.getRowsWritten());
+        Assert.assertTrue(0 < s.getJdbcNanos());
+        Assert.assertTrue(0 < s.getMappingNanos());
+        Assert.assertTrue(0 < s.getStatementCacheHits());
+
+        DbMetrics.Stats stats = s.getKind(DbMetrics.Kind.INSERT);
+        Assert.assertTrue(stats.getPercentile(0.5) <= stats.getPercentile(0.99));
+        Assert.assertTrue(stats.getPercentile(0.99) <= stats.getMaxNanos());
+
+        try {
+            sqlite.execute("INSERT INTO nothing VALUES (1)");
+            Assert.fail();
+        } catch (SQLException e) {
+            // expected
+        }
+        Assert.assertEquals(1, metrics.snapshot().getKind(DbMetrics.Kind.INSERT).getErrors());
+
+        metrics.reset();
+        Assert.assertEquals(0, metrics.snapshot().getKind(DbMetrics.Kind.INSERT).getCount());
+
+        // mapping rows does not look up the statement cache
+        sqlite.all(Document.class);
+        s = metrics.snapshot();
+        Assert.assertTrue(0 < s.getRowsRead());
+        Assert.assertEquals(0, s.getStatementCacheHits() + s.getStatementCacheMisses());
+    }
+
+    @Test
+    public void mbeanTest() throws Exception {
+
+        DbMetrics metrics = sqlite.getMetrics();
+        metrics.setEnabled(true);
+        metrics.register("metricsTest");
+
+        work();
+
+        ObjectName name = new ObjectName("casmi.db:type=DbMetrics,name=\"metricsTest\"");
+        Object rows = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "RowsWritten");
+        Assert.assertEquals(7L, rows);
+
+        sqlite.close();
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test class for keyset pagination.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class PageTest {
+
+    private static final String JAVA_TMP_PATH = System.getProperty("java.io.tmpdir");
+    private static final String DATABASE_PATH = JAVA_TMP_PATH + File.separator + "page_test.sqlite3";
+    private static final int    RECORDS       = 25;
+    private static SQLite sqlite = null;
+
+    public static void cleanup() {
+        File f = new File(DATABASE_PATH);
+
+        if (f.isFile()) {
+            f.delete();
+        }
+    }
+
+    @BeforeClass
+    public static void beforeClass() throws SQLException {
+
+        cleanup();
+
+        try {
+            SQLite.createDatabase(DATABASE_PATH);
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail("Failed to create database file.");
+        }
+
+        sqlite = new SQLite(DATABASE_PATH);
+        sqlite.connect();
+
+        sqlite.setAutoCommit(false);
+        for (int i = 0; i < RECORDS; i++) {
+            Alcohol alcohol = sqlite.entity(Alcohol.class);
+            alcohol.setName("Sake " + i);
+            alcohol.setAbv(i % 3);
+            alcohol.origin = "Niigata";
+            alcohol.save();
+        }
+        sqlite.commit();
+        sqlite.setAutoCommit(true);
+    }
+
+    @AfterClass
+    public static void afterClass() {
+
+        sqlite.close();
+
+        cleanup();
+    }
+
+    @Test
+    public void pageTest() throws SQLException {
+
+        Page<Alcohol> page = sqlite.page(Alcohol.class, new Query().pageSize(10));
+        Assert.assertEquals(10, page.getEntities().length);
+        Assert.assertTrue(page.hasNext());
+        Assert.assertEquals(10, page.getNextKey()[0]);
+
+        page = sqlite.page(Alcohol.class, new Query().pageSize(10).after(page.getNextKey()));
+        Assert.assertEquals(10, page.getEntities().length);
+        Assert.assertEquals("Sake 10", page.getEntities()[0].getName());
+    }
+
+    @Test
+    public void pagesTest() throws SQLException {
+
+        PageIterator<Alcohol> it = sqlite.pages(Alcohol.class, 10);
+        Set<String> names = new HashSet<String>();
+        int pages = 0;
+
+        while (it.hasNext()) {
+            for (Alcohol a : it.next()) {
+                Assert.assertTrue(names.add(a.getName()));
+            }
+            pages++;
+        }
+
+        Assert.assertEquals(3, pages);
+        Assert.assertEquals(RECORDS, names.size());
+    }
+
+    @Test
+    public void pagesByOrderTest() throws SQLException {
+
+        PageIterator<Alcohol> it =
+            sqlite.pages(Alcohol.class, new Query().where("origin='Niigata'").order("abv").desc(true).pageSize(4));
+        Set<String> names = new HashSet<String>();
+        int abv = Integer.MAX_VALUE;
+
+        while (it.hasNext()) {
+            for (Alcohol a : it.next()) {
+                Assert.assertTrue(names.add(a.getName()));
+                Assert.assertTrue(a.getAbv() <= abv);
+                abv = a.getAbv();
+            }
+        }
+
+        Assert.assertEquals(RECORDS, names.size());
+    }
+
+    @Test
+    public void invalidOrderTest() throws SQLException {
+
+        String[] orders = {"abv,name", "abv DESC", "abv+1"};
+        for (String order : orders) {
+            try {
+                sqlite.page(Alcohol.class, new Query().order(order).pageSize(4).after(0, 0));
+                fail("An order of " + order + " must be rejected.");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        // a qualified column is a single column
+        Page<Alcohol> page = sqlite.page(Alcohol.class, new Query().order("Alcohol.abv").pageSize(4));
+        Assert.assertEquals(4, page.getEntities().length);
+    }
+}
@@ -0,0 +1,14 @@
+package casmi.db;
+
+public class Point extends Entity {
+
+    public double x;
+
+    public double y;
+
+    public int z;
+
+    public long time;
+
+    public String label;
+}
@@ -0,0 +1,18 @@
+package casmi.db;
+
+import java.io.InputStream;
+
+import casmi.db.annotation.Compressed;
+import casmi.db.annotation.Compressed.Algorithm;
+
+public class PointCloud extends Entity {
+
+    @Compressed
+    public String json;
+
+    @Compressed(algorithm = Algorithm.LZ4)
+    public byte[] points;
+
+    @Compressed(algorithm = Algorithm.LZ4)
+    public InputStream scan;
+}
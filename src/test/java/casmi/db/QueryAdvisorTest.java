@@ -0,0 +1,99 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class for QueryAdvisor.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class QueryAdvisorTest {
+
+    private void work(SQL sql) throws SQLException {
+
+        for (int i = 0; i < 20; i++) {
+            Document doc = sql.entity(Document.class);
+            doc.number = i;
+            doc.title  = "title" + (i % 5);
+            doc.save();
+        }
+        for (int i = 0; i < 5; i++) {
+            sql.all(Document.class, new Query().where("title='title" + i + "'"));
+            sql.all(Document.class, new Query().where("number=" + i));
+        }
+        sql.all(Document.class, new Query().where("number>3").order("title"));
+    }
+
+    private void check(SQL sql) throws SQLException {
+
+        QueryAdvisor advisor = new QueryAdvisor(sql);
+        sql.addStatementListener(advisor);
+        work(sql);
+
+        List<QueryAdvisor.Suggestion> suggestions = advisor.analyze();
+        String report = advisor.report();
+
+        QueryAdvisor.Suggestion title = null;
+        for (QueryAdvisor.Suggestion s : suggestions) {
+            Assert.assertFalse(report, s.getColumns().contains("number"));
+            if (s.getColumns().get(0).equals("title")) title = s;
+        }
+        Assert.assertNotNull(report, title);
+        Assert.assertEquals(Document.class, title.getEntityType());
+        Assert.assertEquals("Document", title.getTable());
+        Assert.assertTrue(title.getReasons().contains("full scan"));
+        Assert.assertTrue(title.getReasons().contains("temporary B-tree for ORDER BY"));
+        Assert.assertEquals(6, title.getCount());
+        Assert.assertEquals(2, title.getFingerprints().size());
+        Assert.assertEquals("@Index(columns = {\"title\"})", title.toAnnotation());
+        Assert.assertFalse(advisor.getPlans().isEmpty());
+    }
+
+    @Test
+    public void sqliteTest() throws SQLException {
+
+        SQLite sqlite = SQLite.memory();
+        sqlite.connect();
+        try {
+            check(sqlite);
+        } finally {
+            sqlite.close();
+        }
+    }
+
+    @Test
+    public void h2Test() throws SQLException {
+
+        H2 h2 = H2.memory("advisor_test");
+        h2.connect();
+        try {
+            check(h2);
+        } finally {
+            h2.close();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class for QueryFingerprint and QueryStatistics.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class QueryStatisticsTest {
+
+    @Test
+    public void fingerprintTest() {
+
+        Assert.assertEquals("SELECT * FROM t WHERE a = ? AND b IN (?+)",
+                            QueryFingerprint.of("SELECT  *  FROM t\n WHERE a = 'it''s' AND b IN (1, 2, 3)"));
+        Assert.assertEquals("SELECT * FROM t WHERE a=? AND b IN (?+)",
+                            QueryFingerprint.of("SELECT * FROM t WHERE a=? AND b IN (?,?)"));
+        Assert.assertEquals("SELECT col1, \"x 2\" FROM t2 WHERE v>? AND w<-? AND h=?",
+                            QueryFingerprint.of("SELECT col1, \"x 2\" FROM t2 /* c */ WHERE v>1.5e3 AND w<-.5 AND h=0xFF -- d"));
+        Assert.assertEquals(QueryFingerprint.of("SELECT * FROM t WHERE id=1"),
+                            QueryFingerprint.of("SELECT * FROM t WHERE id=42"));
+    }
+
+    @Test
+    public void aggregateTest() throws SQLException {
+
+        SQLite sqlite = SQLite.memory();
+        sqlite.connect();
+        try {
+            QueryStatistics stats = new QueryStatistics();
+            sqlite.addStatementListener(stats);
+
+            for (int i = 0; i < 10; i++) {
+                Document doc = sqlite.entity(Document.class);
+                doc.number = i;
+                doc.title  = "title" + i;
+                doc.save();
+            }
+            for (int i = 0; i < 10; i++) {
+                sqlite.all(Document.class, new Query().where("number<" + i));
+            }
+
+            List<QueryStatistics.Entry> top = stats.top(2);
+            Assert.assertEquals(2, top.size());
+            Assert.assertTrue(top.get(1).getTotalNanos() <= top.get(0).getTotalNanos());
+
+            QueryStatistics.Entry select = null;
+            for (QueryStatistics.Entry e : stats.entries()) {
+                if (e.getFingerprint().contains("number<?")) select = e;
+            }
+            Assert.assertNotNull(select);
+            Assert.assertEquals(10, select.getCount());
+            Assert.assertEquals(45, select.getRows());
+            Assert.assertTrue(select.getPercentile(0.5) <= select.getMaxNanos());
+            Assert.assertTrue(stats.dump(5).contains("number<?"));
+
+            stats.reset();
+            Assert.assertTrue(stats.entries().isEmpty());
+        } finally {
+            sqlite.close();
+        }
+    }
+
+    @Test
+    public void boundTest() {
+
+        QueryStatistics stats = new QueryStatistics(1);
+        stats.error(event("SELECT 1"), null);
+        stats.error(event("SELECT a FROM t"), null);
+        Assert.assertEquals(1, stats.entries().size());
+        Assert.assertEquals(1, stats.getDropped());
+    }
+
+    private static StatementEvent event(String sql) {
+
+        return StatementEvent.before(new StatementListener[] {new QueryStatistics()}, null, sql,
+                                     new Object[0], false);
+    }
+}
@@ -0,0 +1,13 @@
+package casmi.db;
+
+import java.util.Date;
+
+import casmi.db.annotation.Index;
+
+public class Reading extends Entity {
+
+    @Index
+    public Date time;
+
+    public double value;
+}
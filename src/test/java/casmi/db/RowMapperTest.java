@@ -0,0 +1,203 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for queries mapped with RowMapper.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class RowMapperTest {
+
+    private static final RowMapper<double[]> POINT = new RowMapper<double[]>() {
+
+        @Override
+        public double[] map(ResultSet rs, int row) throws SQLException {
+            return new double[] {rs.getDouble(1), rs.getDouble(2)};
+        }
+    };
+
+    private SQLite sqlite = null;
+
+    @Before
+    public void before() throws SQLException {
+
+        sqlite = SQLite.memory();
+        sqlite.connect();
+        sqlite.execute("CREATE TABLE point (x REAL, y REAL, name TEXT)");
+        for (int i = 0; i < 10; i++) {
+            sqlite.execute("INSERT INTO point VALUES (?, ?, ?)", (double)i, i * 0.5, "p" + i);
+        }
+    }
+
+    @After
+    public void after() {
+
+        sqlite.close();
+    }
+
+    @Test
+    public void queryTest() throws SQLException {
+
+        List<double[]> points = sqlite.query("SELECT x, y FROM point WHERE x >= ? ORDER BY x", POINT, 5.0);
+        Assert.assertEquals(5, points.size());
+        Assert.assertEquals(5.0, points.get(0)[0], 0.0);
+        Assert.assertEquals(4.5, points.get(4)[1], 0.0);
+
+        final List<Integer> rows = new ArrayList<Integer>();
+        sqlite.query("SELECT name FROM point", new RowMapper<String>() {
+
+            @Override
+            public String map(ResultSet rs, int row) throws SQLException {
+                rows.add(row);
+                return rs.getString(1);
+            }
+        });
+        Assert.assertEquals(10, rows.size());
+        Assert.assertEquals(Integer.valueOf(9), rows.get(9));
+
+        Assert.assertTrue(sqlite.query("SELECT x, y FROM point WHERE x < 0", POINT).isEmpty());
+    }
+
+    @Test
+    public void queryOneAndValueTest() throws SQLException {
+
+        double[] point = sqlite.queryOne("SELECT x, y FROM point WHERE name = ?", POINT, "p3");
+        Assert.assertEquals(1.5, point[1], 0.0);
+        Assert.assertNull(sqlite.queryOne("SELECT x, y FROM point WHERE name = ?", POINT, "none"));
+
+        Assert.assertEquals(Integer.valueOf(10), sqlite.queryValue("SELECT count(*) FROM point", Integer.class));
+        Assert.assertEquals(Double.valueOf(22.5), sqlite.queryValue("SELECT sum(y) FROM point", Double.class));
+        Assert.assertEquals("p7", sqlite.queryValue("SELECT name FROM point WHERE x = ?", String.class, 7.0));
+        Assert.assertNull(sqlite.queryValue("SELECT max(x) FROM point WHERE x < 0", Double.class));
+        Assert.assertNull(sqlite.queryValue("SELECT x FROM point WHERE x < 0", Double.class));
+    }
+
+    @Test
+    public void ownStatementTest() throws SQLException {
+
+        // a mapped query does not replace the result of execute
+        sqlite.execute("SELECT name FROM point ORDER BY x");
+        Assert.assertTrue(sqlite.next());
+        Assert.assertEquals(3, sqlite.query("SELECT x, y FROM point WHERE x < ?", POINT, 3.0).size());
+        Assert.assertTrue(sqlite.next());
+        Assert.assertEquals("p1", sqlite.getString("name"));
+    }
+
+    @Test
+    public void streamTest() throws SQLException {
+
+        sqlite.getMetrics().setEnabled(true);
+
+        Stream<double[]> stream = sqlite.queryStream("SELECT x, y FROM point ORDER BY x", POINT);
+        // an open stream holds the statement lock
+        Assert.assertTrue(sqlite.statementLock.isHeldByCurrentThread());
+        try {
+            List<Double> xs = stream.filter(p -> p[1] > 2).map(p -> p[0]).collect(Collectors.toList());
+            Assert.assertEquals(5, xs.size());
+            Assert.assertEquals(Double.valueOf(5.0), xs.get(0));
+        } finally {
+            stream.close();
+        }
+        Assert.assertFalse(sqlite.statementLock.isLocked());
+        Assert.assertEquals(1, sqlite.getMetrics().snapshot().getKind(DbMetrics.Kind.SELECT).getCount());
+
+        // a short-circuited stream closes its statement
+        try (Stream<double[]> first = sqlite.queryStream("SELECT x, y FROM point WHERE x > ?", POINT, 7.0)) {
+            Assert.assertEquals(8.0, first.findFirst().get()[0], 0.0);
+        }
+        sqlite.execute("DROP TABLE point");
+    }
+
+    @Test
+    public void streamErrorTest() {
+
+        sqlite.getMetrics().setEnabled(true);
+
+        try {
+            sqlite.queryStream("SELECT x FROM no_such_table", POINT);
+            Assert.fail();
+        } catch (SQLException e) {
+            // expected
+        }
+        // a failed preparation is recorded and releases the lock
+        Assert.assertEquals(1, sqlite.getMetrics().snapshot().getKind(DbMetrics.Kind.SELECT).getErrors());
+        Assert.assertFalse(sqlite.statementLock.isLocked());
+
+        RowMapper<Double> failing = new RowMapper<Double>() {
+
+            @Override
+            public Double map(ResultSet rs, int row) throws SQLException {
+                throw new SQLException("mapping");
+            }
+        };
+        try (Stream<Double> stream = sqlite.queryStream("SELECT x FROM point", failing)) {
+            stream.count();
+            Assert.fail();
+        } catch (UncheckedSQLException e) {
+            Assert.assertEquals("mapping", e.getCause().getMessage());
+        } catch (SQLException e) {
+            Assert.fail();
+        }
+        Assert.assertFalse(sqlite.statementLock.isLocked());
+    }
+
+    @Test
+    public void pooledQueryTest() throws Exception {
+
+        H2 h2 = H2.memory("row_mapper_test");
+        h2.connect();
+        AsyncSQL async = new AsyncSQL(h2);
+        try {
+            h2.execute("CREATE TABLE point (x DOUBLE, y DOUBLE)");
+            for (int i = 0; i < 100; i++) {
+                h2.execute("INSERT INTO point VALUES (?, ?)", (double)i, (double)-i);
+            }
+
+            async.setPooledReads(true);
+            List<CompletableFuture<List<double[]>>> futures = new ArrayList<CompletableFuture<List<double[]>>>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(async.queryAsync("SELECT x, y FROM point WHERE x >= ? ORDER BY x", POINT, (double)i));
+            }
+            for (int i = 0; i < 20; i++) {
+                List<double[]> points = futures.get(i).get();
+                Assert.assertEquals(100 - i, points.size());
+                Assert.assertEquals(-i, points.get(0)[1], 0.0);
+            }
+        } finally {
+            async.close();
+            h2.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class for SQLLexer.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class SQLLexerTest {
+
+    private static void assertQuery(boolean query, DbMetrics.Kind kind, String sql) {
+
+        SQLLexer.Classification c = SQLLexer.classify(sql);
+        Assert.assertEquals(sql, query, c.query);
+        Assert.assertEquals(sql, kind, c.kind);
+    }
+
+    @Test
+    public void classifyTest() {
+
+        assertQuery(true,  DbMetrics.Kind.SELECT, "select * from t");
+        assertQuery(true,  DbMetrics.Kind.SELECT, "  -- select\n /* update */ (SELECT 1) UNION (SELECT 2)");
+        assertQuery(false, DbMetrics.Kind.INSERT, "INSERT INTO t SELECT * FROM u");
+        assertQuery(false, DbMetrics.Kind.UPDATE, "UPDATE t SET selected=1 WHERE name='select'");
+        assertQuery(false, DbMetrics.Kind.DDL,    "CREATE TABLE selection (a INTEGER)");
+        assertQuery(true,  DbMetrics.Kind.SELECT, "WITH RECURSIVE t(n) AS (SELECT 1 UNION SELECT n+1 FROM t) SELECT n FROM t");
+        assertQuery(false, DbMetrics.Kind.DELETE, "WITH old AS (SELECT id FROM t) DELETE FROM t WHERE id IN old");
+        assertQuery(true,  DbMetrics.Kind.OTHER,  "PRAGMA table_info(t)");
+        assertQuery(false, DbMetrics.Kind.OTHER,  "pragma foreign_keys = ON");
+        assertQuery(true,  DbMetrics.Kind.OTHER,  "SHOW TABLES");
+        assertQuery(false, DbMetrics.Kind.OTHER,  "");
+    }
+
+    @Test
+    public void parameterTest() {
+
+        SQLLexer.Classification c =
+            SQLLexer.classify("SELECT * FROM t WHERE a=? AND b='?' AND c=?2 AND d=:name AND e::text=:other -- ?");
+        Assert.assertEquals(2, c.placeholders);
+        Assert.assertEquals(Arrays.asList("name", "other"), c.namedParameters);
+        Assert.assertEquals("SELECT", c.keyword);
+    }
+
+    @Test
+    public void cacheTest() {
+
+        String sql = "SELECT cached FROM t";
+        Assert.assertSame(SQLLexer.classify(sql), SQLLexer.classify(new String(sql)));
+        for (int i = 0; i < SQLLexer.CACHE_SIZE * 2; i++) {
+            SQLLexer.classify("SELECT " + i);
+        }
+        Assert.assertTrue(SQLLexer.classify("SELECT 1").query);
+    }
+
+    @Test
+    public void executeTest() throws SQLException {
+
+        SQLite sqlite = SQLite.memory();
+        sqlite.connect();
+        try {
+            sqlite.execute("CREATE TABLE selection (selected INTEGER)");
+            sqlite.execute("INSERT INTO selection VALUES (?)", 1);
+            sqlite.execute("INSERT INTO selection SELECT selected + 1 FROM selection");
+            sqlite.execute("PRAGMA table_info(selection)");
+            Assert.assertTrue(sqlite.next());
+            Assert.assertEquals("selected", sqlite.getString("name"));
+            sqlite.execute("SELECT count(*) AS n FROM selection");
+            Assert.assertTrue(sqlite.next());
+            Assert.assertEquals(2, sqlite.getInt("n"));
+        } finally {
+            sqlite.close();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test class for in-memory SQLite databases.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class SQLiteMemoryTest {
+
+    private static final String JAVA_TMP_PATH = System.getProperty("java.io.tmpdir");
+    private static final String DATABASE_PATH = JAVA_TMP_PATH + File.separator + "memory_test.sqlite3";
+
+    public static void cleanup() {
+        File f = new File(DATABASE_PATH);
+
+        if (f.isFile()) {
+            f.delete();
+        }
+    }
+
+    @BeforeClass
+    public static void beforeClass() {
+
+        cleanup();
+    }
+
+    @AfterClass
+    public static void afterClass() {
+
+        cleanup();
+    }
+
+    @Test
+    public void persistAndPreloadTest() throws SQLException {
+
+        SQLite memory = SQLite.memory();
+        memory.connect();
+        Assert.assertTrue(memory.isMemory());
+
+        Alcohol alcohol = memory.entity(Alcohol.class);
+        alcohol.setName("Awamori");
+        alcohol.setAbv(30);
+        alcohol.save();
+
+        memory.persist(new File(DATABASE_PATH));
+        memory.close();
+
+        SQLite preloaded = SQLite.memory(new File(DATABASE_PATH));
+        preloaded.connect();
+        try {
+            Alcohol found = preloaded.first(Alcohol.class, new Query().where("name='Awamori'"));
+            Assert.assertEquals(30, found.getAbv());
+        } finally {
+            preloaded.close();
+        }
+    }
+
+    @Test
+    public void periodicPersistTest() throws SQLException {
+
+        SQLite memory = SQLite.memory();
+        memory.connect();
+        memory.persist(new File(DATABASE_PATH), 1, TimeUnit.MILLISECONDS);
+        try {
+            // statements on the main connection run between the snapshots
+            for (int i = 0; i < 200; i++) {
+                Alcohol alcohol = memory.entity(Alcohol.class);
+                alcohol.setName("Shochu " + i);
+                alcohol.setAbv(25);
+                alcohol.save();
+            }
+        } finally {
+            memory.close();
+        }
+        Assert.assertNull(memory.getPersistFailure());
+
+        SQLite preloaded = SQLite.memory(new File(DATABASE_PATH));
+        preloaded.connect();
+        try {
+            Alcohol[] found = preloaded.all(Alcohol.class, new Query().where("name LIKE 'Shochu %'"));
+            Assert.assertEquals(200, found.length);
+        } finally {
+            preloaded.close();
+        }
+    }
+
+    @Test
+    public void persistFileTest() throws Exception {
+
+        File source = new File(JAVA_TMP_PATH + File.separator + "persist_source.sqlite3");
+        source.delete();
+        SQLite.createDatabase(source.getPath());
+
+        SQLite sqlite = new SQLite(source.getPath());
+        sqlite.connect();
+        try {
+            Alcohol alcohol = sqlite.entity(Alcohol.class);
+            alcohol.setName("Umeshu");
+            alcohol.setAbv(12);
+            alcohol.save();
+
+            // the snapshot of a file is taken on a dedicated connection
+            sqlite.persist(new File(DATABASE_PATH));
+        } finally {
+            sqlite.close();
+            source.delete();
+        }
+
+        SQLite copy = new SQLite(DATABASE_PATH);
+        copy.connect();
+        try {
+            Assert.assertEquals(12, copy.first(Alcohol.class, new Query().where("name='Umeshu'")).getAbv());
+        } finally {
+            copy.close();
+        }
+    }
+
+    @Test
+    public void persistFailureTest() throws Exception {
+
+        final List<SQLException> errors = new CopyOnWriteArrayList<SQLException>();
+        File file = new File(JAVA_TMP_PATH + File.separator + "no_such_directory" + File.separator + "x.sqlite3");
+
+        SQLite memory = SQLite.memory();
+        memory.connect();
+        memory.addStatementListener(new StatementListener() {
+
+            @Override
+            public void before(StatementEvent event) {
+            }
+
+            @Override
+            public void after(StatementEvent event) {
+            }
+
+            @Override
+            public void error(StatementEvent event, SQLException exception) {
+                errors.add(exception);
+            }
+        });
+        try {
+            memory.persist(file, 1, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < 500 && memory.getPersistFailure() == null; i++) {
+                Thread.sleep(10);
+            }
+            Assert.assertNotNull(memory.getPersistFailure());
+            Assert.assertFalse(errors.isEmpty());
+        } finally {
+            memory.close();
+        }
+    }
+
+    @Test
+    public void upsertTest() throws SQLException {
+
+        SQLite memory = SQLite.memory();
+        memory.connect();
+        try {
+            Alcohol2 alcohol = memory.entity(Alcohol2.class);
+            alcohol.setName("Umeshu");
+            alcohol.setAbv(12);
+            alcohol.upsert();
+            long rowid = memory.queryValue("SELECT rowid FROM alcohol_table WHERE name='Umeshu'", Long.class);
+
+            Alcohol2 other = memory.entity(Alcohol2.class);
+            other.setName("Umeshu");
+            other.setAbv(10);
+            other.upsert();
+
+            Alcohol2[] found = memory.all(Alcohol2.class, new Query().where("name='Umeshu'"));
+            Assert.assertEquals(1, found.length);
+            Assert.assertEquals(10, found[0].getAbv());
+            // updated in place, not replaced
+            Assert.assertEquals(Long.valueOf(rowid),
+                                memory.queryValue("SELECT rowid FROM alcohol_table WHERE name='Umeshu'", Long.class));
+        } finally {
+            memory.close();
+        }
+    }
+
+    @Test(expected = SQLException.class)
+    public void poolTest() throws SQLException {
+
+        SQLite memory = SQLite.memory();
+        memory.connect();
+        try {
+            memory.pooledAll(Alcohol.class, new Query());
+        } finally {
+            memory.close();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package casmi.db;
+
+import casmi.db.annotation.Column;
+import casmi.db.annotation.Index;
+import casmi.db.annotation.Unique;
+
+@Index(columns = {"brewery", "grade"})
+public class Sake extends Entity {
+
+    @Unique
+    @Column(length = 64, nullable = false)
+    public String name;
+
+    @Index
+    @Column(length = 64)
+    public String brewery;
+
+    @Column(type = "TINYINT")
+    public int grade;
+}
@@ -0,0 +1,334 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test class for scans reading records on other threads.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class ScanTest {
+
+    private static final String JAVA_TMP_PATH = System.getProperty("java.io.tmpdir");
+    private static final String DATABASE_PATH = JAVA_TMP_PATH + File.separator + "scan_test.sqlite3";
+    private static final int    RECORDS       = 1000;
+    private static SQLite sqlite = null;
+
+    public static void cleanup() {
+        File f = new File(DATABASE_PATH);
+
+        if (f.isFile()) {
+            f.delete();
+        }
+    }
+
+    @BeforeClass
+    public static void beforeClass() throws SQLException {
+
+        cleanup();
+
+        try {
+            SQLite.createDatabase(DATABASE_PATH);
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail("Failed to create database file.");
+        }
+
+        sqlite = new SQLite(DATABASE_PATH);
+        sqlite.connect();
+
+        sqlite.setAutoCommit(false);
+        for (int i = 0; i < RECORDS; i++) {
+            Alcohol alcohol = sqlite.entity(Alcohol.class);
+            alcohol.setName("Sake " + i);
+            alcohol.setAbv(i % 20);
+            alcohol.origin = i % 2 == 0 ? "Niigata" : "Hyogo";
+            alcohol.save();
+        }
+        sqlite.commit();
+        sqlite.setAutoCommit(true);
+    }
+
+    @AfterClass
+    public static void afterClass() {
+
+        sqlite.close();
+
+        cleanup();
+    }
+
+    @Test
+    public void parallelScanTest() throws SQLException {
+
+        final Set<String> names = new HashSet<String>();
+
+        sqlite.parallelScan(Alcohol.class, new Query(), 4, new EntityConsumer<Alcohol>() {
+
+            @Override
+            public void accept(Alcohol entity) {
+                Assert.assertTrue(names.add(entity.getName()));
+            }
+        });
+
+        Assert.assertEquals(RECORDS, names.size());
+    }
+
+    @Test
+    public void wideRangeParallelScanTest() throws SQLException {
+
+        long[] serials = {Long.MIN_VALUE + 1, -1, 0, 1, Long.MAX_VALUE - 1};
+        for (long serial : serials) {
+            Tick tick = sqlite.entity(Tick.class);
+            tick.serial = serial;
+            tick.name   = "tick " + serial;
+            tick.save();
+        }
+        Assert.assertEquals(Long.MAX_VALUE, SQL.partitionStep(Long.MIN_VALUE, Long.MAX_VALUE, 1));
+        Assert.assertTrue(0 < SQL.partitionStep(Long.MIN_VALUE + 1, Long.MAX_VALUE - 1, 4));
+
+        for (int parallelism = 1; parallelism <= 4; parallelism++) {
+            final List<Long> list = new ArrayList<Long>();
+            sqlite.parallelScan(Tick.class, new Query(), parallelism, true, new EntityConsumer<Tick>() {
+
+                @Override
+                public void accept(Tick entity) {
+                    list.add(entity.serial);
+                }
+            });
+            Assert.assertEquals(serials.length, list.size());
+            for (int i = 0; i < serials.length; i++) {
+                Assert.assertEquals(serials[i], (long)list.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void orderedParallelScanTest() throws SQLException {
+
+        final List<Alcohol> list = new ArrayList<Alcohol>();
+
+        sqlite.parallelScan(Alcohol.class, new Query().where("origin='Niigata' OR abv=1"), 3, true,
+                            new EntityConsumer<Alcohol>() {
+
+            @Override
+            public void accept(Alcohol entity) {
+                list.add(entity);
+            }
+        });
+
+        Assert.assertEquals(RECORDS / 2 + RECORDS / 20, list.size());
+        for (int i = 1; i < list.size(); i++) {
+            Assert.assertTrue((Integer)list.get(i - 1).getValue("id") < (Integer)list.get(i).getValue("id"));
+        }
+    }
+
+    @Test
+    public void pipelineTest() throws SQLException {
+
+        Alcohol[] expected = sqlite.all(Alcohol.class, new Query().where("abv<10"));
+
+        sqlite.setPipeline(3, 16);
+        Alcohol[] actual;
+        try {
+            actual = sqlite.all(Alcohol.class, new Query().where("abv<10"));
+        } finally {
+            sqlite.setPipeline(0, 0);
+        }
+
+        Assert.assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i].toString(), actual[i].toString());
+        }
+    }
+
+    @Test
+    public void publishTest() throws Exception {
+
+        final AtomicInteger count = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        sqlite.publish(Alcohol.class, new Query().where("abv<5")).subscribe(new Flow.Subscriber<Alcohol>() {
+
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(10);
+            }
+
+            @Override
+            public void onNext(Alcohol item) {
+                if (count.incrementAndGet() % 10 == 0) subscription.request(10);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throwable.printStackTrace();
+            }
+
+            @Override
+            public void onComplete() {
+                latch.countDown();
+            }
+        });
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(RECORDS / 4, count.get());
+    }
+
+    @Test
+    public void publishCancelTest() throws Exception {
+
+        final AtomicInteger count = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(5);
+
+        sqlite.publish(Alcohol.class, new Query()).subscribe(new Flow.Subscriber<Alcohol>() {
+
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(5);
+            }
+
+            @Override
+            public void onNext(Alcohol item) {
+                count.incrementAndGet();
+                latch.countDown();
+                if (latch.getCount() == 0) subscription.cancel();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                fail("No error is expected.");
+            }
+
+            @Override
+            public void onComplete() {
+                fail("The subscription is cancelled.");
+            }
+        });
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        Assert.assertEquals(5, count.get());
+    }
+
+    @Test
+    public void publishRejectedTest() throws Exception {
+
+        final List<String> events = new ArrayList<String>();
+        StatementListener listener = new StatementListener() {
+
+            @Override
+            public void before(StatementEvent event) {
+            }
+
+            @Override
+            public void after(StatementEvent event) {
+                events.add("after " + event.getRows());
+            }
+
+            @Override
+            public void error(StatementEvent event, SQLException exception) {
+                events.add("error");
+            }
+        };
+
+        // runs the first drain on the calling thread, and rejects the others
+        final AtomicInteger executions = new AtomicInteger();
+        Executor executor = new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                if (executions.getAndIncrement() != 0) throw new RejectedExecutionException();
+                command.run();
+            }
+        };
+
+        final AtomicInteger count = new AtomicInteger();
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        final Flow.Subscription[] subscription = new Flow.Subscription[1];
+
+        sqlite.addStatementListener(listener);
+        try {
+            sqlite.publish(Alcohol.class, new Query(), executor).subscribe(new Flow.Subscriber<Alcohol>() {
+
+                @Override
+                public void onSubscribe(Flow.Subscription s) {
+                    subscription[0] = s;
+                    s.request(3);
+                }
+
+                @Override
+                public void onNext(Alcohol item) {
+                    count.incrementAndGet();
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    errors.add(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    fail("The drain is rejected.");
+                }
+            });
+            Assert.assertEquals(3, count.get());
+            Assert.assertTrue(events.isEmpty());
+
+            subscription[0].request(3);
+            subscription[0].request(3);
+        } finally {
+            sqlite.removeStatementListener(listener);
+        }
+
+        Assert.assertEquals(3, count.get());
+        Assert.assertEquals(1, errors.size());
+        Assert.assertTrue(errors.get(0) instanceof RejectedExecutionException);
+        Assert.assertEquals(Arrays.asList("error"), events);
+    }
+}
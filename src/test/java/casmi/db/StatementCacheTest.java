@@ -0,0 +1,117 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for the cache of the prepared statements.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class StatementCacheTest {
+
+    private SQLite sqlite = null;
+
+    @Before
+    public void before() throws SQLException {
+
+        sqlite = SQLite.memory();
+        sqlite.connect();
+        sqlite.execute("CREATE TABLE point (x INTEGER, y INTEGER)");
+    }
+
+    @After
+    public void after() {
+
+        sqlite.close();
+    }
+
+    private static void assertClosed(PreparedStatement ps) {
+
+        try {
+            ps.clearParameters();
+            Assert.fail();
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void reuseTest() throws SQLException {
+
+        sqlite.getMetrics().setEnabled(true);
+
+        sqlite.execute("INSERT INTO point VALUES (?, ?)", 0, 0);
+        PreparedStatement ps = sqlite.getPreparedStatement();
+        for (int i = 1; i < 100; i++) {
+            sqlite.execute("INSERT INTO point VALUES (?, ?)", i, i * 2);
+            Assert.assertSame(ps, sqlite.getPreparedStatement());
+        }
+        Assert.assertTrue(99 <= sqlite.getMetrics().snapshot().getStatementCacheHits());
+
+        sqlite.execute("SELECT count(*) AS n, sum(y) AS s FROM point WHERE x < ?", 10);
+        Assert.assertTrue(sqlite.next());
+        Assert.assertEquals(10, sqlite.getInt("n"));
+        Assert.assertEquals(90, sqlite.getInt("s"));
+
+        // the same statement with other parameters
+        sqlite.execute("SELECT count(*) AS n, sum(y) AS s FROM point WHERE x < ?", 100);
+        Assert.assertTrue(sqlite.next());
+        Assert.assertEquals(100, sqlite.getInt("n"));
+    }
+
+    @Test
+    public void evictTest() throws SQLException {
+
+        sqlite.setStatementCacheSize(1);
+
+        sqlite.execute("INSERT INTO point VALUES (?, ?)", 1, 1);
+        PreparedStatement first = sqlite.getPreparedStatement();
+        sqlite.execute("INSERT INTO point (x) VALUES (?)", 2);
+        assertClosed(first);
+
+        sqlite.execute("INSERT INTO point VALUES (?, ?)", 3, 3);
+        Assert.assertNotSame(first, sqlite.getPreparedStatement());
+
+        PreparedStatement last = sqlite.getPreparedStatement();
+        sqlite.close();
+        assertClosed(last);
+    }
+
+    @Test
+    public void disabledTest() throws SQLException {
+
+        sqlite.setStatementCacheSize(0);
+
+        sqlite.execute("INSERT INTO point VALUES (?, ?)", 1, 1);
+        PreparedStatement first = sqlite.getPreparedStatement();
+        sqlite.execute("INSERT INTO point VALUES (?, ?)", 2, 2);
+        Assert.assertNotSame(first, sqlite.getPreparedStatement());
+        assertClosed(first);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for StatementListener and SlowQueryLogger.
+ *
+ * @author T. Takeuchi
+ *
+ */
+public class StatementListenerTest {
+
+    private SQLite sqlite = null;
+
+    private final List<String> calls = new ArrayList<String>();
+
+    private final List<StatementEvent> events = new ArrayList<StatementEvent>();
+
+    private final StatementListener recorder = new StatementListener() {
+
+        @Override
+        public void before(StatementEvent event) {
+            calls.add("before");
+        }
+
+        @Override
+        public void after(StatementEvent event) {
+            calls.add("after");
+            events.add(event);
+        }
+
+        @Override
+        public void error(StatementEvent event, SQLException e) {
+            calls.add("error");
+            events.add(event);
+        }
+    };
+
+    @Before
+    public void before() throws SQLException {
+
+        sqlite = SQLite.memory();
+        sqlite.connect();
+    }
+
+    @After
+    public void after() {
+
+        sqlite.close();
+    }
+
+    private void save(int number) throws SQLException {
+
+        Document doc = sqlite.entity(Document.class);
+        doc.number = number;
+        doc.title  = "secret" + number;
+        doc.save();
+    }
+
+    @Test
+    public void listenerTest() throws SQLException {
+
+        save(0);
+        sqlite.addStatementListener(recorder);
+        save(1);
+        save(2);
+        Document[] docs = sqlite.all(Document.class);
+        Assert.assertEquals(3, docs.length);
+
+        Assert.assertEquals(6, calls.size());
+        Assert.assertEquals("before", calls.get(4));
+        Assert.assertEquals("after", calls.get(5));
+
+        StatementEvent insert = events.get(0);
+        Assert.assertEquals(DbMetrics.Kind.INSERT, insert.getKind());
+        Assert.assertEquals(Document.class, insert.getEntityType());
+        Assert.assertEquals(1, insert.getRows());
+        Assert.assertTrue(0 <= insert.getElapsedNanos());
+        Assert.assertTrue(insert.toString().contains("secret1"));
+
+        StatementEvent select = events.get(2);
+        Assert.assertEquals(DbMetrics.Kind.SELECT, select.getKind());
+        Assert.assertEquals(3, select.getRows());
+
+        try {
+            sqlite.execute("INSERT INTO nothing VALUES (?)", 1);
+            Assert.fail();
+        } catch (SQLException e) {
+            // expected
+        }
+        Assert.assertEquals("error", calls.get(calls.size() - 1));
+        Assert.assertNull(events.get(events.size() - 1).getEntityType());
+
+        sqlite.removeStatementListener(recorder);
+        save(3);
+        Assert.assertEquals(8, calls.size());
+    }
+
+    @Test
+    public void redactTest() throws SQLException {
+
+        sqlite.addStatementListener(recorder);
+        sqlite.setRedactParameters(true);
+        save(1);
+
+        StatementEvent insert = events.get(0);
+        Assert.assertTrue(insert.isRedacted());
+        Assert.assertFalse(insert.toString().contains("secret1"));
+        for (Object value : insert.getParameters()) {
+            Assert.assertEquals(StatementEvent.REDACTED, value);
+        }
+    }
+
+    @Test
+    public void slowQueryLoggerTest() throws SQLException {
+
+        final List<LogRecord> records = new ArrayList<LogRecord>();
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        save(0);
+        SlowQueryLogger slow = new SlowQueryLogger(0, TimeUnit.MILLISECONDS, logger);
+        sqlite.addStatementListener(slow);
+        save(1);
+        sqlite.all(Document.class);
+        Assert.assertEquals(2, records.size());
+
+        slow.setSampleRate(0);
+        save(2);
+        Assert.assertEquals(2, records.size());
+        sqlite.removeStatementListener(slow);
+
+        SlowQueryLogger never = new SlowQueryLogger(1, TimeUnit.HOURS, logger);
+        sqlite.addStatementListener(never);
+        save(3);
+        Assert.assertEquals(2, records.size());
+    }
+}
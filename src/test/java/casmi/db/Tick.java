@@ -0,0 +1,11 @@
+package casmi.db;
+
+import casmi.db.annotation.PrimaryKey;
+
+public class Tick extends Entity {
+
+    @PrimaryKey
+    public long serial;
+
+    public String name;
+}
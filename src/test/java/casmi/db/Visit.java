@@ -0,0 +1,14 @@
+package casmi.db;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+public class Visit extends Entity {
+
+    public Instant at;
+
+    public LocalDateTime local;
+
+    public LocalDate day;
+}
@@ -0,0 +1,88 @@
+/*
+ *   casmi
+ *   http://casmi.github.com/
+ *   Copyright (C) 2011, Xcoo, Inc.
+ *
+ *  casmi is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package casmi.db.util;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Benchmark of DateUtil against SimpleDateFormat. It is not a part of the unit
+ * tests; run it with the test classpath:
+ *
+ * <pre><code>
+ *     java -cp target/classes:target/test-classes casmi.db.util.DateUtilBenchmark
+ * </code></pre>
+ *
+ * @author T. Takeuchi
+ */
+public class DateUtilBenchmark {
+
+    public static void main(String[] args) throws ParseException {
+
+        final int n = 200000;
+        Date date = new Date();
+        String pattern = DateUtil.DATE_TIME;
+        String str = DateUtil.format(date, pattern);
+
+        // warm up
+        for (int i = 0; i < n / 10; i++) {
+            new SimpleDateFormat(pattern).parse(new SimpleDateFormat(pattern).format(date));
+            DateUtil.parse(DateUtil.format(date, pattern), pattern);
+            DateUtil.parse(DateUtil.format(date, "yyyy/MM/dd HH:mm"), "yyyy/MM/dd HH:mm");
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            new SimpleDateFormat(pattern).format(date);
+        }
+        long legacyFormat = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            new SimpleDateFormat(pattern).parse(str);
+        }
+        long legacyParse = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            DateUtil.format(date, "yyyy/MM/dd HH:mm");
+        }
+        long cachedFormat = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            DateUtil.format(date, pattern);
+        }
+        long fastFormat = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            DateUtil.parse(str, pattern);
+        }
+        long fastParse = System.nanoTime() - start;
+
+        System.out.println("format: SimpleDateFormat " + legacyFormat / n + " ns, " +
+                           "DateTimeFormatter " + cachedFormat / n + " ns, " +
+                           "fast path " + fastFormat / n + " ns");
+        System.out.println("parse:  SimpleDateFormat " + legacyParse / n + " ns, " +
+                           "fast path " + fastParse / n + " ns");
+    }
+}
@@ -20,8 +20,11 @@
 package casmi.db.util;
 
 import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Random;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 import casmi.db.util.DateUtil;
@@ -101,4 +104,59 @@ public class DateUtilTest {
         }
         
     }
+
+    @Test
+    public void dateTimeTest() throws ParseException {
+
+        SimpleDateFormat reference = new SimpleDateFormat(DateUtil.DATE_TIME);
+        Random random = new Random(0);
+
+        for (int i = 0; i < 10000; i++) {
+            // 1900 - 2100
+            long millis = (long)((random.nextDouble() * 200 - 70) * 365.25 * 24 * 60 * 60) * 1000;
+            Date date = new Date(millis);
+            String str = DateUtil.formatDateTime(date);
+            Assert.assertEquals(reference.format(date), str);
+            Assert.assertEquals(reference.parse(str), DateUtil.parseDateTime(str));
+        }
+
+        Assert.assertEquals(new SimpleDateFormat("yyyy-MM-dd").parse("2012-02-29"),
+                            DateUtil.parseDateTime("2012-02-29"));
+        Assert.assertEquals(new SimpleDateFormat("yyyy-MM-dd HH:mm").parse("2012-02-29 13:45"),
+                            DateUtil.parseDateTime("2012-02-29T13:45"));
+    }
+
+    @Test
+    public void lenientDateTimeTest() throws ParseException {
+
+        String[] lenients = {"2012-02-30", "2013-02-29", "2012-13-01", "2012-00-10", "2012-03-00",
+                             "2012-01-01 24:00", "2012-01-31 23:59:60"};
+        for (String lenient : lenients) {
+            SimpleDateFormat reference =
+                new SimpleDateFormat(lenient.length() == 10 ? "yyyy-MM-dd" :
+                                     lenient.length() == 16 ? "yyyy-MM-dd HH:mm" : DateUtil.DATE_TIME);
+            Assert.assertEquals(reference.parse(lenient), DateUtil.parseDateTime(lenient, true));
+        }
+        try {
+            DateUtil.parseDateTime("2012/01/01", true);
+            Assert.fail();
+        } catch (ParseException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void invalidDateTimeTest() {
+
+        String[] invalids = {"", "2012-02-30", "2013-02-29", "2012-13-01", "2012-01-01 24:00",
+                             "2012/01/01", "2012-01-01 12:00:0x", "2012-01-01 12:00:00.000"};
+        for (String invalid : invalids) {
+            try {
+                DateUtil.parseDateTime(invalid);
+                Assert.fail(invalid);
+            } catch (ParseException e) {
+                // expected
+            }
+        }
+    }
 }